@@ -13,4 +13,25 @@ public interface Auction extends Remote
     public AuctionResult closeAuction(int userID, int itemID, String token) throws RemoteException;
     public boolean bid(int userID, int itemID, int price, String token) throws RemoteException;
     public int getPrimaryReplicaID() throws RemoteException;
+
+    // Bid for the user up to maxPrice, increment over anyone else, returns whether they lead afterwards
+    public boolean proxyBid(int userID, int itemID, int maxPrice, int increment, String token) throws RemoteException;
+
+    // Page through every highest bid the item has had, start at cursor 0 and pass back each page's nextCursor
+    public BidHistoryPage getBidHistory(int userID, int itemID, int cursor, String token) throws RemoteException;
+
+    // Batch variants, the token is validated once and one result is returned per entry
+    public AuctionItem[] getSpecs(int userID, int[] itemIDs, String token) throws RemoteException;
+    public Integer[] newAuctions(int userID, AuctionSaleItem[] items, String token) throws RemoteException;
+    public boolean[] bids(int userID, int[] itemIDs, int[] prices, String token) throws RemoteException;
+
+    // Push notifications for watched items, the listener is a remote object exported by the client
+    public boolean subscribe(int userID, int itemID, AuctionListener listener, String token) throws RemoteException;
+    public boolean unsubscribe(int userID, int itemID, String token) throws RemoteException;
+
+    // Call counts and latency percentiles of every operation, a frontend returns its own followed by each shard primary's
+    public MetricsReport[] getMetrics() throws RemoteException;
+
+    // Call the named method as part of the caller's trace, returning its result with the spans recorded on the way, see Trace
+    public TracedResult traced(long traceID, String method, Object[] args) throws RemoteException;
 }
\ No newline at end of file
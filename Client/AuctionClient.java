@@ -0,0 +1,461 @@
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.server.UnicastRemoteObject;
+import java.security.KeyPair;
+import java.security.PublicKey;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+// Reusable asynchronous client library for the auction service
+// Every Auction operation returns a CompletableFuture, so callers like bidding bots can keep many requests in flight
+// One AuctionClient is one logged in user: it registers, does the 2-way authentication and re-authenticates
+// shortly before the 10 second token expires, so callers never handle tokens themselves
+// Connections are shared, every AuctionClient for the same frontend uses the same cached stub
+//
+// Requests that were sent with a token just before it was refreshed can be rejected by the server,
+// since it only keeps the newest token for each user
+public class AuctionClient implements AutoCloseable
+{
+    // Re-authenticate this long before the token expires
+    private static final long TOKEN_REFRESH_MARGIN_MS = 1000;
+
+    // Cached frontend connections keyed by transport, host and service name or port
+    private static final Map<String, Auction> connections = new ConcurrentHashMap<>();
+
+    private final Auction server;
+    private final String email;
+    private final KeyPair keyPair;
+    private final PublicKey serverPublicKey;
+    private final ExecutorService executor;
+    private final boolean ownsExecutor;
+    private final Semaphore inFlightPermits;
+
+    // Calls waiting for an in-flight permit, started in order as permits come free
+    private final Queue<QueuedCall<?>> waitingCalls = new ConcurrentLinkedQueue<>();
+
+    private volatile int userID = -1;
+    private volatile TokenInfo tokenInfo;
+
+    // Handlers for watched items, called by the listener this client exports on its first subscribe
+    private final Map<Integer, Consumer<AuctionEvent>> watchHandlers = new ConcurrentHashMap<>();
+    private Listener listener;
+    private AuctionListener listenerStub;
+
+    // Receives this client's pushed events and passes each to its item's handler, on the RMI thread that delivered them
+    private class Listener implements AuctionListener
+    {
+        public void onEvents(AuctionEvent[] events)
+        {
+            for(AuctionEvent event : events)
+            {
+                Consumer<AuctionEvent> handler = event.type == AuctionEvent.CLOSED ? watchHandlers.remove(event.itemID) : watchHandlers.get(event.itemID);
+
+                if(handler != null)
+                {
+                    handler.accept(event);
+                }
+            }
+        }
+    }
+
+    // serverPublicKey may be null to skip verifying the server's challenge response
+    public AuctionClient(Auction server, String email, KeyPair keyPair, PublicKey serverPublicKey, ExecutorService executor, int maxInFlight)
+    {
+        this.server = server;
+        this.email = email;
+        this.keyPair = keyPair;
+        this.serverPublicKey = serverPublicKey;
+        this.ownsExecutor = executor == null;
+        this.executor = executor != null ? executor : newDefaultExecutor();
+        this.inFlightPermits = new Semaphore(maxInFlight);
+    }
+
+    // Connect to the frontends on the given host using the key files in the working directory, like the Client CLI does
+    // Uses the binary protocol if -Dauction.binaryPort is set, otherwise RMI load balanced across every frontend
+    // Over RMI, requests sampled by -Dauction.traceSampleRate are traced from here, see Trace
+    public static AuctionClient connect(String host, String email) throws Exception
+    {
+        int binaryPort = Integer.getInteger("auction.binaryPort", -1);
+        Auction server = binaryPort > 0 ? binaryConnection(host, binaryPort) : Trace.remote(balancedConnection(host), Auction.class, "Frontend", true);
+
+        return new AuctionClient(server, email, Client.getOrGenerateKeyPair(), Client.getServerPublicKeyFromFile("./serverKey.pub"),
+                null, Integer.getInteger("auction.clientMaxInFlight", 1000));
+    }
+
+    // Get the cached RMI stub for a frontend, looking it up in the registry the first time
+    public static Auction rmiConnection(String host, String serviceName) throws Exception
+    {
+        String key = "rmi://" + host + "/" + serviceName;
+        Auction stub = connections.get(key);
+
+        if(stub == null)
+        {
+            stub = (Auction) LocateRegistry.getRegistry(host).lookup(serviceName);
+            Auction existing = connections.putIfAbsent(key, stub);
+            stub = existing != null ? existing : stub;
+        }
+
+        return stub;
+    }
+
+    // Get the cached load balancer over every frontend advertised on the host's registry
+    public static synchronized Auction balancedConnection(String host) throws Exception
+    {
+        String key = "balanced://" + host;
+        Auction connection = connections.get(key);
+
+        if(connection == null)
+        {
+            connection = new LoadBalancedAuction(host);
+            connections.put(key, connection);
+        }
+
+        return connection;
+    }
+
+    // Get the cached binary protocol connection for a frontend, connecting the first time
+    public static synchronized Auction binaryConnection(String host, int port) throws Exception
+    {
+        String key = "binary://" + host + ":" + port;
+        Auction connection = connections.get(key);
+
+        if(connection == null)
+        {
+            connection = new BinaryAuctionClient(host, port);
+            connections.put(key, connection);
+        }
+
+        return connection;
+    }
+
+    // Drop a cached connection, e.g. after the frontend restarted, so the next connect looks it up again
+    public static void evictConnection(Auction connection)
+    {
+        connections.values().remove(connection);
+    }
+
+    // Virtual threads when the JVM has them (Java 21+), otherwise a cached pool of daemon threads
+    private static ExecutorService newDefaultExecutor()
+    {
+        try
+        {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch(Exception e)
+        {
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "auction-client");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    // A blocking call and the future it completes
+    private static final class QueuedCall<T>
+    {
+        final Callable<T> call;
+        final CompletableFuture<T> result = new CompletableFuture<>();
+
+        QueuedCall(Callable<T> call)
+        {
+            this.call = call;
+        }
+    }
+
+    // Run a blocking call on the executor once an in-flight permit is free, without blocking the caller
+    // The call queues if every permit is taken and is started by whichever call finishes and frees one
+    private <T> CompletableFuture<T> async(Callable<T> call)
+    {
+        QueuedCall<T> queued = new QueuedCall<>(call);
+        waitingCalls.add(queued);
+        startWaitingCalls();
+        return queued.result;
+    }
+
+    // Start waiting calls while permits are free
+    // A call queued just as a permit is released is started by one side or the other, as each checks after its change
+    private void startWaitingCalls()
+    {
+        while(!waitingCalls.isEmpty() && inFlightPermits.tryAcquire())
+        {
+            QueuedCall<?> queued = waitingCalls.poll();
+
+            if(queued == null)
+            {
+                inFlightPermits.release();
+                continue;
+            }
+
+            try
+            {
+                executor.execute(() -> run(queued));
+            }
+            catch(RuntimeException e)
+            {
+                inFlightPermits.release();
+                queued.result.completeExceptionally(e);
+            }
+        }
+    }
+
+    // The permit is given back before the future completes, so a dependent that makes another call, like the next
+    // page of streamBidHistory, can get it rather than wait on the permit its own call holds
+    private <T> void run(QueuedCall<T> queued)
+    {
+        T value = null;
+        Throwable error = null;
+
+        try
+        {
+            value = queued.call.call();
+        }
+        catch(Throwable t)
+        {
+            error = t;
+        }
+
+        inFlightPermits.release();
+        startWaitingCalls();
+
+        if(error != null)
+        {
+            queued.result.completeExceptionally(error);
+        }
+        else
+        {
+            queued.result.complete(value);
+        }
+    }
+
+    // An operation that needs the user's ID and a valid token
+    private interface SessionCall<T>
+    {
+        T call(int userID, String token) throws Exception;
+    }
+
+    // Run an operation asynchronously with a fresh token, logging in first if needed
+    private <T> CompletableFuture<T> withSession(SessionCall<T> call)
+    {
+        return async(() -> {
+            String token = token();
+            return call.call(userID, token);
+        });
+    }
+
+    // Register and authenticate, blocking, only one thread logs in at a time
+    private synchronized void loginNow() throws Exception
+    {
+        if(userID < 0)
+        {
+            Integer registeredID = server.register(email, keyPair.getPublic());
+
+            if(registeredID == null)
+            {
+                throw new IllegalStateException("Registration failed for " + email);
+            }
+
+            userID = registeredID;
+        }
+
+        String clientChallenge = Client.generateChallenge();
+        ChallengeInfo challengeInfo = server.challenge(userID, clientChallenge);
+
+        if(challengeInfo == null)
+        {
+            throw new IllegalStateException("Challenge failed for user " + userID);
+        }
+
+        if(serverPublicKey != null && !Client.verifyServerChallenge(challengeInfo.response, clientChallenge, serverPublicKey))
+        {
+            throw new SecurityException("Server challenge verification failed");
+        }
+
+        TokenInfo newToken = server.authenticate(userID, Client.signChallenge(keyPair.getPrivate(), challengeInfo.clientChallenge));
+
+        if(newToken == null)
+        {
+            throw new IllegalStateException("Authentication failed for user " + userID);
+        }
+
+        tokenInfo = newToken;
+    }
+
+    // Current token, logging in again first if it is missing or about to expire
+    private String token() throws Exception
+    {
+        TokenInfo current = tokenInfo;
+
+        if(current == null || System.currentTimeMillis() > current.expiryTime - TOKEN_REFRESH_MARGIN_MS)
+        {
+            synchronized(this)
+            {
+                // Another thread may have refreshed it while we waited for the lock
+                if(tokenInfo == current)
+                {
+                    loginNow();
+                }
+            }
+        }
+
+        return tokenInfo.token;
+    }
+
+    public CompletableFuture<Integer> login()
+    {
+        return async(() -> {
+            loginNow();
+            return userID;
+        });
+    }
+
+    public int getUserID()
+    {
+        return this.userID;
+    }
+
+    public CompletableFuture<AuctionItem> getSpec(int itemID)
+    {
+        return withSession((id, token) -> server.getSpec(id, itemID, token));
+    }
+
+    public CompletableFuture<Integer> newAuction(AuctionSaleItem item)
+    {
+        return withSession((id, token) -> server.newAuction(id, item, token));
+    }
+
+    public CompletableFuture<AuctionItem[]> listItems()
+    {
+        return withSession((id, token) -> server.listItems(id, token));
+    }
+
+    public CompletableFuture<AuctionResult> closeAuction(int itemID)
+    {
+        return withSession((id, token) -> server.closeAuction(id, itemID, token));
+    }
+
+    public CompletableFuture<Boolean> bid(int itemID, int price)
+    {
+        return withSession((id, token) -> server.bid(id, itemID, price, token));
+    }
+
+    // One page of the item's bid history, start with cursor 0 and pass back each page's nextCursor
+    public CompletableFuture<BidHistoryPage> getBidHistory(int itemID, int cursor)
+    {
+        return withSession((id, token) -> server.getBidHistory(id, itemID, cursor, token));
+    }
+
+    // Fetch the item's whole bid history a page at a time, handing each page to the handler before fetching the next,
+    // so a long history is never held in memory at once
+    // Completes with the cursor after the last bid, to pick up later bids from, or null if the history couldnt be read
+    public CompletableFuture<Integer> streamBidHistory(int itemID, Consumer<BidHistoryPage> handler)
+    {
+        return streamBidHistory(itemID, 0, handler);
+    }
+
+    private CompletableFuture<Integer> streamBidHistory(int itemID, int cursor, Consumer<BidHistoryPage> handler)
+    {
+        return getBidHistory(itemID, cursor).thenCompose(page -> {
+            if(page == null)
+            {
+                return CompletableFuture.completedFuture(null);
+            }
+
+            handler.accept(page);
+
+            if(page.userIDs.length > 0 && page.nextCursor < page.totalBids)
+            {
+                return streamBidHistory(itemID, page.nextCursor, handler);
+            }
+
+            return CompletableFuture.completedFuture(page.nextCursor);
+        });
+    }
+
+    // Let the server bid for us, increment over anyone else, up to maxPrice
+    public CompletableFuture<Boolean> proxyBid(int itemID, int maxPrice, int increment)
+    {
+        return withSession((id, token) -> server.proxyBid(id, itemID, maxPrice, increment, token));
+    }
+
+    public CompletableFuture<AuctionItem[]> getSpecs(int[] itemIDs)
+    {
+        return withSession((id, token) -> server.getSpecs(id, itemIDs, token));
+    }
+
+    public CompletableFuture<Integer[]> newAuctions(AuctionSaleItem[] items)
+    {
+        return withSession((id, token) -> server.newAuctions(id, items, token));
+    }
+
+    public CompletableFuture<boolean[]> bids(int[] itemIDs, int[] prices)
+    {
+        return withSession((id, token) -> server.bids(id, itemIDs, prices, token));
+    }
+
+    // Export the listener the first time an item is watched
+    private synchronized AuctionListener listener() throws RemoteException
+    {
+        if(listenerStub == null)
+        {
+            listener = new Listener();
+            listenerStub = (AuctionListener) UnicastRemoteObject.exportObject(listener, 0);
+        }
+
+        return listenerStub;
+    }
+
+    // Watch an item, the handler is called for each outbid, new bid and close event, it should return quickly
+    // The subscription ends by itself when the auction closes
+    public CompletableFuture<Boolean> subscribe(int itemID, Consumer<AuctionEvent> handler)
+    {
+        watchHandlers.put(itemID, handler);
+        return withSession((id, token) -> server.subscribe(id, itemID, listener(), token));
+    }
+
+    public CompletableFuture<Boolean> unsubscribe(int itemID)
+    {
+        watchHandlers.remove(itemID);
+        return withSession((id, token) -> server.unsubscribe(id, itemID, token));
+    }
+
+    public CompletableFuture<Integer> getPrimaryReplicaID()
+    {
+        return async(server::getPrimaryReplicaID);
+    }
+
+    // Shuts down the executor if this client created it and stops receiving events, the shared connection stays cached for other clients
+    public void close()
+    {
+        synchronized(this)
+        {
+            // Unexported through the object itself, the stub isnt what the RMI runtime has exported
+            if(listener != null)
+            {
+                try
+                {
+                    UnicastRemoteObject.unexportObject(listener, true);
+                }
+                catch(Exception e)
+                {
+                    // Already unexported
+                }
+                listener = null;
+                listenerStub = null;
+            }
+        }
+
+        if(ownsExecutor)
+        {
+            executor.shutdown();
+        }
+    }
+}
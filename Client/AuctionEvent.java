@@ -0,0 +1,40 @@
+// A change to an auction pushed to the users watching it, see Auction.subscribe
+// Events for the same item can be merged before delivery when a subscriber falls behind,
+// then the event carries the latest bid and mergedCount says how many changes it stands for
+public class AuctionEvent implements java.io.Serializable
+{
+    // Someone else's bid is now the highest on a watched item
+    public static final int NEW_BID = 1;
+
+    // The subscriber was the highest bidder and has been outbid
+    public static final int OUTBID = 2;
+
+    // The auction closed, winningEmail is null if no one bid
+    public static final int CLOSED = 3;
+
+    public int type;
+    public int itemID;
+    public int highestBid;
+    public String winningEmail;
+    public int mergedCount = 1;
+
+    public AuctionEvent(int type, int itemID, int highestBid)
+    {
+        this.type = type;
+        this.itemID = itemID;
+        this.highestBid = highestBid;
+    }
+
+    public String toString()
+    {
+        switch(type)
+        {
+            case OUTBID:
+                return "Item " + itemID + ": you were outbid, highest bid is now " + highestBid;
+            case CLOSED:
+                return "Item " + itemID + ": auction closed, " + (winningEmail != null ? "won by " + winningEmail + " for " + highestBid : "no one bid");
+            default:
+                return "Item " + itemID + ": new highest bid " + highestBid;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+// One page of an item's bid history from getBidHistory, oldest bid first
+// Each bid is the same index in userIDs, prices and times (epoch ms)
+public class BidHistoryPage implements java.io.Serializable
+{
+    int itemID;
+    int[] userIDs;
+    int[] prices;
+    long[] times;
+
+    // Cursor for the next page, bids placed after this page was read will start there
+    int nextCursor;
+
+    // Bids in the history when the page was read, more are left while nextCursor is below this
+    int totalBids;
+}
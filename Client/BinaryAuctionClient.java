@@ -0,0 +1,540 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.rmi.RemoteException;
+import java.security.PublicKey;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Client for the binary protocol served by the server's BinaryFrontend
+// Implements the same Auction interface as the RMI stub so it can be swapped in anywhere the stub is used
+// One connection is shared by every calling thread, requests are tagged with an ID and a reader thread
+// matches responses back to the waiting callers, so many requests can be in flight at once
+public class BinaryAuctionClient implements Auction, AutoCloseable
+{
+    private final SocketChannel channel;
+    private final AtomicInteger nextRequestID = new AtomicInteger();
+    private final Map<Integer, CompletableFuture<ByteBuffer>> inFlight = new ConcurrentHashMap<>();
+
+    public BinaryAuctionClient(String host, int port) throws IOException
+    {
+        channel = SocketChannel.open(new InetSocketAddress(host, port));
+        channel.socket().setTcpNoDelay(true);
+
+        Thread reader = new Thread(this::readResponses, "binary-auction-client-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    // Reads response frames and completes the future of the request they belong to
+    private void readResponses()
+    {
+        ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+
+        try
+        {
+            while(true)
+            {
+                lengthBuffer.clear();
+                readFully(lengthBuffer);
+                int length = lengthBuffer.getInt(0);
+
+                if(length < 5 || length > WireProtocol.MAX_FRAME_LENGTH)
+                {
+                    throw new IOException("Invalid frame length: " + length);
+                }
+
+                ByteBuffer frame = ByteBuffer.allocate(length);
+                readFully(frame);
+                frame.flip();
+
+                CompletableFuture<ByteBuffer> future = inFlight.remove(frame.getInt());
+
+                if(future != null)
+                {
+                    future.complete(frame);
+                }
+            }
+        }
+        catch(IOException e)
+        {
+            // Connection closed, fail everything still waiting
+            for(CompletableFuture<ByteBuffer> future : inFlight.values())
+            {
+                future.completeExceptionally(e);
+            }
+            inFlight.clear();
+        }
+    }
+
+    private void readFully(ByteBuffer buffer) throws IOException
+    {
+        while(buffer.hasRemaining())
+        {
+            if(channel.read(buffer) < 0)
+            {
+                throw new EOFException("Binary frontend closed the connection");
+            }
+        }
+    }
+
+    // Start a request frame with the opcode and a fresh request ID, callers append the arguments
+    private DataOutputStream startRequest(ByteArrayOutputStream bytes, byte opcode, int requestID) throws IOException
+    {
+        DataOutputStream out = WireProtocol.startFrame(bytes);
+        out.writeByte(opcode);
+        out.writeInt(requestID);
+        return out;
+    }
+
+    // Send the finished frame and return a future for the response payload, positioned after the status byte
+    // The future completes with null if the server returned null for the operation
+    private CompletableFuture<ByteBuffer> send(ByteArrayOutputStream bytes, int requestID) throws IOException
+    {
+        CompletableFuture<ByteBuffer> response = new CompletableFuture<>();
+        inFlight.put(requestID, response);
+
+        ByteBuffer frame = WireProtocol.finishFrame(bytes);
+
+        synchronized(channel)
+        {
+            while(frame.hasRemaining())
+            {
+                channel.write(frame);
+            }
+        }
+
+        return response.thenApply(payload -> {
+            byte status = payload.get();
+
+            if(status == WireProtocol.STATUS_ERROR)
+            {
+                throw new IllegalStateException("Server error: " + WireProtocol.readString(payload));
+            }
+
+            if(status == WireProtocol.STATUS_BUSY)
+            {
+                throw new CompletionException(new ServerBusyException(WireProtocol.readString(payload)));
+            }
+
+            return status == WireProtocol.STATUS_NULL ? null : payload;
+        });
+    }
+
+    // Block on a response for the synchronous Auction methods, mapping failures to RemoteException like RMI does
+    private ByteBuffer await(CompletableFuture<ByteBuffer> response) throws RemoteException
+    {
+        try
+        {
+            return response.get();
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RemoteException("Interrupted waiting for binary frontend", e);
+        }
+        catch(ExecutionException e)
+        {
+            if(e.getCause() instanceof ServerBusyException)
+            {
+                throw (ServerBusyException) e.getCause();
+            }
+            throw new RemoteException("Binary frontend call failed", e.getCause());
+        }
+    }
+
+    public Integer register(String email, PublicKey pubKey) throws RemoteException
+    {
+        try
+        {
+            int requestID = nextRequestID.incrementAndGet();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+            DataOutputStream out = startRequest(bytes, WireProtocol.REGISTER, requestID);
+            WireProtocol.writeString(out, email);
+            WireProtocol.writePublicKey(out, pubKey);
+
+            ByteBuffer in = await(send(bytes, requestID));
+            return in == null ? null : in.getInt();
+        }
+        catch(IOException e)
+        {
+            throw new RemoteException("Binary register failed", e);
+        }
+    }
+
+    public ChallengeInfo challenge(int userID, String clientChallenge) throws RemoteException
+    {
+        try
+        {
+            int requestID = nextRequestID.incrementAndGet();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream out = startRequest(bytes, WireProtocol.CHALLENGE, requestID);
+            out.writeInt(userID);
+            WireProtocol.writeString(out, clientChallenge);
+
+            ByteBuffer in = await(send(bytes, requestID));
+
+            if(in == null)
+            {
+                return null;
+            }
+
+            ChallengeInfo info = new ChallengeInfo();
+            info.response = WireProtocol.readBytes(in);
+            info.clientChallenge = WireProtocol.readString(in);
+            return info;
+        }
+        catch(IOException e)
+        {
+            throw new RemoteException("Binary challenge failed", e);
+        }
+    }
+
+    public TokenInfo authenticate(int userID, byte[] signature) throws RemoteException
+    {
+        try
+        {
+            int requestID = nextRequestID.incrementAndGet();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+            DataOutputStream out = startRequest(bytes, WireProtocol.AUTHENTICATE, requestID);
+            out.writeInt(userID);
+            WireProtocol.writeBytes(out, signature);
+
+            ByteBuffer in = await(send(bytes, requestID));
+
+            if(in == null)
+            {
+                return null;
+            }
+
+            TokenInfo tokenInfo = new TokenInfo();
+            tokenInfo.token = WireProtocol.readString(in);
+            tokenInfo.expiryTime = in.getLong();
+            return tokenInfo;
+        }
+        catch(IOException e)
+        {
+            throw new RemoteException("Binary authenticate failed", e);
+        }
+    }
+
+    public AuctionItem getSpec(int userID, int itemID, String token) throws RemoteException
+    {
+        try
+        {
+            int requestID = nextRequestID.incrementAndGet();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream out = startRequest(bytes, WireProtocol.GET_SPEC, requestID);
+            out.writeInt(userID);
+            out.writeInt(itemID);
+            WireProtocol.writeString(out, token);
+
+            ByteBuffer in = await(send(bytes, requestID));
+            return in == null ? null : WireProtocol.readItem(in);
+        }
+        catch(IOException e)
+        {
+            throw new RemoteException("Binary getSpec failed", e);
+        }
+    }
+
+    public BidHistoryPage getBidHistory(int userID, int itemID, int cursor, String token) throws RemoteException
+    {
+        try
+        {
+            int requestID = nextRequestID.incrementAndGet();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream out = startRequest(bytes, WireProtocol.GET_BID_HISTORY, requestID);
+            out.writeInt(userID);
+            out.writeInt(itemID);
+            out.writeInt(cursor);
+            WireProtocol.writeString(out, token);
+
+            ByteBuffer in = await(send(bytes, requestID));
+            return in == null ? null : WireProtocol.readHistoryPage(in);
+        }
+        catch(IOException e)
+        {
+            throw new RemoteException("Binary getBidHistory failed", e);
+        }
+    }
+
+    public Integer newAuction(int userID, AuctionSaleItem item, String token) throws RemoteException
+    {
+        try
+        {
+            int requestID = nextRequestID.incrementAndGet();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+            DataOutputStream out = startRequest(bytes, WireProtocol.NEW_AUCTION, requestID);
+            out.writeInt(userID);
+            WireProtocol.writeSaleItem(out, item);
+            WireProtocol.writeString(out, token);
+
+            ByteBuffer in = await(send(bytes, requestID));
+            return in == null ? null : in.getInt();
+        }
+        catch(IOException e)
+        {
+            throw new RemoteException("Binary newAuction failed", e);
+        }
+    }
+
+    public AuctionItem[] listItems(int userID, String token) throws RemoteException
+    {
+        try
+        {
+            int requestID = nextRequestID.incrementAndGet();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream out = startRequest(bytes, WireProtocol.LIST_ITEMS, requestID);
+            out.writeInt(userID);
+            WireProtocol.writeString(out, token);
+
+            ByteBuffer in = await(send(bytes, requestID));
+
+            if(in == null)
+            {
+                return null;
+            }
+
+            AuctionItem[] items = new AuctionItem[in.getInt()];
+            for(int i = 0; i < items.length; i++)
+            {
+                items[i] = WireProtocol.readItem(in);
+            }
+            return items;
+        }
+        catch(IOException e)
+        {
+            throw new RemoteException("Binary listItems failed", e);
+        }
+    }
+
+    public AuctionResult closeAuction(int userID, int itemID, String token) throws RemoteException
+    {
+        try
+        {
+            int requestID = nextRequestID.incrementAndGet();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream out = startRequest(bytes, WireProtocol.CLOSE_AUCTION, requestID);
+            out.writeInt(userID);
+            out.writeInt(itemID);
+            WireProtocol.writeString(out, token);
+
+            ByteBuffer in = await(send(bytes, requestID));
+
+            if(in == null)
+            {
+                return null;
+            }
+
+            AuctionResult result = new AuctionResult();
+            result.winningEmail = WireProtocol.readString(in);
+            result.winningPrice = in.getInt();
+            return result;
+        }
+        catch(IOException e)
+        {
+            throw new RemoteException("Binary closeAuction failed", e);
+        }
+    }
+
+    public boolean bid(int userID, int itemID, int price, String token) throws RemoteException
+    {
+        try
+        {
+            int requestID = nextRequestID.incrementAndGet();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream out = startRequest(bytes, WireProtocol.BID, requestID);
+            out.writeInt(userID);
+            out.writeInt(itemID);
+            out.writeInt(price);
+            WireProtocol.writeString(out, token);
+
+            ByteBuffer in = await(send(bytes, requestID));
+            return in != null && in.get() != 0;
+        }
+        catch(IOException e)
+        {
+            throw new RemoteException("Binary bid failed", e);
+        }
+    }
+
+    public boolean proxyBid(int userID, int itemID, int maxPrice, int increment, String token) throws RemoteException
+    {
+        try
+        {
+            int requestID = nextRequestID.incrementAndGet();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream out = startRequest(bytes, WireProtocol.PROXY_BID, requestID);
+            out.writeInt(userID);
+            out.writeInt(itemID);
+            out.writeInt(maxPrice);
+            out.writeInt(increment);
+            WireProtocol.writeString(out, token);
+
+            ByteBuffer in = await(send(bytes, requestID));
+            return in != null && in.get() != 0;
+        }
+        catch(IOException e)
+        {
+            throw new RemoteException("Binary proxyBid failed", e);
+        }
+    }
+
+    public int getPrimaryReplicaID() throws RemoteException
+    {
+        try
+        {
+            int requestID = nextRequestID.incrementAndGet();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(16);
+            startRequest(bytes, WireProtocol.GET_PRIMARY_REPLICA_ID, requestID);
+
+            return await(send(bytes, requestID)).getInt();
+        }
+        catch(IOException e)
+        {
+            throw new RemoteException("Binary getPrimaryReplicaID failed", e);
+        }
+    }
+
+    public AuctionItem[] getSpecs(int userID, int[] itemIDs, String token) throws RemoteException
+    {
+        try
+        {
+            int requestID = nextRequestID.incrementAndGet();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + itemIDs.length * 4);
+            DataOutputStream out = startRequest(bytes, WireProtocol.GET_SPECS, requestID);
+            out.writeInt(userID);
+            out.writeInt(itemIDs.length);
+            for(int itemID : itemIDs)
+            {
+                out.writeInt(itemID);
+            }
+            WireProtocol.writeString(out, token);
+
+            ByteBuffer in = await(send(bytes, requestID));
+
+            if(in == null)
+            {
+                return null;
+            }
+
+            AuctionItem[] items = new AuctionItem[in.getInt()];
+            for(int i = 0; i < items.length; i++)
+            {
+                items[i] = in.get() != 0 ? WireProtocol.readItem(in) : null;
+            }
+            return items;
+        }
+        catch(IOException e)
+        {
+            throw new RemoteException("Binary getSpecs failed", e);
+        }
+    }
+
+    public Integer[] newAuctions(int userID, AuctionSaleItem[] items, String token) throws RemoteException
+    {
+        try
+        {
+            int requestID = nextRequestID.incrementAndGet();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + items.length * 128);
+            DataOutputStream out = startRequest(bytes, WireProtocol.NEW_AUCTIONS, requestID);
+            out.writeInt(userID);
+            out.writeInt(items.length);
+            for(AuctionSaleItem item : items)
+            {
+                WireProtocol.writeSaleItem(out, item);
+            }
+            WireProtocol.writeString(out, token);
+
+            ByteBuffer in = await(send(bytes, requestID));
+
+            if(in == null)
+            {
+                return null;
+            }
+
+            Integer[] itemIDs = new Integer[in.getInt()];
+            for(int i = 0; i < itemIDs.length; i++)
+            {
+                int itemID = in.getInt();
+                itemIDs[i] = itemID < 0 ? null : itemID;
+            }
+            return itemIDs;
+        }
+        catch(IOException e)
+        {
+            throw new RemoteException("Binary newAuctions failed", e);
+        }
+    }
+
+    public boolean[] bids(int userID, int[] itemIDs, int[] prices, String token) throws RemoteException
+    {
+        try
+        {
+            int requestID = nextRequestID.incrementAndGet();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + itemIDs.length * 8);
+            DataOutputStream out = startRequest(bytes, WireProtocol.BIDS, requestID);
+            out.writeInt(userID);
+            out.writeInt(itemIDs.length);
+            for(int i = 0; i < itemIDs.length; i++)
+            {
+                out.writeInt(itemIDs[i]);
+                out.writeInt(prices[i]);
+            }
+            WireProtocol.writeString(out, token);
+
+            ByteBuffer in = await(send(bytes, requestID));
+
+            if(in == null)
+            {
+                return null;
+            }
+
+            boolean[] results = new boolean[in.getInt()];
+            for(int i = 0; i < results.length; i++)
+            {
+                results[i] = in.get() != 0;
+            }
+            return results;
+        }
+        catch(IOException e)
+        {
+            throw new RemoteException("Binary bids failed", e);
+        }
+    }
+
+    // Subscriptions need the server to call back into the client, which only RMI does
+    public boolean subscribe(int userID, int itemID, AuctionListener listener, String token) throws RemoteException
+    {
+        throw new RemoteException("Subscriptions are only available over RMI");
+    }
+
+    public boolean unsubscribe(int userID, int itemID, String token) throws RemoteException
+    {
+        throw new RemoteException("Subscriptions are only available over RMI");
+    }
+
+    public MetricsReport[] getMetrics() throws RemoteException
+    {
+        throw new RemoteException("Metrics are only available over RMI");
+    }
+
+    public TracedResult traced(long traceID, String method, Object[] args) throws RemoteException
+    {
+        throw new RemoteException("Tracing is only available over RMI");
+    }
+
+    public void close() throws IOException
+    {
+        channel.close();
+    }
+}
@@ -0,0 +1,232 @@
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Streams a file of auctions into the service for onboarding a large seller, all listed as the given user
+// The file is read a line at a time and sent in chunks with newAuctions, so each chunk costs one token check, one ID range
+// and one replication round on the primary instead of one per item, and a few chunks are kept in flight at once
+// The file is never held in memory, so it can be any size
+//
+// One auction per line, comma separated: name,reservePrice,description[,durationSeconds]
+// Fields containing commas or quotes go in double quotes, with quotes inside doubled ("a ""big"" lamp")
+// Blank lines, lines starting with # and a header line starting with name, are skipped, use - as the file to read stdin
+//
+// Usage: java BulkImport (email) (file) [chunkSize] [chunksInFlight]
+public class BulkImport
+{
+    // Split one line into its fields, null if the quotes dont match up
+    static List<String> parseLine(String line)
+    {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+
+        for(int i = 0; i < line.length(); i++)
+        {
+            char c = line.charAt(i);
+
+            if(quoted)
+            {
+                if(c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"')
+                {
+                    field.append('"');
+                    i++;
+                }
+                else if(c == '"')
+                {
+                    quoted = false;
+                }
+                else
+                {
+                    field.append(c);
+                }
+            }
+            else if(c == '"')
+            {
+                quoted = true;
+            }
+            else if(c == ',')
+            {
+                fields.add(field.toString().trim());
+                field.setLength(0);
+            }
+            else
+            {
+                field.append(c);
+            }
+        }
+
+        if(quoted)
+        {
+            return null;
+        }
+
+        fields.add(field.toString().trim());
+        return fields;
+    }
+
+    // Turn a line into a sale item, null if it is malformed
+    static AuctionSaleItem parseItem(String line)
+    {
+        List<String> fields = parseLine(line);
+
+        if(fields == null || fields.size() < 3 || fields.size() > 4 || fields.get(0).isEmpty())
+        {
+            return null;
+        }
+
+        try
+        {
+            AuctionSaleItem item = new AuctionSaleItem();
+            item.name = fields.get(0);
+            item.reservePrice = Integer.parseInt(fields.get(1));
+            item.description = fields.get(2);
+
+            if(fields.size() == 4 && !fields.get(3).isEmpty())
+            {
+                item.endTime = System.currentTimeMillis() + Long.parseLong(fields.get(3)) * 1000;
+            }
+
+            return item;
+        }
+        catch(NumberFormatException e)
+        {
+            return null;
+        }
+    }
+
+    public static void main(String[] args)
+    {
+        if(args.length < 2)
+        {
+            System.out.println("Usage: java BulkImport (email) (file) [chunkSize] [chunksInFlight]"
+                    + "\n    one auction per line: name,reservePrice,description[,durationSeconds]");
+            return;
+        }
+
+        String email = args[0];
+        String file = args[1];
+        int chunkSize = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        int chunksInFlight = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+
+        AtomicLong imported = new AtomicLong();
+        AtomicLong rejected = new AtomicLong();
+        long malformed = 0;
+        boolean stopped = false;
+        long start = System.nanoTime();
+
+        try(AuctionClient client = AuctionClient.connect("localhost", email);
+            BufferedReader reader = file.equals("-")
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                : Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8))
+        {
+            Semaphore inFlight = new Semaphore(chunksInFlight);
+            List<CompletableFuture<Void>> pending = new ArrayList<>();
+            List<AuctionSaleItem> chunk = new ArrayList<>(chunkSize);
+            long lineNumber = 0;
+            long lastReport = System.nanoTime();
+            String line;
+
+            while(true)
+            {
+                line = reader.readLine();
+
+                if(line != null)
+                {
+                    lineNumber++;
+                    String trimmed = line.trim();
+
+                    if(trimmed.isEmpty() || trimmed.startsWith("#") || (lineNumber == 1 && trimmed.toLowerCase().startsWith("name,")))
+                    {
+                        continue;
+                    }
+
+                    AuctionSaleItem item = parseItem(trimmed);
+
+                    if(item == null)
+                    {
+                        malformed++;
+                        System.out.println("Skipping malformed line " + lineNumber + ": " + line);
+                        continue;
+                    }
+
+                    chunk.add(item);
+                }
+
+                // Send the chunk when it is full, or whatever is left at the end of the file
+                if(chunk.size() == chunkSize || (line == null && !chunk.isEmpty()))
+                {
+                    AuctionSaleItem[] items = chunk.toArray(new AuctionSaleItem[0]);
+                    chunk.clear();
+
+                    inFlight.acquire();
+                    pending.add(sendChunk(client, items, imported, rejected).whenComplete((result, error) -> inFlight.release()));
+                    pending.removeIf(CompletableFuture::isDone);
+                }
+
+                if(System.nanoTime() - lastReport > TimeUnit.SECONDS.toNanos(5))
+                {
+                    lastReport = System.nanoTime();
+                    double seconds = (lastReport - start) / 1e9;
+                    System.out.println(String.format("%,d imported, %.0f items/sec", imported.get(), imported.get() / seconds));
+                }
+
+                if(line == null)
+                {
+                    break;
+                }
+            }
+
+            CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0])).join();
+        }
+        catch(Exception e)
+        {
+            System.out.println("Import stopped by an exception:");
+            e.printStackTrace();
+            stopped = true;
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format("Imported %,d auctions in %.1fs, %.0f items/sec, %,d rejected, %,d malformed lines skipped",
+            imported.get(), seconds, imported.get() / seconds, rejected.get(), malformed));
+
+        // Non-zero if any auction didnt make it in, so a script running the import can tell
+        System.exit(stopped || rejected.get() > 0 ? 1 : 0);
+    }
+
+    // Send one chunk, sending it again after a pause while the frontends are too busy to take it
+    // The pause is scheduled rather than slept, so no thread is held waiting out the retry
+    private static CompletableFuture<Void> sendChunk(AuctionClient client, AuctionSaleItem[] items, AtomicLong imported, AtomicLong rejected)
+    {
+        return client.newAuctions(items).handle((itemIDs, error) -> {
+            if(error != null && ServerBusyException.isBusy(error))
+            {
+                return CompletableFuture.runAsync(() -> {}, CompletableFuture.delayedExecutor(200, TimeUnit.MILLISECONDS))
+                    .thenCompose(retry -> sendChunk(client, items, imported, rejected));
+            }
+
+            if(error != null || itemIDs == null)
+            {
+                System.out.println("A chunk of " + items.length + " auctions failed: " + (error != null ? error.getMessage() : "rejected by the server"));
+                rejected.addAndGet(items.length);
+            }
+            else
+            {
+                for(Integer itemID : itemIDs)
+                {
+                    (itemID != null ? imported : rejected).incrementAndGet();
+                }
+            }
+
+            return CompletableFuture.<Void>completedFuture(null);
+        }).thenCompose(next -> next);
+    }
+}
@@ -5,8 +5,7 @@ import java.io.ObjectOutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.rmi.registry.LocateRegistry;
-import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
 import java.security.PrivateKey;
@@ -15,13 +14,15 @@ import java.security.SecureRandom;
 import java.security.Signature;
 import java.security.spec.X509EncodedKeySpec;
 import java.util.Base64;
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
 public class Client
 {
     private static final String CLIENT_KEY_PATH = "client_key.priv";
 
-    private static KeyPair generateKeyPair() throws Exception
+    static KeyPair generateKeyPair() throws Exception
     {
         KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
         keyPairGenerator.initialize(2048);
@@ -29,7 +30,7 @@ public class Client
         return keyPairGenerator.generateKeyPair();
     }
 
-    private static KeyPair getOrGenerateKeyPair() throws Exception
+    static KeyPair getOrGenerateKeyPair() throws Exception
     {
         Path keyPath = Paths.get(CLIENT_KEY_PATH);
 
@@ -56,7 +57,7 @@ public class Client
         return keyPair;
     }
 
-    private static byte[] signChallenge(PrivateKey privateKey, String challenge) throws Exception
+    static byte[] signChallenge(PrivateKey privateKey, String challenge) throws Exception
     {
         Signature signature = Signature.getInstance("SHA256withRSA");
         signature.initSign(privateKey);
@@ -66,7 +67,7 @@ public class Client
     }
 
     // Generate random challenge String
-    private static String generateChallenge()
+    static String generateChallenge()
     {
         SecureRandom random = new SecureRandom();
         byte[] challengeBytes = new byte[16];
@@ -76,7 +77,7 @@ public class Client
     }
 
     // Authenticate server challenge
-    private static boolean verifyServerChallenge(byte[] serverResponse, String clientChallenge, PublicKey serverPublicKey) throws Exception
+    static boolean verifyServerChallenge(byte[] serverResponse, String clientChallenge, PublicKey serverPublicKey) throws Exception
     {
         Signature verifier = Signature.getInstance("SHA256withRSA");
         verifier.initVerify(serverPublicKey);
@@ -114,9 +115,14 @@ public class Client
             + "\nAccepted functions:"
                     + "\n    (email) getSpec (itemID)"
                     + "\n    (email) newAuction (itemName) (reserverPrice) (itemDescription)"
+                    + "\n    (email) newTimedAuction (itemName) (reserverPrice) (durationSeconds) (itemDescription)"
                     + "\n    (email) closeAuction (itemID)"
                     + "\n    (email) listItems"
-                    + "\n    (email) bid (itemID) (bidPrice)\n");
+                    + "\n    (email) bid (itemID) (bidPrice)"
+                    + "\n    (email) proxyBid (itemID) (maxPrice) (increment)"
+                    + "\n    (email) history (itemID)"
+                    + "\n    (email) watch (itemID)"
+                    + "\n    (email) metrics\n");
             return;
         }
 
@@ -127,10 +133,20 @@ public class Client
 
         try
         {
-            // Connect to RMI service
-            String serviceName = "FrontEnd";
-            Registry registry = LocateRegistry.getRegistry("localhost");
-            Auction server = (Auction) registry.lookup(serviceName);
+            // Connect to the frontends, over RMI by default or the binary protocol if a port is given
+            // e.g. java -Dauction.binaryPort=7099 Client (email) listItems
+            // Over RMI calls are spread across every frontend on the registry and move to another if one goes down
+            Auction server;
+            int binaryPort = Integer.getInteger("auction.binaryPort", -1);
+
+            if(binaryPort > 0)
+            {
+                server = new BinaryAuctionClient("localhost", binaryPort);
+            }
+            else
+            {
+                server = new LoadBalancedAuction("localhost");
+            }
 
             String serverKeyFilePath = "./serverKey.pub";
             PublicKey serverPublicKey = getServerPublicKeyFromFile(serverKeyFilePath);
@@ -186,14 +202,16 @@ public class Client
                     break;
 
                 case "newAuction":
-                    // Create a new auction listing
+                case "newTimedAuction":
+                    // Create a new auction listing, a timed one is closed by the server once its duration is up
+                    boolean timed = userFunction.equals("newTimedAuction");
                     String newItemName = args[2];
                     int resPrice = Integer.parseInt(args[3]);
                     
                     // Description is the last remaining arguments, parsed as one string
                     StringBuilder itemDescBuilder = new StringBuilder();
 
-                    for (int i = 4; i < args.length; i++)
+                    for (int i = timed ? 5 : 4; i < args.length; i++)
                     {
                         itemDescBuilder.append(args[i]).append(" ");
                     }
@@ -205,6 +223,11 @@ public class Client
                     saleItem.name = newItemName;
                     saleItem.description = itemDesc;
                     saleItem.reservePrice = resPrice;
+
+                    if(timed)
+                    {
+                        saleItem.endTime = System.currentTimeMillis() + Long.parseLong(args[4]) * 1000;
+                    }
                     
                     // Fetch returned item ID
                     int itemID = server.newAuction(userID, saleItem, userToken);
@@ -214,6 +237,11 @@ public class Client
                     System.out.println(String.format("item listed:\nid: %d\nname: %s\ndescription: %s\nhighest bid: %d",
                         listedItem.itemID, listedItem.name, listedItem.description, listedItem.highestBid));
 
+                    if(listedItem.endTime != 0)
+                    {
+                        System.out.println("closes at: " + new Date(listedItem.endTime));
+                    }
+
                     break;
                 
                 case "closeAuction":
@@ -274,21 +302,133 @@ public class Client
                     }
 
                     break;
+
+                case "proxyBid":
+                    // Let the server keep bidding for us, one increment over anyone else, up to the maximum
+                    int proxyItemID = Integer.parseInt(args[2]);
+                    int maxPrice = Integer.parseInt(args[3]);
+                    int increment = Integer.parseInt(args[4]);
+
+                    boolean leading = server.proxyBid(userID, proxyItemID, maxPrice, increment, userToken);
+                    AuctionItem proxyItem = server.getSpec(userID, proxyItemID, userToken);
+                    int currentBid = proxyItem != null ? proxyItem.highestBid : 0;
+
+                    if(leading)
+                    {
+                        System.out.println("Proxy bid placed, you are the highest bidder at " + currentBid);
+                    }
+                    else
+                    {
+                        System.out.println("Proxy bid unsuccessful, the highest bid is " + currentBid + ", try a higher maximum.");
+                    }
+
+                    break;
+
+                case "history":
+                    // Print every bid that was the highest on the item, oldest first, a page at a time
+                    int historyItemID = Integer.parseInt(args[2]);
+                    int cursor = 0;
+
+                    while(true)
+                    {
+                        BidHistoryPage page = server.getBidHistory(userID, historyItemID, cursor, userToken);
+
+                        if(page == null)
+                        {
+                            System.out.println("Problem fetching the bid history, make sure the item exists");
+                            break;
+                        }
+
+                        if(page.totalBids == 0)
+                        {
+                            System.out.println("No one has bid on this item");
+                        }
+
+                        for(int i = 0; i < page.userIDs.length; i++)
+                        {
+                            System.out.println(new Date(page.times[i]) + "  user " + page.userIDs[i] + "  bid " + page.prices[i]);
+                        }
+
+                        if(page.userIDs.length == 0 || page.nextCursor >= page.totalBids)
+                        {
+                            break;
+                        }
+
+                        cursor = page.nextCursor;
+                    }
+
+                    break;
+
+                case "watch":
+                    // Print events for an item as they are pushed, until its auction closes
+                    int watchItemID = Integer.parseInt(args[2]);
+                    CountDownLatch closed = new CountDownLatch(1);
+
+                    AuctionListener listener = new AuctionListener()
+                    {
+                        public void onEvents(AuctionEvent[] events)
+                        {
+                            for(AuctionEvent event : events)
+                            {
+                                System.out.println(event);
+
+                                if(event.type == AuctionEvent.CLOSED)
+                                {
+                                    closed.countDown();
+                                }
+                            }
+                        }
+                    };
+                    AuctionListener listenerStub = (AuctionListener) UnicastRemoteObject.exportObject(listener, 0);
+
+                    if(server.subscribe(userID, watchItemID, listenerStub, userToken))
+                    {
+                        System.out.println("Watching item " + watchItemID + ", waiting for bids..");
+                        closed.await();
+                    }
+                    else
+                    {
+                        System.out.println("Could not watch the item, it probably doesnt exist");
+                    }
+
+                    UnicastRemoteObject.unexportObject(listener, true);
+                    break;
+
+                case "metrics":
+                    // Print the latency of every operation on the frontend and each shard's primary
+                    for(MetricsReport report : server.getMetrics())
+                    {
+                        System.out.println(report);
+                    }
+
+                    break;
                 
                 default:
                     // Display available functions if an invalid one is provided
                     System.out.println("\nFunction not valid, Accepted functions:"
                     + "\n    (email) getSpec (itemID)"
                     + "\n    (email) newAuction (itemName) (reserverPrice) (itemDescription)"
+                    + "\n    (email) newTimedAuction (itemName) (reserverPrice) (durationSeconds) (itemDescription)"
                     + "\n    (email) closeAuction (itemID)"
                     + "\n    (email) listItems"
-                    + "\n    (email) bid (itemID) (bidPrice)\n");
+                    + "\n    (email) bid (itemID) (bidPrice)"
+                    + "\n    (email) proxyBid (itemID) (maxPrice) (increment)"
+                    + "\n    (email) history (itemID)"
+                    + "\n    (email) watch (itemID)"
+                    + "\n    (email) metrics\n");
                     break;
             }
         }
 
         catch(Exception e)
         {
+            // The frontends turned the request away under load, nothing was done so it can just be run again
+            if(ServerBusyException.isBusy(e))
+            {
+                System.out.println("Server is busy, try again shortly");
+                return;
+            }
+
             // Handle any exceptions that occur
             System.out.println("Exception: ");
             e.printStackTrace();
@@ -0,0 +1,101 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Fixed size histogram of non-negative values (latencies, lags) that many threads can record into without locking
+// Values below 32 get a bucket each, above that every power of two range is split into 32 buckets,
+// so any percentile read back is within about 3% of the real value whatever the range, in a few KB
+public class LatencyHistogram
+{
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final AtomicLongArray counts = new AtomicLongArray((64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    private static int bucketFor(long value)
+    {
+        if(value < SUB_BUCKETS)
+        {
+            return (int) value;
+        }
+
+        // The top 6 bits of the value pick the bucket, the leading 1 and the 5 bits below it
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return ((shift + 1) << SUB_BUCKET_BITS) + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    // Largest value that falls in the bucket
+    private static long highestIn(int bucket)
+    {
+        if(bucket < SUB_BUCKETS)
+        {
+            return bucket;
+        }
+
+        int shift = (bucket >>> SUB_BUCKET_BITS) - 1;
+        long subBucket = (bucket & (SUB_BUCKETS - 1)) | SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    public void record(long value)
+    {
+        value = Math.max(0, value);
+        counts.incrementAndGet(bucketFor(value));
+        total.incrementAndGet();
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    public long getCount()
+    {
+        return this.total.get();
+    }
+
+    public long getMax()
+    {
+        return this.max.get();
+    }
+
+    // Value at the given percentile (0-100), 0 when nothing has been recorded
+    public long getPercentile(double percentile)
+    {
+        long count = total.get();
+
+        if(count == 0)
+        {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100.0));
+        long seen = 0;
+
+        for(int bucket = 0; bucket < counts.length(); bucket++)
+        {
+            seen += counts.get(bucket);
+
+            if(seen >= rank)
+            {
+                return Math.min(highestIn(bucket), max.get());
+            }
+        }
+
+        return max.get();
+    }
+
+    public void reset()
+    {
+        for(int bucket = 0; bucket < counts.length(); bucket++)
+        {
+            counts.set(bucket, 0);
+        }
+        total.set(0);
+        max.set(0);
+    }
+
+    // e.g. "p50 3 p90 7 p99 12 p99.9 40 max 52 (1000 samples)"
+    public String summary()
+    {
+        return String.format("p50 %d p90 %d p99 %d p99.9 %d max %d (%d samples)",
+            getPercentile(50), getPercentile(90), getPercentile(99), getPercentile(99.9), getMax(), getCount());
+    }
+}
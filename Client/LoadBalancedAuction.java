@@ -0,0 +1,257 @@
+import java.rmi.ConnectException;
+import java.rmi.ConnectIOException;
+import java.rmi.NoSuchObjectException;
+import java.rmi.RemoteException;
+import java.rmi.UnknownHostException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Spreads calls across every frontend advertised on a registry and fails over when one stops answering
+// Frontends keep no state of their own, users, tokens and the elected primaries live on the replicas,
+// so any frontend can serve any call and a client can switch between them freely
+//
+// Calls go round robin, a frontend that cannot be reached is skipped for a few seconds and the call moves on to the next
+// A frontend that is busy (ServerBusyException) stays in rotation but the call moves on to the next one too
+// Only failures where the call never ran on the frontend are retried, so a bid or newAuction is never applied twice
+public class LoadBalancedAuction implements Auction
+{
+    // Frontends are advertised as "FrontEnd" or "FrontEnd-<name>"
+    public static final String SERVICE_PREFIX = "FrontEnd";
+
+    // How long an unreachable frontend is skipped before it is tried again
+    private static final long COOLDOWN_MS = 5000;
+
+    private static class Endpoint
+    {
+        final String name;
+        final Auction stub;
+        volatile long downUntil;
+
+        Endpoint(String name, Auction stub)
+        {
+            this.name = name;
+            this.stub = stub;
+        }
+    }
+
+    // A call made against one frontend
+    private interface FrontendCall<T>
+    {
+        T call(Auction frontend) throws RemoteException;
+    }
+
+    private final String host;
+    // Start at a random frontend so short lived clients dont all pile onto the first one
+    private final AtomicInteger next = new AtomicInteger(ThreadLocalRandom.current().nextInt(1 << 16));
+    private volatile List<Endpoint> endpoints = Collections.emptyList();
+
+    public LoadBalancedAuction(String host) throws RemoteException
+    {
+        this.host = host;
+        refresh();
+
+        if(endpoints.isEmpty())
+        {
+            throw new RemoteException("No frontends advertised on the registry at " + host);
+        }
+    }
+
+    // Re-read the registry, picks up frontends started or restarted since the last look
+    public synchronized void refresh()
+    {
+        List<Endpoint> found = new ArrayList<>();
+
+        try
+        {
+            Registry registry = LocateRegistry.getRegistry(host);
+
+            for(String name : registry.list())
+            {
+                if(name.startsWith(SERVICE_PREFIX))
+                {
+                    found.add(new Endpoint(name, (Auction) registry.lookup(name)));
+                }
+            }
+        }
+        catch(Exception e)
+        {
+            System.out.println("Error fetching frontends from the registry: " + e.getMessage());
+            return;
+        }
+
+        found.sort((a, b) -> a.name.compareTo(b.name));
+        endpoints = found;
+    }
+
+    public List<String> getFrontendNames()
+    {
+        List<String> names = new ArrayList<>();
+
+        for(Endpoint endpoint : endpoints)
+        {
+            names.add(endpoint.name);
+        }
+
+        return names;
+    }
+
+    // The call failed before the frontend could have run it, so it is safe to send it somewhere else
+    private static boolean notDelivered(RemoteException e)
+    {
+        return e instanceof ConnectException || e instanceof ConnectIOException
+            || e instanceof NoSuchObjectException || e instanceof UnknownHostException;
+    }
+
+    // Run the call on the next frontend in turn, moving on to the others if it cannot be reached
+    // When every known frontend fails the registry is read again and they are all tried once more, ignoring cooldowns
+    private <T> T call(FrontendCall<T> call) throws RemoteException
+    {
+        RemoteException lastFailure = null;
+
+        for(int pass = 0; pass < 2; pass++)
+        {
+            List<Endpoint> current = endpoints;
+            int start = current.isEmpty() ? 0 : Math.floorMod(next.getAndIncrement(), current.size());
+
+            for(int i = 0; i < current.size(); i++)
+            {
+                Endpoint endpoint = current.get((start + i) % current.size());
+
+                if(pass == 0 && endpoint.downUntil > System.currentTimeMillis())
+                {
+                    continue;
+                }
+
+                try
+                {
+                    T result = call.call(endpoint.stub);
+                    endpoint.downUntil = 0;
+                    return result;
+                }
+                catch(RemoteException e)
+                {
+                    if(ServerBusyException.isBusy(e))
+                    {
+                        lastFailure = e;
+                        continue;
+                    }
+
+                    if(!notDelivered(e))
+                    {
+                        throw e;
+                    }
+
+                    System.out.println("Frontend " + endpoint.name + " is unreachable, trying another..");
+                    endpoint.downUntil = System.currentTimeMillis() + COOLDOWN_MS;
+                    lastFailure = e;
+                }
+            }
+
+            // Every frontend is busy, so looking for more wont help, let the caller back off
+            if(ServerBusyException.isBusy(lastFailure))
+            {
+                break;
+            }
+
+            refresh();
+        }
+
+        throw lastFailure != null ? lastFailure : new RemoteException("No frontends reachable at " + host);
+    }
+
+    public Integer register(String email, PublicKey pubKey) throws RemoteException
+    {
+        return call(frontend -> frontend.register(email, pubKey));
+    }
+
+    public ChallengeInfo challenge(int userID, String clientChallenge) throws RemoteException
+    {
+        return call(frontend -> frontend.challenge(userID, clientChallenge));
+    }
+
+    public TokenInfo authenticate(int userID, byte signature[]) throws RemoteException
+    {
+        return call(frontend -> frontend.authenticate(userID, signature));
+    }
+
+    public AuctionItem getSpec(int userID, int itemID, String token) throws RemoteException
+    {
+        return call(frontend -> frontend.getSpec(userID, itemID, token));
+    }
+
+    public Integer newAuction(int userID, AuctionSaleItem item, String token) throws RemoteException
+    {
+        return call(frontend -> frontend.newAuction(userID, item, token));
+    }
+
+    public AuctionItem[] listItems(int userID, String token) throws RemoteException
+    {
+        return call(frontend -> frontend.listItems(userID, token));
+    }
+
+    public AuctionResult closeAuction(int userID, int itemID, String token) throws RemoteException
+    {
+        return call(frontend -> frontend.closeAuction(userID, itemID, token));
+    }
+
+    public boolean bid(int userID, int itemID, int price, String token) throws RemoteException
+    {
+        return call(frontend -> frontend.bid(userID, itemID, price, token));
+    }
+
+    public boolean proxyBid(int userID, int itemID, int maxPrice, int increment, String token) throws RemoteException
+    {
+        return call(frontend -> frontend.proxyBid(userID, itemID, maxPrice, increment, token));
+    }
+
+    public BidHistoryPage getBidHistory(int userID, int itemID, int cursor, String token) throws RemoteException
+    {
+        return call(frontend -> frontend.getBidHistory(userID, itemID, cursor, token));
+    }
+
+    public int getPrimaryReplicaID() throws RemoteException
+    {
+        return call(Auction::getPrimaryReplicaID);
+    }
+
+    public MetricsReport[] getMetrics() throws RemoteException
+    {
+        return call(Auction::getMetrics);
+    }
+
+    public TracedResult traced(long traceID, String method, Object[] args) throws RemoteException
+    {
+        return call(frontend -> frontend.traced(traceID, method, args));
+    }
+
+    public AuctionItem[] getSpecs(int userID, int[] itemIDs, String token) throws RemoteException
+    {
+        return call(frontend -> frontend.getSpecs(userID, itemIDs, token));
+    }
+
+    public Integer[] newAuctions(int userID, AuctionSaleItem[] items, String token) throws RemoteException
+    {
+        return call(frontend -> frontend.newAuctions(userID, items, token));
+    }
+
+    public boolean[] bids(int userID, int[] itemIDs, int[] prices, String token) throws RemoteException
+    {
+        return call(frontend -> frontend.bids(userID, itemIDs, prices, token));
+    }
+
+    public boolean subscribe(int userID, int itemID, AuctionListener listener, String token) throws RemoteException
+    {
+        return call(frontend -> frontend.subscribe(userID, itemID, listener, token));
+    }
+
+    public boolean unsubscribe(int userID, int itemID, String token) throws RemoteException
+    {
+        return call(frontend -> frontend.unsubscribe(userID, itemID, token));
+    }
+}
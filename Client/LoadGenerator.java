@@ -0,0 +1,516 @@
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// Simulates many users against the frontends on localhost, to find how much traffic a setup sustains before latency breaks
+// Every simulated user is an AuctionClient with its own email, session and token refreshes, all sharing one thread pool
+// Runs open loop: operations start on a fixed schedule at the target rate whether or not earlier ones have finished, and
+// each one is timed from when it was due, so a server falling behind shows up as latency instead of slowing the generator
+// Each operation goes to a random user, picked by the mix, on a random auction from the ones the run has listed
+// Several rates can be given to step through them, printing a row for each and stopping once p99 goes over the SLO
+//
+// Configured with system properties:
+//   auction.loadMix            operation=weight pairs (default listItems=2,getSpec=40,bid=40,newAuction=12,closeAuction=6)
+//   auction.loadWarmupSeconds  seconds at the start of each step that arent counted (default 5)
+//   auction.loadItems          auctions listed before the first step (default one per user)
+//   auction.loadKeyPairs       RSA key pairs shared out between the users, making one each takes minutes (default 16)
+//   auction.loadMaxInFlight    operations in flight at once, the schedule waits past this (default 5000)
+//   auction.loadSloMillis      p99 latency a step must stay under (default 100)
+//   auction.binaryPort         use the binary protocol on this port instead of RMI, as for the other clients
+//
+// Usage: java LoadGenerator [users] [opsPerSecond[,opsPerSecond...]] [secondsPerStep]
+public class LoadGenerator
+{
+    private static final String[] OPERATIONS = { "listItems", "getSpec", "bid", "newAuction", "closeAuction" };
+    private static final int LIST_ITEMS = 0;
+    private static final int GET_SPEC = 1;
+    private static final int BID = 2;
+    private static final int NEW_AUCTION = 3;
+    private static final int CLOSE_AUCTION = 4;
+
+    // An auction the run listed and hasnt closed, with the highest price bid on it so far
+    private static class OpenItem
+    {
+        final int itemID;
+        final int seller;
+        final AtomicInteger price;
+
+        OpenItem(int itemID, int seller, int reservePrice)
+        {
+            this.itemID = itemID;
+            this.seller = seller;
+            this.price = new AtomicInteger(reservePrice);
+        }
+    }
+
+    // The open auctions, picked at random, removal swaps the last one into the gap
+    private static class ItemPool
+    {
+        private final List<OpenItem> items = new ArrayList<>();
+
+        synchronized void add(OpenItem item)
+        {
+            items.add(item);
+        }
+
+        synchronized OpenItem random()
+        {
+            return items.isEmpty() ? null : items.get(ThreadLocalRandom.current().nextInt(items.size()));
+        }
+
+        synchronized OpenItem take()
+        {
+            if(items.isEmpty())
+            {
+                return null;
+            }
+
+            int index = ThreadLocalRandom.current().nextInt(items.size());
+            OpenItem item = items.get(index);
+            items.set(index, items.get(items.size() - 1));
+            items.remove(items.size() - 1);
+            return item;
+        }
+
+        synchronized int size()
+        {
+            return items.size();
+        }
+    }
+
+    // One operation's results in one step, latency in microseconds from when the operation was due
+    private static class Stats
+    {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder errors = new LongAdder();
+        final LongAdder busy = new LongAdder();
+        final LongAdder rejected = new LongAdder();
+    }
+
+    private final AuctionClient[] users;
+    private final ItemPool items = new ItemPool();
+    private final int[] cumulativeWeights;
+    private final int maxInFlight = Integer.getInteger("auction.loadMaxInFlight", 5000);
+    private final Semaphore inFlight = new Semaphore(maxInFlight);
+
+    private volatile Stats[] stats;
+    private volatile boolean recording;
+    private final LongAdder completed = new LongAdder();
+
+    private LoadGenerator(AuctionClient[] users, int[] weights)
+    {
+        this.users = users;
+        this.cumulativeWeights = new int[weights.length];
+
+        int total = 0;
+        for(int i = 0; i < weights.length; i++)
+        {
+            total += weights[i];
+            cumulativeWeights[i] = total;
+        }
+    }
+
+    // Parse a mix like "getSpec=50,bid=50" into a weight per operation, null if it names an unknown operation
+    static int[] parseMix(String mix)
+    {
+        int[] weights = new int[OPERATIONS.length];
+
+        for(String pair : mix.split(","))
+        {
+            String[] parts = pair.trim().split("=");
+            int operation = parts.length == 2 ? java.util.Arrays.asList(OPERATIONS).indexOf(parts[0].trim()) : -1;
+
+            if(operation < 0)
+            {
+                return null;
+            }
+
+            weights[operation] = Integer.parseInt(parts[1].trim());
+        }
+
+        return weights;
+    }
+
+    private int pickOperation(ThreadLocalRandom random)
+    {
+        int pick = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        int operation = 0;
+
+        while(pick >= cumulativeWeights[operation])
+        {
+            operation++;
+        }
+
+        return operation;
+    }
+
+    private static AuctionSaleItem newItem(ThreadLocalRandom random)
+    {
+        AuctionSaleItem item = new AuctionSaleItem();
+        item.name = "load item " + random.nextInt(1000000);
+        item.description = "listed by LoadGenerator";
+        item.reservePrice = 1 + random.nextInt(100);
+        return item;
+    }
+
+    // Start one operation that was due at the given System.nanoTime
+    private void issue(long due) throws InterruptedException
+    {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int operation = pickOperation(random);
+        int user = random.nextInt(users.length);
+        OpenItem item = null;
+
+        if(operation == GET_SPEC || operation == BID)
+        {
+            item = items.random();
+        }
+        else if(operation == CLOSE_AUCTION)
+        {
+            item = items.take();
+        }
+
+        // Nothing open to act on, list something instead
+        if(operation != LIST_ITEMS && operation != NEW_AUCTION && item == null)
+        {
+            operation = NEW_AUCTION;
+        }
+
+        inFlight.acquire();
+        CompletableFuture<?> call;
+
+        switch(operation)
+        {
+            case LIST_ITEMS:
+                call = users[user].listItems();
+                break;
+
+            case GET_SPEC:
+                call = users[user].getSpec(item.itemID);
+                break;
+
+            case BID:
+            {
+                // Sellers cant usefully bid on their own auctions, move to the next user
+                if(user == item.seller)
+                {
+                    user = (user + 1) % users.length;
+                }
+
+                OpenItem bidOn = item;
+                int price = item.price.get() + 1 + random.nextInt(5);
+                call = users[user].bid(item.itemID, price).thenApply(leading -> {
+                    if(Boolean.TRUE.equals(leading))
+                    {
+                        bidOn.price.accumulateAndGet(price, Math::max);
+                    }
+                    return leading;
+                });
+                break;
+            }
+
+            case NEW_AUCTION:
+            {
+                AuctionSaleItem sale = newItem(random);
+                int seller = user;
+                call = users[user].newAuction(sale).thenApply(itemID -> {
+                    if(itemID != null)
+                    {
+                        items.add(new OpenItem(itemID, seller, sale.reservePrice));
+                    }
+                    return itemID;
+                });
+                break;
+            }
+
+            default:
+                call = users[item.seller].closeAuction(item.itemID);
+                break;
+        }
+
+        Stats operationStats = recording ? stats[operation] : null;
+        Stats allStats = recording ? stats[OPERATIONS.length] : null;
+
+        call.whenComplete((result, error) -> {
+            inFlight.release();
+            completed.increment();
+
+            if(operationStats == null)
+            {
+                return;
+            }
+
+            long micros = (System.nanoTime() - due) / 1000;
+
+            for(Stats counted : new Stats[] { operationStats, allStats })
+            {
+                counted.latency.record(micros);
+
+                if(error != null)
+                {
+                    (ServerBusyException.isBusy(error) ? counted.busy : counted.errors).increment();
+                }
+                else if(result == null || Boolean.FALSE.equals(result))
+                {
+                    counted.rejected.increment();
+                }
+            }
+        });
+    }
+
+    // Run the schedule at the rate for that long
+    private void runSchedule(int opsPerSecond, long nanos) throws InterruptedException
+    {
+        long interval = 1000000000L / opsPerSecond;
+        long next = System.nanoTime();
+        long end = next + nanos;
+        long lastReport = next;
+        long completedAtReport = completed.sum();
+
+        while(next < end)
+        {
+            long now = System.nanoTime();
+
+            if(now < next)
+            {
+                LockSupport.parkNanos(next - now);
+                continue;
+            }
+
+            // Behind schedule, start whatever is due straight away so the lateness is counted
+            issue(next);
+            next += interval;
+
+            if(now - lastReport >= TimeUnit.SECONDS.toNanos(5))
+            {
+                long done = completed.sum();
+                System.out.println(String.format("    %,8.0f ops/sec completed, %,d in flight, %,d auctions open",
+                    (done - completedAtReport) * 1e9 / (now - lastReport), maxInFlight - inFlight.availablePermits(), items.size()));
+                lastReport = now;
+                completedAtReport = done;
+            }
+        }
+    }
+
+    // Run one step at the rate, the warmup isnt recorded, and wait for what it started to finish
+    // Returns the stats of each operation followed by all of them together
+    private Stats[] runStep(int opsPerSecond, int seconds, int warmupSeconds) throws InterruptedException
+    {
+        Stats[] stepStats = new Stats[OPERATIONS.length + 1];
+        for(int i = 0; i < stepStats.length; i++)
+        {
+            stepStats[i] = new Stats();
+        }
+
+        recording = false;
+        runSchedule(opsPerSecond, TimeUnit.SECONDS.toNanos(warmupSeconds));
+
+        stats = stepStats;
+        recording = true;
+        runSchedule(opsPerSecond, TimeUnit.SECONDS.toNanos(seconds));
+        recording = false;
+
+        if(!inFlight.tryAcquire(maxInFlight, 60, TimeUnit.SECONDS))
+        {
+            System.out.println("    Some operations still unfinished after 60s, carrying on");
+        }
+        else
+        {
+            inFlight.release(maxInFlight);
+        }
+
+        return stepStats;
+    }
+
+    // Log every user in, a few at a time and waiting while the frontends are too busy, as admission control turns away a burst
+    private static void logInAll(AuctionClient[] users) throws Exception
+    {
+        AtomicInteger next = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+
+        for(int t = 0; t < 8; t++)
+        {
+            threads.add(new Thread(() -> {
+                for(int i = next.getAndIncrement(); i < users.length; i = next.getAndIncrement())
+                {
+                    while(true)
+                    {
+                        try
+                        {
+                            users[i].login().join();
+                            break;
+                        }
+                        catch(Exception e)
+                        {
+                            if(!ServerBusyException.isBusy(e))
+                            {
+                                throw e;
+                            }
+                            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(200));
+                        }
+                    }
+                }
+            }, "load-login"));
+        }
+
+        for(Thread thread : threads)
+        {
+            thread.start();
+        }
+        for(Thread thread : threads)
+        {
+            thread.join();
+        }
+    }
+
+    // One operation's results for a step as a table row, latency in microseconds like getMetrics
+    private static String row(String operation, Stats stats, int seconds)
+    {
+        LatencyHistogram latency = stats.latency;
+        return String.format("  %-14s %10d %9.1f %8d %8d %9d %8d %8d %8d %9d %9d",
+            operation, latency.getCount(), latency.getCount() / (double) seconds, stats.errors.sum(), stats.busy.sum(), stats.rejected.sum(),
+            latency.getPercentile(50), latency.getPercentile(90), latency.getPercentile(99), latency.getPercentile(99.9), latency.getMax());
+    }
+
+    public static void main(String[] args)
+    {
+        int userCount = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        String rates = args.length > 1 ? args[1] : "500";
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+
+        String mix = System.getProperty("auction.loadMix", "listItems=2,getSpec=40,bid=40,newAuction=12,closeAuction=6");
+        int[] weights = parseMix(mix);
+        int warmupSeconds = Integer.getInteger("auction.loadWarmupSeconds", 5);
+        int itemCount = Integer.getInteger("auction.loadItems", userCount);
+        int keyPairCount = Math.max(1, Math.min(userCount, Integer.getInteger("auction.loadKeyPairs", 16)));
+        long sloMicros = Integer.getInteger("auction.loadSloMillis", 100) * 1000L;
+
+        if(weights == null)
+        {
+            System.out.println("Usage: java LoadGenerator [users] [opsPerSecond[,opsPerSecond...]] [secondsPerStep]"
+                    + "\n    -Dauction.loadMix=op=weight,... with operations " + String.join(", ", OPERATIONS));
+            return;
+        }
+
+        // Plenty of threads, an open loop shouldnt queue behind its own pool
+        ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "load-user");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try
+        {
+            int binaryPort = Integer.getInteger("auction.binaryPort", -1);
+            Auction server = binaryPort > 0 ? AuctionClient.binaryConnection("localhost", binaryPort) : AuctionClient.balancedConnection("localhost");
+            PublicKey serverPublicKey = Files.exists(Paths.get("./serverKey.pub")) ? Client.getServerPublicKeyFromFile("./serverKey.pub") : null;
+
+            KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+            keyPairGenerator.initialize(2048);
+            KeyPair[] keyPairs = new KeyPair[keyPairCount];
+            for(int i = 0; i < keyPairs.length; i++)
+            {
+                keyPairs[i] = keyPairGenerator.generateKeyPair();
+            }
+
+            // Emails unique to this run, so users from an earlier run arent reused with keys they no longer have
+            String run = Long.toString(System.currentTimeMillis(), 36);
+            AuctionClient[] users = new AuctionClient[userCount];
+            for(int i = 0; i < userCount; i++)
+            {
+                users[i] = new AuctionClient(server, "load" + i + "-" + run + "@loadgen", keyPairs[i % keyPairs.length], serverPublicKey, executor, 64);
+            }
+
+            LoadGenerator generator = new LoadGenerator(users, weights);
+            long start = System.nanoTime();
+
+            logInAll(users);
+            System.out.println(String.format("Logged in %,d users in %.1fs", userCount, (System.nanoTime() - start) / 1e9));
+
+            // List the starting auctions in chunks, spread across the first users as sellers
+            start = System.nanoTime();
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for(int listed = 0, seller = 0; listed < itemCount; seller = (seller + 1) % userCount)
+            {
+                AuctionSaleItem[] chunk = new AuctionSaleItem[Math.min(1000, itemCount - listed)];
+                for(int i = 0; i < chunk.length; i++)
+                {
+                    chunk[i] = newItem(random);
+                }
+
+                Integer[] itemIDs = users[seller].newAuctions(chunk).join();
+                for(int i = 0; itemIDs != null && i < itemIDs.length; i++)
+                {
+                    if(itemIDs[i] != null)
+                    {
+                        generator.items.add(new OpenItem(itemIDs[i], seller, chunk[i].reservePrice));
+                    }
+                }
+                listed += chunk.length;
+            }
+            System.out.println(String.format("Listed %,d auctions in %.1fs, mix %s", generator.items.size(), (System.nanoTime() - start) / 1e9, mix));
+
+            List<String> summary = new ArrayList<>();
+
+            for(String rateText : rates.split(","))
+            {
+                int rate = Integer.parseInt(rateText.trim());
+                System.out.println(String.format("%nStep: %,d ops/sec for %ds after %ds warmup", rate, seconds, warmupSeconds));
+
+                Stats[] stepStats = generator.runStep(rate, seconds, warmupSeconds);
+
+                System.out.println(String.format("  %-14s %10s %9s %8s %8s %9s %8s %8s %8s %9s %9s",
+                    "operation", "calls", "per sec", "errors", "busy", "rejected", "p50", "p90", "p99", "p99.9", "max"));
+
+                for(int i = 0; i < OPERATIONS.length; i++)
+                {
+                    if(stepStats[i].latency.getCount() > 0)
+                    {
+                        System.out.println(row(OPERATIONS[i], stepStats[i], seconds));
+                    }
+                }
+
+                Stats all = stepStats[OPERATIONS.length];
+                System.out.println(row("all", all, seconds));
+
+                long p99 = all.latency.getPercentile(99);
+                long failed = all.errors.sum() + all.busy.sum();
+                boolean sustained = p99 <= sloMicros && failed == 0;
+                summary.add(String.format("  %,10d %12.1f %10d %8d   %s", rate, all.latency.getCount() / (double) seconds, p99, failed,
+                    sustained ? "sustained" : "over the SLO"));
+
+                if(!sustained)
+                {
+                    break;
+                }
+            }
+
+            System.out.println(String.format("%nSummary, %,d users, SLO p99 %dms with no errors", userCount, sloMicros / 1000));
+            System.out.println(String.format("  %10s %12s %10s %8s", "target", "achieved", "p99 us", "errors"));
+            for(String line : summary)
+            {
+                System.out.println(line);
+            }
+        }
+        catch(Exception e)
+        {
+            System.out.println("Exception running load generator:");
+            e.printStackTrace();
+        }
+
+        System.exit(0);
+    }
+}
@@ -0,0 +1,173 @@
+import java.rmi.registry.LocateRegistry;
+import java.security.KeyPair;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Compares throughput and latency of the RMI frontend against the binary protocol frontend
+// Each thread logs in as its own user and alternates getSpec and bid calls on one shared item
+// Usage: java ProtocolBenchmark (email) (binaryPort) [threads] [seconds]
+public class ProtocolBenchmark
+{
+    // Keeps one user's session alive, re-authenticating shortly before the 10 second token expires
+    private static class Session
+    {
+        final Auction server;
+        final KeyPair keyPair;
+        final int userID;
+        TokenInfo tokenInfo;
+
+        Session(Auction server, String email, KeyPair keyPair) throws Exception
+        {
+            this.server = server;
+            this.keyPair = keyPair;
+            this.userID = server.register(email, keyPair.getPublic());
+            login();
+        }
+
+        void login() throws Exception
+        {
+            ChallengeInfo challengeInfo = server.challenge(userID, Client.generateChallenge());
+            tokenInfo = server.authenticate(userID, Client.signChallenge(keyPair.getPrivate(), challengeInfo.clientChallenge));
+        }
+
+        String token() throws Exception
+        {
+            if(System.currentTimeMillis() > tokenInfo.expiryTime - 2000)
+            {
+                login();
+            }
+            return tokenInfo.token;
+        }
+    }
+
+    private static long[] run(Auction server, String email, KeyPair keyPair, int threads, int seconds) throws Exception
+    {
+        Session seller = new Session(server, email, keyPair);
+        AuctionSaleItem saleItem = new AuctionSaleItem();
+        saleItem.name = "benchmark item";
+        saleItem.description = "item used by ProtocolBenchmark";
+        saleItem.reservePrice = 1;
+        int itemID = server.newAuction(seller.userID, saleItem, seller.token());
+
+        AtomicInteger nextPrice = new AtomicInteger(1);
+        long[][] latencies = new long[threads][];
+        int[] counts = new int[threads];
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        Thread[] workers = new Thread[threads];
+
+        for(int t = 0; t < threads; t++)
+        {
+            final int index = t;
+            workers[t] = new Thread(() -> {
+                long[] samples = new long[1 << 16];
+                int count = 0;
+
+                try
+                {
+                    Session session = new Session(server, email + "-bench" + index, keyPair);
+
+                    while(System.nanoTime() < deadline)
+                    {
+                        String token = session.token();
+                        long start = System.nanoTime();
+
+                        if((count & 1) == 0)
+                        {
+                            server.getSpec(session.userID, itemID, token);
+                        }
+                        else
+                        {
+                            server.bid(session.userID, itemID, nextPrice.incrementAndGet(), token);
+                        }
+
+                        if(count == samples.length)
+                        {
+                            samples = Arrays.copyOf(samples, samples.length * 2);
+                        }
+                        samples[count++] = System.nanoTime() - start;
+                    }
+                }
+                catch(Exception e)
+                {
+                    System.out.println("Benchmark thread failed:");
+                    e.printStackTrace();
+                }
+
+                latencies[index] = samples;
+                counts[index] = count;
+            });
+            workers[t].start();
+        }
+
+        for(Thread worker : workers)
+        {
+            worker.join();
+        }
+
+        // Merge every thread's samples into one sorted array for percentiles
+        int total = Arrays.stream(counts).sum();
+        long[] merged = new long[total];
+        int offset = 0;
+
+        for(int t = 0; t < threads; t++)
+        {
+            System.arraycopy(latencies[t], 0, merged, offset, counts[t]);
+            offset += counts[t];
+        }
+
+        Arrays.sort(merged);
+        return merged;
+    }
+
+    private static void report(String transport, long[] latencies, int seconds)
+    {
+        if(latencies.length == 0)
+        {
+            System.out.println(transport + ": no successful calls");
+            return;
+        }
+
+        System.out.println(String.format("%-7s ops: %d  ops/sec: %.0f  p50: %.3f ms  p99: %.3f ms  p99.9: %.3f ms",
+            transport, latencies.length, latencies.length / (double) seconds,
+            percentile(latencies, 0.50), percentile(latencies, 0.99), percentile(latencies, 0.999)));
+    }
+
+    private static double percentile(long[] sorted, double fraction)
+    {
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(fraction * sorted.length) - 1);
+        return sorted[Math.max(index, 0)] / 1_000_000.0;
+    }
+
+    public static void main(String[] args)
+    {
+        if(args.length < 2)
+        {
+            System.out.println("\nUsage: java ProtocolBenchmark (email) (binaryPort) [threads] [seconds]\n");
+            return;
+        }
+
+        String email = args[0];
+        int binaryPort = Integer.parseInt(args[1]);
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+
+        try
+        {
+            KeyPair keyPair = Client.getOrGenerateKeyPair();
+
+            Auction rmiServer = (Auction) LocateRegistry.getRegistry("localhost").lookup("FrontEnd");
+            report("rmi", run(rmiServer, email, keyPair, threads, seconds), seconds);
+
+            try (BinaryAuctionClient binaryServer = new BinaryAuctionClient("localhost", binaryPort))
+            {
+                report("binary", run(binaryServer, email, keyPair, threads, seconds), seconds);
+            }
+        }
+        catch(Exception e)
+        {
+            System.out.println("Exception: ");
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,27 @@
+import java.rmi.RemoteException;
+
+// Thrown by the frontend when it is at its limit for a kind of operation and turns a request away straight away
+// Nothing was done for the request, so it is safe to retry later or on another frontend
+// RMI hands a RemoteException thrown on the server to the client wrapped in a ServerException, so check with isBusy
+public class ServerBusyException extends RemoteException
+{
+    public ServerBusyException(String message)
+    {
+        super(message);
+    }
+
+    // Check an exception and its causes for a busy rejection
+    public static boolean isBusy(Throwable t)
+    {
+        while(t != null)
+        {
+            if(t instanceof ServerBusyException)
+            {
+                return true;
+            }
+            t = t.getCause();
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,387 @@
+import java.io.FileWriter;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Request tracing through the client, frontends and replicas
+// A sampled request gets a trace, a tree of timed spans: the request itself, every remote call it makes, and whatever
+// each side marks with span, like the heartbeat, the registry scan or each push to a backup
+// Remote calls carry the trace by calling traced(traceID, method, args) on the remote interface instead of the method, the
+// callee runs the method recording its own spans and returns them with the result, so the caller gets the whole tree
+// including how long each call spent getting there and back
+// Traces start where requests come in, at the frontend and in clients that sample, and the ones slower than
+// auction.traceSlowMs are appended to auction.traceFile there
+// Requests that arent sampled cost a thread local lookup for each span
+//
+// Configured with system properties:
+//   auction.traceSampleRate  fraction of requests traced from 0 to 1 (default 0, off)
+//   auction.traceSlowMs      traces at least this long are written (default 50)
+//   auction.traceFile        file slow traces are appended to (default traces.log)
+public final class Trace
+{
+    // A call that may throw anything, like a method invoked through a proxy
+    public interface Call<T>
+    {
+        T call() throws Throwable;
+    }
+
+    // The spans of one trace in this process, added to by every thread working on it
+    private static final class Active
+    {
+        final long traceID;
+        final List<TraceSpan> spans = new ArrayList<>();
+
+        Active(long traceID)
+        {
+            this.traceID = traceID;
+        }
+
+        synchronized int add(String name, int parent)
+        {
+            TraceSpan span = new TraceSpan();
+            span.name = name;
+            span.parent = parent;
+            Instant now = Instant.now();
+            span.startMicros = now.getEpochSecond() * 1000000 + now.getNano() / 1000;
+            spans.add(span);
+            return spans.size() - 1;
+        }
+
+        synchronized void end(int index, long durationNanos, boolean failed)
+        {
+            spans.get(index).durationNanos = durationNanos;
+            spans.get(index).failed = failed;
+        }
+
+        // Add the spans a callee sent back under the span of the call to it
+        synchronized void attach(TraceSpan[] remote, int parent)
+        {
+            int offset = spans.size();
+
+            for(TraceSpan span : remote)
+            {
+                span.parent = span.parent < 0 ? parent : span.parent + offset;
+                spans.add(span);
+            }
+        }
+
+        synchronized TraceSpan[] toArray()
+        {
+            return spans.toArray(new TraceSpan[0]);
+        }
+    }
+
+    // The trace a thread is working on and the span new spans go under
+    private static final class Position
+    {
+        Active trace;
+        int parent = -1;
+    }
+
+    // Closed at the end of the step it times, in a finally block, does nothing if the request isnt traced
+    // Not AutoCloseable, a span is rarely used inside its own block so try-with-resources would only warn about it
+    public static final class Span
+    {
+        private static final Span NONE = new Span(null, -1, -1);
+
+        private final Active trace;
+        private final int index;
+        private final int parent;
+        private final long start = System.nanoTime();
+        private boolean failed;
+
+        private Span(Active trace, int index, int parent)
+        {
+            this.trace = trace;
+            this.index = index;
+            this.parent = parent;
+        }
+
+        public void failed()
+        {
+            failed = true;
+        }
+
+        public void close()
+        {
+            if(trace != null)
+            {
+                trace.end(index, System.nanoTime() - start, failed);
+                POSITION.get().parent = parent;
+            }
+        }
+    }
+
+    private static final double sampleRate = Double.parseDouble(System.getProperty("auction.traceSampleRate", "0"));
+    private static final long slowNanos = Long.getLong("auction.traceSlowMs", 50) * 1000000;
+    private static final String traceFile = System.getProperty("auction.traceFile", "traces.log");
+
+    private static final ThreadLocal<Position> POSITION = ThreadLocal.withInitial(Position::new);
+
+    private static boolean writeFailed;
+
+    private Trace()
+    {
+    }
+
+    // Whether to trace a request coming in now
+    public static boolean sample()
+    {
+        return sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate;
+    }
+
+    // Whether this thread is working on a traced request
+    public static boolean isActive()
+    {
+        return POSITION.get().trace != null;
+    }
+
+    // Start a span under the current one, close it when the step is done:
+    //   Trace.Span span = Trace.span("election");
+    //   try { ... } finally { span.close(); }
+    public static Span span(String name)
+    {
+        Position position = POSITION.get();
+
+        if(position.trace == null)
+        {
+            return Span.NONE;
+        }
+
+        int parent = position.parent;
+        position.parent = position.trace.add(name, parent);
+        return new Span(position.trace, position.parent, parent);
+    }
+
+    // The task, run under the span that is current here wherever it runs, for handing work to other threads
+    public static <T> Callable<T> wrap(Callable<T> task)
+    {
+        Position position = POSITION.get();
+
+        if(position.trace == null)
+        {
+            return task;
+        }
+
+        Active trace = position.trace;
+        int parent = position.parent;
+
+        return () -> {
+            Position worker = POSITION.get();
+            Active previousTrace = worker.trace;
+            int previousParent = worker.parent;
+            worker.trace = trace;
+            worker.parent = parent;
+
+            try
+            {
+                return task.call();
+            }
+            finally
+            {
+                worker.trace = previousTrace;
+                worker.parent = previousParent;
+            }
+        };
+    }
+
+    // What a call run as a trace came to
+    private static final class Outcome
+    {
+        Object result;
+        Throwable thrown;
+        TraceSpan[] spans;
+    }
+
+    // Run a call as a new trace, writing the trace out if it was slow
+    @SuppressWarnings("unchecked")
+    public static <T> T root(String name, Call<T> call) throws Throwable
+    {
+        Outcome outcome = run(new Active(ThreadLocalRandom.current().nextLong()), name, call, true);
+        return (T) outcome.result;
+    }
+
+    // Run a call that is part of a caller's trace, returning the result with the spans to send back
+    // The frontend also writes it out if slow, the client that started it may be on another machine
+    public static TracedResult serve(long traceID, String name, boolean writeIfSlow, Call<Object> call) throws Throwable
+    {
+        Outcome outcome = run(new Active(traceID), name, call, writeIfSlow);
+
+        TracedResult traced = new TracedResult();
+        traced.result = outcome.result;
+        traced.spans = outcome.spans;
+        return traced;
+    }
+
+    // Serve a traced call by calling the named method on the target directly, for objects that arent exported through
+    // OperationMetrics.wrap, which serves traced calls itself so they are timed like any other
+    // Only methods of the remote interfaces given can be named, as only they can be called remotely without a trace
+    public static TracedResult serveDirectly(Object target, long traceID, String name, String method, Object[] args, Class<?>... remoteInterfaces) throws java.rmi.RemoteException
+    {
+        try
+        {
+            return serve(traceID, name + " " + method, false, () -> invoke(target, method, args, remoteInterfaces));
+        }
+        catch(java.rmi.RemoteException | RuntimeException | Error e)
+        {
+            throw e;
+        }
+        catch(Throwable t)
+        {
+            throw new java.rmi.RemoteException("Traced call failed", t);
+        }
+    }
+
+    // Run the call under a first span on this thread, then write the trace if it was slow and rethrow what the call threw
+    private static Outcome run(Active trace, String name, Call<?> call, boolean writeIfSlow) throws Throwable
+    {
+        Position position = POSITION.get();
+        Active previousTrace = position.trace;
+        int previousParent = position.parent;
+        position.trace = trace;
+        position.parent = -1;
+
+        Outcome outcome = new Outcome();
+        Span span = span(name);
+
+        try
+        {
+            outcome.result = call.call();
+        }
+        catch(Throwable t)
+        {
+            outcome.thrown = t;
+            span.failed();
+        }
+        finally
+        {
+            span.close();
+            position.trace = previousTrace;
+            position.parent = previousParent;
+        }
+
+        outcome.spans = trace.toArray();
+
+        if(writeIfSlow && outcome.spans[0].durationNanos >= slowNanos)
+        {
+            write(trace.traceID, outcome.spans);
+        }
+
+        if(outcome.thrown != null)
+        {
+            throw outcome.thrown;
+        }
+
+        return outcome;
+    }
+
+    private static synchronized void write(long traceID, TraceSpan[] spans)
+    {
+        try(PrintWriter out = new PrintWriter(new FileWriter(traceFile, true)))
+        {
+            out.println(TraceSpan.format(traceID, spans));
+        }
+        catch(Exception e)
+        {
+            if(!writeFailed)
+            {
+                writeFailed = true;
+                System.out.println("Cant write traces to " + traceFile + ": " + e.getMessage());
+            }
+        }
+    }
+
+    // The public method of the target with that name and number of arguments, null if there isnt one
+    public static Method find(Class<?> type, String name, int argCount)
+    {
+        for(Method method : type.getMethods())
+        {
+            if(method.getName().equals(name) && method.getParameterCount() == argCount)
+            {
+                return method;
+            }
+        }
+
+        return null;
+    }
+
+    // Call the named method of the first remote interface that has it on the target, throwing whatever it throws
+    public static Object invoke(Object target, String name, Object[] args, Class<?>... remoteInterfaces) throws Throwable
+    {
+        Method method = null;
+
+        for(int i = 0; i < remoteInterfaces.length && method == null; i++)
+        {
+            method = find(remoteInterfaces[i], name, args.length);
+        }
+
+        if(method == null)
+        {
+            throw new NoSuchMethodException(name);
+        }
+
+        try
+        {
+            return method.invoke(target, args);
+        }
+        catch(InvocationTargetException e)
+        {
+            throw e.getCause();
+        }
+    }
+
+    // Wrap a remote stub so calls made during a traced request go through traced and bring back the callee's spans
+    // Calls outside a trace go straight to the stub, unless startsTraces is set and the call is sampled, then it starts one
+    // target names the remote side in the spans, e.g. "shard0/1"
+    @SuppressWarnings("unchecked")
+    public static <T> T remote(T stub, Class<T> remoteInterface, String target, boolean startsTraces)
+    {
+        Method tracedMethod = find(remoteInterface, "traced", 3);
+
+        return (T) Proxy.newProxyInstance(remoteInterface.getClassLoader(), new Class<?>[] { remoteInterface }, (proxy, method, args) -> {
+            Object[] callArgs = args != null ? args : new Object[0];
+
+            if(method.getDeclaringClass() == Object.class || method.equals(tracedMethod) || (!isActive() && !(startsTraces && sample())))
+            {
+                try
+                {
+                    return method.invoke(stub, callArgs);
+                }
+                catch(InvocationTargetException e)
+                {
+                    throw e.getCause();
+                }
+            }
+
+            Call<Object> tracedCall = () -> {
+                Position position = POSITION.get();
+
+                Span span = span("call " + target + "." + method.getName());
+
+                try
+                {
+                    TracedResult traced = (TracedResult) tracedMethod.invoke(stub, position.trace.traceID, method.getName(), callArgs);
+                    position.trace.attach(traced.spans, span.index);
+                    return traced.result;
+                }
+                catch(InvocationTargetException e)
+                {
+                    span.failed();
+                    throw e.getCause();
+                }
+                finally
+                {
+                    span.close();
+                }
+            };
+
+            return isActive() ? tracedCall.call() : root("Client " + method.getName(), tracedCall);
+        });
+    }
+}
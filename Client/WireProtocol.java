@@ -0,0 +1,214 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.spec.X509EncodedKeySpec;
+
+// Compact length-prefixed binary protocol for the same operations as the Auction interface
+// Used by BinaryFrontend on the server and BinaryAuctionClient on the client, both sides must match
+//
+// Request frame:  [int length][byte opcode][int requestID][payload...]
+// Response frame: [int length][int requestID][byte status][payload...]
+// The length covers everything after the length field itself
+// Request IDs let a client keep several requests in flight on one connection
+public class WireProtocol
+{
+    public static final byte REGISTER = 1;
+    public static final byte CHALLENGE = 2;
+    public static final byte AUTHENTICATE = 3;
+    public static final byte GET_SPEC = 4;
+    public static final byte NEW_AUCTION = 5;
+    public static final byte LIST_ITEMS = 6;
+    public static final byte CLOSE_AUCTION = 7;
+    public static final byte BID = 8;
+    public static final byte GET_PRIMARY_REPLICA_ID = 9;
+    public static final byte GET_SPECS = 10;
+    public static final byte NEW_AUCTIONS = 11;
+    public static final byte BIDS = 12;
+    public static final byte PROXY_BID = 13;
+    public static final byte GET_BID_HISTORY = 14;
+
+    // Response statuses, NULL mirrors the Auction methods returning null on failure
+    public static final byte STATUS_OK = 0;
+    public static final byte STATUS_NULL = 1;
+    public static final byte STATUS_ERROR = 2;
+
+    // The frontend turned the request away without running it, see ServerBusyException
+    public static final byte STATUS_BUSY = 3;
+
+    // Reject anything bigger so a bad length prefix cant make us allocate huge buffers
+    public static final int MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+
+    // Start a new frame, the length is left as a placeholder and filled in by finishFrame
+    public static DataOutputStream startFrame(ByteArrayOutputStream bytes) throws IOException
+    {
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0);
+        return out;
+    }
+
+    // Patch the length prefix and wrap the finished frame ready for writing to a channel
+    public static ByteBuffer finishFrame(ByteArrayOutputStream bytes)
+    {
+        ByteBuffer frame = ByteBuffer.wrap(bytes.toByteArray());
+        frame.putInt(0, frame.remaining() - 4);
+        return frame;
+    }
+
+    // Strings are written as a byte length followed by UTF-8 bytes, -1 length means null
+    public static void writeString(DataOutputStream out, String value) throws IOException
+    {
+        if(value == null)
+        {
+            out.writeInt(-1);
+            return;
+        }
+
+        byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(encoded.length);
+        out.write(encoded);
+    }
+
+    public static String readString(ByteBuffer in)
+    {
+        int length = in.getInt();
+
+        if(length < 0)
+        {
+            return null;
+        }
+
+        checkLength(in, length);
+        String value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+
+    // A length read from the frame, checked against what is left of it before anything is allocated for it
+    private static void checkLength(ByteBuffer in, int length)
+    {
+        if(length > in.remaining())
+        {
+            throw new IllegalArgumentException("Invalid length " + length + " with " + in.remaining() + " bytes left in the frame");
+        }
+    }
+
+    public static void writeBytes(DataOutputStream out, byte[] value) throws IOException
+    {
+        if(value == null)
+        {
+            out.writeInt(-1);
+            return;
+        }
+
+        out.writeInt(value.length);
+        out.write(value);
+    }
+
+    public static byte[] readBytes(ByteBuffer in)
+    {
+        int length = in.getInt();
+
+        if(length < 0)
+        {
+            return null;
+        }
+
+        checkLength(in, length);
+        byte[] value = new byte[length];
+        in.get(value);
+        return value;
+    }
+
+    // Public keys travel as their X.509 encoding, same as the serverKey.pub file
+    public static void writePublicKey(DataOutputStream out, PublicKey key) throws IOException
+    {
+        writeBytes(out, key == null ? null : key.getEncoded());
+    }
+
+    public static PublicKey readPublicKey(ByteBuffer in) throws Exception
+    {
+        byte[] encoded = readBytes(in);
+
+        if(encoded == null)
+        {
+            return null;
+        }
+
+        return KeyFactory.getInstance("RSA").generatePublic(new X509EncodedKeySpec(encoded));
+    }
+
+    public static void writeItem(DataOutputStream out, AuctionItem item) throws IOException
+    {
+        out.writeInt(item.itemID);
+        writeString(out, item.name);
+        writeString(out, item.description);
+        out.writeInt(item.highestBid);
+        out.writeLong(item.endTime);
+    }
+
+    public static AuctionItem readItem(ByteBuffer in)
+    {
+        AuctionItem item = new AuctionItem();
+        item.itemID = in.getInt();
+        item.name = readString(in);
+        item.description = readString(in);
+        item.highestBid = in.getInt();
+        item.endTime = in.getLong();
+        return item;
+    }
+
+    public static void writeHistoryPage(DataOutputStream out, BidHistoryPage page) throws IOException
+    {
+        out.writeInt(page.itemID);
+        out.writeInt(page.nextCursor);
+        out.writeInt(page.totalBids);
+        out.writeInt(page.userIDs.length);
+        for(int i = 0; i < page.userIDs.length; i++)
+        {
+            out.writeInt(page.userIDs[i]);
+            out.writeInt(page.prices[i]);
+            out.writeLong(page.times[i]);
+        }
+    }
+
+    public static BidHistoryPage readHistoryPage(ByteBuffer in)
+    {
+        BidHistoryPage page = new BidHistoryPage();
+        page.itemID = in.getInt();
+        page.nextCursor = in.getInt();
+        page.totalBids = in.getInt();
+        int count = in.getInt();
+        page.userIDs = new int[count];
+        page.prices = new int[count];
+        page.times = new long[count];
+        for(int i = 0; i < count; i++)
+        {
+            page.userIDs[i] = in.getInt();
+            page.prices[i] = in.getInt();
+            page.times[i] = in.getLong();
+        }
+        return page;
+    }
+
+    public static void writeSaleItem(DataOutputStream out, AuctionSaleItem item) throws IOException
+    {
+        writeString(out, item.name);
+        writeString(out, item.description);
+        out.writeInt(item.reservePrice);
+        out.writeLong(item.endTime);
+    }
+
+    public static AuctionSaleItem readSaleItem(ByteBuffer in)
+    {
+        AuctionSaleItem item = new AuctionSaleItem();
+        item.name = readString(in);
+        item.description = readString(in);
+        item.reservePrice = in.getInt();
+        item.endTime = in.getLong();
+        return item;
+    }
+}
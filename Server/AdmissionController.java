@@ -0,0 +1,217 @@
+import java.rmi.RemoteException;
+import java.util.concurrent.TimeUnit;
+
+// Limits how many requests of each kind the Frontend sends to the primaries at once
+// Reads, bids, login handshakes and other writes each get their own budget, so a flood of one kind
+// (e.g. bids in a flash sale) cant starve the others
+//
+// Each budget's limit adapts to the latency the Frontend sees from the primaries: it grows while recent calls are about
+// as fast as the long term average, and shrinks when latency climbs or calls fail, so the primary is kept just busy enough
+// Requests over the limit wait in a short queue, and when that is full or the wait runs out they are turned away
+// at once with a ServerBusyException, rather than every request getting slower
+//
+// Configured with system properties:
+//   auction.admission               false to admit everything (default true)
+//   auction.admission.<kind>.limit  most in flight for reads, bids, logins or writes (defaults 512, 256, 64, 128)
+//   auction.admission.<kind>.queue  most waiting for a slot (defaults to the limit)
+//   auction.admission.maxWaitMs     longest a request waits for a slot (default 50)
+//   auction.admission.tolerance     how many times the long term latency counts as overloaded (default 1.5)
+public class AdmissionController
+{
+    // The smallest any limit shrinks to, so the primary is never cut off completely
+    private static final int MIN_LIMIT = 4;
+
+    // A call to make once admitted
+    public interface Admitted<T>
+    {
+        T call() throws RemoteException;
+    }
+
+    public final Budget reads = new Budget("reads", 512);
+    public final Budget bids = new Budget("bids", 256);
+    public final Budget logins = new Budget("logins", 64);
+    public final Budget writes = new Budget("writes", 128);
+
+    private static final boolean enabled = Boolean.parseBoolean(System.getProperty("auction.admission", "true"));
+    private static final long maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(Long.getLong("auction.admission.maxWaitMs", 50));
+    private static final double tolerance = Double.parseDouble(System.getProperty("auction.admission.tolerance", "1.5"));
+
+    public static class Budget
+    {
+        private final String name;
+        private final String spanName;
+        private final int maxLimit;
+        private final int maxQueued;
+
+        private double limit;
+        private int inFlight;
+        private int queued;
+
+        // Recent and long term average latency of admitted calls
+        private double shortNanos;
+        private double longNanos;
+        private long lastDecrease;
+
+        private long admitted;
+        private long queuedTotal;
+        private long rejected;
+
+        Budget(String name, int defaultLimit)
+        {
+            this.name = name;
+            this.spanName = "admission " + name;
+            this.maxLimit = Math.max(MIN_LIMIT, Integer.getInteger("auction.admission." + name + ".limit", defaultLimit));
+            this.maxQueued = Integer.getInteger("auction.admission." + name + ".queue", maxLimit);
+            this.limit = Math.max(MIN_LIMIT, maxLimit / 4);
+        }
+
+        // Run the call once there is room for it, or throw ServerBusyException without running it
+        public <T> T admit(Admitted<T> call) throws RemoteException
+        {
+            if(!enabled)
+            {
+                return call.call();
+            }
+
+            Trace.Span span = Trace.span(spanName);
+
+            try
+            {
+                acquire();
+            }
+            finally
+            {
+                span.close();
+            }
+
+            long start = System.nanoTime();
+            boolean succeeded = false;
+
+            try
+            {
+                T result = call.call();
+                succeeded = true;
+                return result;
+            }
+            finally
+            {
+                release(System.nanoTime() - start, succeeded);
+            }
+        }
+
+        private synchronized void acquire() throws ServerBusyException
+        {
+            if(inFlight < (int) limit)
+            {
+                inFlight++;
+                admitted++;
+                return;
+            }
+
+            if(queued >= maxQueued)
+            {
+                rejected++;
+                throw new ServerBusyException("Server busy, too many " + name + " in progress, try again shortly");
+            }
+
+            queued++;
+            queuedTotal++;
+
+            try
+            {
+                long deadline = System.nanoTime() + maxWaitNanos;
+
+                while(inFlight >= (int) limit)
+                {
+                    long remaining = deadline - System.nanoTime();
+
+                    if(remaining <= 0)
+                    {
+                        rejected++;
+                        throw new ServerBusyException("Server busy, timed out waiting to run " + name + ", try again shortly");
+                    }
+
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                }
+
+                inFlight++;
+                admitted++;
+            }
+            catch(InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                rejected++;
+                throw new ServerBusyException("Interrupted waiting to run " + name);
+            }
+            finally
+            {
+                queued--;
+            }
+        }
+
+        // Record the call's latency and move the limit, then wake the waiting requests
+        // The limit follows the ratio of the long term latency to the recent latency: while recent calls are no slower
+        // than tolerance times the long term average it keeps growing by about its square root, and once they are
+        // slower it shrinks in proportion, never by more than half at a time
+        private synchronized void release(long latencyNanos, boolean succeeded)
+        {
+            boolean busy = inFlight >= limit / 2;
+            inFlight--;
+
+            shortNanos = shortNanos == 0 ? latencyNanos : shortNanos * 0.8 + latencyNanos * 0.2;
+            longNanos = longNanos == 0 ? latencyNanos : longNanos * (1 - 1.0 / 600) + latencyNanos / 600.0;
+
+            // After a long overload the long term average has drifted up, pull it back towards the recent latency
+            if(longNanos > shortNanos * 2)
+            {
+                longNanos *= 0.95;
+            }
+
+            if(!succeeded)
+            {
+                // Failed calls mean the primary is in trouble, shrink at most once per round trip
+                long now = System.nanoTime();
+
+                if(now - lastDecrease > shortNanos)
+                {
+                    limit = Math.max(MIN_LIMIT, limit * 0.9);
+                    lastDecrease = now;
+                }
+            }
+            else if(busy) // Leave the limit alone while it isnt being used, there is nothing to learn
+            {
+                double gradient = Math.max(0.5, Math.min(1.0, tolerance * longNanos / shortNanos));
+                double newLimit = limit * gradient + Math.sqrt(limit);
+                limit = Math.max(MIN_LIMIT, Math.min(maxLimit, limit * 0.8 + newLimit * 0.2));
+            }
+
+            notifyAll();
+        }
+
+        public synchronized int getLimit()
+        {
+            return (int) this.limit;
+        }
+
+        public synchronized long getRejected()
+        {
+            return this.rejected;
+        }
+
+        public synchronized String getStats()
+        {
+            return String.format("%s: limit %d/%d, %d in flight, %d queued, %d admitted, %d waited, %d rejected, latency %.2fms (long term %.2fms)",
+                name, (int) limit, maxLimit, inFlight, queued, admitted, queuedTotal, rejected, shortNanos / 1e6, longNanos / 1e6);
+        }
+    }
+
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    public String getStats()
+    {
+        return "Admission control:\n  " + reads.getStats() + "\n  " + bids.getStats() + "\n  " + logins.getStats() + "\n  " + writes.getStats();
+    }
+}
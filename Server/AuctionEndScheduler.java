@@ -0,0 +1,103 @@
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Closes auctions when their end time comes, see Backend.closeExpired
+// End times go into a TimingWheel, so scheduling costs the same with millions of auctions waiting as with one,
+// and when one expires the close itself runs on a small pool, keeping the wheel's thread free to keep time
+// How late each close finished after its end time is recorded and printed every auction.statsSeconds
+//
+// Configured with system properties:
+//   auction.endTickMs      resolution of the timing wheel, auctions close at most about this late (default 10)
+//   auction.closerThreads  threads closing expired auctions (default 4)
+//   auction.statsSeconds   how often to print the close lag, 0 to turn off (default 60)
+public class AuctionEndScheduler
+{
+    // Closes the auction if it is still open and still due to end at endTime, returns whether it closed it
+    public interface Closer
+    {
+        boolean closeExpired(int itemID, long endTime);
+    }
+
+    private final Closer closer;
+    private final TimingWheel wheel;
+    private RequestExecutor closers;
+
+    // Milliseconds from each auction's end time to its close finishing
+    private final LatencyHistogram closeLag = new LatencyHistogram();
+    private final AtomicLong skipped = new AtomicLong();
+
+    public AuctionEndScheduler(Closer closer)
+    {
+        this.closer = closer;
+        this.wheel = new TimingWheel("auction-end-timer", Long.getLong("auction.endTickMs", 10), this::expired);
+    }
+
+    // Close the item at endTime (epoch ms), a time already past closes it straight away
+    public void schedule(int itemID, long endTime)
+    {
+        start();
+        wheel.schedule(itemID, endTime);
+    }
+
+    // Started by the first schedule, so backups, which never schedule, dont run the threads
+    private synchronized void start()
+    {
+        if(closers != null)
+        {
+            return;
+        }
+
+        closers = new RequestExecutor("platform", 10000, Integer.getInteger("auction.closerThreads", 4));
+
+        int statsSeconds = Integer.getInteger("auction.statsSeconds", 60);
+
+        if(statsSeconds > 0)
+        {
+            ScheduledExecutorService statsPrinter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "auction-end-stats");
+                thread.setDaemon(true);
+                return thread;
+            });
+            statsPrinter.scheduleAtFixedRate(() -> {
+                if(closeLag.getCount() > 0)
+                {
+                    Log.info("{}", getStats());
+                }
+            }, statsSeconds, statsSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    // On the wheel's thread, hand the close to the pool, which blocks here if thousands are already waiting
+    private void expired(int itemID, long endTime)
+    {
+        closers.execute(() -> {
+            if(closer.closeExpired(itemID, endTime))
+            {
+                closeLag.record(System.currentTimeMillis() - endTime);
+            }
+            else
+            {
+                // Closed by its seller first, given a new end time, or this replica is no longer the primary
+                skipped.incrementAndGet();
+            }
+        });
+    }
+
+    public LatencyHistogram getCloseLag()
+    {
+        return this.closeLag;
+    }
+
+    public long getScheduled()
+    {
+        return this.wheel.size();
+    }
+
+    public String getStats()
+    {
+        return String.format("Auction end times: %d waiting, %d closed, %d skipped, close lag ms %s",
+            wheel.size(), closeLag.getCount(), skipped.get(), closeLag.summary());
+    }
+}
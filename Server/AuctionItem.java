@@ -4,4 +4,5 @@ public class AuctionItem implements java.io.Serializable
     String name;
     String description;
     int highestBid;
+    long endTime; // When the auction closes by itself, epoch ms, 0 if it only closes when the seller closes it
 }
\ No newline at end of file
@@ -1,24 +1,45 @@
 import java.io.Serializable;
 
+// One auction, the only place its details, seller, highest bid and state are kept, see ItemStore
+// Clients are sent an AuctionItem made from it by toAuctionItem when they ask for one, so nothing is stored twice
 public class AuctionItemObject implements Serializable
 {
     private int ID;
+    private int sellerID;
     private String name;
     private String description;
     private int reservePrice;
-    private int highestBid;
-    private RegisteredUser highestBidder;
-    private Boolean isOpen;
-    private AuctionItem matchingItem;
+    // Both only change under the item's lock, but are read without it, e.g. to turn away bids that are already too low
+    private volatile int highestBid;
+    private volatile boolean isOpen;
+    private int highestBidderID;
+    private long endTime;
+    private long closeTime;
 
     public AuctionItemObject(int ID)
     {
         this.ID = ID;
         this.reservePrice = 0;
         this.highestBid = 0;
+        this.highestBidderID = -1;
         this.isOpen = true;
     }
 
+    public int getID()
+    {
+        return this.ID;
+    }
+
+    public int getSellerID()
+    {
+        return this.sellerID;
+    }
+
+    public void setSellerID(int userID)
+    {
+        this.sellerID = userID;
+    }
+
     public String getName()
     {
         return this.name;
@@ -59,14 +80,15 @@ public class AuctionItemObject implements Serializable
         this.highestBid = bid;
     }
 
-    public RegisteredUser getHighestBidder()
+    // User ID of the highest bidder, -1 if nobody has bid
+    public int getHighestBidderID()
     {
-        return this.highestBidder;
+        return this.highestBidderID;
     }
 
-    public void setHighestBidder(RegisteredUser user)
+    public void setHighestBidderID(int userID)
     {
-        this.highestBidder = user;
+        this.highestBidderID = userID;
     }
 
     public boolean isOpen()
@@ -79,13 +101,38 @@ public class AuctionItemObject implements Serializable
         this.isOpen = status;
     }
 
-    public AuctionItem getMatchingItem()
+    // When the auction closes by itself, epoch ms, 0 if it has no end time
+    public long getEndTime()
+    {
+        return this.endTime;
+    }
+
+    public void setEndTime(long endTime)
+    {
+        this.endTime = endTime;
+    }
+
+    // When the auction closed, epoch ms, 0 while it is open
+    public long getCloseTime()
+    {
+        return this.closeTime;
+    }
+
+    public void setCloseTime(long closeTime)
     {
-        return this.matchingItem;
+        this.closeTime = closeTime;
     }
 
-    public void setAuctionItem(AuctionItem item)
+    // The auction as clients see it, made fresh for each reply so later bids dont change one already sent
+    public AuctionItem toAuctionItem()
     {
-        this.matchingItem = item;
+        AuctionItem item = new AuctionItem();
+        item.itemID = this.ID;
+        item.name = this.name;
+        item.description = this.description;
+        item.highestBid = this.highestBid;
+        item.endTime = this.endTime;
+
+        return item;
     }
 }
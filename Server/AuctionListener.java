@@ -0,0 +1,9 @@
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+
+// Remote callback a client exports and passes to Auction.subscribe to be told about changes to the items it watches
+// Events are delivered in batches, and onEvents should return quickly, a slow listener only gets its events merged
+public interface AuctionListener extends Remote
+{
+    public void onEvents(AuctionEvent[] events) throws RemoteException;
+}
@@ -12,6 +12,24 @@ public interface AuctionReplica extends Remote
     public boolean updateReplicaStates() throws RemoteException;
     public boolean isAlive() throws RemoteException;
 
+    // The same state compressed, see PackedState, the codecs this replica accepts come first in the order it prefers them
+    // getPackedState returns null for a codec the replica doesnt support
+    public String[] getStateCodecs() throws RemoteException;
+    public PackedState getPackedState(String codec) throws RemoteException;
+    public boolean updatePackedState(PackedState packedState) throws RemoteException;
+
+    // The shard's elected primary is kept on its replicas so every frontend sees the same one
+    public boolean isPrimary() throws RemoteException;
+    public String getElectedPrimary() throws RemoteException;
+    public boolean setElectedPrimary(String registryName) throws RemoteException;
+
+    // How up to date this replica is, with a digest of its auctions if asked, used to measure lag and divergence
+    public ReplicationStatus getReplicationStatus(boolean withDigest) throws RemoteException;
+
+    // Copy a user or token issued by the home shard to this shard, so it can validate them itself
+    public boolean installUser(String email, int userID, PublicKey pubKey) throws RemoteException;
+    public boolean installToken(int userID, TokenInfo tokenInfo) throws RemoteException;
+
     public Integer register(String email, PublicKey pubKey) throws RemoteException;
     public ChallengeInfo challenge(int userID, String clientChallenge) throws RemoteException;
     public TokenInfo authenticate(int userID, byte signature[]) throws RemoteException;
@@ -20,5 +38,14 @@ public interface AuctionReplica extends Remote
     public AuctionItem[] listItems(int userID, String token) throws RemoteException;
     public AuctionResult closeAuction(int userID, int itemID, String token) throws RemoteException;
     public boolean bid(int userID, int itemID, int price, String token) throws RemoteException;
+    public boolean proxyBid(int userID, int itemID, int maxPrice, int increment, String token) throws RemoteException;
+    public BidHistoryPage getBidHistory(int userID, int itemID, int cursor, String token) throws RemoteException;
     public int getPrimaryReplicaID() throws RemoteException;
+    public AuctionItem[] getSpecs(int userID, int[] itemIDs, String token) throws RemoteException;
+    public Integer[] newAuctions(int userID, AuctionSaleItem[] items, String token) throws RemoteException;
+    public boolean[] bids(int userID, int[] itemIDs, int[] prices, String token) throws RemoteException;
+    public boolean subscribe(int userID, int itemID, AuctionListener listener, String token) throws RemoteException;
+    public boolean unsubscribe(int userID, int itemID, String token) throws RemoteException;
+    public MetricsReport[] getMetrics() throws RemoteException;
+    public TracedResult traced(long traceID, String method, Object[] args) throws RemoteException;
 }
@@ -3,4 +3,5 @@ public class AuctionSaleItem implements java.io.Serializable
     String name;
     String description;
     int reservePrice;
+    long endTime; // Close the auction automatically at this time, epoch ms, 0 for no end time
 }
@@ -14,28 +14,65 @@ import java.security.*;
 import java.security.spec.PKCS8EncodedKeySpec;
 import java.security.spec.X509EncodedKeySpec;
 import java.util.Base64;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 // Security packages
 
 
 public class Backend implements Auction
 {
-    public static String id;
+    protected String id;
 
-    protected Map<Integer, AuctionItem> auctionItems;
     protected Map<String, RegisteredUser> registeredUsers;
-    protected Map<Integer, AuctionItemObject> auctionItemObjects;
-    protected Map<AuctionItem, Integer> auctionsMap;
+
+    // Every auction, open or closed, by item ID, closed ones are kept for their results, history and the export
+    // On the heap or in direct memory as auction.itemStore picks, see ItemStore
+    protected ItemStore auctionStore;
     protected Map<Integer, TokenInfo> userTokens;
     protected Map<Integer, String> challengeMap;
 
     private PrivateKey serverPrivateKey;
 
-    private int uniqueItemID;
-    private int uniqueUserID;
+    protected final AtomicInteger uniqueItemID = new AtomicInteger();
+    protected final AtomicInteger uniqueUserID = new AtomicInteger();
+
+    // Pushes bid and close events to the users watching each item
+    protected final EventDispatcher events = new EventDispatcher();
+
+    // Bids on each item go through a single writer that applies only the highest of each batch
+    protected final BidSequencer bidSequencer = new BidSequencer(this::applyBid);
+
+    // Every highest bid each item has had, itemID -> history, kept after the item closes for disputes
+    protected Map<Integer, BidHistory> bidHistories;
+
+    // Most bids returned in one page of getBidHistory
+    private static final int historyPageSize = Integer.getInteger("auction.historyPageSize", 500);
+
+    // Proxy bids waiting on each item, itemID -> book, only changed under the item's lock
+    protected Map<Integer, ProxyBook> proxyBooks;
+
+    // Closes auctions with an end time when it comes, only the primary schedules them
+    protected final AuctionEndScheduler endScheduler = new AuctionEndScheduler(this::closeExpired);
+
+    // Results of closed auctions, so the seller can still fetch the result of one that closed by its end time
+    protected Map<Integer, AuctionResult> closedResults;
+
+    // Bumped by every change to the state, so replication can tell whether there is anything new to send
+    protected final AtomicLong stateVersion = new AtomicLong();
+
+    // Latency and counts of every operation, recorded by the wrapper the backend is exported through, see OperationMetrics
+    protected final OperationMetrics metrics = new OperationMetrics("Backend");
+
+    // Writes closed auctions out for analytics, on a schedule when auction.exportFile is set, only the primary exports
+    protected final ClosedAuctionExporter exporter = new ClosedAuctionExporter(() -> auctionStore, this::winnerOf, this::schedulesAuctionEnds);
+
+    // Which shard this backend serves and how many there are, item IDs are allocated so that itemID % shardCount == shard
+    protected int shard = 0;
+    protected int shardCount = 1;
 
     // Server private key stored in local server directory
     private static String privateKeyPath = "./serverKeyPriv.key";
@@ -45,14 +82,17 @@ public class Backend implements Auction
     {
         super();
         id = passedID;
-
-        // Create hash maps
-        this.auctionItems = new HashMap<>();
-        this.registeredUsers = new HashMap<>();
-        this.auctionItemObjects = new HashMap<>();
-        this.auctionsMap = new HashMap<>();
-        this.userTokens = new HashMap<>();
-        this.challengeMap = new HashMap<>();
+        metrics.setSource("Backend " + passedID);
+
+        // Create hash maps, concurrent since requests can be served by many threads at once
+        this.registeredUsers = new ConcurrentHashMap<>();
+        this.auctionStore = ItemStore.create(shard, shardCount);
+        this.userTokens = new ConcurrentHashMap<>();
+        this.challengeMap = new ConcurrentHashMap<>();
+        this.closedResults = new ConcurrentHashMap<>();
+        this.proxyBooks = new ConcurrentHashMap<>();
+        this.bidHistories = new ConcurrentHashMap<>();
+        this.exporter.start();
 
         try
         {
@@ -64,7 +104,7 @@ public class Backend implements Auction
                 // Load existing keys
                 this.serverPrivateKey = loadPrivateKey(privateKeyPath);
                 PublicKey publicKey = loadPublicKey(publicKeyPath);
-                System.out.println("Loaded existing RSA key pair.");
+                Log.info("Loaded existing RSA key pair");
             }
             else
             {
@@ -76,49 +116,41 @@ public class Backend implements Auction
                 storePrivateKey(keyPair.getPrivate(), privateKeyPath);
 
                 this.serverPrivateKey = keyPair.getPrivate();
-                System.out.println("Generated new RSA key pair.");
+                Log.info("Generated new RSA key pair");
             }
         }
         catch (Exception e)
         {
-            System.err.println("Exception during key pair loading/generation:");
-            e.printStackTrace();
+            Log.error("Exception during key pair loading/generation", e);
         }
     }
 
     // Added Methods for Level 3 =========================================================================
     // Method to provide a new unique item ID, increment and return new id
+    // With several shards the IDs are spaced out so that every shard's IDs are distinct and map back to the shard
     public int serveNewItemID()
     {
-        this.uniqueItemID += 1;
-        return this.uniqueItemID;
+        return this.uniqueItemID.incrementAndGet() * shardCount + shard;
     }
 
-    // Method to provide a new unique user ID, increment and return new id
-    public int serveNewUserID()
+    // Reserve count item IDs in one go for a batch of new auctions, rather than one atomic increment each
+    public int[] serveNewItemIDs(int count)
     {
-        this.uniqueUserID += 1;
-        return this.uniqueUserID;
-    }
+        int first = this.uniqueItemID.getAndAdd(count) + 1;
+        int[] itemIDs = new int[count];
 
-    // Returns an array containing AuctionItem objects from the input map
-    public AuctionItem[] convertMapToArray(Map<Integer, AuctionItem> map) {
-        try
-        {
-            AuctionItem[] itemsArray = new AuctionItem[map.size()];
-            int index = 0;
-            for (AuctionItem item : map.values()) {
-                // Assign each AuctionItem to the array and increment the index
-                itemsArray[index++] = item;
-            }
-            return itemsArray;
-        }
-        catch (Exception e)
+        for(int i = 0; i < count; i++)
         {
-            System.out.println("Exception while converting map to array:");
-            e.printStackTrace();
-            return null;
+            itemIDs[i] = (first + i) * shardCount + shard;
         }
+
+        return itemIDs;
+    }
+
+    // Method to provide a new unique user ID, increment and return new id
+    public int serveNewUserID()
+    {
+        return this.uniqueUserID.incrementAndGet();
     }
 
     // Get user email by user ID, loop through hashmap of users and compare IDs
@@ -132,10 +164,23 @@ public class Backend implements Auction
             }
         }
 
-        System.out.println("Search for user via ID: User with userID " + userID + " not found.");
+        Log.debug("No user found userID={}", userID);
         return null;
     }
 
+    // Mark the state as changed, called by every operation that changes it once the change is made, under the same lock
+    // A push that read the new version then always sends the change, see Replica.updateReplicaStates
+    // Calls that are turned away, e.g. for a bad token or a bid that is too low, dont change anything and dont call it
+    protected void stateChanged()
+    {
+        stateVersion.incrementAndGet();
+    }
+
+    public long getStateVersion()
+    {
+        return this.stateVersion.get();
+    }
+
     // Check if a user exists based on user ID by iterating through each user and comparing IDs
     public boolean userExists(int userID)
     {
@@ -149,10 +194,17 @@ public class Backend implements Auction
         return false;
     }
 
-    // Check if the item key is present in the auctionItems hashmap
+    // Check if the item is present in the auction store and still open
     public boolean itemExists(int itemID)
     {
-        return auctionItems.containsKey(itemID);
+        return auctionStore.isOpen(itemID);
+    }
+
+    // Email of the winner of a closed auction, null if nobody bid or it isnt closed, for the export
+    private String winnerOf(int itemID)
+    {
+        AuctionResult result = closedResults.get(itemID);
+        return result != null ? result.winningEmail : null;
     }
 
     // Register a new user with a unique ID or return existing ID if the email is already registered
@@ -165,7 +217,8 @@ public class Backend implements Auction
                 // Return existing user ID if the email is already registered
                 RegisteredUser existingUser = registeredUsers.get(email);
                 existingUser.setPublicKey(clientPubKey); // Still, update key if changed
-                System.out.println("User with email " + email + " already registered. Returning existing ID: " + existingUser.getID());
+                stateChanged();
+                Log.debug("User already registered email={} userID={}", email, existingUser.getID());
 
                 return existingUser.getID();
             }
@@ -174,15 +227,15 @@ public class Backend implements Auction
                 // Register a new user with a unique ID
                 int nextUserID = serveNewUserID();
                 registeredUsers.putIfAbsent(email, new RegisteredUser(email, nextUserID, clientPubKey));
-                System.out.println("User Registered\nEmail: " + email + "\nID: " + nextUserID);
+                stateChanged();
+                Log.info("User registered email={} userID={}", email, nextUserID);
 
                 return nextUserID;
             }
         }
         catch(Exception e)
         {
-            System.out.println("Exception for registering user:");
-            e.printStackTrace();
+            Log.error("Exception for registering user", e);
             return null;
         }
     }
@@ -195,29 +248,28 @@ public class Backend implements Auction
             // Check if token is valid and has not expired
             if(isValidToken(userID, token) == false)
             {
-                System.out.println("User (" + userID + ") has an invalid or expired token");
+                Log.debug("Invalid or expired token userID={}", userID);
                 return null;
             }
 
             // Check if item exists in hashmap
             if(itemExists(itemID) == false)
             {
-                System.out.println("User tried fetching item (ID: " + itemID + ") that doesnt exist");
+                Log.debug("getSpec of missing item userID={} itemID={}", userID, itemID);
                 return null;
             }
 
             // Retrieve auction item object from the map using the given ID
-            AuctionItem reqItem = auctionItems.get(itemID);
+            AuctionItem reqItem = auctionStore.toAuctionItem(itemID);
 
             // Log details to terminal
-            System.out.println("User ID: " + userID + " fetched specification of item: " + itemID);
+            Log.debug("getSpec userID={} itemID={}", userID, itemID);
 
             return reqItem;
         }
         catch(Exception e)
         {
-            System.out.println("User ID: " + userID + " tried accessing item: " + itemID + "\n Exception: ");
-            e.printStackTrace();
+            Log.error("Exception fetching item userID={} itemID={}", userID, itemID, e);
 
             return null;
         }
@@ -231,51 +283,67 @@ public class Backend implements Auction
             // Check if token is valid and has not expired
             if(isValidToken(userID, token) == false)
             {
-                System.out.println("User (" + userID + ") has an invalid or expired token");
+                Log.debug("Invalid or expired token userID={}", userID);
                 return null;
             }
 
             // Check if the user exists
             if (!this.userExists(userID))
             {
-                System.out.println("Non-registered user attempted to create an auction");
+                Log.warn("Unregistered user tried to create an auction userID={}", userID);
                 return null;
             }
 
-            // Generate a new item ID
-            int newItemID = this.serveNewItemID();
+            return createAuction(userID, item, this.serveNewItemID(), true);
+        }
+        catch(Exception e)
+        {
+            Log.error("Exception while creating a new auction", e);
+            return null;
+        }
+    }
 
-            // Create auction item and object
-            AuctionItem auctionItem = new AuctionItem();
-            auctionItem.itemID = newItemID;
-            auctionItem.name = item.name;
-            auctionItem.description = item.description;
-            auctionItem.highestBid = 0;
+    // Create the object for a new auction under the given ID and add it to the map, caller has already validated the user
+    // Returns null if the item is missing its name or its end time has already passed
+    // Batches leave out the per item logging, a bulk import would otherwise spend most of its time printing
+    private Integer createAuction(int userID, AuctionSaleItem item, int newItemID, boolean logDetails)
+    {
+        if(item == null || item.name == null)
+        {
+            Log.debug("Auction without a name rejected userID={}", userID);
+            return null;
+        }
 
-            AuctionItemObject itemObject = new AuctionItemObject(newItemID);
-            itemObject.setName(item.name);
-            itemObject.setDescription(item.description);
-            itemObject.setReservePrice(item.reservePrice);
+        if(item.endTime != 0 && item.endTime <= System.currentTimeMillis())
+        {
+            Log.debug("Auction ending in the past rejected userID={} endTime={}", userID, item.endTime);
+            return null;
+        }
 
-            // Update maps with the new auction item and object
-            auctionsMap.put(auctionItem, userID);
-            auctionItems.put(newItemID, auctionItem);
-            auctionItemObjects.put(newItemID, itemObject);
+        // Create auction object
+        AuctionItemObject itemObject = new AuctionItemObject(newItemID);
+        itemObject.setSellerID(userID);
+        itemObject.setName(item.name);
+        itemObject.setDescription(item.description);
+        itemObject.setReservePrice(item.reservePrice);
+        itemObject.setEndTime(item.endTime);
 
-            // Log details to server terminal
-            System.out.println("New Auction Created\nItem ID: " + auctionItem.itemID +
-                    "\nName: " + auctionItem.name +
-                    "\nDescription: " + auctionItem.description +
-                    "\nReserve Price: " + item.reservePrice);
+        // Update the store with the new auction object
+        auctionStore.add(itemObject);
+        stateChanged();
 
-            return newItemID;
+        if(item.endTime != 0 && schedulesAuctionEnds())
+        {
+            endScheduler.schedule(newItemID, item.endTime);
         }
-        catch(Exception e)
+
+        // Log details to server terminal
+        if(logDetails)
         {
-            System.out.println("Exception while creating a new auction:");
-            e.printStackTrace();
-            return null;
+            Log.info("Auction created itemID={} sellerID={} name={} reservePrice={}", newItemID, userID, item.name, item.reservePrice);
         }
+
+        return newItemID;
     }
 
     // List all auction items
@@ -286,28 +354,27 @@ public class Backend implements Auction
             // Check if the user exists
             if (!this.userExists(userID))
             {
-                System.out.println("Non-registered user attempted to create an auction");
+                Log.warn("Unregistered user tried to create an auction userID={}", userID);
                 return null;
             }
 
             // Check if token is valid and has not expired
             if(isValidToken(userID, token) == false)
             {
-                System.out.println("User (" + userID + ") has an invalid or expired token");
+                Log.debug("Invalid or expired token userID={}", userID);
                 return null;
             }
 
             // Requires converting hashmap to return an array
-            AuctionItem[] itemsArray = convertMapToArray(auctionItems);
+            AuctionItem[] itemsArray = auctionStore.listOpen();
 
             // Log details to server terminal
-            System.out.println("Auction items listed to user");
+            Log.debug("listItems userID={}", userID);
             return itemsArray;
         }
         catch(Exception e)
         {
-            System.out.println("Exception while listing auction items:");
-            e.printStackTrace();
+            Log.error("Exception while listing auction items", e);
             return null;
         }
     }
@@ -320,71 +387,157 @@ public class Backend implements Auction
             // Check if token is valid and has not expired
             if(isValidToken(userID, token) == false)
             {
-                System.out.println("User (" + userID + ") has an invalid or expired token");
+                Log.debug("Invalid or expired token userID={}", userID);
                 return null;
             }
 
             // Check if item exists
             if(itemExists(itemID) == false)
             {
-                System.out.println("User tried closing Auction Item (ID: " + itemID + ") that doesnt exist");
+                // It may have closed by its end time, the seller can still fetch the result
+                AuctionResult closedResult = closedResults.get(itemID);
+
+                if(closedResult != null && isSeller(userID, itemID))
+                {
+                    return closedResult;
+                }
+
+                Log.debug("closeAuction of missing item userID={} itemID={}", userID, itemID);
                 return null;
             }
 
             // Check if the user exists
             if (!this.userExists(userID))
             {
-                System.out.println("Non-registered user attempted to close an auction");
+                Log.warn("Unregistered user tried to close an auction userID={}", userID);
                 return null;
             }
 
-            // Fetch item and object user wishes to close
-            AuctionItem closedItem = auctionItems.get(itemID);
-            AuctionItemObject closedObject = auctionItemObjects.get(itemID);
-
             // Check if the auction belongs to the user
-            if (this.auctionsMap.get(closedItem) != userID)
+            if (!isSeller(userID, itemID))
             {
-                System.out.println("User ID " + userID + " attempted to close an auction that didn't belong to them");
+                Log.warn("User tried to close an auction that isnt theirs userID={} itemID={}", userID, itemID);
                 return null;
             }
 
+            return finishAuction(itemID);
+        }
+        catch(Exception e)
+        {
+            Log.error("Exception while closing auction", e);
+            return null;
+        }
+    }
+
+    // Check if the user created the auction, works for closed auctions too
+    private boolean isSeller(int userID, int itemID)
+    {
+        return auctionStore.getSellerID(itemID) == userID;
+    }
+
+    // Close an open auction and work out its result, shared by closeAuction and the auction end scheduler
+    // Done under the item's lock, the same one bids take, so a seller closing it just as its end time comes cant close it twice
+    // and no bid lands between working out the winner and closing
+    private AuctionResult finishAuction(int itemID)
+    {
+        AuctionResult result = new AuctionResult();
+
+        synchronized (auctionStore.lock(itemID))
+        {
+            if(!auctionStore.isOpen(itemID))
+            {
+                return closedResults.get(itemID);
+            }
+
             // Get the winning user and create result object to return
-            RegisteredUser winningUser = auctionItemObjects.get(itemID).getHighestBidder();
-            AuctionResult result = new AuctionResult();
+            int winningUserID = auctionStore.getHighestBidderID(itemID);
 
-            // If the item exists but there is no getHighestBidder, that means no one has bid on the item
-            if(winningUser != null)
+            // If the item exists but there is no highest bidder, that means no one has bid on the item
+            if(winningUserID >= 0)
             {
-                result.winningEmail = winningUser.getEmail();
-                result.winningPrice = closedObject.getHighestBid();
+                result.winningEmail = getEmailByUserID(winningUserID);
+                result.winningPrice = auctionStore.getHighestBid(itemID);
 
                 // Log details to server terminal
-                System.out.println("Auction closed\nWinner: " + result.winningEmail +
-                        "\nWinning Price: " + result.winningPrice);
+                Log.info("Auction closed itemID={} winner={} price={}", itemID, result.winningEmail, result.winningPrice);
             }
             else // So tell the user if no one has bid
             {
                 result.winningEmail = null;
-                result.winningPrice = closedObject.getHighestBid();
+                result.winningPrice = auctionStore.getHighestBid(itemID);
 
-                System.out.println("Auction closed, no one bid on the item");
+                Log.info("Auction closed itemID={} with no bids", itemID);
+            }
+
+            // Keep the item details in the store but mark it closed
+            // So that the item details remain stored e.g. for delivery or item purchase history
+            // But its not listed as an available item to bid on when user calls listItems
+            auctionStore.close(itemID, System.currentTimeMillis());
+            closedResults.put(itemID, result);
+            proxyBooks.remove(itemID);
+            stateChanged();
+        }
+
+        bidSequencer.remove(itemID);
+
+        // Tell the users watching the item, this also ends their subscriptions
+        events.publishClosed(itemID, result.winningEmail, result.winningPrice);
+
+        return result;
+    }
+
+    // Called by the auction end scheduler when an item's end time comes
+    // Skipped if the item was closed already, or this server isnt the primary anymore so the new primary closes it instead
+    private boolean closeExpired(int itemID, long endTime)
+    {
+        try
+        {
+            if(!schedulesAuctionEnds() || !auctionStore.isOpen(itemID) || auctionStore.getEndTime(itemID) != endTime)
+            {
+                return false;
             }
 
-            // Keep the item details as an object but remove from auctionItems map
-            // So that the item details remain stored as an object e.g. for delivery or item purchase history
-            // But remove from auctionItems so its not listed as an available item to bid on when user calls listItems
-            auctionItemObjects.get(itemID).setOpen(false);
-            auctionItems.remove(itemID);
+            finishAuction(itemID);
+            auctionClosedByEndTime(itemID);
 
-            return result;
-            
+            return true;
         }
         catch(Exception e)
         {
-            System.out.println("Exception while closing auction:");
-            e.printStackTrace();
-            return null;
+            Log.error("Exception while closing an auction at its end time", e);
+            return false;
+        }
+    }
+
+    // Whether this server closes auctions at their end times, a lone backend always does, replicas only while primary
+    protected boolean schedulesAuctionEnds()
+    {
+        return true;
+    }
+
+    // Called after an auction closes by its end time rather than through a request, replicas send the change to the backups
+    protected void auctionClosedByEndTime(int itemID)
+    {
+    }
+
+    // Schedule every open auction with an end time, used when a replica becomes primary since only the primary keeps the timers
+    // Auctions whose end time passed while there was no primary close straight away
+    protected void scheduleAuctionEnds()
+    {
+        int scheduled = 0;
+
+        for(AuctionItemObject itemObject : auctionStore)
+        {
+            if(itemObject.isOpen() && itemObject.getEndTime() != 0)
+            {
+                endScheduler.schedule(itemObject.getID(), itemObject.getEndTime());
+                scheduled++;
+            }
+        }
+
+        if(scheduled > 0)
+        {
+            Log.info("Scheduled {} auction end times", scheduled);
         }
     }
 
@@ -396,53 +549,342 @@ public class Backend implements Auction
             // Check if token is valid and has not expired
             if(isValidToken(userID, token) == false)
             {
-                System.out.println("User (" + userID + ") has an invalid or expired token");
+                Log.debug("Invalid or expired token userID={}", userID);
                 return false;
             }
 
             // Check if the user exists
             if (!this.userExists(userID))
             {
-                System.out.println("Non-registered user attempted to bid on an auction");
+                Log.warn("Unregistered user tried to bid userID={}", userID);
                 return false;
             }
 
-            // Check if item exists
-            if(itemExists(itemID) == false)
+            return placeBid(userID, itemID, price);
+        }
+        catch(Exception e)
+        {
+            Log.error("Exception while processing bid", e);
+            return false;
+        }
+    }
+
+    // Batch operations ========================================================================================
+    // Each validates the token once for the whole batch and then runs every entry, returning a result per entry
+    // The batch itself returns null if the token or user is invalid, same as the single operations
+
+    // Get details of several items, entries are null for items that dont exist
+    public AuctionItem[] getSpecs(int userID, int[] itemIDs, String token) throws RemoteException
+    {
+        try
+        {
+            if(isValidToken(userID, token) == false)
+            {
+                Log.debug("Invalid or expired token userID={}", userID);
+                return null;
+            }
+
+            AuctionItem[] items = new AuctionItem[itemIDs.length];
+
+            for(int i = 0; i < itemIDs.length; i++)
+            {
+                items[i] = auctionStore.isOpen(itemIDs[i]) ? auctionStore.toAuctionItem(itemIDs[i]) : null;
+            }
+
+            Log.debug("getSpecs userID={} items={}", userID, itemIDs.length);
+            return items;
+        }
+        catch(Exception e)
+        {
+            Log.error("Exception while fetching a batch of items", e);
+            return null;
+        }
+    }
+
+    // Create several auctions, entries are the new item IDs or null for items that couldnt be created
+    // IDs for the whole batch are reserved at once, and the batch is logged as one line
+    public Integer[] newAuctions(int userID, AuctionSaleItem[] items, String token) throws RemoteException
+    {
+        try
+        {
+            if(isValidToken(userID, token) == false)
+            {
+                Log.debug("Invalid or expired token userID={}", userID);
+                return null;
+            }
+
+            if (!this.userExists(userID))
+            {
+                Log.warn("Unregistered user tried to create a batch of auctions userID={}", userID);
+                return null;
+            }
+
+            Integer[] itemIDs = new Integer[items.length];
+            int[] reservedIDs = serveNewItemIDs(items.length);
+            int created = 0;
+
+            for(int i = 0; i < items.length; i++)
+            {
+                itemIDs[i] = createAuction(userID, items[i], reservedIDs[i], false);
+                created += itemIDs[i] != null ? 1 : 0;
+            }
+
+            // One line for the whole batch
+            if(items.length > 0)
+            {
+                Log.info("Batch of {} auctions created sellerID={} itemIDs={}-{}", created, userID, reservedIDs[0], reservedIDs[items.length - 1]);
+            }
+
+            return itemIDs;
+        }
+        catch(Exception e)
+        {
+            Log.error("Exception while creating a batch of auctions", e);
+            return null;
+        }
+    }
+
+    // Place several bids, itemIDs and prices are matched by index, entries are whether each bid was accepted
+    public boolean[] bids(int userID, int[] itemIDs, int[] prices, String token) throws RemoteException
+    {
+        try
+        {
+            if(isValidToken(userID, token) == false)
+            {
+                Log.debug("Invalid or expired token userID={}", userID);
+                return null;
+            }
+
+            if (!this.userExists(userID) || itemIDs.length != prices.length)
+            {
+                Log.debug("Invalid batch of bids userID={}", userID);
+                return null;
+            }
+
+            boolean[] results = new boolean[itemIDs.length];
+
+            for(int i = 0; i < itemIDs.length; i++)
+            {
+                try
+                {
+                    results[i] = placeBid(userID, itemIDs[i], prices[i]);
+                }
+                catch(Exception e)
+                {
+                    // Item closed while the batch was running, reject just this entry
+                    results[i] = false;
+                }
+            }
+
+            return results;
+        }
+        catch(Exception e)
+        {
+            Log.error("Exception while processing a batch of bids", e);
+            return null;
+        }
+    }
+
+    // Apply a bid for an already validated user, shared by bid and the batch bids
+    private boolean placeBid(int userID, int itemID, int price)
+    {
+        // Check if item exists
+        if(itemExists(itemID) == false)
+        {
+            Log.debug("Bid on missing item userID={} itemID={}", userID, itemID);
+            return false;
+        }
+
+        int highestBid = auctionStore.getHighestBid(itemID);
+
+        // Most bids in a storm are already too low, the highest bid only goes up so they can be turned away before queueing
+        if(price <= highestBid)
+        {
+            Log.debug("Bid rejected itemID={} price={} highest={}", itemID, price, highestBid);
+            return false;
+        }
+
+        if(bidSequencer.submit(userID, itemID, price))
+        {
+            return true;
+        }
+
+        Log.debug("Bid rejected itemID={} price={}, a higher bid was placed first", itemID, price);
+        return false;
+    }
+
+    // Update the item if the bid is still the highest, only ever called by the item's single writer in BidSequencer
+    private boolean applyBid(int userID, int itemID, int price)
+    {
+        int previousBidderID;
+        ProxyBook.Outcome outcome;
+
+        // With the sequencer turned off bids on the same item reach here at the same time, so compare and update under its lock
+        // The item may have closed since the bid was queued, closing takes the same lock
+        synchronized (auctionStore.lock(itemID))
+        {
+            if (!auctionStore.isOpen(itemID) || price <= auctionStore.getHighestBid(itemID))
             {
-                System.out.println("User tried bidding on Item (ID: " + itemID + ") that doesnt exist");
                 return false;
             }
 
-            // Fetch the item and object user wishes to bid on
-            AuctionItem itemToBid = auctionItems.get(itemID);
-            AuctionItemObject objectToBid = auctionItemObjects.get(itemID);
+            // Any proxies on the item answer the bid at once, so the bid and the answer are one change
+            ProxyBook book = proxyBooks.get(itemID);
+            outcome = book != null ? book.resolve(userID, price) : new ProxyBook.Outcome(userID, price);
+
+            if(book != null && book.isEmpty())
+            {
+                proxyBooks.remove(itemID);
+            }
 
-            // If the proposed price is higher, they can bid on the item
-            if (price > itemToBid.highestBid) {
-                // Update highest bid and bidder
-                itemToBid.highestBid = price;
-                objectToBid.setHighestBid(price);
-                objectToBid.setHighestBidder(this.registeredUsers.get(this.getEmailByUserID(userID)));
+            // Update highest bid and bidder
+            previousBidderID = auctionStore.getHighestBidderID(itemID);
+            setHighestBid(itemID, outcome);
+            stateChanged();
 
-                // Log details to terminal
-                System.out.println("Bid Successful\nNew Highest Bid for Item " + itemID + ": " + price);
-                return true;
+            // Log details to terminal
+            if(outcome.userID == userID)
+            {
+                Log.debug("Bid accepted itemID={} userID={} price={}", itemID, userID, outcome.price);
             }
-            else // Otherise log the failed bid details
+            else
+            {
+                Log.debug("Bid rejected itemID={} price={}, a proxy bid outbid it at {}", itemID, price, outcome.price);
+            }
+        }
+
+        // Outside the item's lock, publishing only queues the events for the dispatcher
+        // A proxy that held on to the lead outbid the bidder rather than the previous leader
+        events.publishBid(itemID, outcome.price, outcome.userID, previousBidderID == outcome.userID ? userID : previousBidderID);
+        return outcome.userID == userID;
+    }
+
+    // Make the outcome's user the highest bidder at its price and add it to the item's history, caller holds the item's lock
+    private void setHighestBid(int itemID, ProxyBook.Outcome outcome)
+    {
+        auctionStore.setHighestBid(itemID, outcome.price, outcome.userID);
+        bidHistories.computeIfAbsent(itemID, id -> new BidHistory()).append(outcome.userID, outcome.price, System.currentTimeMillis());
+    }
+
+    // Get a page of an item's bid history, every bid that was the highest in turn, oldest first
+    // Start with cursor 0 and pass each page's nextCursor to get the next, works for closed items too
+    public BidHistoryPage getBidHistory(int userID, int itemID, int cursor, String token) throws RemoteException
+    {
+        try
+        {
+            // Check if token is valid and has not expired
+            if(isValidToken(userID, token) == false)
+            {
+                Log.debug("Invalid or expired token userID={}", userID);
+                return null;
+            }
+
+            // Closed items keep their object, so check there rather than in the open items
+            if(!auctionStore.contains(itemID))
+            {
+                Log.debug("getBidHistory of missing item userID={} itemID={}", userID, itemID);
+                return null;
+            }
+
+            BidHistory history = bidHistories.get(itemID);
+
+            if(history == null)
+            {
+                return BidHistory.newPage(itemID, 0);
+            }
+
+            return history.read(itemID, cursor, historyPageSize);
+        }
+        catch(Exception e)
+        {
+            Log.error("Exception while fetching bid history", e);
+            return null;
+        }
+    }
+
+    // Place a proxy bid: the server bids for the user, increment over anyone else, up to maxPrice
+    // Replaces any proxy the user already had on the item, returns whether the user is the highest bidder afterwards
+    // Every competing proxy is settled here in one go, so the item only changes once (and is replicated once),
+    // however many increments the proxies would have bid each other up by
+    public boolean proxyBid(int userID, int itemID, int maxPrice, int increment, String token) throws RemoteException
+    {
+        try
+        {
+            // Check if token is valid and has not expired
+            if(isValidToken(userID, token) == false)
+            {
+                Log.debug("Invalid or expired token userID={}", userID);
+                return false;
+            }
+
+            // Check if the user exists
+            if (!this.userExists(userID))
+            {
+                Log.warn("Unregistered user tried to place a proxy bid userID={}", userID);
+                return false;
+            }
+
+            if(maxPrice < 1 || increment < 1)
             {
-                System.out.println("Bid Rejected\nCurrent Highest Bid for Item " + itemID + ": " + itemToBid.highestBid);
+                Log.debug("Proxy bid with an invalid maximum or increment userID={} maxPrice={} increment={}", userID, maxPrice, increment);
                 return false;
             }
+
+            // Check if item exists
+            if(itemExists(itemID) == false)
+            {
+                Log.debug("Proxy bid on missing item userID={} itemID={}", userID, itemID);
+                return false;
+            }
+
+            return placeProxyBid(userID, itemID, maxPrice, increment);
         }
         catch(Exception e)
         {
-            System.out.println("Exception while processing bid:");
-            e.printStackTrace();
+            Log.error("Exception while processing proxy bid", e);
             return false;
         }
     }
 
+    private boolean placeProxyBid(int userID, int itemID, int maxPrice, int increment)
+    {
+        int previousBidderID;
+        ProxyBook.Outcome outcome;
+
+        // The same lock direct bids take, so proxies and direct bids on the item are resolved one at a time
+        synchronized (auctionStore.lock(itemID))
+        {
+            int highestBid = auctionStore.getHighestBid(itemID);
+
+            if(!auctionStore.isOpen(itemID) || maxPrice <= highestBid)
+            {
+                Log.debug("Proxy bid rejected itemID={} maxPrice={} highest={}", itemID, maxPrice, highestBid);
+                return false;
+            }
+
+            ProxyBook book = proxyBooks.computeIfAbsent(itemID, id -> new ProxyBook());
+            book.put(userID, maxPrice, increment);
+            stateChanged();
+
+            // Settle the new proxy against the current leader and the other proxies
+            previousBidderID = auctionStore.getHighestBidderID(itemID);
+            outcome = book.resolve(previousBidderID, highestBid);
+
+            if(outcome.userID == previousBidderID && outcome.price == highestBid)
+            {
+                // The leader stays as they were, e.g. they raised their own maximum
+                return outcome.userID == userID;
+            }
+
+            setHighestBid(itemID, outcome);
+            stateChanged();
+            Log.debug("Proxy bid placed itemID={} userID={} highest={}", itemID, userID, outcome.price);
+        }
+
+        events.publishBid(itemID, outcome.price, outcome.userID, previousBidderID == outcome.userID ? userID : previousBidderID);
+        return outcome.userID == userID;
+    }
+
     // Example use: storePublicKey(aPublicKey, ‘../keys/serverKey.pub’)
     public void storePublicKey(PublicKey publicKey, String filePath) throws Exception
     {
@@ -504,6 +946,7 @@ public class Backend implements Auction
 
             // Store the server challenge associated with the user ID
             challengeMap.put(userID, serverChallenge);
+            stateChanged();
 
             // Sign the client challenge with the servers private key
             Signature signature = Signature.getInstance("SHA256withRSA");
@@ -520,8 +963,7 @@ public class Backend implements Auction
         }
         catch(Exception e)
         {
-            System.out.println("Exception during challenge:");
-            e.printStackTrace();
+            Log.error("Exception during challenge", e);
             return null;
         }
 
@@ -546,7 +988,7 @@ public class Backend implements Auction
 
             if (!verifier.verify(signature))
             {
-                System.out.println("Authentication failed for user: " + userID);
+                Log.warn("Authentication failed userID={}", userID);
                 return null;
             }
 
@@ -563,13 +1005,13 @@ public class Backend implements Auction
 
             // Store the token and its expiration time
             userTokens.put(userID, tokenInfo);
+            stateChanged();
 
             return tokenInfo;
         }
         catch (Exception e)
         {
-            System.out.println("Exception during authentication:");
-            e.printStackTrace();
+            Log.error("Exception during authentication", e);
 
             return null;
         }
@@ -624,23 +1066,123 @@ public class Backend implements Auction
         return Integer.parseInt(id);
     }
 
+    public MetricsReport[] getMetrics() throws RemoteException
+    {
+        return new MetricsReport[] { metrics.report() };
+    }
+
+    // Only reached when the backend isnt exported through OperationMetrics.wrap, which serves traced calls itself
+    public TracedResult traced(long traceID, String method, Object[] args) throws RemoteException
+    {
+        return Trace.serveDirectly(this, traceID, "Backend " + id, method, args, Auction.class);
+    }
+
+    // Subscriptions ===========================================================================================
+
+    // Watch an item, the listener is told when the user is outbid, about other new bids and when the auction closes
+    // Each user has one listener per item, subscribing again replaces it
+    public boolean subscribe(int userID, int itemID, AuctionListener listener, String token) throws RemoteException
+    {
+        try
+        {
+            if(isValidToken(userID, token) == false)
+            {
+                Log.debug("Invalid or expired token userID={}", userID);
+                return false;
+            }
+
+            if(itemExists(itemID) == false || listener == null)
+            {
+                Log.debug("subscribe to missing item userID={} itemID={}", userID, itemID);
+                return false;
+            }
+
+            events.subscribe(itemID, userID, listener);
+            stateChanged();
+            Log.debug("subscribe userID={} itemID={}", userID, itemID);
+            return true;
+        }
+        catch(Exception e)
+        {
+            Log.error("Exception while subscribing to an item", e);
+            return false;
+        }
+    }
+
+    public boolean unsubscribe(int userID, int itemID, String token) throws RemoteException
+    {
+        try
+        {
+            if(isValidToken(userID, token) == false)
+            {
+                Log.debug("Invalid or expired token userID={}", userID);
+                return false;
+            }
+
+            events.unsubscribe(itemID, userID);
+            stateChanged();
+            return true;
+        }
+        catch(Exception e)
+        {
+            Log.error("Exception while unsubscribing from an item", e);
+            return false;
+        }
+    }
+
+    public EventDispatcher getEvents()
+    {
+        return this.events;
+    }
+
+    public BidSequencer getBidSequencer()
+    {
+        return this.bidSequencer;
+    }
+
+    public Map<Integer, BidHistory> getBidHistories()
+    {
+        return this.bidHistories;
+    }
+
+    public Map<Integer, ProxyBook> getProxyBooks()
+    {
+        return this.proxyBooks;
+    }
+
+    public AuctionEndScheduler getEndScheduler()
+    {
+        return this.endScheduler;
+    }
+
+    public OperationMetrics getOperationMetrics()
+    {
+        return this.metrics;
+    }
+
+    public ClosedAuctionExporter getExporter()
+    {
+        return this.exporter;
+    }
+
     // Main method to start the server =========================================================================
     public static void main(String[] args)
     {
         try
         {
             // Start RMI server and advertise
-            Backend s = new Backend(id);
-            Auction stub = (Auction) UnicastRemoteObject.exportObject(s, 0);
+            String backendID = args.length > 0 ? args[0] : "0";
+            Backend s = new Backend(backendID);
+            Auction stub = (Auction) UnicastRemoteObject.exportObject(s.getOperationMetrics().wrap(s, Auction.class), 0);
             Registry registry = LocateRegistry.getRegistry();
-            registry.rebind(id, stub);
+            registry.rebind(backendID, stub);
+            s.getOperationMetrics().startDumping();
 
-            System.out.println("Server Replica ready");
+            Log.info("Server Replica ready");
         }
         catch(Exception e)
         {
-            System.err.println("Exception starting server:");
-            e.printStackTrace();
+            Log.error("Exception starting server", e);
         }
     }
 }
\ No newline at end of file
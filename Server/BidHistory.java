@@ -0,0 +1,146 @@
+import java.io.Serializable;
+import java.util.Arrays;
+
+// Append-only history of an item's highest bids, oldest first, see Backend.getBidHistory
+// Bids are packed into chunks of plain int arrays, three ints per bid: the user ID, the price, and the time as
+// milliseconds after the chunk's base time, so a bid costs 12 bytes however many there are
+// Chunks start small and double up to 1024 bids, so items with a handful of bids dont carry big empty arrays
+// and a long history wastes at most one part filled chunk
+//
+// Only appended under the item's lock, readers dont lock at all: a bid is written before size is bumped,
+// so a reader that has read size sees every bid below it
+public class BidHistory implements Serializable
+{
+    private static final int FIRST_CHUNK_BIDS = 4;
+    private static final int MAX_CHUNK_BIDS = 1024;
+    private static final int INTS_PER_BID = 3;
+
+    private static class Chunk implements Serializable
+    {
+        final long baseTime;
+        final int start; // index of the chunk's first bid in the history
+        final int[] data;
+
+        Chunk(long baseTime, int start, int bids)
+        {
+            this.baseTime = baseTime;
+            this.start = start;
+            this.data = new int[bids * INTS_PER_BID];
+        }
+
+        int capacity()
+        {
+            return data.length / INTS_PER_BID;
+        }
+    }
+
+    private volatile Chunk[] chunks = new Chunk[2];
+    private int chunkCount;
+    private volatile int size;
+
+    // Record a bid, caller holds the item's lock
+    public void append(int userID, int price, long time)
+    {
+        Chunk last = chunkCount > 0 ? chunks[chunkCount - 1] : null;
+        long offset = last != null ? time - last.baseTime : 0;
+
+        // Start a new chunk when this one is full or the time no longer fits in an int of milliseconds (about 24 days)
+        if(last == null || size - last.start == last.capacity() || offset > Integer.MAX_VALUE || offset < Integer.MIN_VALUE)
+        {
+            int bids = last == null ? FIRST_CHUNK_BIDS : Math.min(MAX_CHUNK_BIDS, last.capacity() * 2);
+            last = new Chunk(time, size, bids);
+            offset = 0;
+
+            Chunk[] current = chunks;
+            if(chunkCount == current.length)
+            {
+                current = Arrays.copyOf(current, current.length * 2);
+            }
+            current[chunkCount] = last;
+            chunkCount++;
+            chunks = current;
+        }
+
+        int at = (size - last.start) * INTS_PER_BID;
+        last.data[at] = userID;
+        last.data[at + 1] = price;
+        last.data[at + 2] = (int) offset;
+
+        size = size + 1;
+    }
+
+    public int size()
+    {
+        return this.size;
+    }
+
+    // Copy up to max bids starting at cursor (0 is the first bid) into a page
+    public BidHistoryPage read(int itemID, int cursor, int max)
+    {
+        int end = size;
+        Chunk[] current = chunks;
+        int from = Math.max(0, Math.min(cursor, end));
+        int count = Math.min(max, end - from);
+
+        BidHistoryPage page = newPage(itemID, count);
+        page.totalBids = end;
+        page.nextCursor = from + count;
+
+        if(count == 0)
+        {
+            return page;
+        }
+
+        // Chunks are in order of their first bid, find the one holding the cursor
+        int low = 0;
+        int high = current.length - 1;
+
+        while(current[high] == null || current[high].start >= end)
+        {
+            high--;
+        }
+
+        while(low < high)
+        {
+            int mid = (low + high + 1) >>> 1;
+
+            if(current[mid].start <= from)
+            {
+                low = mid;
+            }
+            else
+            {
+                high = mid - 1;
+            }
+        }
+
+        int chunk = low;
+        for(int i = 0; i < count; i++)
+        {
+            int index = from + i;
+
+            while(chunk + 1 < current.length && current[chunk + 1] != null && index >= current[chunk + 1].start)
+            {
+                chunk++;
+            }
+
+            int at = (index - current[chunk].start) * INTS_PER_BID;
+            page.userIDs[i] = current[chunk].data[at];
+            page.prices[i] = current[chunk].data[at + 1];
+            page.times[i] = current[chunk].baseTime + current[chunk].data[at + 2];
+        }
+
+        return page;
+    }
+
+    // A page with room for count bids, also used for items nobody has bid on
+    public static BidHistoryPage newPage(int itemID, int count)
+    {
+        BidHistoryPage page = new BidHistoryPage();
+        page.itemID = itemID;
+        page.userIDs = new int[count];
+        page.prices = new int[count];
+        page.times = new long[count];
+        return page;
+    }
+}
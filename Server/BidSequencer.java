@@ -0,0 +1,209 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Single writer per item for bids, so a storm of bids on one item doesnt have every caller fighting over it
+// Bids join the item's queue, and whichever caller finds the item idle becomes its writer: it takes the queued bids
+// in batches, applies only the highest of each batch, and answers every bid in it, the rest are rejected
+// A writer stops once its own bid is answered and hands the item to the caller of the next bid in the queue, so no
+// caller waits on bids that came after its own
+// The other callers just wait for their answer, so one hot item costs one applied (and replicated) bid per batch
+// rather than one per caller, and bigger storms make bigger batches
+//
+// Configured with system properties:
+//   auction.bidSequencer  false to apply every bid directly instead (default true)
+//   auction.bidBatchSize  most bids taken in one batch (default 256)
+public class BidSequencer
+{
+    // Applies a bid if it is still higher than the item's highest, returns whether it was
+    public interface BidApplier
+    {
+        boolean apply(int userID, int itemID, int price);
+    }
+
+    private static class PendingBid
+    {
+        final int userID;
+        final int price;
+        final Thread caller = Thread.currentThread();
+
+        // Set by the writer once the bid is applied or rejected
+        volatile Boolean result;
+
+        // Set by the writer handing the item over, the caller drains the queue next
+        volatile boolean writer;
+
+        PendingBid(int userID, int price)
+        {
+            this.userID = userID;
+            this.price = price;
+        }
+    }
+
+    private static class ItemQueue
+    {
+        final ConcurrentLinkedQueue<PendingBid> bids = new ConcurrentLinkedQueue<>();
+        final AtomicBoolean draining = new AtomicBoolean();
+    }
+
+    private final boolean enabled;
+    private final int maxBatch;
+    private final BidApplier applier;
+    private final Map<Integer, ItemQueue> queues = new ConcurrentHashMap<>();
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong largestBatch = new AtomicLong();
+
+    public BidSequencer(BidApplier applier)
+    {
+        this(Boolean.parseBoolean(System.getProperty("auction.bidSequencer", "true")), Integer.getInteger("auction.bidBatchSize", 256), applier);
+    }
+
+    public BidSequencer(boolean enabled, int maxBatch, BidApplier applier)
+    {
+        this.enabled = enabled;
+        this.maxBatch = maxBatch;
+        this.applier = applier;
+    }
+
+    // Place a bid through the item's queue and wait for the answer, writing for the item itself if no one else is
+    public boolean submit(int userID, int itemID, int price)
+    {
+        if(!enabled)
+        {
+            return applier.apply(userID, itemID, price);
+        }
+
+        submitted.incrementAndGet();
+
+        ItemQueue queue = queues.computeIfAbsent(itemID, id -> new ItemQueue());
+        PendingBid bid = new PendingBid(userID, price);
+        queue.bids.add(bid);
+
+        if(queue.draining.compareAndSet(false, true))
+        {
+            drain(itemID, queue, bid);
+        }
+
+        // Wait for the answer, or for the writer before us to hand the item over
+        while(bid.result == null)
+        {
+            if(bid.writer)
+            {
+                drain(itemID, queue, bid);
+            }
+            else
+            {
+                LockSupport.park(this);
+            }
+        }
+
+        return bid.result;
+    }
+
+    // Apply batches until the caller's own bid is answered, then hand the item on
+    // Each batch applies its highest bid, ties go to the earliest
+    private void drain(int itemID, ItemQueue queue, PendingBid own)
+    {
+        List<PendingBid> batch = new ArrayList<>();
+
+        try
+        {
+            while(own.result == null)
+            {
+                PendingBid next;
+
+                while(batch.size() < maxBatch && (next = queue.bids.poll()) != null)
+                {
+                    batch.add(next);
+                }
+
+                applyBatch(itemID, batch);
+                batch.clear();
+            }
+        }
+        finally
+        {
+            handOff(queue);
+        }
+    }
+
+    // Make the caller of the oldest queued bid the writer, or leave the item idle if nothing is queued
+    // The bid is still in the queue so it cant be answered before its caller takes over
+    private void handOff(ItemQueue queue)
+    {
+        while(true)
+        {
+            PendingBid next = queue.bids.peek();
+
+            if(next != null)
+            {
+                next.writer = true;
+                LockSupport.unpark(next.caller);
+                return;
+            }
+
+            queue.draining.set(false);
+
+            // A bid queued between the peek and the release would be stranded, take the item back if so
+            if(queue.bids.isEmpty() || !queue.draining.compareAndSet(false, true))
+            {
+                return;
+            }
+        }
+    }
+
+    // Apply the highest bid of the batch and answer every bid in it
+    private void applyBatch(int itemID, List<PendingBid> batch)
+    {
+        PendingBid highest = batch.get(0);
+
+        for(PendingBid bid : batch)
+        {
+            if(bid.price > highest.price)
+            {
+                highest = bid;
+            }
+        }
+
+        boolean accepted = false;
+
+        try
+        {
+            accepted = applier.apply(highest.userID, itemID, highest.price);
+        }
+        catch(Exception e)
+        {
+            Log.error("Exception applying a batch of bids", e);
+        }
+
+        for(PendingBid bid : batch)
+        {
+            bid.result = bid == highest && accepted;
+            LockSupport.unpark(bid.caller);
+        }
+
+        batches.incrementAndGet();
+        largestBatch.accumulateAndGet(batch.size(), Math::max);
+    }
+
+    // The item closed, its queue isnt needed anymore
+    public void remove(int itemID)
+    {
+        queues.remove(itemID);
+    }
+
+    public String getStats()
+    {
+        long batchCount = batches.get();
+
+        return String.format("Bid sequencer: %d bids in %d batches, %.1f bids per batch, largest %d",
+            submitted.get(), batchCount, batchCount == 0 ? 0.0 : (double) submitted.get() / batchCount, largestBatch.get());
+    }
+}
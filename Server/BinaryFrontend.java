@@ -0,0 +1,521 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// Non-blocking frontend speaking the WireProtocol binary format, served alongside the RMI frontend
+// A single selector thread accepts connections and reads/writes frames, decoded requests are handed to a RequestExecutor
+// The workers call the same Auction implementation (normally the Frontend) so both paths share one set of logic
+public class BinaryFrontend implements Runnable
+{
+    // Two string lengths, the reserve price and the end time of an AuctionSaleItem with empty strings
+    private static final int SALE_ITEM_MIN_BYTES = 4 + 4 + 4 + 8;
+
+    private final Auction auction;
+    private final int port;
+    private final RequestExecutor workers;
+
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+
+    // Connections with responses waiting, picked up by the selector thread to enable OP_WRITE
+    private final Queue<Connection> pendingWrites = new ConcurrentLinkedQueue<>();
+
+    public BinaryFrontend(Auction auction, int port, RequestExecutor workers)
+    {
+        this.auction = auction;
+        this.port = port;
+        this.workers = workers;
+    }
+
+    // Per connection buffers, the read buffer grows to fit the largest frame seen
+    private static class Connection
+    {
+        final SocketChannel channel;
+        ByteBuffer readBuffer = ByteBuffer.allocate(4096);
+        final Queue<ByteBuffer> writeQueue = new ArrayDeque<>();
+
+        Connection(SocketChannel channel)
+        {
+            this.channel = channel;
+        }
+    }
+
+    // Bind the port and start the selector thread
+    public void start() throws IOException
+    {
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+        Thread selectorThread = new Thread(this, "binary-frontend-selector");
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+
+        Log.info("Binary frontend listening on port {}", port);
+    }
+
+    public void run()
+    {
+        while(serverChannel.isOpen())
+        {
+            try
+            {
+                selector.select();
+
+                // Register write interest for any connection with a response queued on it
+                Connection pending;
+                while((pending = pendingWrites.poll()) != null)
+                {
+                    SelectionKey key = pending.channel.keyFor(selector);
+
+                    if(key != null && key.isValid())
+                    {
+                        key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                    }
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+
+                while(keys.hasNext())
+                {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+
+                    try
+                    {
+                        if(key.isAcceptable())
+                        {
+                            accept();
+                        }
+                        else
+                        {
+                            if(key.isReadable())
+                            {
+                                read(key);
+                            }
+                            if(key.isValid() && key.isWritable())
+                            {
+                                write(key);
+                            }
+                        }
+                    }
+                    catch(IOException e)
+                    {
+                        // Client went away, drop the connection without affecting the others
+                        close(key);
+                    }
+                }
+            }
+            catch(Exception e)
+            {
+                Log.error("Exception in binary frontend selector loop", e);
+            }
+        }
+    }
+
+    private void accept() throws IOException
+    {
+        SocketChannel channel = serverChannel.accept();
+
+        if(channel == null)
+        {
+            return;
+        }
+
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        channel.register(selector, SelectionKey.OP_READ, new Connection(channel));
+    }
+
+    // Read whatever is available and dispatch every complete frame in the buffer
+    private void read(SelectionKey key) throws IOException
+    {
+        Connection connection = (Connection) key.attachment();
+
+        if(connection.channel.read(connection.readBuffer) < 0)
+        {
+            close(key);
+            return;
+        }
+
+        ByteBuffer buffer = connection.readBuffer;
+        buffer.flip();
+
+        while(buffer.remaining() >= 4)
+        {
+            int length = buffer.getInt(buffer.position());
+
+            if(length < 5 || length > WireProtocol.MAX_FRAME_LENGTH)
+            {
+                throw new IOException("Invalid frame length: " + length);
+            }
+
+            if(buffer.remaining() < 4 + length)
+            {
+                break;
+            }
+
+            // Copy the frame out so the worker owns it and the read buffer can be reused
+            buffer.getInt();
+            byte[] frame = new byte[length];
+            buffer.get(frame);
+
+            // The selector thread cant wait for a permit without stalling every connection, so a frame that arrives
+            // with all of them taken is answered busy straight away and the client backs off as it would for RMI
+            if(!workers.tryExecute(() -> handleFrame(connection, ByteBuffer.wrap(frame))))
+            {
+                int requestID = ByteBuffer.wrap(frame).getInt(1);
+                queueResponse(connection, encodeError(requestID, new ServerBusyException("Server busy, too many requests in flight, try again shortly")));
+            }
+        }
+
+        buffer.compact();
+
+        // Grow the buffer if the next frame is bigger than it can hold
+        if(buffer.position() >= 4)
+        {
+            int needed = buffer.getInt(0) + 4;
+
+            if(needed > buffer.capacity() && needed <= WireProtocol.MAX_FRAME_LENGTH + 4)
+            {
+                ByteBuffer bigger = ByteBuffer.allocate(needed);
+                buffer.flip();
+                bigger.put(buffer);
+                connection.readBuffer = bigger;
+            }
+        }
+    }
+
+    private void write(SelectionKey key) throws IOException
+    {
+        Connection connection = (Connection) key.attachment();
+
+        synchronized(connection.writeQueue)
+        {
+            while(!connection.writeQueue.isEmpty())
+            {
+                ByteBuffer head = connection.writeQueue.peek();
+                connection.channel.write(head);
+
+                if(head.hasRemaining())
+                {
+                    return; // Socket buffer is full, wait for the next OP_WRITE
+                }
+
+                connection.writeQueue.poll();
+            }
+
+            key.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    private void close(SelectionKey key)
+    {
+        key.cancel();
+
+        try
+        {
+            key.channel().close();
+        }
+        catch(IOException e)
+        {
+            // Already closed
+        }
+    }
+
+    // Runs on a worker thread, decode the request, call the auction and queue the response
+    private void handleFrame(Connection connection, ByteBuffer frame)
+    {
+        byte opcode = frame.get();
+        int requestID = frame.getInt();
+        ByteBuffer response;
+
+        try
+        {
+            response = dispatch(opcode, requestID, frame);
+        }
+        catch(Exception e)
+        {
+            // Busy rejections are expected under load and already counted by the admission controller
+            if(!(e instanceof ServerBusyException))
+            {
+                Log.error("Binary frontend exception handling opcode {}", opcode, e);
+            }
+            response = encodeError(requestID, e);
+        }
+
+        queueResponse(connection, response);
+    }
+
+    // Queue a response frame for the selector thread to write, safe to call from any thread
+    private void queueResponse(Connection connection, ByteBuffer response)
+    {
+        synchronized(connection.writeQueue)
+        {
+            connection.writeQueue.add(response);
+        }
+
+        pendingWrites.add(connection);
+        selector.wakeup();
+    }
+
+    // Decode the arguments for the opcode, call the matching Auction method and encode its result
+    private ByteBuffer dispatch(byte opcode, int requestID, ByteBuffer in) throws Exception
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream out = WireProtocol.startFrame(bytes);
+        out.writeInt(requestID);
+
+        switch(opcode)
+        {
+            case WireProtocol.REGISTER:
+            {
+                Integer userID = auction.register(WireProtocol.readString(in), WireProtocol.readPublicKey(in));
+                writeStatus(out, userID != null);
+                if(userID != null)
+                {
+                    out.writeInt(userID);
+                }
+                break;
+            }
+
+            case WireProtocol.CHALLENGE:
+            {
+                ChallengeInfo info = auction.challenge(in.getInt(), WireProtocol.readString(in));
+                writeStatus(out, info != null);
+                if(info != null)
+                {
+                    WireProtocol.writeBytes(out, info.response);
+                    WireProtocol.writeString(out, info.clientChallenge);
+                }
+                break;
+            }
+
+            case WireProtocol.AUTHENTICATE:
+            {
+                TokenInfo tokenInfo = auction.authenticate(in.getInt(), WireProtocol.readBytes(in));
+                writeStatus(out, tokenInfo != null);
+                if(tokenInfo != null)
+                {
+                    WireProtocol.writeString(out, tokenInfo.token);
+                    out.writeLong(tokenInfo.expiryTime);
+                }
+                break;
+            }
+
+            case WireProtocol.GET_SPEC:
+            {
+                AuctionItem item = auction.getSpec(in.getInt(), in.getInt(), WireProtocol.readString(in));
+                writeStatus(out, item != null);
+                if(item != null)
+                {
+                    WireProtocol.writeItem(out, item);
+                }
+                break;
+            }
+
+            case WireProtocol.GET_BID_HISTORY:
+            {
+                BidHistoryPage page = auction.getBidHistory(in.getInt(), in.getInt(), in.getInt(), WireProtocol.readString(in));
+                writeStatus(out, page != null);
+                if(page != null)
+                {
+                    WireProtocol.writeHistoryPage(out, page);
+                }
+                break;
+            }
+
+            case WireProtocol.NEW_AUCTION:
+            {
+                int userID = in.getInt();
+                AuctionSaleItem saleItem = WireProtocol.readSaleItem(in);
+                Integer itemID = auction.newAuction(userID, saleItem, WireProtocol.readString(in));
+                writeStatus(out, itemID != null);
+                if(itemID != null)
+                {
+                    out.writeInt(itemID);
+                }
+                break;
+            }
+
+            case WireProtocol.LIST_ITEMS:
+            {
+                AuctionItem[] items = auction.listItems(in.getInt(), WireProtocol.readString(in));
+                writeStatus(out, items != null);
+                if(items != null)
+                {
+                    out.writeInt(items.length);
+                    for(AuctionItem item : items)
+                    {
+                        WireProtocol.writeItem(out, item);
+                    }
+                }
+                break;
+            }
+
+            case WireProtocol.CLOSE_AUCTION:
+            {
+                AuctionResult result = auction.closeAuction(in.getInt(), in.getInt(), WireProtocol.readString(in));
+                writeStatus(out, result != null);
+                if(result != null)
+                {
+                    WireProtocol.writeString(out, result.winningEmail);
+                    out.writeInt(result.winningPrice);
+                }
+                break;
+            }
+
+            case WireProtocol.BID:
+            {
+                boolean accepted = auction.bid(in.getInt(), in.getInt(), in.getInt(), WireProtocol.readString(in));
+                writeStatus(out, true);
+                out.writeBoolean(accepted);
+                break;
+            }
+
+            case WireProtocol.PROXY_BID:
+            {
+                boolean leading = auction.proxyBid(in.getInt(), in.getInt(), in.getInt(), in.getInt(), WireProtocol.readString(in));
+                writeStatus(out, true);
+                out.writeBoolean(leading);
+                break;
+            }
+
+            case WireProtocol.GET_PRIMARY_REPLICA_ID:
+            {
+                int replicaID = auction.getPrimaryReplicaID();
+                writeStatus(out, true);
+                out.writeInt(replicaID);
+                break;
+            }
+
+            case WireProtocol.GET_SPECS:
+            {
+                int userID = in.getInt();
+                int[] itemIDs = new int[readCount(in, 4)];
+                for(int i = 0; i < itemIDs.length; i++)
+                {
+                    itemIDs[i] = in.getInt();
+                }
+
+                AuctionItem[] items = auction.getSpecs(userID, itemIDs, WireProtocol.readString(in));
+                writeStatus(out, items != null);
+                if(items != null)
+                {
+                    out.writeInt(items.length);
+                    for(AuctionItem item : items)
+                    {
+                        // Missing items are flagged so the client can put a null back in their place
+                        out.writeBoolean(item != null);
+                        if(item != null)
+                        {
+                            WireProtocol.writeItem(out, item);
+                        }
+                    }
+                }
+                break;
+            }
+
+            case WireProtocol.NEW_AUCTIONS:
+            {
+                int userID = in.getInt();
+                AuctionSaleItem[] saleItems = new AuctionSaleItem[readCount(in, SALE_ITEM_MIN_BYTES)];
+                for(int i = 0; i < saleItems.length; i++)
+                {
+                    saleItems[i] = WireProtocol.readSaleItem(in);
+                }
+
+                Integer[] itemIDs = auction.newAuctions(userID, saleItems, WireProtocol.readString(in));
+                writeStatus(out, itemIDs != null);
+                if(itemIDs != null)
+                {
+                    out.writeInt(itemIDs.length);
+                    for(Integer itemID : itemIDs)
+                    {
+                        out.writeInt(itemID == null ? -1 : itemID);
+                    }
+                }
+                break;
+            }
+
+            case WireProtocol.BIDS:
+            {
+                int userID = in.getInt();
+                int[] itemIDs = new int[readCount(in, 8)];
+                int[] prices = new int[itemIDs.length];
+                for(int i = 0; i < itemIDs.length; i++)
+                {
+                    itemIDs[i] = in.getInt();
+                    prices[i] = in.getInt();
+                }
+
+                boolean[] results = auction.bids(userID, itemIDs, prices, WireProtocol.readString(in));
+                writeStatus(out, results != null);
+                if(results != null)
+                {
+                    out.writeInt(results.length);
+                    for(boolean accepted : results)
+                    {
+                        out.writeBoolean(accepted);
+                    }
+                }
+                break;
+            }
+
+            default:
+                throw new IllegalArgumentException("Unknown opcode: " + opcode);
+        }
+
+        out.flush();
+        return WireProtocol.finishFrame(bytes);
+    }
+
+    // An array count sent by the client, checked against what is left of the frame before anything is allocated for it
+    // Each element takes at least minBytes, so a count the frame cant hold is rejected and answered with an error
+    private static int readCount(ByteBuffer in, int minBytes)
+    {
+        int count = in.getInt();
+
+        if(count < 0 || count > in.remaining() / minBytes)
+        {
+            throw new IllegalArgumentException("Invalid array count " + count + " with " + in.remaining() + " bytes left in the frame");
+        }
+
+        return count;
+    }
+
+    private void writeStatus(DataOutputStream out, boolean hasResult) throws IOException
+    {
+        out.writeByte(hasResult ? WireProtocol.STATUS_OK : WireProtocol.STATUS_NULL);
+    }
+
+    private ByteBuffer encodeError(int requestID, Exception e)
+    {
+        try
+        {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream out = WireProtocol.startFrame(bytes);
+            out.writeInt(requestID);
+            out.writeByte(e instanceof ServerBusyException ? WireProtocol.STATUS_BUSY : WireProtocol.STATUS_ERROR);
+            WireProtocol.writeString(out, e instanceof ServerBusyException ? e.getMessage() : e.toString());
+            out.flush();
+            return WireProtocol.finishFrame(bytes);
+        }
+        catch(IOException unexpected)
+        {
+            throw new IllegalStateException(unexpected);
+        }
+    }
+}
@@ -0,0 +1,347 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+// Writes closed auctions to a fixed width file for analytics: item ID, name, reserve, winning price, winner's email and close time
+// The file is written through memory mapped windows rather than a stream, so a million results is a run of puts into
+// the page cache and the OS writes them out in the background
+// Runs on its own thread while the primary keeps serving: the item store is walked with a concurrent iterator and each item
+// is only locked for the moment it takes to copy its fields, the same lock a bid on it takes, so nothing else waits
+//
+// An incremental export appends only the auctions closed since the file's last export. Each export covers auctions closed
+// up to a cutoff a little before it starts, recorded in the header as the watermark, and the next one starts from there, so
+// an auction closing while an export runs goes into the next one rather than being missed or written twice
+// The header is written last, so if the process dies mid export the file still holds the previous export and the next run
+// writes over the partial records
+//
+// File layout, little endian:
+//   header (64 bytes): magic "AHXP", version, record bytes, record count (long), watermark (long), last export time (long)
+//   records (152 bytes): close time (long), item ID, reserve price, winning price (ints),
+//                        name (64 bytes), winner email (64 bytes), UTF-8 zero padded and cut to fit, no winner is empty
+//
+// Configured with system properties:
+//   auction.exportFile     where the primary writes its scheduled exports, not set turns them off
+//   auction.exportSeconds  how often the primary runs an incremental export (default 86400, daily)
+//
+// Usage: java ClosedAuctionExporter (file), prints an export file as CSV
+public class ClosedAuctionExporter
+{
+    private static final int MAGIC = 0x50584841; // "AHXP" little endian
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+    private static final int NAME_BYTES = 64;
+    private static final int EMAIL_BYTES = 64;
+    private static final int RECORD_BYTES = 8 + 4 + 4 + 4 + NAME_BYTES + EMAIL_BYTES + 4;
+
+    // Records mapped at once, about 38MB
+    private static final int WINDOW_RECORDS = 256 * 1024;
+
+    // Auctions closed in the last second arent exported yet, an item is stamped with its close time just before it is
+    // marked closed, so this leaves any close still in progress for the next export
+    private static final long SETTLE_MS = 1000;
+
+    // What one export wrote
+    public static class Result
+    {
+        long exported;
+        long totalRecords;
+        long watermark;
+        long millis;
+
+        public String toString()
+        {
+            return String.format("Exported %,d closed auctions in %dms (%,d in the file, closed up to %tF %<tT)", exported, millis, totalRecords, watermark);
+        }
+    }
+
+    private final Supplier<ItemStore> items;
+    private final IntFunction<String> winnerEmails;
+    private final BooleanSupplier isPrimary;
+
+    // The backend replaces its maps when a backup takes a state transfer, so they are fetched again for each export
+    // winnerEmails gives the winner's email of a closed auction by item ID, null if nobody bid
+    public ClosedAuctionExporter(Supplier<ItemStore> items, IntFunction<String> winnerEmails, BooleanSupplier isPrimary)
+    {
+        this.items = items;
+        this.winnerEmails = winnerEmails;
+        this.isPrimary = isPrimary;
+    }
+
+    // Start the scheduled exports if auction.exportFile is set, only the primary writes them
+    public void start()
+    {
+        String file = System.getProperty("auction.exportFile");
+
+        if(file == null)
+        {
+            return;
+        }
+
+        long seconds = Long.getLong("auction.exportSeconds", 86400);
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "closed-auction-export");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        scheduler.scheduleAtFixedRate(() -> {
+            if(!isPrimary.getAsBoolean())
+            {
+                return;
+            }
+
+            try
+            {
+                Log.info("{}", export(Paths.get(file), true));
+            }
+            catch(Exception e)
+            {
+                Log.error("Exception while exporting closed auctions", e);
+            }
+        }, seconds, seconds, TimeUnit.SECONDS);
+
+        Log.info("Exporting closed auctions to {} every {}s", file, seconds);
+    }
+
+    // Export closed auctions to the file, appending those closed since its last export when incremental
+    // and the file is already there, otherwise writing every closed auction to a new file
+    public synchronized Result export(Path file, boolean incremental) throws IOException
+    {
+        long start = System.currentTimeMillis();
+        long cutoff = start - SETTLE_MS;
+        boolean append = incremental && Files.exists(file) && Files.size(file) >= HEADER_BYTES;
+
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE))
+        {
+            long count = 0;
+            long since = Long.MIN_VALUE;
+
+            if(append)
+            {
+                ByteBuffer header = readHeader(channel);
+                count = header.getLong(12);
+                since = header.getLong(20);
+            }
+            else
+            {
+                channel.truncate(0);
+            }
+
+            long first = count;
+            Writer writer = new Writer(channel, count);
+
+            ItemStore store = items.get();
+
+            for(AuctionItemObject item : store)
+            {
+                long closeTime;
+                int itemID;
+                int reservePrice;
+                int winningPrice;
+                String name;
+
+                // Copy the fields under the item's lock, it is only closed and bid on under it
+                synchronized (store.lock(item.getID()))
+                {
+                    if(item.isOpen())
+                    {
+                        continue;
+                    }
+
+                    closeTime = item.getCloseTime();
+                    itemID = item.getID();
+                    reservePrice = item.getReservePrice();
+                    winningPrice = item.getHighestBid();
+                    name = item.getName();
+                }
+
+                if(closeTime <= since || closeTime > cutoff)
+                {
+                    continue;
+                }
+
+                writer.write(closeTime, itemID, reservePrice, winningPrice, name, winnerEmails.apply(itemID));
+                count++;
+            }
+
+            writer.finish();
+            channel.truncate(HEADER_BYTES + count * RECORD_BYTES);
+
+            // The header last, once the records are on disk
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(0, MAGIC);
+            header.putInt(4, VERSION);
+            header.putInt(8, RECORD_BYTES);
+            header.putLong(12, count);
+            header.putLong(20, cutoff);
+            header.putLong(28, start);
+            header.force();
+
+            Result result = new Result();
+            result.exported = count - first;
+            result.totalRecords = count;
+            result.watermark = cutoff;
+            result.millis = System.currentTimeMillis() - start;
+            return result;
+        }
+    }
+
+    private static ByteBuffer readHeader(FileChannel channel) throws IOException
+    {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        channel.read(header, 0);
+
+        if(header.getInt(0) != MAGIC || header.getInt(4) != VERSION || header.getInt(8) != RECORD_BYTES)
+        {
+            throw new IOException("Not a closed auction export file, or one from a different version");
+        }
+
+        return header;
+    }
+
+    // Puts records into the file a mapped window at a time, mapping past the end of the file grows it
+    private static class Writer
+    {
+        private final FileChannel channel;
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+        private MappedByteBuffer window;
+        private long windowStart; // index of the window's first record
+        private long next;
+
+        Writer(FileChannel channel, long next)
+        {
+            this.channel = channel;
+            this.next = next;
+        }
+
+        void write(long closeTime, int itemID, int reservePrice, int winningPrice, String name, String email) throws IOException
+        {
+            if(window == null || next - windowStart == WINDOW_RECORDS)
+            {
+                finish();
+                windowStart = next;
+                window = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_BYTES + windowStart * RECORD_BYTES, (long) WINDOW_RECORDS * RECORD_BYTES);
+                window.order(ByteOrder.LITTLE_ENDIAN);
+            }
+
+            int at = (int) (next - windowStart) * RECORD_BYTES;
+            window.putLong(at, closeTime);
+            window.putInt(at + 8, itemID);
+            window.putInt(at + 12, reservePrice);
+            window.putInt(at + 16, winningPrice);
+            putString(at + 20, NAME_BYTES, name);
+            putString(at + 20 + NAME_BYTES, EMAIL_BYTES, email);
+            window.putInt(at + 20 + NAME_BYTES + EMAIL_BYTES, 0);
+            next++;
+        }
+
+        // Encode into the field, the encoder stops at a whole character when it runs out of room, and zero the rest
+        private void putString(int at, int bytes, String value)
+        {
+            ByteBuffer field = window.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            field.position(at).limit(at + bytes);
+
+            if(value != null)
+            {
+                encoder.reset();
+                encoder.encode(CharBuffer.wrap(value), field, true);
+            }
+
+            while(field.hasRemaining())
+            {
+                field.put((byte) 0);
+            }
+        }
+
+        void finish()
+        {
+            if(window != null)
+            {
+                window.force();
+                window = null;
+            }
+        }
+    }
+
+    private static String getString(ByteBuffer record, int at, int bytes)
+    {
+        int length = 0;
+
+        while(length < bytes && record.get(at + length) != 0)
+        {
+            length++;
+        }
+
+        byte[] value = new byte[length];
+        record.get(at, value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    private static String csv(String value)
+    {
+        if(value.contains(",") || value.contains("\"") || value.contains("\n"))
+        {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+        return value;
+    }
+
+    // Print an export file as CSV, reading it through a read only mapping
+    public static void main(String[] args)
+    {
+        if(args.length < 1)
+        {
+            System.out.println("Usage: java ClosedAuctionExporter (file)");
+            return;
+        }
+
+        try(FileChannel channel = FileChannel.open(Paths.get(args[0]), StandardOpenOption.READ))
+        {
+            ByteBuffer header = readHeader(channel);
+            long count = header.getLong(12);
+
+            System.out.println("itemID,name,reservePrice,winningPrice,winnerEmail,closeTime");
+
+            for(long windowStart = 0; windowStart < count; windowStart += WINDOW_RECORDS)
+            {
+                int records = (int) Math.min(WINDOW_RECORDS, count - windowStart);
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES + windowStart * RECORD_BYTES, (long) records * RECORD_BYTES);
+                window.order(ByteOrder.LITTLE_ENDIAN);
+
+                StringBuilder lines = new StringBuilder();
+                for(int r = 0; r < records; r++)
+                {
+                    int at = r * RECORD_BYTES;
+                    lines.append(window.getInt(at + 8)).append(',')
+                        .append(csv(getString(window, at + 20, NAME_BYTES))).append(',')
+                        .append(window.getInt(at + 12)).append(',')
+                        .append(window.getInt(at + 16)).append(',')
+                        .append(csv(getString(window, at + 20 + NAME_BYTES, EMAIL_BYTES))).append(',')
+                        .append(window.getLong(at)).append('\n');
+                }
+                System.out.print(lines);
+            }
+        }
+        catch(Exception e)
+        {
+            System.out.println("Exception while reading the export file:");
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,271 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.rmi.ConnectException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// A whole deployment in one JVM: the replicas of every shard and a Frontend that calls them directly instead of over RMI
+// Replicas find each other and the frontend finds them through this object rather than the registry, so heartbeats,
+// operations and elections are plain method calls, and replication hands each backup a copy of the primary's state made
+// in memory, serialized once per push however many backups there are
+// Everything else crosses between frontend and replicas by reference, the objects involved arent changed once handed over
+// Only the frontend is exported, so external clients use the Auction interface exactly as with a separate Frontend
+// Replicas still run behind their OperationMetrics wrapper, so getMetrics reports them as before
+//
+// Run as java EmbeddedAuction [replicas per shard] [name], with -Dauction.shards for more shards
+// A registry is created in this JVM unless one is already running on localhost
+// Tests and tools can create one with new EmbeddedAuction(replicas, shards) and call getAuction directly
+public class EmbeddedAuction implements ReplicaDirectory
+{
+    // What the frontend and the other replicas hold for a replica, stopped makes it look like its process died
+    private static final class Handle
+    {
+        final Replica replica;
+        final AuctionReplica proxy;
+        final AtomicBoolean stopped;
+
+        Handle(Replica replica, AuctionReplica proxy, AtomicBoolean stopped)
+        {
+            this.replica = replica;
+            this.proxy = proxy;
+            this.stopped = stopped;
+        }
+    }
+
+    // The state a primary is pushing to its backups, serialized for the first backup and dropped once the last one has a copy
+    private static final class PushedState
+    {
+        final ReplicaState state;
+        final byte[] bytes;
+        int copiesLeft;
+
+        PushedState(ReplicaState state, byte[] bytes, int copiesLeft)
+        {
+            this.state = state;
+            this.bytes = bytes;
+            this.copiesLeft = copiesLeft;
+        }
+    }
+
+    // Keeps the registry created by main from being collected
+    private static Registry registry;
+
+    private final int shardCount;
+    private final Map<String, Handle> replicas = new ConcurrentSkipListMap<>();
+    private final Frontend frontend;
+    private final Auction auction;
+
+    // The push each shard is in the middle of, so a push to several backups only serializes the state once
+    private final Map<Integer, PushedState> pushedStates = new HashMap<>();
+
+    public EmbeddedAuction(int replicasPerShard, int shardCount)
+    {
+        this.shardCount = shardCount;
+
+        for(int shard = 0; shard < shardCount; shard++)
+        {
+            for(int id = 1; id <= replicasPerShard; id++)
+            {
+                startReplica(shard, String.valueOf(id));
+            }
+        }
+
+        this.frontend = new Frontend(shardCount, this);
+        this.auction = frontend.getOperationMetrics().wrap(frontend, Auction.class);
+    }
+
+    // Add a replica to a shard, it copies its state from the others like one started with java Replica would
+    public Replica startReplica(int shard, String id)
+    {
+        String name = Replica.registryName(shard, id);
+        Replica replica = new Replica(id, shard, shardCount, this);
+        AtomicBoolean stopped = new AtomicBoolean();
+        AuctionReplica proxy = direct(name, shard, replica.getOperationMetrics().wrap(replica, AuctionReplica.class), stopped);
+        replicas.put(name, new Handle(replica, proxy, stopped));
+
+        return replica;
+    }
+
+    // Take a replica out as if its process had died: calls to it fail from now on, so the frontend elects a new primary
+    // the next time it checks this one, and the replica itself stops closing auctions and pushing state
+    public boolean stopReplica(int shard, String id)
+    {
+        Handle handle = replicas.remove(Replica.registryName(shard, id));
+
+        if(handle == null)
+        {
+            return false;
+        }
+
+        handle.stopped.set(true);
+        handle.replica.stop();
+        Log.info("Stopped replica {}", Replica.registryName(shard, id));
+
+        return true;
+    }
+
+    public TreeMap<String, AuctionReplica> replicasInShard(int shard)
+    {
+        TreeMap<String, AuctionReplica> inShard = new TreeMap<>();
+
+        for(Map.Entry<String, Handle> entry : replicas.entrySet())
+        {
+            if(Replica.isInShard(entry.getKey(), shard))
+            {
+                inShard.put(entry.getKey(), entry.getValue().proxy);
+            }
+        }
+
+        return inShard;
+    }
+
+    // The frontend as external clients see it, timed and traced like the exported one
+    public Auction getAuction()
+    {
+        return this.auction;
+    }
+
+    public Frontend getFrontend()
+    {
+        return this.frontend;
+    }
+
+    // Call the replica directly, copying any ReplicaState passed in or returned so replicas never share their maps
+    // Calls made during a traced request get a span each, as they would over RMI
+    private AuctionReplica direct(String name, int shard, AuctionReplica replica, AtomicBoolean stopped)
+    {
+        return (AuctionReplica) Proxy.newProxyInstance(AuctionReplica.class.getClassLoader(), new Class<?>[] { AuctionReplica.class }, (proxy, method, args) -> {
+            Object[] callArgs = args != null ? args : new Object[0];
+
+            if(method.getDeclaringClass() == Object.class)
+            {
+                return method.invoke(replica, callArgs);
+            }
+
+            Trace.Span span = Trace.span("call " + name + "." + method.getName());
+
+            try
+            {
+                if(stopped.get())
+                {
+                    span.failed();
+                    throw new ConnectException("Replica " + name + " is stopped");
+                }
+
+                for(int i = 0; i < callArgs.length; i++)
+                {
+                    if(callArgs[i] instanceof ReplicaState)
+                    {
+                        callArgs[i] = copy(pushedBytes((ReplicaState) callArgs[i], shard));
+                    }
+                }
+
+                try
+                {
+                    Object result = method.invoke(replica, callArgs);
+                    return result instanceof ReplicaState ? copy(serialize((ReplicaState) result)) : result;
+                }
+                catch(InvocationTargetException e)
+                {
+                    span.failed();
+                    throw e.getCause();
+                }
+            }
+            finally
+            {
+                span.close();
+            }
+        });
+    }
+
+    // A copy of the serialized state sharing nothing with the original, as a backup would get over RMI
+    private ReplicaState copy(byte[] bytes) throws Exception
+    {
+        Trace.Span span = Trace.span("copy state");
+
+        try(ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes)))
+        {
+            return (ReplicaState) in.readObject();
+        }
+        finally
+        {
+            span.close();
+        }
+    }
+
+    // Every backup of a push gets the same state object, so only the first one to ask serializes it
+    // The bytes are dropped once each backup of the shard has had them, rather than kept until the shard's next push
+    // A push that reaches fewer backups than expected, as when one is stopped part way, is replaced by the next one
+    private synchronized byte[] pushedBytes(ReplicaState state, int shard) throws Exception
+    {
+        PushedState pushed = pushedStates.get(shard);
+
+        if(pushed == null || pushed.state != state)
+        {
+            pushed = new PushedState(state, serialize(state), replicasInShard(shard).size() - 1);
+            pushedStates.put(shard, pushed);
+        }
+
+        if(--pushed.copiesLeft <= 0)
+        {
+            pushedStates.remove(shard);
+        }
+
+        return pushed.bytes;
+    }
+
+    private static byte[] serialize(ReplicaState state) throws Exception
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try(ObjectOutputStream out = new ObjectOutputStream(bytes))
+        {
+            out.writeObject(state);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    public static void main(String[] args)
+    {
+        try
+        {
+            int replicasPerShard = args.length > 0 ? Integer.parseInt(args[0]) : 2;
+            String name = args.length > 1 ? Frontend.serviceName + "-" + args[1] : Frontend.serviceName;
+            int shardCount = Integer.getInteger("auction.shards", 1);
+
+            // Use the registry already running on localhost if there is one, otherwise this JVM hosts it
+            try
+            {
+                registry = LocateRegistry.createRegistry(Registry.REGISTRY_PORT);
+            }
+            catch(Exception e)
+            {
+                Log.info("Using the registry already running on localhost");
+            }
+
+            EmbeddedAuction embedded = new EmbeddedAuction(replicasPerShard, shardCount);
+
+            for(Handle handle : embedded.replicas.values())
+            {
+                handle.replica.getOperationMetrics().startDumping();
+            }
+
+            Frontend.export(embedded.getFrontend(), name);
+            Log.info("Embedded deployment started with {} shards of {} replicas", shardCount, replicasPerShard);
+        }
+        catch(Exception e)
+        {
+            Log.error("Exception starting embedded deployment", e);
+        }
+    }
+}
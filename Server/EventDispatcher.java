@@ -0,0 +1,317 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Fans bid and close events out to the users watching each item, see Backend.subscribe
+// The bid path only merges the event into each watcher's outbox, it never waits on a subscriber
+// A dispatcher thread hands outboxes with events to the delivery executor, one delivery in flight per subscriber,
+// so a slow subscriber just has its pending events merged (one per item, newest bid wins) into its next batch
+// Subscribers whose deliveries keep failing are dropped, along with all their subscriptions
+// An outbox is only kept while it has events to send or failures to count, so subscribers that stop watching items
+// arent held on to by it
+//
+// Configured with system properties:
+//   auction.eventBatchSize  most events sent in one onEvents call (default 64)
+//   auction.eventQueueSize  most items with pending events per subscriber, the oldest are dropped past this (default 1024)
+//   auction.maxDeliveries   limit on concurrently running deliveries (default 1000)
+public class EventDispatcher
+{
+    // Consecutive failed deliveries before a subscriber is dropped
+    private static final int MAX_FAILURES = 3;
+
+    private final int maxBatch = Integer.getInteger("auction.eventBatchSize", 64);
+    private final int maxPending = Integer.getInteger("auction.eventQueueSize", 1024);
+
+    // itemID -> userID -> listener, replicated with the rest of the state so a new primary keeps notifying
+    private ConcurrentHashMap<Integer, Map<Integer, AuctionListener>> subscriptions = new ConcurrentHashMap<>();
+
+    // Pending events of one subscriber, keyed by item so later events for the same item merge into the pending one
+    private static class Outbox
+    {
+        final AuctionListener listener;
+        final LinkedHashMap<Integer, AuctionEvent> pending = new LinkedHashMap<>();
+        boolean queued; // waiting in the ready queue or being delivered
+        boolean removed; // taken out of outboxes, events go to a new outbox instead
+        int failures;
+
+        Outbox(AuctionListener listener)
+        {
+            this.listener = listener;
+        }
+    }
+
+    private final Map<AuctionListener, Outbox> outboxes = new ConcurrentHashMap<>();
+    private final LinkedBlockingQueue<Outbox> ready = new LinkedBlockingQueue<>();
+    private RequestExecutor deliveries;
+
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong merged = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failedDeliveries = new AtomicLong();
+
+    public void subscribe(int itemID, int userID, AuctionListener listener)
+    {
+        subscriptions.computeIfAbsent(itemID, id -> new ConcurrentHashMap<>()).put(userID, listener);
+    }
+
+    public void unsubscribe(int itemID, int userID)
+    {
+        Map<Integer, AuctionListener> watchers = subscriptions.get(itemID);
+
+        if(watchers != null)
+        {
+            watchers.remove(userID);
+        }
+    }
+
+    public ConcurrentHashMap<Integer, Map<Integer, AuctionListener>> getSubscriptions()
+    {
+        return this.subscriptions;
+    }
+
+    public void setSubscriptions(Map<Integer, Map<Integer, AuctionListener>> updated)
+    {
+        ConcurrentHashMap<Integer, Map<Integer, AuctionListener>> copy = new ConcurrentHashMap<>();
+
+        if(updated != null)
+        {
+            for(Map.Entry<Integer, Map<Integer, AuctionListener>> entry : updated.entrySet())
+            {
+                copy.put(entry.getKey(), new ConcurrentHashMap<>(entry.getValue()));
+            }
+        }
+
+        this.subscriptions = copy;
+    }
+
+    // A bid by bidderID is now the highest on the item, previousBidderID is the user it replaced or -1
+    public void publishBid(int itemID, int price, int bidderID, int previousBidderID)
+    {
+        Map<Integer, AuctionListener> watchers = subscriptions.get(itemID);
+
+        if(watchers == null)
+        {
+            return;
+        }
+
+        for(Map.Entry<Integer, AuctionListener> watcher : watchers.entrySet())
+        {
+            int userID = watcher.getKey();
+
+            // Bidders dont need telling about their own bid
+            if(userID != bidderID)
+            {
+                offer(watcher.getValue(), new AuctionEvent(userID == previousBidderID ? AuctionEvent.OUTBID : AuctionEvent.NEW_BID, itemID, price));
+            }
+        }
+    }
+
+    // The auction closed, this is the last event for the item so its subscriptions are removed
+    public void publishClosed(int itemID, String winningEmail, int winningPrice)
+    {
+        Map<Integer, AuctionListener> watchers = subscriptions.remove(itemID);
+
+        if(watchers == null)
+        {
+            return;
+        }
+
+        for(AuctionListener listener : watchers.values())
+        {
+            AuctionEvent event = new AuctionEvent(AuctionEvent.CLOSED, itemID, winningPrice);
+            event.winningEmail = winningEmail;
+            offer(listener, event);
+        }
+    }
+
+    // Merge the event into the subscriber's outbox and queue the outbox for delivery if it isnt already
+    private void offer(AuctionListener listener, AuctionEvent event)
+    {
+        published.incrementAndGet();
+
+        while(!offer(outboxes.computeIfAbsent(listener, Outbox::new), event))
+        {
+            // The outbox was removed as it went idle, take the new one
+        }
+    }
+
+    // False without adding the event if the outbox has been removed
+    private boolean offer(Outbox outbox, AuctionEvent event)
+    {
+        synchronized(outbox)
+        {
+            if(outbox.removed)
+            {
+                return false;
+            }
+
+            AuctionEvent pending = outbox.pending.remove(event.itemID);
+
+            if(pending != null)
+            {
+                merged.incrementAndGet();
+                event.mergedCount += pending.mergedCount;
+
+                // A close is final, and a subscriber that was outbid is still outbid after later bids
+                if(pending.type == AuctionEvent.CLOSED || (pending.type == AuctionEvent.OUTBID && event.type == AuctionEvent.NEW_BID))
+                {
+                    pending.highestBid = pending.type == AuctionEvent.CLOSED ? pending.highestBid : event.highestBid;
+                    pending.mergedCount = event.mergedCount;
+                    event = pending;
+                }
+            }
+
+            outbox.pending.put(event.itemID, event);
+
+            if(outbox.pending.size() > maxPending)
+            {
+                Iterator<AuctionEvent> oldest = outbox.pending.values().iterator();
+                oldest.next();
+                oldest.remove();
+                dropped.incrementAndGet();
+            }
+
+            if(!outbox.queued)
+            {
+                outbox.queued = true;
+                startDispatcher();
+                ready.offer(outbox);
+            }
+        }
+
+        return true;
+    }
+
+    // Started on the first event, so backups that never publish dont run the thread
+    private synchronized void startDispatcher()
+    {
+        if(deliveries != null)
+        {
+            return;
+        }
+
+        deliveries = new RequestExecutor(System.getProperty("auction.executor", "virtual"),
+                Integer.getInteger("auction.maxDeliveries", 1000),
+                Integer.getInteger("auction.platformThreads", 200));
+
+        Thread dispatcher = new Thread(() -> {
+            try
+            {
+                while(true)
+                {
+                    Outbox outbox = ready.take();
+                    deliveries.execute(() -> deliver(outbox));
+                }
+            }
+            catch(InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }, "event-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    // Send one batch of the outbox's events, then queue it again if more arrived meanwhile
+    private void deliver(Outbox outbox)
+    {
+        List<AuctionEvent> batch = new ArrayList<>();
+
+        synchronized(outbox)
+        {
+            Iterator<AuctionEvent> pending = outbox.pending.values().iterator();
+
+            while(pending.hasNext() && batch.size() < maxBatch)
+            {
+                batch.add(pending.next());
+                pending.remove();
+            }
+        }
+
+        boolean dropSubscriber = false;
+
+        if(!batch.isEmpty())
+        {
+            try
+            {
+                outbox.listener.onEvents(batch.toArray(new AuctionEvent[0]));
+                delivered.addAndGet(batch.size());
+                outbox.failures = 0;
+            }
+            catch(Exception e)
+            {
+                failedDeliveries.incrementAndGet();
+                dropSubscriber = ++outbox.failures >= MAX_FAILURES;
+                Log.warn("Failed to deliver {} auction events: {}", batch.size(), e.getMessage());
+            }
+        }
+
+        if(dropSubscriber)
+        {
+            Log.warn("Dropping a subscriber after {} failed deliveries", MAX_FAILURES);
+            removeListener(outbox.listener);
+        }
+
+        synchronized(outbox)
+        {
+            if(dropSubscriber)
+            {
+                dropped.addAndGet(outbox.pending.size());
+                outbox.pending.clear();
+                outbox.removed = true;
+            }
+
+            if(outbox.pending.isEmpty())
+            {
+                outbox.queued = false;
+
+                // Nothing left to send, so the next event makes a new outbox, unless failures are still being counted
+                // for a subscriber that is still watching something
+                if(!outbox.removed && (outbox.failures == 0 || !isSubscribed(outbox.listener)))
+                {
+                    outbox.removed = true;
+                    outboxes.remove(outbox.listener, outbox);
+                }
+            }
+            else
+            {
+                ready.offer(outbox);
+            }
+        }
+    }
+
+    private boolean isSubscribed(AuctionListener listener)
+    {
+        for(Map<Integer, AuctionListener> watchers : subscriptions.values())
+        {
+            if(watchers.containsValue(listener))
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private void removeListener(AuctionListener listener)
+    {
+        outboxes.remove(listener);
+
+        for(Map<Integer, AuctionListener> watchers : subscriptions.values())
+        {
+            watchers.values().removeIf(listener::equals);
+        }
+    }
+
+    public String getStats()
+    {
+        return String.format("Auction events: %d published, %d delivered, %d merged, %d dropped, %d failed deliveries",
+            published.get(), delivered.get(), merged.get(), dropped.get(), failedDeliveries.get());
+    }
+}
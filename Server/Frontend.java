@@ -4,215 +4,564 @@ import java.rmi.registry.Registry;
 import java.rmi.server.UnicastRemoteObject;
 import java.security.PublicKey;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 // Implements the auction interface to provide seamless auction function calls
+// Items are partitioned across one or more shards, each its own group of replicas with a primary and backups
+// An item's shard is its ID modulo the shard count, so getSpec, bid and closeAuction go straight to one shard's primary
+// Users, challenges and tokens live on shard 0, and every new user and token is copied to the other shards
 public class Frontend implements Auction
 {
-    // Create list for replicas and variable for the primary
-    private List<AuctionReplica> AuctionReplicas;
-    private AuctionReplica primary;
+    // One replica group per shard, shard 0 is also the home of user and authentication state
+    private final ReplicaGroup[] shards;
+    private final AtomicInteger nextNewAuctionShard = new AtomicInteger();
     public static String serviceName = "FrontEnd";
 
+    // Used when no -Dauction.cacheTtlMs is given and more than one frontend may be running, see main
+    private static final long SHARED_CACHE_TTL_MS = 500;
+
+    // Read cache for getSpec and listItems, invalidated by the writes passing through this frontend
+    // Writes through other frontends are not seen here, so with several frontends entries also expire after auction.cacheTtlMs
+    // Tokens returned by authenticate are remembered so cache hits can be checked without asking the primary
+    private final FrontendCache cache = new FrontendCache(Integer.getInteger("auction.cacheSize", 10000), Long.getLong("auction.cacheTtlMs", 0));
+    private final Map<Integer, TokenInfo> sessions = new ConcurrentHashMap<>();
+
+    // Separate in-flight budgets for reads, bids, logins and other writes, requests over them get a fast ServerBusyException
+    // Cache hits are answered before admission, only calls that reach a primary count against the budgets
+    private final AdmissionController admission = new AdmissionController();
+
+    // Latency and counts of every operation, recorded by the wrapper main exports the frontend through, see OperationMetrics
+    private final OperationMetrics metrics = new OperationMetrics("Frontend");
+
     public Frontend()
     {
-        // Create list to store references to running replicas
-        // Elect a primary replica immediately once the front end has started
-        
-        AuctionReplicas = new ArrayList<>();
-        AuctionReplicas = retrieveRunningReplicas();
-        primary = getPrimaryReplica();
+        this(Integer.getInteger("auction.shards", 1));
     }
 
-    // Function to get the primary replica to use for every auction operation
-    // Checks if the primary replica is down, if so, it elects a new primary and returns it
-    // If the current primary replica is running fine, simply return that one
-    public AuctionReplica getPrimaryReplica()
+    public Frontend(int shardCount)
     {
-        try
+        this(shardCount, ReplicaDirectory.REGISTRY);
+    }
+
+    // Replicas are found through the directory, the localhost registry unless running embedded, see EmbeddedAuction
+    public Frontend(int shardCount, ReplicaDirectory directory)
+    {
+        // Find the running replicas of each shard and elect their primaries immediately once the front end has started
+        shards = new ReplicaGroup[shardCount];
+
+        for(int shard = 0; shard < shardCount; shard++)
         {
-            if(primary != null) // Check if the primary hasnt previously been elected for some reason
-            {
-                try
-                {
-                    if(primary.isAlive()) // Check if primary is alive, function simply returns true
-                    {
-                        System.out.println("Primary is not null and is alive, continuing..");
+            shards[shard] = new ReplicaGroup(shard, metrics, directory);
+        }
+    }
 
-                        return primary;
-                    }
-                }
-                catch (Exception e) // Catch exception for isAlive
-                {
-                    System.out.println("Primary is down, electing a new primary..");
-                }
-            }
-    
-            // If the primary replica is down, update the list and elect a new one
-            // Important to refresh the list of running replicas first
-            AuctionReplicas = retrieveRunningReplicas();
-            primary = electPrimaryReplica();
+    // Primary of shard 0, which handles registration and authentication
+    public AuctionReplica getPrimaryReplica()
+    {
+        return shards[0].getPrimaryReplica();
+    }
 
-            return primary;
+    public ReplicaGroup[] getShards()
+    {
+        return this.shards;
+    }
 
-        }
-        catch(Exception e)
-        {
-            System.out.println("Exception retrieving the primary replica: ");
-            e.printStackTrace();
+    // The group an item belongs to, must match how Backend.serveNewItemID hands out IDs
+    private ReplicaGroup shardFor(int itemID)
+    {
+        return shards[Math.floorMod(itemID, shards.length)];
+    }
 
-            return null;
-        }
+    // A call made against one shard's primary
+    private interface ShardCall<T>
+    {
+        T call(int shard, AuctionReplica primary) throws Exception;
     }
 
-    // Function to elect a new primary replica, called when the frontend starts or primary is detected as down
-    // Loop through each identified replica, call is alive to check if it can be elected
-    public AuctionReplica electPrimaryReplica()
+    // Run a call on the primary of each given shard at the same time and return the results in the same order
+    private <T> List<T> callShards(List<ReplicaGroup> groups, ShardCall<T> call) throws RemoteException
     {
-        // Refresh list of replicas on localhost before electing a new one
-        AuctionReplicas = retrieveRunningReplicas();
+        List<CompletableFuture<T>> calls = new ArrayList<>(groups.size());
 
-        try
+        for(ReplicaGroup group : groups)
+        {
+            calls.add(RequestExecutor.forShardCalls().submit(() -> call.call(group.getShard(), group.getPrimaryReplica())));
+        }
+
+        List<T> results = new ArrayList<>(groups.size());
+
+        for(CompletableFuture<T> shardCall : calls)
         {
-            // If the are no replicas returned in the list, we cant elect a new primary
-            if(AuctionReplicas.size() == 0)
+            try
             {
-                throw new Exception("No replicas active");
+                results.add(shardCall.join());
             }
-
-            // Loop through replicas, call is alive, elect the first replica to properly respond and return it
-            for(AuctionReplica replica : AuctionReplicas)
+            catch(CompletionException e)
             {
-                try
+                if(e.getCause() instanceof RemoteException)
                 {
-                    if(replica.isAlive())
-                    {
-                        System.out.println("New primary replica elected, ID: " + replica.getPrimaryReplicaID());
-                        return replica;
-                    }
+                    throw (RemoteException) e.getCause();
                 }
-                catch(Exception e)
-                {
-                    System.out.println("Checked replica doesnt return isAlive properly, moving on..");
-                }
-                
+                throw new RemoteException("Shard call failed", e.getCause());
             }
+        }
+
+        return results;
+    }
 
-            throw new Exception("No alive replicas active");
+    // Every shard except shard 0, used to copy users and tokens out from the home shard
+    private List<ReplicaGroup> otherShards()
+    {
+        return Arrays.asList(shards).subList(1, shards.length);
+    }
+
+    // Split the item IDs by shard, returning for each shard the indexes into itemIDs that belong to it
+    private List<List<Integer>> indexesByShard(int[] itemIDs)
+    {
+        List<List<Integer>> indexes = new ArrayList<>(shards.length);
+
+        for(int shard = 0; shard < shards.length; shard++)
+        {
+            indexes.add(new ArrayList<>());
         }
-        catch(Exception e)
+
+        for(int i = 0; i < itemIDs.length; i++)
         {
-            System.out.println("Exception electing a primary replica: ");
-            e.printStackTrace();
-            return null;
+            indexes.get(Math.floorMod(itemIDs[i], shards.length)).add(i);
         }
-        
+
+        return indexes;
     }
 
-    // Function to retrieve all running replicas on the localhost registry
-    public ArrayList<AuctionReplica> retrieveRunningReplicas()
+    // The shards that have at least one entry in a split from indexesByShard
+    // An empty batch still goes to the home shard, so the token is checked the same as for any other batch
+    private List<ReplicaGroup> shardsWithEntries(List<List<Integer>> indexes)
     {
-        // Create a list to store and return the running replicas
-        ArrayList<AuctionReplica> runningReplicas = new ArrayList<>();
+        List<ReplicaGroup> groups = new ArrayList<>();
 
-        try
+        for(int shard = 0; shard < shards.length; shard++)
         {
-            // Loop through all the names in the localhost registry, add each one to the list
-            Registry replicaRegistry = LocateRegistry.getRegistry("localhost");
-
-            for (String name : replicaRegistry.list())
+            if(!indexes.get(shard).isEmpty())
             {
-                if (!name.contains("FrontEnd")) // Ensure we arent picking up the front end in the list of replicas
-                {
-                    AuctionReplica replica = (AuctionReplica) replicaRegistry.lookup(name);
-                    runningReplicas.add(replica);
-                }
+                groups.add(shards[shard]);
             }
         }
-        catch (Exception e)
+
+        if(groups.isEmpty())
+        {
+            groups.add(shards[0]);
+        }
+
+        return groups;
+    }
+
+    // The values at the given indexes, in order
+    private static int[] pick(int[] values, List<Integer> indexes)
+    {
+        int[] picked = new int[indexes.size()];
+
+        for(int i = 0; i < picked.length; i++)
         {
-            System.out.println("Error fetching running replicas:");
-            e.printStackTrace();
+            picked[i] = values[indexes.get(i)];
         }
 
-        return runningReplicas;
+        return picked;
+    }
+
+    // Same check as the Backend's isValidToken, using the tokens this frontend has seen returned by authenticate
+    private boolean hasValidSession(int userID, String token)
+    {
+        TokenInfo tokenInfo = sessions.get(userID);
+        return tokenInfo != null && tokenInfo.token.equals(token) && System.currentTimeMillis() < tokenInfo.expiryTime;
+    }
+
+    public AdmissionController getAdmission()
+    {
+        return this.admission;
+    }
+
+    public OperationMetrics getOperationMetrics()
+    {
+        return this.metrics;
+    }
+
+    public FrontendCache getCache()
+    {
+        return this.cache;
     }
 
     // Implemented Auction methods, simply direct the function call to the primary replica and return the result
     // getPrimaryReplica ensures that the primary is alive before calling the auction method on it
     // Before returning the result to the user, make the primary update the state of every other replica so state is maintained
+    // Reads dont change any state, so they are answered from the cache when possible and never replicated
 
     public Integer register(String email, PublicKey pubKey) throws RemoteException
     {
-        try
-        {
-            Integer userID = getPrimaryReplica().register(email, pubKey);
-            primary.updateReplicaStates();
+        return admission.logins.admit(() -> {
+            try
+            {
+                AuctionReplica primary = getPrimaryReplica();
+                Integer userID = primary.register(email, pubKey);
+                primary.updateReplicaStates();
 
-            return userID;
-        }
-        catch (Exception e)
-        {
-            System.out.println("Frontend Exception: ");
-            e.printStackTrace();
-            return null;
-        }
+                // Copy the user to every other shard so they can list and bid on items there
+                if(userID != null)
+                {
+                    callShards(otherShards(), (shard, shardPrimary) -> {
+                        shardPrimary.installUser(email, userID, pubKey);
+                        return shardPrimary.updateReplicaStates();
+                    });
+                }
+
+                return userID;
+            }
+            catch (Exception e)
+            {
+                Log.error("Frontend Exception", e);
+                return null;
+            }
+        });
     }
 
     public ChallengeInfo challenge(int userID, String clientChallenge) throws RemoteException
     {
-        ChallengeInfo challengeInfo = getPrimaryReplica().challenge(userID, clientChallenge);
-        primary.updateReplicaStates();
+        return admission.logins.admit(() -> {
+            AuctionReplica primary = getPrimaryReplica();
+            ChallengeInfo challengeInfo = primary.challenge(userID, clientChallenge);
+            primary.updateReplicaStates();
 
-        return challengeInfo;
+            return challengeInfo;
+        });
     }
 
     public TokenInfo authenticate(int userID, byte[] signature) throws RemoteException
     {
-        TokenInfo tokenInfo = getPrimaryReplica().authenticate(userID, signature);
-        primary.updateReplicaStates();
+        return admission.logins.admit(() -> {
+            AuctionReplica primary = getPrimaryReplica();
+            TokenInfo tokenInfo = primary.authenticate(userID, signature);
+            primary.updateReplicaStates();
+
+            if(tokenInfo != null)
+            {
+                sessions.put(userID, tokenInfo);
+
+                // Every shard validates the token itself, so they all need the new one
+                callShards(otherShards(), (shard, shardPrimary) -> {
+                    shardPrimary.installToken(userID, tokenInfo);
+                    return shardPrimary.updateReplicaStates();
+                });
+            }
 
-        return tokenInfo;
+            return tokenInfo;
+        });
     }
 
     public AuctionItem getSpec(int userID, int itemID, String token) throws RemoteException
     {
-        AuctionItem auctionItem = getPrimaryReplica().getSpec(userID, itemID, token);
-        primary.updateReplicaStates();
+        if(hasValidSession(userID, token))
+        {
+            AuctionItem cachedItem = cache.getSpec(itemID);
+
+            if(cachedItem != null)
+            {
+                return cachedItem;
+            }
+        }
+
+        long generation = cache.generation();
+        AuctionItem auctionItem = admission.reads.admit(() -> shardFor(itemID).getPrimaryReplica().getSpec(userID, itemID, token));
+
+        if(auctionItem != null)
+        {
+            cache.putSpec(auctionItem, generation);
+        }
 
         return auctionItem;
     }
 
+    // History is read from the item's primary and not cached, it grows with every bid
+    public BidHistoryPage getBidHistory(int userID, int itemID, int cursor, String token) throws RemoteException
+    {
+        return admission.reads.admit(() -> shardFor(itemID).getPrimaryReplica().getBidHistory(userID, itemID, cursor, token));
+    }
+
+    // New auctions are spread over the shards in turn
     public Integer newAuction(int userID, AuctionSaleItem item, String token) throws RemoteException
     {
-        Integer newItemID = getPrimaryReplica().newAuction(userID, item, token);
-        primary.updateReplicaStates();
+        return admission.writes.admit(() -> {
+            AuctionReplica primary = shards[Math.floorMod(nextNewAuctionShard.getAndIncrement(), shards.length)].getPrimaryReplica();
+            Integer newItemID = primary.newAuction(userID, item, token);
+            primary.updateReplicaStates();
+
+            if(newItemID != null)
+            {
+                cache.invalidateListing();
+            }
 
-        return newItemID;
+            return newItemID;
+        });
     }
 
+    // Gather the listing from every shard and join them together
     public AuctionItem[] listItems(int userID, String token) throws RemoteException
     {
-        AuctionItem[] itemList = getPrimaryReplica().listItems(userID, token);
-        primary.updateReplicaStates();
+        if(hasValidSession(userID, token))
+        {
+            AuctionItem[] cachedList = cache.getListing();
+
+            if(cachedList != null)
+            {
+                return cachedList;
+            }
+        }
+
+        long generation = cache.generation();
+        List<AuctionItem> itemList = new ArrayList<>();
+
+        List<AuctionItem[]> shardListings = admission.reads.admit(() -> callShards(Arrays.asList(shards), (shard, shardPrimary) -> shardPrimary.listItems(userID, token)));
+
+        for(AuctionItem[] shardItems : shardListings)
+        {
+            if(shardItems == null)
+            {
+                return null; // Invalid token or user, every shard agrees on those
+            }
+
+            itemList.addAll(Arrays.asList(shardItems));
+        }
+
+        AuctionItem[] items = itemList.toArray(new AuctionItem[0]);
+        cache.putListing(items, generation);
 
-        return itemList;
+        return items;
     }
 
     public AuctionResult closeAuction(int userID, int itemID, String token) throws RemoteException
     {
-        AuctionResult auctionResult = getPrimaryReplica().closeAuction(userID, itemID, token);
-        primary.updateReplicaStates();
+        return admission.writes.admit(() -> {
+            AuctionReplica primary = shardFor(itemID).getPrimaryReplica();
+            AuctionResult auctionResult = primary.closeAuction(userID, itemID, token);
+            primary.updateReplicaStates();
 
-        return auctionResult;
+            if(auctionResult != null)
+            {
+                cache.invalidateItem(itemID);
+            }
+
+            return auctionResult;
+        });
+    }
+
+    public boolean proxyBid(int userID, int itemID, int maxPrice, int increment, String token) throws RemoteException
+    {
+        return admission.bids.admit(() -> {
+            AuctionReplica primary = shardFor(itemID).getPrimaryReplica();
+            boolean leading = primary.proxyBid(userID, itemID, maxPrice, increment, token);
+            primary.updateReplicaStates();
+
+            // Even a proxy that was outbid at once may have pushed the price up
+            cache.invalidateItem(itemID);
+
+            return leading;
+        });
     }
 
     public boolean bid(int userID, int itemID, int price, String token) throws RemoteException
     {
-        boolean bidResult = getPrimaryReplica().bid(userID, itemID, price, token);
-        primary.updateReplicaStates();
+        return admission.bids.admit(() -> {
+            AuctionReplica primary = shardFor(itemID).getPrimaryReplica();
+            boolean bidResult = primary.bid(userID, itemID, price, token);
+            primary.updateReplicaStates();
+
+            if(bidResult)
+            {
+                cache.invalidateItem(itemID);
+            }
+            else
+            {
+                cache.bidRejected(itemID, price);
+            }
+
+            return bidResult;
+        });
+    }
+
+    // Batch operations run every entry on the primary in one call, and replicate once for the whole batch
+    // Entries are split by shard and each shard's part runs on its primary at the same time
+    // For getSpecs only the entries missing from the cache are fetched from the primary
+    public AuctionItem[] getSpecs(int userID, int[] itemIDs, String token) throws RemoteException
+    {
+        if(itemIDs == null)
+        {
+            return null;
+        }
+
+        AuctionItem[] items = new AuctionItem[itemIDs.length];
+        int[] missing = itemIDs;
+
+        if(hasValidSession(userID, token))
+        {
+            int missingCount = 0;
+            missing = new int[itemIDs.length];
+
+            for(int i = 0; i < itemIDs.length; i++)
+            {
+                items[i] = cache.getSpec(itemIDs[i]);
+
+                if(items[i] == null)
+                {
+                    missing[missingCount++] = itemIDs[i];
+                }
+            }
+
+            if(missingCount == 0)
+            {
+                return items;
+            }
+
+            missing = Arrays.copyOf(missing, missingCount);
+        }
+
+        long generation = cache.generation();
+        int[] missingIDs = missing;
+        List<List<Integer>> indexes = indexesByShard(missingIDs);
+        List<ReplicaGroup> involved = shardsWithEntries(indexes);
+
+        List<AuctionItem[]> shardResults = admission.reads.admit(() -> callShards(involved,
+                (shard, shardPrimary) -> shardPrimary.getSpecs(userID, pick(missingIDs, indexes.get(shard)), token)));
+
+        // Put each shard's results back at the positions their IDs came from
+        AuctionItem[] fetched = new AuctionItem[missingIDs.length];
+
+        for(int k = 0; k < involved.size(); k++)
+        {
+            AuctionItem[] shardItems = shardResults.get(k);
+            List<Integer> shardIndexes = indexes.get(involved.get(k).getShard());
+
+            if(shardItems == null)
+            {
+                return null; // Invalid token
+            }
+
+            for(int j = 0; j < shardItems.length; j++)
+            {
+                fetched[shardIndexes.get(j)] = shardItems[j];
+            }
+        }
+
+        // Fill the gaps in order, the fetched entries line up with the missing IDs
+        int next = 0;
+
+        for(int i = 0; i < items.length; i++)
+        {
+            if(items[i] == null)
+            {
+                items[i] = fetched[next++];
+
+                if(items[i] != null)
+                {
+                    cache.putSpec(items[i], generation);
+                }
+            }
+        }
+
+        return items;
+    }
+
+    public Integer[] newAuctions(int userID, AuctionSaleItem[] items, String token) throws RemoteException
+    {
+        return admission.writes.admit(() -> {
+            AuctionReplica primary = shards[Math.floorMod(nextNewAuctionShard.getAndIncrement(), shards.length)].getPrimaryReplica();
+            Integer[] newItemIDs = primary.newAuctions(userID, items, token);
+            primary.updateReplicaStates();
+
+            if(newItemIDs != null)
+            {
+                cache.invalidateListing();
+            }
 
-        return bidResult;
+            return newItemIDs;
+        });
+    }
+
+    public boolean[] bids(int userID, int[] itemIDs, int[] prices, String token) throws RemoteException
+    {
+        return admission.bids.admit(() -> {
+            if(itemIDs == null || prices == null || itemIDs.length != prices.length)
+            {
+                return null;
+            }
+
+            List<List<Integer>> indexes = indexesByShard(itemIDs);
+            List<ReplicaGroup> involved = shardsWithEntries(indexes);
+
+            List<boolean[]> shardResults = callShards(involved, (shard, shardPrimary) -> {
+                boolean[] shardBids = shardPrimary.bids(userID, pick(itemIDs, indexes.get(shard)), pick(prices, indexes.get(shard)), token);
+                shardPrimary.updateReplicaStates();
+                return shardBids;
+            });
+
+            boolean[] bidResults = new boolean[itemIDs.length];
+
+            for(int k = 0; k < involved.size(); k++)
+            {
+                boolean[] shardBids = shardResults.get(k);
+                List<Integer> shardIndexes = indexes.get(involved.get(k).getShard());
+
+                if(shardBids == null)
+                {
+                    return null; // Invalid token
+                }
+
+                for(int j = 0; j < shardBids.length; j++)
+                {
+                    bidResults[shardIndexes.get(j)] = shardBids[j];
+
+                    if(shardBids[j])
+                    {
+                        cache.invalidateItem(itemIDs[shardIndexes.get(j)]);
+                    }
+                    else
+                    {
+                        cache.bidRejected(itemIDs[shardIndexes.get(j)], prices[shardIndexes.get(j)]);
+                    }
+                }
+            }
+
+            return bidResults;
+        });
+    }
+
+    // Subscriptions live on the item's shard, where its bids and close happen, and are replicated with the rest of the state
+    public boolean subscribe(int userID, int itemID, AuctionListener listener, String token) throws RemoteException
+    {
+        return admission.writes.admit(() -> {
+            AuctionReplica primary = shardFor(itemID).getPrimaryReplica();
+            boolean subscribed = primary.subscribe(userID, itemID, listener, token);
+            primary.updateReplicaStates();
+
+            return subscribed;
+        });
+    }
+
+    public boolean unsubscribe(int userID, int itemID, String token) throws RemoteException
+    {
+        return admission.writes.admit(() -> {
+            AuctionReplica primary = shardFor(itemID).getPrimaryReplica();
+            boolean unsubscribed = primary.unsubscribe(userID, itemID, token);
+            primary.updateReplicaStates();
+
+            return unsubscribed;
+        });
     }
 
     // This method is not called by clients and does not create state changes
@@ -222,24 +571,99 @@ public class Frontend implements Auction
         return getPrimaryReplica().getPrimaryReplicaID();
     }
 
+    // This frontend's metrics followed by those of each shard's primary, a shard that cant be reached is left out
+    public MetricsReport[] getMetrics() throws RemoteException
+    {
+        List<MetricsReport> reports = new ArrayList<>();
+        reports.add(metrics.report());
+
+        for(ReplicaGroup shard : shards)
+        {
+            try
+            {
+                reports.addAll(Arrays.asList(shard.getPrimaryReplica().getMetrics()));
+            }
+            catch(Exception e)
+            {
+                Log.warn("Cant fetch metrics from the primary of shard {}", shard.getShard());
+            }
+        }
+
+        return reports.toArray(new MetricsReport[0]);
+    }
+
+    // Only reached when the frontend isnt exported through OperationMetrics.wrap, which serves traced calls itself
+    public TracedResult traced(long traceID, String method, Object[] args) throws RemoteException
+    {
+        return Trace.serveDirectly(this, traceID, "Frontend", method, args, Auction.class);
+    }
+
     // Main method, advertise front end service of application for clients to use
+    // Run as java Frontend <name> to start one of several frontends, advertised as "FrontEnd-<name>"
+    // Frontends hold no state the others need, the elected primaries are kept on the replicas, so any number can run at once
     public static void main(String[] args)
     {
         try
         {
-            Frontend fe = new Frontend();
+            String name = args.length > 0 ? serviceName + "-" + args[0] : serviceName;
 
-            Auction stub = (Auction) UnicastRemoteObject.exportObject(fe, 0);
-            Registry registry = LocateRegistry.getRegistry("localhost");
-            registry.rebind(serviceName, stub);
-
-            System.out.println("Frontend service started");
+            // Other frontends' writes dont invalidate this one's cache, so let cached entries go stale for a short time at most
+            if(args.length > 0 && System.getProperty("auction.cacheTtlMs") == null)
+            {
+                System.setProperty("auction.cacheTtlMs", String.valueOf(SHARED_CACHE_TTL_MS));
+            }
 
+            export(new Frontend(), name);
         }
         catch(Exception e)
         {
-            System.out.println("Exception starting frontend: ");
-            e.printStackTrace();
+            Log.error("Exception starting frontend", e);
+        }
+    }
+
+    // Advertise the frontend on the localhost registry under the name, timed by its OperationMetrics, and start its
+    // metrics dumps, stats printing and binary protocol server as configured, returns the timed wrapper clients call
+    public static Auction export(Frontend fe, String name) throws Exception
+    {
+        Auction timed = fe.getOperationMetrics().wrap(fe, Auction.class);
+        Auction stub = (Auction) UnicastRemoteObject.exportObject(timed, 0);
+        Registry registry = LocateRegistry.getRegistry("localhost");
+        registry.rebind(name, stub);
+
+        Log.info("Frontend service started as {}", name);
+        fe.getOperationMetrics().startDumping();
+
+        // Periodically print the read cache hit rate and the admission budgets, set -Dauction.statsSeconds=0 to turn off
+        int statsSeconds = Integer.getInteger("auction.statsSeconds", Integer.getInteger("auction.cacheStatsSeconds", 60));
+
+        if((fe.getCache().isEnabled() || fe.getAdmission().isEnabled()) && statsSeconds > 0)
+        {
+            ScheduledExecutorService statsPrinter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "frontend-stats");
+                thread.setDaemon(true);
+                return thread;
+            });
+            statsPrinter.scheduleAtFixedRate(() -> {
+                if(fe.getCache().isEnabled())
+                {
+                    Log.info("{}", fe.getCache().getStats());
+                }
+                if(fe.getAdmission().isEnabled())
+                {
+                    Log.info("{}", fe.getAdmission().getStats());
+                }
+            }, statsSeconds, statsSeconds, TimeUnit.SECONDS);
+        }
+
+        // Optionally serve the same operations over the binary protocol, e.g. java -Dauction.binaryPort=7099 Frontend
+        int binaryPort = Integer.getInteger("auction.binaryPort", -1);
+
+        if(binaryPort > 0)
+        {
+            BinaryFrontend binaryFrontend = new BinaryFrontend(timed, binaryPort, RequestExecutor.forRequests());
+            binaryFrontend.start();
         }
+
+        return timed;
     }
 }
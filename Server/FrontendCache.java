@@ -0,0 +1,202 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Bounded read cache in the Frontend for item specs and the item listing
+// Every write passes through the Frontend, so entries are invalidated exactly when newAuction, bid or closeAuction
+// change them, and lookups for hot items are answered without a round trip to the primary
+//
+// Reads that miss are fetched from the primary and then stored, a write that lands in between could make that
+// result stale, so each write bumps a generation and results fetched before the latest write are not stored
+//
+// When several frontends run, writes through the others never reach this cache, so entries can also be given
+// a time to live, bounding how long a read can lag behind another frontend's write
+//
+// Auctions with an end time close on the primary without any write passing through, so an entry is also
+// dropped once any item in it has reached its end time
+public class FrontendCache
+{
+    // A cached value, when it was stored, and the earliest end time of the items in it (0 for none)
+    private static class Entry<T>
+    {
+        final T value;
+        final long storedAt;
+        final long endsAt;
+
+        Entry(T value, long endsAt)
+        {
+            this.value = value;
+            this.storedAt = System.currentTimeMillis();
+            this.endsAt = endsAt;
+        }
+    }
+
+    private final int maxEntries;
+    private final long ttlMs;
+    private final LinkedHashMap<Integer, Entry<AuctionItem>> specs;
+    private Entry<AuctionItem[]> listing;
+
+    // Incremented by every invalidation, see putSpec and putListing
+    private final AtomicLong generation = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public FrontendCache(int maxEntries)
+    {
+        this(maxEntries, 0);
+    }
+
+    // ttlMs of 0 keeps entries until they are invalidated or evicted
+    public FrontendCache(int maxEntries, long ttlMs)
+    {
+        this.maxEntries = maxEntries;
+        this.ttlMs = ttlMs;
+
+        // Access ordered so the least recently read spec is evicted first
+        this.specs = new LinkedHashMap<Integer, Entry<AuctionItem>>(16, 0.75f, true)
+        {
+            protected boolean removeEldestEntry(Map.Entry<Integer, Entry<AuctionItem>> eldest)
+            {
+                if(size() > FrontendCache.this.maxEntries)
+                {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public boolean isEnabled()
+    {
+        return this.maxEntries > 0;
+    }
+
+    // Take before fetching from the primary and pass to the put methods
+    public long generation()
+    {
+        return generation.get();
+    }
+
+    private boolean expired(Entry<?> entry)
+    {
+        long now = System.currentTimeMillis();
+        return (ttlMs > 0 && now - entry.storedAt > ttlMs) || (entry.endsAt != 0 && now >= entry.endsAt);
+    }
+
+    public synchronized AuctionItem getSpec(int itemID)
+    {
+        Entry<AuctionItem> entry = specs.get(itemID);
+
+        if(entry != null && expired(entry))
+        {
+            specs.remove(itemID);
+            entry = null;
+        }
+
+        (entry != null ? hits : misses).incrementAndGet();
+        return entry != null ? entry.value : null;
+    }
+
+    public synchronized void putSpec(AuctionItem item, long fetchedAtGeneration)
+    {
+        if(isEnabled() && generation.get() == fetchedAtGeneration)
+        {
+            specs.put(item.itemID, new Entry<>(item, item.endTime));
+        }
+    }
+
+    public synchronized AuctionItem[] getListing()
+    {
+        if(listing != null && expired(listing))
+        {
+            listing = null;
+        }
+
+        (listing != null ? hits : misses).incrementAndGet();
+        return listing != null ? listing.value : null;
+    }
+
+    public synchronized void putListing(AuctionItem[] items, long fetchedAtGeneration)
+    {
+        if(isEnabled() && generation.get() == fetchedAtGeneration)
+        {
+            long endsAt = 0;
+
+            for(AuctionItem item : items)
+            {
+                if(item.endTime != 0 && (endsAt == 0 || item.endTime < endsAt))
+                {
+                    endsAt = item.endTime;
+                }
+            }
+
+            listing = new Entry<>(items, endsAt);
+        }
+    }
+
+    // A bid at price was turned down, so the item's highest bid is now at least that
+    // If the cached spec says less, the item changed somewhere this cache didnt see, e.g. a proxy bid answering the bid
+    // With no spec cached there is nothing shown to be stale, so a storm of rejected bids doesnt keep dropping the listing
+    public synchronized void bidRejected(int itemID, int price)
+    {
+        Entry<AuctionItem> entry = specs.get(itemID);
+
+        if(entry != null && entry.value.highestBid < price)
+        {
+            invalidateItem(itemID);
+        }
+    }
+
+    // A new item was listed, only the listing changes
+    public synchronized void invalidateListing()
+    {
+        generation.incrementAndGet();
+        invalidations.incrementAndGet();
+        listing = null;
+    }
+
+    // An item's bid or open status changed, so its spec and the listing it appears in are both stale
+    public synchronized void invalidateItem(int itemID)
+    {
+        generation.incrementAndGet();
+        invalidations.incrementAndGet();
+        specs.remove(itemID);
+        listing = null;
+    }
+
+    public long getHits()
+    {
+        return this.hits.get();
+    }
+
+    public long getMisses()
+    {
+        return this.misses.get();
+    }
+
+    public long getEvictions()
+    {
+        return this.evictions.get();
+    }
+
+    public long getInvalidations()
+    {
+        return this.invalidations.get();
+    }
+
+    public String getStats()
+    {
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+
+        synchronized(this)
+        {
+            return String.format("Frontend cache: %d specs cached, hit rate %.1f%% (%d hits, %d misses), %d evictions, %d invalidations",
+                specs.size(), total == 0 ? 0.0 : 100.0 * hitCount / total, hitCount, misses.get(), evictions.get(), invalidations.get());
+        }
+    }
+}
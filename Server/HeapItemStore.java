@@ -0,0 +1,109 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// The default ItemStore, each auction an AuctionItemObject in a concurrent map and each object its own item's lock
+public class HeapItemStore implements ItemStore
+{
+    private final Map<Integer, AuctionItemObject> items = new ConcurrentHashMap<>();
+
+    public void add(AuctionItemObject item)
+    {
+        items.put(item.getID(), item);
+    }
+
+    public AuctionItemObject get(int itemID)
+    {
+        return items.get(itemID);
+    }
+
+    public AuctionItem toAuctionItem(int itemID)
+    {
+        AuctionItemObject item = items.get(itemID);
+        return item != null ? item.toAuctionItem() : null;
+    }
+
+    public boolean contains(int itemID)
+    {
+        return items.containsKey(itemID);
+    }
+
+    public boolean isOpen(int itemID)
+    {
+        AuctionItemObject item = items.get(itemID);
+        return item != null && item.isOpen();
+    }
+
+    public int getHighestBid(int itemID)
+    {
+        AuctionItemObject item = items.get(itemID);
+        return item != null ? item.getHighestBid() : 0;
+    }
+
+    public int getHighestBidderID(int itemID)
+    {
+        AuctionItemObject item = items.get(itemID);
+        return item != null ? item.getHighestBidderID() : -1;
+    }
+
+    public int getSellerID(int itemID)
+    {
+        AuctionItemObject item = items.get(itemID);
+        return item != null ? item.getSellerID() : -1;
+    }
+
+    public long getEndTime(int itemID)
+    {
+        AuctionItemObject item = items.get(itemID);
+        return item != null ? item.getEndTime() : 0;
+    }
+
+    public void setHighestBid(int itemID, int price, int bidderID)
+    {
+        AuctionItemObject item = items.get(itemID);
+        item.setHighestBidderID(bidderID);
+        item.setHighestBid(price);
+    }
+
+    public void close(int itemID, long closeTime)
+    {
+        AuctionItemObject item = items.get(itemID);
+        item.setCloseTime(closeTime);
+        item.setOpen(false);
+    }
+
+    // An item that isnt there has nothing to protect, the map stands in so callers always get something to hold
+    public Object lock(int itemID)
+    {
+        AuctionItemObject item = items.get(itemID);
+        return item != null ? item : items;
+    }
+
+    public int size()
+    {
+        return items.size();
+    }
+
+    public AuctionItem[] listOpen()
+    {
+        AuctionItem[] itemsArray = new AuctionItem[items.size()];
+        int index = 0;
+
+        for(AuctionItemObject item : items.values())
+        {
+            // Closed auctions stay in the map but arent listed, auctions listed meanwhile are left for the next call
+            if(item.isOpen() && index < itemsArray.length)
+            {
+                itemsArray[index++] = item.toAuctionItem();
+            }
+        }
+
+        return index == itemsArray.length ? itemsArray : Arrays.copyOf(itemsArray, index);
+    }
+
+    public Iterator<AuctionItemObject> iterator()
+    {
+        return items.values().iterator();
+    }
+}
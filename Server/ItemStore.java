@@ -0,0 +1,67 @@
+import java.io.Serializable;
+
+// Where a Backend keeps its auctions, every open and closed one by item ID
+// HeapItemStore keeps each as an AuctionItemObject in a map, OffHeapItemStore keeps the same fields in direct memory so
+// millions of auctions give the garbage collector nothing more to trace, pick one with -Dauction.itemStore=heap|offheap
+// Bids and closes change an item through the store while holding lock(itemID), the lock the Backend checks the item under
+// Sent to the backups whole as part of ReplicaState
+public interface ItemStore extends Serializable, Iterable<AuctionItemObject>
+{
+    // Add a new auction, its ID must be one the shard the store was created for hands out, see Backend.serveNewItemID
+    void add(AuctionItemObject item);
+
+    // The auction's record, null if there isnt one, only to be read, changes go through the store
+    // The heap store returns its own object, the off-heap store a copy read under the item's lock
+    AuctionItemObject get(int itemID);
+
+    // The auction as clients see it, null if there isnt one
+    AuctionItem toAuctionItem(int itemID);
+
+    boolean contains(int itemID);
+
+    boolean isOpen(int itemID);
+
+    // 0 if the item isnt there or has no bids
+    int getHighestBid(int itemID);
+
+    // -1 if the item isnt there or has no bids
+    int getHighestBidderID(int itemID);
+
+    // -1 if the item isnt there
+    int getSellerID(int itemID);
+
+    // 0 if the item isnt there or has no end time
+    long getEndTime(int itemID);
+
+    // Make the user the highest bidder at the price, the caller holds lock(itemID)
+    void setHighestBid(int itemID, int price, int bidderID);
+
+    // Mark the auction closed at closeTime (epoch ms), the caller holds lock(itemID)
+    void close(int itemID, long closeTime);
+
+    // Held to check and change an item, so bids and closes on it happen one at a time
+    Object lock(int itemID);
+
+    int size();
+
+    // The open auctions as clients see them
+    AuctionItem[] listOpen();
+
+    // Take on a store received from another replica in a state transfer, returns the store to use from now on
+    // The off-heap store copies the received one into its own buffers and returns itself, the heap store keeps the new one
+    default ItemStore receive(ItemStore received)
+    {
+        return received;
+    }
+
+    // The store auction.itemStore picks for a backend serving the shard
+    static ItemStore create(int shard, int shardCount)
+    {
+        if("offheap".equals(System.getProperty("auction.itemStore", "heap")))
+        {
+            return new OffHeapItemStore(shard, shardCount);
+        }
+
+        return new HeapItemStore();
+    }
+}
@@ -0,0 +1,374 @@
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// Logging for the servers that keeps formatting and printing off the request threads
+// A log call only checks the level, claims a slot in a fixed ring of reusable entries with one compare and set, and
+// stores the message template and its arguments there, so no string is built and no lock is taken
+// A single writer thread turns the entries into lines, filling each {} in the template with the next argument, and prints
+// them in batches to System.out, so request threads no longer queue on the stream's lock for every line
+// If the writer falls so far behind that the ring is full, messages are dropped and counted rather than slowing requests,
+// and the count is logged once it catches up
+//
+// Lines look like: 2026-10-19 07:59:05.123 INFO  [rmi-request-3] Auction created itemID=12 sellerID=3
+//
+// Configured with system properties:
+//   auction.logLevel       DEBUG, INFO, WARN, ERROR or OFF (default INFO), per request chatter is logged at DEBUG
+//   auction.logBufferSize  entries in the ring, rounded up to a power of two (default 8192)
+//   auction.logAsync       false to format and print on the calling thread, in order with other output (default true)
+public final class Log
+{
+    public enum Level { DEBUG, INFO, WARN, ERROR, OFF }
+
+    // One message waiting for the writer, reused each time the ring comes round
+    private static final class Entry
+    {
+        // Sequence number of the message in this entry, the writer waits until it matches the one it expects
+        volatile long published = -1;
+        Level level;
+        long time;
+        String thread;
+        String template;
+        int argCount;
+        Object arg0;
+        Object arg1;
+        Object arg2;
+        Object arg3;
+        Throwable thrown;
+
+        void clear()
+        {
+            thread = null;
+            template = null;
+            arg0 = arg1 = arg2 = arg3 = null;
+            thrown = null;
+        }
+    }
+
+    private static volatile Level level = parseLevel(System.getProperty("auction.logLevel", "INFO"));
+    private static volatile boolean async = Boolean.parseBoolean(System.getProperty("auction.logAsync", "true"));
+
+    private static final Entry[] ring;
+    private static final int mask;
+    private static final AtomicLong claimed = new AtomicLong();
+    private static volatile long consumed;
+    private static final LongAdder dropped = new LongAdder();
+
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+
+    static
+    {
+        int size = Integer.highestOneBit(Math.max(16, Integer.getInteger("auction.logBufferSize", 8192)) - 1) << 1;
+        ring = new Entry[size];
+        mask = size - 1;
+
+        for(int i = 0; i < size; i++)
+        {
+            ring[i] = new Entry();
+        }
+
+        // Started even when printing on the calling thread, it naps while there is nothing to write
+        Thread writer = new Thread(Log::writeLoop, "log-writer");
+        writer.setDaemon(true);
+        writer.start();
+
+        // Print whatever is still waiting when the process exits
+        Runtime.getRuntime().addShutdownHook(new Thread(Log::flush, "log-flush"));
+    }
+
+    private Log()
+    {
+    }
+
+    private static Level parseLevel(String name)
+    {
+        try
+        {
+            return Level.valueOf(name.trim().toUpperCase());
+        }
+        catch(IllegalArgumentException e)
+        {
+            return Level.INFO;
+        }
+    }
+
+    public static void setLevel(Level newLevel)
+    {
+        level = newLevel;
+    }
+
+    public static Level getLevel()
+    {
+        return level;
+    }
+
+    // Switch between handing messages to the writer thread and printing them on the calling thread
+    public static void setAsync(boolean newAsync)
+    {
+        flush();
+        async = newAsync;
+    }
+
+    // Whether a message at this level would be logged, to skip working out arguments that cost something
+    public static boolean isEnabled(Level messageLevel)
+    {
+        return messageLevel.compareTo(level) >= 0;
+    }
+
+    // Messages dropped because the ring was full
+    public static long getDropped()
+    {
+        return dropped.sum();
+    }
+
+    public static void debug(String message)
+    {
+        log(Level.DEBUG, message, 0, null, null, null, null, null);
+    }
+
+    public static void debug(String template, Object arg0)
+    {
+        log(Level.DEBUG, template, 1, arg0, null, null, null, null);
+    }
+
+    public static void debug(String template, Object arg0, Object arg1)
+    {
+        log(Level.DEBUG, template, 2, arg0, arg1, null, null, null);
+    }
+
+    public static void debug(String template, Object arg0, Object arg1, Object arg2)
+    {
+        log(Level.DEBUG, template, 3, arg0, arg1, arg2, null, null);
+    }
+
+    public static void debug(String template, Object arg0, Object arg1, Object arg2, Object arg3)
+    {
+        log(Level.DEBUG, template, 4, arg0, arg1, arg2, arg3, null);
+    }
+
+    public static void info(String message)
+    {
+        log(Level.INFO, message, 0, null, null, null, null, null);
+    }
+
+    public static void info(String template, Object arg0)
+    {
+        log(Level.INFO, template, 1, arg0, null, null, null, null);
+    }
+
+    public static void info(String template, Object arg0, Object arg1)
+    {
+        log(Level.INFO, template, 2, arg0, arg1, null, null, null);
+    }
+
+    public static void info(String template, Object arg0, Object arg1, Object arg2)
+    {
+        log(Level.INFO, template, 3, arg0, arg1, arg2, null, null);
+    }
+
+    public static void info(String template, Object arg0, Object arg1, Object arg2, Object arg3)
+    {
+        log(Level.INFO, template, 4, arg0, arg1, arg2, arg3, null);
+    }
+
+    public static void warn(String message)
+    {
+        log(Level.WARN, message, 0, null, null, null, null, null);
+    }
+
+    public static void warn(String template, Object arg0)
+    {
+        log(Level.WARN, template, 1, arg0, null, null, null, null);
+    }
+
+    public static void warn(String template, Object arg0, Object arg1)
+    {
+        log(Level.WARN, template, 2, arg0, arg1, null, null, null);
+    }
+
+    public static void warn(String template, Object arg0, Object arg1, Object arg2)
+    {
+        log(Level.WARN, template, 3, arg0, arg1, arg2, null, null);
+    }
+
+    // Errors carry the exception, its stack trace is printed under the message
+    public static void error(String message, Throwable thrown)
+    {
+        log(Level.ERROR, message, 0, null, null, null, null, thrown);
+    }
+
+    public static void error(String template, Object arg0, Throwable thrown)
+    {
+        log(Level.ERROR, template, 1, arg0, null, null, null, thrown);
+    }
+
+    public static void error(String template, Object arg0, Object arg1, Throwable thrown)
+    {
+        log(Level.ERROR, template, 2, arg0, arg1, null, null, thrown);
+    }
+
+    private static void log(Level messageLevel, String template, int argCount, Object arg0, Object arg1, Object arg2, Object arg3, Throwable thrown)
+    {
+        if(messageLevel.compareTo(level) < 0)
+        {
+            return;
+        }
+
+        if(!async)
+        {
+            StringBuilder line = new StringBuilder(128);
+            format(line, messageLevel, System.currentTimeMillis(), Thread.currentThread().getName(), template, argCount, arg0, arg1, arg2, arg3, thrown);
+            System.out.print(line);
+            return;
+        }
+
+        // Claim the next sequence number, unless the writer hasnt freed the entry it would use yet
+        long sequence;
+        do
+        {
+            sequence = claimed.get();
+
+            if(sequence - consumed >= ring.length)
+            {
+                dropped.increment();
+                return;
+            }
+        }
+        while(!claimed.compareAndSet(sequence, sequence + 1));
+
+        Entry entry = ring[(int) sequence & mask];
+        entry.level = messageLevel;
+        entry.time = System.currentTimeMillis();
+        entry.thread = Thread.currentThread().getName();
+        entry.template = template;
+        entry.argCount = argCount;
+        entry.arg0 = arg0;
+        entry.arg1 = arg1;
+        entry.arg2 = arg2;
+        entry.arg3 = arg3;
+        entry.thrown = thrown;
+
+        // Hand it to the writer, the volatile write makes the fields above visible to it
+        entry.published = sequence;
+    }
+
+    // The writer thread, prints everything published so far in one go, then naps briefly when there is nothing new
+    private static void writeLoop()
+    {
+        StringBuilder batch = new StringBuilder(64 * 1024);
+        long reportedDropped = 0;
+
+        while(true)
+        {
+            drain(batch);
+
+            long droppedNow = dropped.sum();
+            if(droppedNow != reportedDropped)
+            {
+                format(batch, Level.WARN, System.currentTimeMillis(), "log-writer", "Log buffer was full, {} messages dropped", 1, droppedNow - reportedDropped, null, null, null, null);
+                reportedDropped = droppedNow;
+            }
+
+            if(batch.length() > 0)
+            {
+                print(batch);
+            }
+            else
+            {
+                LockSupport.parkNanos(1000000);
+            }
+        }
+    }
+
+    // Format every published entry into the batch, printing as it goes if the batch gets big
+    private static synchronized void drain(StringBuilder batch)
+    {
+        while(true)
+        {
+            long next = consumed;
+            Entry entry = ring[(int) next & mask];
+
+            if(entry.published != next)
+            {
+                return;
+            }
+
+            format(batch, entry.level, entry.time, entry.thread, entry.template, entry.argCount, entry.arg0, entry.arg1, entry.arg2, entry.arg3, entry.thrown);
+            entry.clear();
+            consumed = next + 1;
+
+            if(batch.length() >= 64 * 1024)
+            {
+                print(batch);
+            }
+        }
+    }
+
+    private static void print(StringBuilder batch)
+    {
+        PrintStream out = System.out;
+        out.print(batch);
+        out.flush();
+        batch.setLength(0);
+    }
+
+    // Print anything still in the ring, from the shutdown hook
+    public static void flush()
+    {
+        StringBuilder batch = new StringBuilder();
+        drain(batch);
+
+        if(batch.length() > 0)
+        {
+            print(batch);
+        }
+    }
+
+    private static void format(StringBuilder line, Level messageLevel, long time, String thread, String template, int argCount,
+                               Object arg0, Object arg1, Object arg2, Object arg3, Throwable thrown)
+    {
+        TIME_FORMAT.formatTo(Instant.ofEpochMilli(time), line);
+        line.append(' ').append(messageLevel.name());
+
+        for(int pad = messageLevel.name().length(); pad < 5; pad++)
+        {
+            line.append(' ');
+        }
+
+        line.append(" [").append(thread).append("] ");
+
+        // Fill each {} with the next argument, any extra {} are left as they are
+        int argIndex = 0;
+        int from = 0;
+
+        while(argIndex < argCount)
+        {
+            int at = template.indexOf("{}", from);
+
+            if(at < 0)
+            {
+                break;
+            }
+
+            line.append(template, from, at);
+            line.append(argIndex == 0 ? arg0 : argIndex == 1 ? arg1 : argIndex == 2 ? arg2 : arg3);
+            argIndex++;
+            from = at + 2;
+        }
+
+        line.append(template, from, template.length()).append(System.lineSeparator());
+
+        if(thrown != null)
+        {
+            StringWriter trace = new StringWriter();
+            thrown.printStackTrace(new PrintWriter(trace));
+            line.append(trace);
+        }
+    }
+}
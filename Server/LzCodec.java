@@ -0,0 +1,151 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+// A small LZ77 block compressor in the style of LZ4, used for the lz StateCodec
+// It trades ratio for speed: one hash table lookup per position and no entropy coding, so it runs at memory speed on the
+// serialized state, whose class descriptors, field names and item text repeat throughout
+//
+// The block is a run of sequences, each:
+//   token: literal count in the high 4 bits, match length - 4 in the low 4, 15 in either means more length bytes follow
+//   more literal count bytes, added up until one isnt 255
+//   the literals
+//   match offset back into the output, 2 bytes little endian, then more match length bytes as for the literals
+// The last sequence is literals only, the decoder knows it has reached it from the original length it is given
+public class LzCodec
+{
+    private static final int MIN_MATCH = 4;
+    private static final int MAX_OFFSET = 65535;
+    private static final int HASH_BITS = 14;
+
+    private static final VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private static int hash(int value)
+    {
+        return (value * 0x9E3779B1) >>> (32 - HASH_BITS);
+    }
+
+    public static byte[] compress(byte[] in)
+    {
+        byte[] out = new byte[in.length + in.length / 255 + 16];
+        int[] table = new int[1 << HASH_BITS];
+        Arrays.fill(table, -1);
+
+        int op = 0;
+        int anchor = 0;
+        int pos = 0;
+
+        while(pos + MIN_MATCH <= in.length)
+        {
+            int value = (int) INT.get(in, pos);
+            int h = hash(value);
+            int candidate = table[h];
+            table[h] = pos;
+
+            if(candidate < 0 || pos - candidate > MAX_OFFSET || (int) INT.get(in, candidate) != value)
+            {
+                // Skip ahead faster through data that isnt matching, as LZ4 does
+                pos += 1 + ((pos - anchor) >>> 6);
+                continue;
+            }
+
+            int length = MIN_MATCH;
+
+            while(pos + length < in.length && in[candidate + length] == in[pos + length])
+            {
+                length++;
+            }
+
+            op = writeLiterals(out, op, in, anchor, pos - anchor, length - MIN_MATCH);
+            out[op++] = (byte) (pos - candidate);
+            out[op++] = (byte) ((pos - candidate) >>> 8);
+            op = writeLength(out, op, length - MIN_MATCH);
+
+            pos += length;
+            anchor = pos;
+        }
+
+        op = writeLiterals(out, op, in, anchor, in.length - anchor, 0);
+        return Arrays.copyOf(out, op);
+    }
+
+    // The token, the literal count and the literals of a sequence, the match length goes in the token's low bits
+    private static int writeLiterals(byte[] out, int op, byte[] in, int start, int count, int matchLength)
+    {
+        out[op++] = (byte) (Math.min(count, 15) << 4 | Math.min(matchLength, 15));
+        op = writeLength(out, op, count);
+        System.arraycopy(in, start, out, op, count);
+        return op + count;
+    }
+
+    // The bytes after the token for a length of 15 or more
+    private static int writeLength(byte[] out, int op, int length)
+    {
+        if(length >= 15)
+        {
+            for(length -= 15; length >= 255; length -= 255)
+            {
+                out[op++] = (byte) 255;
+            }
+            out[op++] = (byte) length;
+        }
+        return op;
+    }
+
+    private static int readLength(byte[] in, int[] ip, int length)
+    {
+        if(length == 15)
+        {
+            int next;
+            do
+            {
+                next = in[ip[0]++] & 0xFF;
+                length += next;
+            }
+            while(next == 255);
+        }
+        return length;
+    }
+
+    // Decompress a block of compress, length is how long the input to compress was
+    public static byte[] decompress(byte[] in, int length)
+    {
+        byte[] out = new byte[length];
+        int[] ip = { 0 };
+        int op = 0;
+
+        while(true)
+        {
+            int token = in[ip[0]++] & 0xFF;
+            int literals = readLength(in, ip, token >>> 4);
+            System.arraycopy(in, ip[0], out, op, literals);
+            ip[0] += literals;
+            op += literals;
+
+            if(op >= length)
+            {
+                return out;
+            }
+
+            int offset = (in[ip[0]++] & 0xFF) | (in[ip[0]++] & 0xFF) << 8;
+            int matchLength = readLength(in, ip, token & 15) + MIN_MATCH;
+            int match = op - offset;
+
+            // An overlapping match repeats the bytes just written, so copy it a byte at a time
+            if(offset >= matchLength)
+            {
+                System.arraycopy(out, match, out, op, matchLength);
+            }
+            else
+            {
+                for(int i = 0; i < matchLength; i++)
+                {
+                    out[op + i] = out[match + i];
+                }
+            }
+
+            op += matchLength;
+        }
+    }
+}
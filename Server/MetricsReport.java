@@ -0,0 +1,62 @@
+// Call counts and latencies of every operation one server has handled since it started, from getMetrics
+// Each operation is the same index in every array, latencies are in microseconds
+public class MetricsReport implements java.io.Serializable
+{
+    // Percentiles in each row of latencyMicros, followed by the max
+    public static final double[] PERCENTILES = {50, 90, 99, 99.9, 99.99};
+
+    // Which server this came from, e.g. "Frontend" or "shard0/1"
+    String source;
+
+    // Epoch ms the counts started from and when they were read
+    long startTime;
+    long reportTime;
+
+    String[] operations;
+    long[] calls;
+
+    // Calls that threw, and calls that returned null or false such as a bad token or a bid that didnt lead
+    long[] errors;
+    long[] rejected;
+
+    long[][] latencyMicros;
+
+    public String toString()
+    {
+        return format(null);
+    }
+
+    // A table of the operations that have been called, with the rate since previous if given, otherwise since startTime
+    public String format(MetricsReport previous)
+    {
+        StringBuilder table = new StringBuilder();
+        table.append(String.format("Metrics for %s, %tF %<tT, latency in microseconds%n", source, reportTime));
+        table.append(String.format("  %-22s %12s %9s %9s %9s %8s %8s %8s %8s %8s %9s%n",
+            "operation", "calls", "per sec", "errors", "rejected", "p50", "p90", "p99", "p99.9", "p99.99", "max"));
+
+        for(int i = 0; i < operations.length; i++)
+        {
+            if(calls[i] == 0)
+            {
+                continue;
+            }
+
+            long since = calls[i];
+            long millis = reportTime - startTime;
+
+            if(previous != null)
+            {
+                int before = java.util.Arrays.asList(previous.operations).indexOf(operations[i]);
+                since -= before >= 0 ? previous.calls[before] : 0;
+                millis = reportTime - previous.reportTime;
+            }
+
+            long[] latency = latencyMicros[i];
+            table.append(String.format("  %-22s %12d %9.1f %9d %9d %8d %8d %8d %8d %8d %9d%n",
+                operations[i], calls[i], since * 1000.0 / Math.max(1, millis), errors[i], rejected[i],
+                latency[0], latency[1], latency[2], latency[3], latency[4], latency[5]));
+        }
+
+        return table.toString();
+    }
+}
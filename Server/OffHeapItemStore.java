@@ -0,0 +1,563 @@
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// An ItemStore in direct memory, so the heap and the garbage collector's work stay the same size however many auctions
+// there are, turned on with -Dauction.itemStore=offheap
+// Each auction is a fixed size slot in chunks of direct ByteBuffer, found from its ID with no map: the IDs a shard hands
+// out are k * shardCount + shard, see Backend.serveNewItemID, so the auction's slot is k
+// Names and descriptions are written once, as UTF-8, into an append only arena also in direct memory, and the slot keeps
+// a reference to each, strings are only made again when an item is read
+// Item locks are striped over the slots rather than one object each, two items may share a lock but never wait long on it
+// Sent to the backups as the raw slot and arena bytes, see writeObject, and copied into the backup's own buffers by receive
+//
+// Slot layout, 56 bytes in native byte order:
+//   0  item ID, 0 while the slot is empty     24 end time (long)
+//   4  seller ID                              32 close time (long)
+//   8  reserve price                          40 name reference (long)
+//   12 highest bid                            48 description reference (long)
+//   16 highest bidder ID, -1 for none
+//   20 open, 1 or 0
+// A string reference is the arena chunk in the high 32 bits and the offset in the low, -1 for null, and points at the
+// string's byte length followed by its bytes
+public class OffHeapItemStore implements ItemStore
+{
+    // The stream format is written by hand in writeObject and readObject
+    private static final long serialVersionUID = 1L;
+
+    private static final int SLOT_BYTES = 56;
+    private static final int SLOTS_PER_CHUNK = 1 << 16;
+    private static final int ARENA_CHUNK_BYTES = 1 << 22;
+    private static final int LOCK_STRIPES = 1024;
+
+    private static final int ID = 0;
+    private static final int SELLER = 4;
+    private static final int RESERVE = 8;
+    private static final int HIGHEST_BID = 12;
+    private static final int HIGHEST_BIDDER = 16;
+    private static final int OPEN = 20;
+    private static final int END_TIME = 24;
+    private static final int CLOSE_TIME = 32;
+    private static final int NAME = 40;
+    private static final int DESCRIPTION = 48;
+
+    // Volatile reads and writes of the fields read without the item's lock, the item ID publishes a new slot
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+    private final int shard;
+    private final int shardCount;
+
+    // Replaced by a longer copy to grow, so readers never see a chunk that isnt filled in yet
+    private transient volatile ByteBuffer[] chunks;
+    private transient volatile ByteBuffer[] arena;
+    private transient Object[] locks;
+    private transient AtomicInteger count;
+    private transient volatile int highestSlot;
+
+    public OffHeapItemStore(int shard, int shardCount)
+    {
+        this.shard = shard;
+        this.shardCount = shardCount;
+        init();
+    }
+
+    private void init()
+    {
+        chunks = new ByteBuffer[0];
+        arena = new ByteBuffer[0];
+        count = new AtomicInteger();
+        locks = new Object[LOCK_STRIPES];
+
+        for(int i = 0; i < LOCK_STRIPES; i++)
+        {
+            locks[i] = new Object();
+        }
+    }
+
+    // The item's slot, -1 for an ID this shard doesnt hand out
+    private int slot(int itemID)
+    {
+        int offset = itemID - shard;
+        return offset > 0 && offset % shardCount == 0 ? offset / shardCount : -1;
+    }
+
+    // The chunk holding the slot, null if it hasnt been allocated
+    private ByteBuffer chunk(int slot)
+    {
+        ByteBuffer[] current = chunks;
+        int index = slot / SLOTS_PER_CHUNK;
+        return slot >= 0 && index < current.length ? current[index] : null;
+    }
+
+    private static int base(int slot)
+    {
+        return (slot % SLOTS_PER_CHUNK) * SLOT_BYTES;
+    }
+
+    // The chunk holding the item, null if the item isnt there
+    private ByteBuffer find(int itemID)
+    {
+        int slot = slot(itemID);
+        ByteBuffer chunk = chunk(slot);
+        return chunk != null && (int) INT.getVolatile(chunk, base(slot) + ID) == itemID ? chunk : null;
+    }
+
+    private static ByteBuffer allocate(int bytes)
+    {
+        return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+    }
+
+    public synchronized void add(AuctionItemObject item)
+    {
+        int slot = slot(item.getID());
+
+        if(slot < 0)
+        {
+            throw new IllegalArgumentException("Item " + item.getID() + " doesnt belong to shard " + shard + " of " + shardCount);
+        }
+
+        while(chunk(slot) == null)
+        {
+            ByteBuffer[] grown = Arrays.copyOf(chunks, chunks.length + 1);
+            grown[chunks.length] = allocate(SLOTS_PER_CHUNK * SLOT_BYTES);
+            chunks = grown;
+        }
+
+        ByteBuffer chunk = chunk(slot);
+        int base = base(slot);
+        boolean replaced = chunk.getInt(base + ID) != 0;
+
+        chunk.putInt(base + SELLER, item.getSellerID());
+        chunk.putInt(base + RESERVE, item.getReservePrice());
+        chunk.putInt(base + HIGHEST_BID, item.getHighestBid());
+        chunk.putInt(base + HIGHEST_BIDDER, item.getHighestBidderID());
+        chunk.putInt(base + OPEN, item.isOpen() ? 1 : 0);
+        chunk.putLong(base + END_TIME, item.getEndTime());
+        chunk.putLong(base + CLOSE_TIME, item.getCloseTime());
+        chunk.putLong(base + NAME, writeString(item.getName()));
+        chunk.putLong(base + DESCRIPTION, writeString(item.getDescription()));
+        INT.setVolatile(chunk, base + ID, item.getID());
+
+        highestSlot = Math.max(highestSlot, slot);
+
+        if(!replaced)
+        {
+            count.incrementAndGet();
+        }
+    }
+
+    // Append the string to the arena, returning its reference, only called from add
+    private long writeString(String value)
+    {
+        if(value == null)
+        {
+            return -1;
+        }
+
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer last = arena.length > 0 ? arena[arena.length - 1] : null;
+
+        // The arena's position marks how much of each chunk is used, puts here are all absolute
+        if(last == null || last.remaining() < bytes.length + 4)
+        {
+            ByteBuffer[] grown = Arrays.copyOf(arena, arena.length + 1);
+            grown[arena.length] = allocate(Math.max(ARENA_CHUNK_BYTES, bytes.length + 4));
+            arena = grown;
+            last = grown[grown.length - 1];
+        }
+
+        int offset = last.position();
+        last.putInt(offset, bytes.length);
+        last.put(offset + 4, bytes);
+        last.position(offset + 4 + bytes.length);
+
+        return (long) (arena.length - 1) << 32 | offset;
+    }
+
+    private String readString(long reference)
+    {
+        if(reference < 0)
+        {
+            return null;
+        }
+
+        ByteBuffer chunk = arena[(int) (reference >>> 32)];
+        int offset = (int) reference;
+        byte[] bytes = new byte[chunk.getInt(offset)];
+        chunk.get(offset + 4, bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public AuctionItemObject get(int itemID)
+    {
+        ByteBuffer chunk = find(itemID);
+
+        if(chunk == null)
+        {
+            return null;
+        }
+
+        int base = base(slot(itemID));
+        AuctionItemObject item = new AuctionItemObject(itemID);
+
+        synchronized(lock(itemID))
+        {
+            item.setSellerID(chunk.getInt(base + SELLER));
+            item.setReservePrice(chunk.getInt(base + RESERVE));
+            item.setHighestBid(chunk.getInt(base + HIGHEST_BID));
+            item.setHighestBidderID(chunk.getInt(base + HIGHEST_BIDDER));
+            item.setOpen(chunk.getInt(base + OPEN) == 1);
+            item.setEndTime(chunk.getLong(base + END_TIME));
+            item.setCloseTime(chunk.getLong(base + CLOSE_TIME));
+        }
+
+        item.setName(readString(chunk.getLong(base + NAME)));
+        item.setDescription(readString(chunk.getLong(base + DESCRIPTION)));
+
+        return item;
+    }
+
+    public AuctionItem toAuctionItem(int itemID)
+    {
+        ByteBuffer chunk = find(itemID);
+
+        if(chunk == null)
+        {
+            return null;
+        }
+
+        int base = base(slot(itemID));
+        AuctionItem item = new AuctionItem();
+        item.itemID = itemID;
+        item.name = readString(chunk.getLong(base + NAME));
+        item.description = readString(chunk.getLong(base + DESCRIPTION));
+        item.highestBid = (int) INT.getVolatile(chunk, base + HIGHEST_BID);
+        item.endTime = chunk.getLong(base + END_TIME);
+
+        return item;
+    }
+
+    public boolean contains(int itemID)
+    {
+        return find(itemID) != null;
+    }
+
+    public boolean isOpen(int itemID)
+    {
+        ByteBuffer chunk = find(itemID);
+        return chunk != null && (int) INT.getVolatile(chunk, base(slot(itemID)) + OPEN) == 1;
+    }
+
+    public int getHighestBid(int itemID)
+    {
+        ByteBuffer chunk = find(itemID);
+        return chunk != null ? (int) INT.getVolatile(chunk, base(slot(itemID)) + HIGHEST_BID) : 0;
+    }
+
+    public int getHighestBidderID(int itemID)
+    {
+        ByteBuffer chunk = find(itemID);
+        return chunk != null ? (int) INT.getVolatile(chunk, base(slot(itemID)) + HIGHEST_BIDDER) : -1;
+    }
+
+    public int getSellerID(int itemID)
+    {
+        ByteBuffer chunk = find(itemID);
+        return chunk != null ? chunk.getInt(base(slot(itemID)) + SELLER) : -1;
+    }
+
+    public long getEndTime(int itemID)
+    {
+        ByteBuffer chunk = find(itemID);
+        return chunk != null ? chunk.getLong(base(slot(itemID)) + END_TIME) : 0;
+    }
+
+    public void setHighestBid(int itemID, int price, int bidderID)
+    {
+        ByteBuffer chunk = find(itemID);
+        int base = base(slot(itemID));
+        INT.setVolatile(chunk, base + HIGHEST_BIDDER, bidderID);
+        INT.setVolatile(chunk, base + HIGHEST_BID, price);
+    }
+
+    public void close(int itemID, long closeTime)
+    {
+        ByteBuffer chunk = find(itemID);
+        int base = base(slot(itemID));
+        chunk.putLong(base + CLOSE_TIME, closeTime);
+        INT.setVolatile(chunk, base + OPEN, 0);
+    }
+
+    public Object lock(int itemID)
+    {
+        return locks[slot(itemID) & (LOCK_STRIPES - 1)];
+    }
+
+    public int size()
+    {
+        return count.get();
+    }
+
+    public AuctionItem[] listOpen()
+    {
+        AuctionItem[] itemsArray = new AuctionItem[count.get()];
+        int index = 0;
+        int last = highestSlot;
+
+        for(int slot = 1; slot <= last && index < itemsArray.length; slot++)
+        {
+            int itemID = slot * shardCount + shard;
+
+            if(isOpen(itemID))
+            {
+                itemsArray[index++] = toAuctionItem(itemID);
+            }
+        }
+
+        return index == itemsArray.length ? itemsArray : Arrays.copyOf(itemsArray, index);
+    }
+
+    // Every auction in slot order, each a copy as get makes
+    // Each is read under the store's lock, so on a backup an item is never read while receive is copying over it
+    public Iterator<AuctionItemObject> iterator()
+    {
+        return new Iterator<AuctionItemObject>()
+        {
+            private final int last = highestSlot;
+            private int slot = 0;
+            private AuctionItemObject next = advance();
+
+            private AuctionItemObject advance()
+            {
+                while(++slot <= last)
+                {
+                    AuctionItemObject item;
+
+                    synchronized(OffHeapItemStore.this)
+                    {
+                        item = get(slot * shardCount + shard);
+                    }
+
+                    if(item != null)
+                    {
+                        return item;
+                    }
+                }
+
+                return null;
+            }
+
+            public boolean hasNext()
+            {
+                return next != null;
+            }
+
+            public AuctionItemObject next()
+            {
+                if(next == null)
+                {
+                    throw new NoSuchElementException();
+                }
+
+                AuctionItemObject item = next;
+                next = advance();
+                return item;
+            }
+        };
+    }
+
+    // Take over a store received from another replica by copying its bytes into this store's direct buffers, so a backup
+    // applying a push every write reuses the same direct memory instead of allocating it again each time
+    // Backups serve no client calls, the frontends send them all to the primary, so nothing reads the items without the
+    // store's lock while they are copied, the iterator and writeObject both take it
+    public ItemStore receive(ItemStore received)
+    {
+        if(!(received instanceof OffHeapItemStore))
+        {
+            return received;
+        }
+
+        OffHeapItemStore other = (OffHeapItemStore) received;
+
+        if(other.shard != shard || other.shardCount != shardCount)
+        {
+            return received;
+        }
+
+        synchronized(this)
+        {
+            ByteBuffer[] otherChunks = other.chunks;
+            int slots = other.chunks.length > 0 ? other.highestSlot + 1 : 0;
+            ByteBuffer[] ownChunks = chunks.length >= otherChunks.length ? chunks : Arrays.copyOf(chunks, otherChunks.length);
+
+            for(int index = 0; index < ownChunks.length; index++)
+            {
+                int used = Math.max(0, Math.min(SLOTS_PER_CHUNK, slots - index * SLOTS_PER_CHUNK)) * SLOT_BYTES;
+
+                if(ownChunks[index] == null)
+                {
+                    ownChunks[index] = allocate(SLOTS_PER_CHUNK * SLOT_BYTES);
+                }
+
+                if(used > 0)
+                {
+                    ownChunks[index].put(0, otherChunks[index], 0, used);
+                }
+
+                // Items this replica has that the sender doesnt, only after a failover, are emptied
+                int ownUsed = Math.max(0, Math.min(SLOTS_PER_CHUNK, highestSlot + 1 - index * SLOTS_PER_CHUNK)) * SLOT_BYTES;
+
+                for(int offset = used; offset < ownUsed; offset += SLOT_BYTES)
+                {
+                    ownChunks[index].putInt(offset + ID, 0);
+                }
+            }
+
+            ByteBuffer[] otherArena = other.arena;
+            ByteBuffer[] ownArena = Arrays.copyOf(arena, otherArena.length);
+
+            for(int index = 0; index < ownArena.length; index++)
+            {
+                int used = otherArena[index].position();
+
+                if(ownArena[index] == null || ownArena[index].capacity() < used)
+                {
+                    ownArena[index] = allocate(Math.max(ARENA_CHUNK_BYTES, used));
+                }
+
+                ownArena[index].put(0, otherArena[index], 0, used);
+                ownArena[index].position(used);
+            }
+
+            chunks = ownChunks;
+            arena = ownArena;
+            count.set(other.count.get());
+            highestSlot = other.highestSlot;
+        }
+
+        return this;
+    }
+
+    // Written as the used slot and arena bytes rather than an object per item, the slot bytes first then the arena
+    // The ranges are read under the store's lock but written out after it, so new auctions arent held up while a slow
+    // backup receives the state, bids and closes go on as it is copied as they do while the heap store's map is written
+    // The arena is only appended to, so the bytes in the range dont change, and its range is read after the slots are
+    // written so it covers the strings of any item added meanwhile that made it into the slots
+    // The item count isnt sent, the receiver counts the slots it got
+    private void writeObject(ObjectOutputStream out) throws IOException
+    {
+        out.defaultWriteObject();
+
+        ByteBuffer[] writeChunks;
+        int slots;
+
+        synchronized(this)
+        {
+            writeChunks = chunks;
+            slots = writeChunks.length > 0 ? highestSlot + 1 : 0;
+        }
+
+        out.writeInt(slots);
+
+        for(int index = 0; index * SLOTS_PER_CHUNK < slots; index++)
+        {
+            writeBytes(out, writeChunks[index], Math.min(SLOTS_PER_CHUNK, slots - index * SLOTS_PER_CHUNK) * SLOT_BYTES);
+        }
+
+        ByteBuffer[] writeArena;
+        int[] used;
+
+        synchronized(this)
+        {
+            writeArena = arena;
+            used = new int[writeArena.length];
+
+            for(int index = 0; index < writeArena.length; index++)
+            {
+                used[index] = writeArena[index].position();
+            }
+        }
+
+        out.writeInt(writeArena.length);
+
+        for(int index = 0; index < writeArena.length; index++)
+        {
+            out.writeInt(used[index]);
+            writeBytes(out, writeArena[index], used[index]);
+        }
+    }
+
+    // Read into heap buffers, the store works from them as it is but a backup copies them into its own direct buffers with
+    // receive, so the direct memory isnt allocated again for every push
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException
+    {
+        in.defaultReadObject();
+        init();
+
+        int slots = in.readInt();
+        int items = 0;
+        ByteBuffer[] readChunks = new ByteBuffer[(slots + SLOTS_PER_CHUNK - 1) / SLOTS_PER_CHUNK];
+
+        for(int index = 0; index < readChunks.length; index++)
+        {
+            int used = Math.min(SLOTS_PER_CHUNK, slots - index * SLOTS_PER_CHUNK) * SLOT_BYTES;
+            readChunks[index] = ByteBuffer.allocate(SLOTS_PER_CHUNK * SLOT_BYTES).order(ByteOrder.nativeOrder());
+            readBytes(in, readChunks[index], used);
+
+            for(int offset = 0; offset < used; offset += SLOT_BYTES)
+            {
+                items += readChunks[index].getInt(offset + ID) != 0 ? 1 : 0;
+            }
+        }
+
+        ByteBuffer[] readArena = new ByteBuffer[in.readInt()];
+
+        for(int index = 0; index < readArena.length; index++)
+        {
+            int used = in.readInt();
+            readArena[index] = ByteBuffer.allocate(used).order(ByteOrder.nativeOrder());
+            readBytes(in, readArena[index], used);
+            readArena[index].position(used);
+        }
+
+        chunks = readChunks;
+        arena = readArena;
+        count.set(items);
+        highestSlot = Math.max(0, slots - 1);
+    }
+
+    // Copy the first length bytes of the buffer to the stream, through a small array since a direct buffer has none
+    private static void writeBytes(ObjectOutputStream out, ByteBuffer buffer, int length) throws IOException
+    {
+        byte[] block = new byte[Math.min(length, 1 << 16)];
+
+        for(int offset = 0; offset < length; offset += block.length)
+        {
+            int size = Math.min(block.length, length - offset);
+            buffer.get(offset, block, 0, size);
+            out.write(block, 0, size);
+        }
+    }
+
+    private static void readBytes(ObjectInputStream in, ByteBuffer buffer, int length) throws IOException
+    {
+        byte[] block = new byte[Math.min(length, 1 << 16)];
+
+        for(int offset = 0; offset < length; offset += block.length)
+        {
+            int size = Math.min(block.length, length - offset);
+            in.readFully(block, 0, size);
+            buffer.put(offset, block, 0, size);
+        }
+    }
+}
@@ -0,0 +1,238 @@
+import java.io.FileWriter;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.rmi.RemoteException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Call counts and latency histograms of every operation a Frontend or Backend serves, read with getMetrics
+// The remote object is exported through wrap, which times every call on its remote interface, so each operation,
+// including ones added later, is measured at the RMI boundary without touching its code
+// Anything that isnt a remote call, like replication pushes and elections, records into stats by name itself
+// Recording is a few atomic adds into a fixed LatencyHistogram, which allocates nothing and takes no lock
+// The wrapper itself isnt free: each call through the Proxy and Method.invoke builds an argument array and boxes
+// primitive arguments and results
+// The wrapper is also where tracing meets the remote interface: it serves traced calls, timing the method they name like
+// any other call, and on the Auction interface, where client requests come in, it starts a trace for sampled requests
+//
+// Configured with system properties:
+//   auction.metricsFile     file the metrics are appended to periodically, not set turns it off
+//   auction.metricsSeconds  how often to append them (default 60)
+public class OperationMetrics
+{
+    // One operation's counts
+    public static class Stats
+    {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+
+        // Record a call that started at startNanos (System.nanoTime) and has just finished
+        public void record(long startNanos)
+        {
+            latency.record((System.nanoTime() - startNanos) / 1000);
+        }
+
+        public void failed()
+        {
+            errors.increment();
+        }
+
+        public void rejected()
+        {
+            rejected.increment();
+        }
+
+        public LatencyHistogram getLatency()
+        {
+            return this.latency;
+        }
+    }
+
+    private volatile String source;
+    private final long startTime = System.currentTimeMillis();
+
+    // Sorted by name so reports list them in the same order
+    private final Map<String, Stats> operations = new ConcurrentSkipListMap<>();
+
+    public OperationMetrics(String source)
+    {
+        this.source = source;
+    }
+
+    // Replicas only know their registry name once their constructor has run
+    public void setSource(String source)
+    {
+        this.source = source;
+    }
+
+    // The named operation's stats, look it up once and keep it rather than on every call
+    public Stats stats(String operation)
+    {
+        return operations.computeIfAbsent(operation, name -> new Stats());
+    }
+
+    // Wrap target so every call through the interface is timed, export the wrapper instead of the target
+    // Calls that throw count as errors, and ones returning null or false as rejected
+    @SuppressWarnings("unchecked")
+    public <T> T wrap(T target, Class<T> remoteInterface)
+    {
+        Map<Method, Stats> byMethod = new HashMap<>();
+        Method tracedMethod = Trace.find(remoteInterface, "traced", 3);
+        boolean startsTraces = remoteInterface == Auction.class;
+
+        for(Method method : remoteInterface.getMethods())
+        {
+            if(!method.equals(tracedMethod))
+            {
+                byMethod.put(method, stats(method.getName()));
+            }
+        }
+
+        InvocationHandler handler = (proxy, method, args) -> {
+            if(method.equals(tracedMethod))
+            {
+                String name = (String) args[1];
+                Object[] callArgs = (Object[]) args[2];
+                Method called = Trace.find(remoteInterface, name, callArgs.length);
+
+                if(called == null || called.equals(tracedMethod))
+                {
+                    throw new RemoteException("No traced operation " + name);
+                }
+
+                return Trace.serve((Long) args[0], source + " " + name, startsTraces, () -> timed(target, called, byMethod.get(called), callArgs));
+            }
+
+            Stats stats = byMethod.get(method);
+
+            if(stats == null) // Object methods like hashCode
+            {
+                return method.invoke(target, args);
+            }
+
+            if(startsTraces && Trace.sample())
+            {
+                return Trace.root(source + " " + method.getName(), () -> timed(target, method, stats, args));
+            }
+
+            return timed(target, method, stats, args);
+        };
+
+        return (T) Proxy.newProxyInstance(remoteInterface.getClassLoader(), new Class<?>[] { remoteInterface }, handler);
+    }
+
+    // Call the method on the target, recording it in stats
+    private static Object timed(Object target, Method method, Stats stats, Object[] args) throws Throwable
+    {
+        long start = System.nanoTime();
+
+        try
+        {
+            Object result = method.invoke(target, args);
+
+            if(result == null || Boolean.FALSE.equals(result))
+            {
+                stats.rejected();
+            }
+
+            return result;
+        }
+        catch(InvocationTargetException e)
+        {
+            stats.failed();
+            throw e.getCause();
+        }
+        finally
+        {
+            stats.record(start);
+        }
+    }
+
+    public MetricsReport report()
+    {
+        MetricsReport report = new MetricsReport();
+        report.source = source;
+        report.startTime = startTime;
+        report.reportTime = System.currentTimeMillis();
+
+        int count = operations.size();
+        report.operations = new String[count];
+        report.calls = new long[count];
+        report.errors = new long[count];
+        report.rejected = new long[count];
+        report.latencyMicros = new long[count][];
+
+        int i = 0;
+        for(Map.Entry<String, Stats> entry : operations.entrySet())
+        {
+            if(i == count) // One added since the size was read, it makes the next report
+            {
+                break;
+            }
+
+            LatencyHistogram latency = entry.getValue().latency;
+            long[] percentiles = new long[MetricsReport.PERCENTILES.length + 1];
+
+            for(int p = 0; p < MetricsReport.PERCENTILES.length; p++)
+            {
+                percentiles[p] = latency.getPercentile(MetricsReport.PERCENTILES[p]);
+            }
+            percentiles[percentiles.length - 1] = latency.getMax();
+
+            report.operations[i] = entry.getKey();
+            report.calls[i] = latency.getCount();
+            report.errors[i] = entry.getValue().errors.sum();
+            report.rejected[i] = entry.getValue().rejected.sum();
+            report.latencyMicros[i] = percentiles;
+            i++;
+        }
+
+        return report;
+    }
+
+    // Append the report to auction.metricsFile every auction.metricsSeconds, if it is set
+    public void startDumping()
+    {
+        String file = System.getProperty("auction.metricsFile");
+
+        if(file == null)
+        {
+            return;
+        }
+
+        int seconds = Integer.getInteger("auction.metricsSeconds", 60);
+        ScheduledExecutorService dumper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        MetricsReport[] previous = new MetricsReport[1];
+
+        dumper.scheduleAtFixedRate(() -> {
+            MetricsReport report = report();
+
+            try(PrintWriter out = new PrintWriter(new FileWriter(file, true)))
+            {
+                out.println(report.format(previous[0]));
+            }
+            catch(Exception e)
+            {
+                Log.warn("Cant write metrics to {}: {}", file, e.getMessage());
+            }
+
+            previous[0] = report;
+        }, seconds, seconds, TimeUnit.SECONDS);
+
+        Log.info("Writing metrics to {} every {}s", file, seconds);
+    }
+}
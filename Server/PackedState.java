@@ -0,0 +1,50 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+// A ReplicaState serialized and compressed by a StateCodec, what replicas send each other in place of the state itself
+// when they have agreed on a codec other than NONE
+// The primary packs its state once per push and sends the same bytes to every backup using that codec, RMI then sends
+// them as a single byte array rather than walking the state's objects again for each backup
+public class PackedState implements Serializable
+{
+    // The codec's name rather than the enum, so a replica that doesnt know a newer codec can still read the object
+    public String codec;
+    public int length;
+    public byte[] data;
+
+    public static PackedState pack(ReplicaState state, StateCodec codec) throws Exception
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try(ObjectOutputStream out = new ObjectOutputStream(bytes))
+        {
+            out.writeObject(state);
+        }
+
+        byte[] serialized = bytes.toByteArray();
+
+        PackedState packed = new PackedState();
+        packed.codec = codec.name();
+        packed.length = serialized.length;
+        packed.data = codec.encode(serialized);
+        return packed;
+    }
+
+    public ReplicaState unpack() throws Exception
+    {
+        StateCodec stateCodec = StateCodec.forName(codec);
+
+        if(stateCodec == null)
+        {
+            throw new IllegalArgumentException("Unknown state codec " + codec);
+        }
+
+        try(ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(stateCodec.decode(data, length))))
+        {
+            return (ReplicaState) in.readObject();
+        }
+    }
+}
@@ -0,0 +1,164 @@
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeSet;
+
+// Proxy (maximum) bids on one item, see Backend.proxyBid
+// Each user has at most one proxy, a maximum price they are willing to pay and the increment to outbid others by
+// Whenever a proxy arrives or someone bids directly, resolve works out who leads and at what price, as if every proxy
+// had kept bidding one increment over the others until all but one ran out, without making any of those bids
+// Proxies are kept highest maximum first, ties to the earliest, so resolving only looks at the top few and drops the
+// ones that can no longer win from the bottom, O(log n) per proxy added or removed
+// Only touched under the item's lock, replicated with the rest of the state so a new primary keeps bidding for them
+public class ProxyBook implements Serializable
+{
+    public static class Proxy implements Comparable<Proxy>, Serializable
+    {
+        final int userID;
+        final int maxPrice;
+        final int increment;
+        final long sequence;
+
+        Proxy(int userID, int maxPrice, int increment, long sequence)
+        {
+            this.userID = userID;
+            this.maxPrice = maxPrice;
+            this.increment = increment;
+            this.sequence = sequence;
+        }
+
+        // Highest maximum first, then the earliest placed
+        public int compareTo(Proxy other)
+        {
+            if(maxPrice != other.maxPrice)
+            {
+                return Integer.compare(other.maxPrice, maxPrice);
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+
+    // Who leads after resolving and at what price
+    public static class Outcome
+    {
+        final int userID;
+        final int price;
+
+        Outcome(int userID, int price)
+        {
+            this.userID = userID;
+            this.price = price;
+        }
+    }
+
+    private final TreeSet<Proxy> byMaximum = new TreeSet<>();
+    private final Map<Integer, Proxy> byUser = new HashMap<>();
+    private long nextSequence;
+
+    // Add or replace the user's proxy, a replaced proxy counts as placed now for ties
+    public void put(int userID, int maxPrice, int increment)
+    {
+        remove(userID);
+
+        Proxy proxy = new Proxy(userID, maxPrice, increment, nextSequence++);
+        byMaximum.add(proxy);
+        byUser.put(userID, proxy);
+    }
+
+    public void remove(int userID)
+    {
+        Proxy proxy = byUser.remove(userID);
+
+        if(proxy != null)
+        {
+            byMaximum.remove(proxy);
+        }
+    }
+
+    public boolean isEmpty()
+    {
+        return byUser.isEmpty();
+    }
+
+    public int size()
+    {
+        return byUser.size();
+    }
+
+    // The user's maximum, or 0 if they have no proxy here
+    public int getMaxPrice(int userID)
+    {
+        Proxy proxy = byUser.get(userID);
+        return proxy != null ? proxy.maxPrice : 0;
+    }
+
+    // Work out the leader when bidderID stands at price, either a direct bid being placed or the current leader
+    // when a proxy was added (bidderID -1 and price 0 when nobody has bid yet)
+    // The bidder's own proxy, if any, bids for them too, and a direct bid counts as placed after every proxy, so a proxy
+    // with the same maximum beats it
+    // The winner pays one of their increments over the runner up's maximum, capped at their own maximum, and never less
+    // than a direct bid they placed
+    public Outcome resolve(int bidderID, int price)
+    {
+        // Proxies below the price can no longer win, the bidder's own is replaced by their bid
+        while(!byMaximum.isEmpty() && byMaximum.last().maxPrice < price)
+        {
+            byUser.remove(byMaximum.pollLast().userID);
+        }
+
+        // The two best proxies of other users, one user has one proxy so at most three need looking at
+        Proxy first = null;
+        Proxy second = null;
+        Iterator<Proxy> proxies = byMaximum.iterator();
+
+        while(proxies.hasNext() && second == null)
+        {
+            Proxy proxy = proxies.next();
+
+            if(proxy.userID != bidderID)
+            {
+                if(first == null)
+                {
+                    first = proxy;
+                }
+                else
+                {
+                    second = proxy;
+                }
+            }
+        }
+
+        Proxy own = byUser.get(bidderID);
+        int bidderMax = own != null ? Math.max(own.maxPrice, price) : price;
+        int bidderIncrement = own != null ? own.increment : 1;
+
+        Outcome outcome;
+
+        if(first == null)
+        {
+            // Nobody else is in the running, the bidder stays where they are
+            outcome = new Outcome(bidderID, price);
+        }
+        else if(bidderID != -1 && (bidderMax > first.maxPrice || (bidderMax == first.maxPrice && own != null && own.maxPrice == bidderMax && own.compareTo(first) < 0)))
+        {
+            // The bidder holds off every proxy, paying just enough to beat the best of them
+            outcome = new Outcome(bidderID, Math.max(price, Math.min(bidderMax, first.maxPrice + bidderIncrement)));
+        }
+        else
+        {
+            // The best proxy takes the lead over the bidder and the next best proxy
+            int runnerUp = Math.max(bidderID != -1 ? bidderMax : 0, second != null ? second.maxPrice : 0);
+            int leadPrice = runnerUp == 0 && bidderID == -1 ? first.increment : runnerUp + first.increment;
+            outcome = new Outcome(first.userID, Math.max(price, Math.min(first.maxPrice, leadPrice)));
+        }
+
+        // Everyone else at or below the new price is out of the running
+        while(!byMaximum.isEmpty() && byMaximum.last().maxPrice <= outcome.price && byMaximum.last().userID != outcome.userID)
+        {
+            byUser.remove(byMaximum.pollLast().userID);
+        }
+
+        return outcome;
+    }
+}
@@ -2,60 +2,166 @@ import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 import java.rmi.server.UnicastRemoteObject;
+import java.security.PublicKey;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
 
 // A Replica object inherits the Backend class
 // The Backend contains all functionality for auction operations, authentication and storing data
 // The Replica class builds upon the backend providing methods specific to implementing passive replication
 // Backend was previously the class for a sole server, now starting the rmi services has been moved to this class
+// Replicas belong to a shard, and only replicate to and from the other replicas of the same shard
 public class Replica extends Backend implements AuctionReplica
 {
-    public static String replicaID;
+    private final String replicaID;
+
+    // Where the other replicas of the shard are found, the registry unless running embedded
+    private final ReplicaDirectory directory;
+
+    // Highest state version sent to the other replicas, see updateReplicaStates
+    private volatile long replicatedVersion;
+    private final Object replicationLock = new Object();
+    private final AtomicLong statePushes = new AtomicLong();
+    private final OperationMetrics.Stats replicationPushes = metrics.stats("replication.push");
+
+    // The codec this replica compresses the state it sends with, and whether each other replica accepts it, by registry name
+    private final StateCodec stateCodec = StateCodec.configured();
+    private final Map<String, StateCodec> peerCodecs = new ConcurrentHashMap<>();
+
+    // Registry name of the primary of this shard as last elected by a frontend, null until the first election
+    private volatile String electedPrimary;
+
+    // The replica whose state this one last applied, its state version then, and when, see getReplicationStatus
+    private volatile String mirroredSource;
+    private volatile long mirroredVersion;
+    private volatile long mirroredTime;
 
     // Call the Backend constructor which generates keypairs and sets up the data structures
     // Try to update state from other replicas, this means new replicas can be added during runtime of others
-    public Replica(String id)
+    public Replica(String id, int shard, int shardCount, ReplicaDirectory directory)
     {
         super(id);
+        this.replicaID = id;
+        this.shard = shard;
+        this.shardCount = shardCount;
+        this.directory = directory;
+        // The off-heap store lays items out by shard, so make it again now the shard is known
+        this.auctionStore = ItemStore.create(shard, shardCount);
+        metrics.setSource("Replica " + registryName(shard, id));
         updateCurrentState();
     }
 
+    public Replica(String id, int shard, int shardCount)
+    {
+        this(id, shard, shardCount, ReplicaDirectory.REGISTRY);
+    }
+
+    public Replica(String id)
+    {
+        this(id, 0, 1);
+    }
+
+    // Name a replica is advertised under in the registry, e.g. "shard0/1"
+    public static String registryName(int shard, String id)
+    {
+        return "shard" + shard + "/" + id;
+    }
+
+    // Check if a registry name belongs to a replica of the given shard
+    public static boolean isInShard(String name, int shard)
+    {
+        return name.startsWith("shard" + shard + "/");
+    }
+
     // Check called by the frontend to see if the replica is responding properly
     public boolean isAlive() throws RemoteException
     {
         return true;
     }
 
+    // Check if the frontends have elected this replica as the primary of its shard
+    public boolean isPrimary() throws RemoteException
+    {
+        return registryName(shard, replicaID).equals(electedPrimary);
+    }
+
+    public String getElectedPrimary() throws RemoteException
+    {
+        return this.electedPrimary;
+    }
+
+    // Called by a frontend on every live replica of the shard after it elects a primary
+    // Only the primary keeps the auction end timers, so a replica taking over schedules every open auction's end time
+    public synchronized boolean setElectedPrimary(String registryName) throws RemoteException
+    {
+        boolean promoted = !isPrimary() && registryName(shard, replicaID).equals(registryName);
+        this.electedPrimary = registryName;
+
+        if(promoted)
+        {
+            scheduleAuctionEnds();
+        }
+
+        return true;
+    }
+
+    // Used by an embedded deployment to take a replica out as if its process had died
+    // It stops acting as primary, so its end timers close nothing and it never pushes its state to the others again
+    public void stop()
+    {
+        this.electedPrimary = null;
+    }
+
+    // Backups leave closing auctions at their end times to the primary
+    @Override
+    protected boolean schedulesAuctionEnds()
+    {
+        return registryName(shard, replicaID).equals(electedPrimary);
+    }
+
+    // Nothing asked the primary to close the auction, so no frontend will replicate it, send it to the backups here
+    @Override
+    protected void auctionClosedByEndTime(int itemID)
+    {
+        try
+        {
+            updateReplicaStates();
+        }
+        catch(Exception e)
+        {
+            Log.error("Exception replicating an auction closed at its end time", e);
+        }
+    }
+
     // Fetch all the other replicas Except for the one calling this function
     public ArrayList<AuctionReplica> retrieveExclusiveRunningReplicas()
     {
         try
         {
-            // Create a list to store all remote objects on the localhost registry 
-            ArrayList<AuctionReplica> runningReplicas = new ArrayList<>();
-            Registry replicaRegistry = LocateRegistry.getRegistry("localhost");
-
-            // Go through each remote object add them to the list if they arent the frontend and this replica
-            for (String name : replicaRegistry.list())
-            {
-                if (!name.contains("FrontEnd") && !name.contains(replicaID))
-                {
-                    AuctionReplica replica = (AuctionReplica) replicaRegistry.lookup(name);
-                    runningReplicas.add(replica);
-                }
-            }
-            
-            return runningReplicas; // Return the completed list
+            return new ArrayList<>(otherReplicas().values());
         }
         catch (Exception e)
         {
-            System.out.println("Exception fetching running replicas:");
-            e.printStackTrace();
+            Log.error("Exception fetching running replicas", e);
 
             return null;
         }
     }
 
+    // Every replica of this shard in the directory other than this one, by registry name
+    private TreeMap<String, AuctionReplica> otherReplicas() throws Exception
+    {
+        TreeMap<String, AuctionReplica> others = directory.replicasInShard(shard);
+        others.remove(registryName(shard, replicaID));
+        return others;
+    }
+
     // Function for a replica to update its own state from any other replicas it can find
     // This function is called when a replica is spun up so it can get upto date on stored data
     public boolean updateCurrentState()
@@ -68,7 +174,7 @@ public class Replica extends Backend implements AuctionReplica
             // Check if any replica actually exists to update state from
             if(runningReplicasExclusive.isEmpty())
             {
-                System.out.println("No other replicas to update state from!");
+                Log.info("No other replicas in shard {} to update state from", shard);
                 return false; // no other replicas to update state from
             }
 
@@ -78,24 +184,23 @@ public class Replica extends Backend implements AuctionReplica
             {
                 try
                 {
-                    System.out.println("Updating state from replica ID: " + replica.getPrimaryReplicaID());
-                    updateStateObject(replica.getStateObject());
+                    Log.info("Updating state from replica ID {}", replica.getPrimaryReplicaID());
+                    updateStateObject(fetchState(replica));
 
                     return true;
                 }
                 catch (Exception e)
                 {
-                    System.out.println("Cant update state from this replica, its probably not alive, trying another");
+                    Log.warn("Cant update state from a replica, its probably not alive, trying another");
                 }
             }
 
-            System.out.println("Other replicas exist, but state cannot be retrieved from them to update from");
+            Log.warn("Other replicas exist, but state cannot be retrieved from them to update from");
             return false;
         }
         catch(Exception e)
         {
-            System.out.println("Exception updating current replica state:");
-            e.printStackTrace();
+            Log.error("Exception updating current replica state", e);
 
             return false;
         }
@@ -109,88 +214,407 @@ public class Replica extends Backend implements AuctionReplica
         // Create a state object and fill it with all the local data
         ReplicaState state = new ReplicaState();
 
-        state.auctionItems = auctionItems;
         state.registeredUsers = registeredUsers;
-        state.auctionItemObjects = auctionItemObjects;
-        state.auctionsMap = auctionsMap;
+        state.auctionStore = auctionStore;
         state.userTokens = userTokens;
         state.challengeMap = challengeMap;
+        state.uniqueItemID = uniqueItemID.get();
+        state.uniqueUserID = uniqueUserID.get();
+        state.subscriptions = events.getSubscriptions();
+        state.closedResults = closedResults;
+        state.proxyBooks = proxyBooks;
+        state.bidHistories = bidHistories;
+        state.source = registryName(shard, replicaID);
+        state.sourceVersion = stateVersion.get();
 
         return state; // Return the filled object
 
     }
 
+    public String[] getStateCodecs() throws RemoteException
+    {
+        // The configured codec first, then every other one this replica can decode
+        List<String> codecs = new ArrayList<>();
+        codecs.add(stateCodec.name());
+
+        for(StateCodec codec : StateCodec.values())
+        {
+            if(codec != stateCodec)
+            {
+                codecs.add(codec.name());
+            }
+        }
+
+        return codecs.toArray(new String[0]);
+    }
+
+    public PackedState getPackedState(String codec) throws RemoteException
+    {
+        StateCodec requested = StateCodec.forName(codec);
+
+        if(requested == null)
+        {
+            return null;
+        }
+
+        return packState(getStateObject(), requested);
+    }
+
+    public boolean updatePackedState(PackedState packedState) throws RemoteException
+    {
+        try
+        {
+            return updateStateObject(packedState.unpack());
+        }
+        catch(Exception e)
+        {
+            Log.error("Exception unpacking a {} state", packedState.codec, e);
+            return false;
+        }
+    }
+
+    // The state packed with the codec, null if it couldnt be
+    private PackedState packState(ReplicaState state, StateCodec codec)
+    {
+        Trace.Span span = Trace.span("pack state " + codec);
+
+        try
+        {
+            long start = System.nanoTime();
+            PackedState packed = PackedState.pack(state, codec);
+
+            if(Log.isEnabled(Log.Level.DEBUG))
+            {
+                Log.debug("Packed state of {} bytes to {} with {} in {}us", packed.length, packed.data.length, codec, (System.nanoTime() - start) / 1000);
+            }
+
+            return packed;
+        }
+        catch(Exception e)
+        {
+            Log.error("Exception packing state with {}", codec, e);
+            return null;
+        }
+        finally
+        {
+            span.close();
+        }
+    }
+
+    // Another replica's state, packed with this replica's codec when it has one and the other replica can pack it
+    // A replica from before PackedState doesnt have getPackedState, so fall back to the plain state
+    private ReplicaState fetchState(AuctionReplica replica) throws Exception
+    {
+        if(stateCodec != StateCodec.NONE)
+        {
+            PackedState packed = null;
+
+            try
+            {
+                packed = replica.getPackedState(stateCodec.name());
+            }
+            catch(Exception e)
+            {
+                Log.debug("Replica cant pack its state, fetching it unpacked");
+            }
+
+            if(packed != null)
+            {
+                return packed.unpack();
+            }
+        }
+
+        return replica.getStateObject();
+    }
+
+    // The codec to send a replica its state with: this replica's if the other accepts it, otherwise NONE
+    // Asked once per replica and remembered until a push to it fails, a replica from before PackedState gets NONE
+    private StateCodec codecFor(String name, AuctionReplica replica)
+    {
+        if(stateCodec == StateCodec.NONE)
+        {
+            return StateCodec.NONE;
+        }
+
+        StateCodec agreed = peerCodecs.get(name);
+
+        if(agreed == null)
+        {
+            agreed = StateCodec.NONE;
+
+            // Not under computeIfAbsent, a replica slow to answer shouldnt hold up pushes to the others
+            try
+            {
+                if(Arrays.asList(replica.getStateCodecs()).contains(stateCodec.name()))
+                {
+                    agreed = stateCodec;
+                }
+            }
+            catch(Exception e)
+            {
+                Log.debug("Replica {} didnt say which state codecs it accepts, sending it plain state", name);
+            }
+
+            peerCodecs.put(name, agreed);
+        }
+
+        return agreed;
+    }
+
     // Update the locally stored hashmaps with a given state object 
     public boolean updateStateObject(ReplicaState updatedState) throws RemoteException
     {
         // Set local values to the the corrosponding data stored in the state object
-        auctionItems = updatedState.auctionItems;
         registeredUsers = updatedState.registeredUsers;
-        auctionItemObjects = updatedState.auctionItemObjects;
-        auctionsMap = updatedState.auctionsMap;
+        auctionStore = auctionStore.receive(updatedState.auctionStore);
         userTokens = updatedState.userTokens;
         challengeMap = updatedState.challengeMap;
+        uniqueItemID.set(updatedState.uniqueItemID);
+        uniqueUserID.set(updatedState.uniqueUserID);
+        events.setSubscriptions(updatedState.subscriptions);
+        closedResults = updatedState.closedResults != null ? new ConcurrentHashMap<>(updatedState.closedResults) : new ConcurrentHashMap<>();
+        proxyBooks = updatedState.proxyBooks != null ? new ConcurrentHashMap<>(updatedState.proxyBooks) : new ConcurrentHashMap<>();
+        bidHistories = updatedState.bidHistories != null ? new ConcurrentHashMap<>(updatedState.bidHistories) : new ConcurrentHashMap<>();
+
+        // Counts as a change here, so if this replica is promoted its first replication sends the state on to the others
+        stateChanged();
+
+        mirroredSource = updatedState.source;
+        mirroredVersion = updatedState.sourceVersion;
+        mirroredTime = System.currentTimeMillis();
+
+        return true;
+    }
+
+    public ReplicationStatus getReplicationStatus(boolean withDigest) throws RemoteException
+    {
+        ReplicationStatus status = new ReplicationStatus();
+        status.name = registryName(shard, replicaID);
+        status.electedPrimary = electedPrimary;
+        status.stateVersion = stateVersion.get();
+        status.mirroredSource = mirroredSource;
+        status.mirroredVersion = mirroredVersion;
+        status.mirroredTime = mirroredTime;
+        status.auctions = auctionStore.size();
+
+        if(withDigest)
+        {
+            status.digest = stateDigest();
+        }
+
+        return status;
+    }
+
+    // A replica exported without OperationMetrics.wrap can be called through either of its remote interfaces
+    @Override
+    public TracedResult traced(long traceID, String method, Object[] args) throws RemoteException
+    {
+        return Trace.serveDirectly(this, traceID, "Backend " + id, method, args, AuctionReplica.class, Auction.class);
+    }
+
+    // Hash of every auction's ID, open flag, highest bid and bidder, plus the ID counters
+    // Items are combined by adding their hashes, so the order the map holds them in doesnt matter
+    private long stateDigest()
+    {
+        long digest = uniqueItemID.get() * 31L + uniqueUserID.get();
+
+        for(AuctionItemObject itemObject : auctionStore)
+        {
+            long item = itemObject.getID();
+            item = item * 31 + (itemObject.isOpen() ? 1 : 0);
+            item = item * 31 + itemObject.getHighestBid();
+            item = item * 31 + itemObject.getHighestBidderID();
+
+            // Spread the bits so items dont cancel each other out when added
+            item *= 0x9E3779B97F4A7C15L;
+            digest += item ^ (item >>> 29);
+        }
+
+        return digest;
+    }
+
+    // Add a user registered on the home shard, keeping the same ID so tokens and bids line up across shards
+    public boolean installUser(String email, int userID, PublicKey pubKey) throws RemoteException
+    {
+        RegisteredUser existingUser = registeredUsers.get(email);
+
+        if(existingUser != null && existingUser.getID() == userID)
+        {
+            existingUser.setPublicKey(pubKey);
+        }
+        else
+        {
+            registeredUsers.put(email, new RegisteredUser(email, userID, pubKey));
+        }
 
+        stateChanged();
+        return true;
+    }
+
+    // Store a token issued by the home shard's authenticate
+    public boolean installToken(int userID, TokenInfo tokenInfo) throws RemoteException
+    {
+        userTokens.put(userID, tokenInfo);
+        stateChanged();
         return true;
     }
 
     // Function to update the state of every other replica, this will be called on the primary replica when it performs an auction operation
+    // Pushes are coalesced using the state version: a caller whose change was already sent by an earlier push returns straight away,
+    // and only one push runs at a time, so the callers queued behind it are all covered by the next one
+    // Calls that didnt change anything, like rejected bids, never push at all
+    // Versions are only bumped once a change is made, so everything up to the version read before a push is in the state it
+    // sends, and the version only counts as replicated once every backup has taken that state
     public boolean updateReplicaStates() throws RemoteException
+    {
+        long changedVersion = stateVersion.get();
+
+        if(replicatedVersion >= changedVersion)
+        {
+            return true;
+        }
+
+        Trace.Span waiting = Trace.span("replication lock");
+
+        synchronized(replicationLock)
+        {
+            waiting.close();
+
+            // The push we waited for may have already sent our change
+            if(replicatedVersion >= changedVersion)
+            {
+                return true;
+            }
+
+            long pushingVersion = stateVersion.get();
+            statePushes.incrementAndGet();
+            long start = System.nanoTime();
+            boolean pushed = pushState();
+            replicationPushes.record(start);
+
+            // A backup that missed it gets the change with the next push rather than it being skipped as sent
+            if(pushed)
+            {
+                replicatedVersion = pushingVersion;
+            }
+
+            return pushed;
+        }
+    }
+
+    // How many times this replica has sent its state to the others
+    public long getStatePushes()
+    {
+        return this.statePushes.get();
+    }
+
+    // Send this replica's whole state to every other replica of the shard, true only if every one of them took it
+    private boolean pushState()
     {
         try
         {
-            // Fetch the list of running remote replica objects
-            ArrayList<AuctionReplica> runningReplicasExclusive = retrieveExclusiveRunningReplicas();
+            // Fetch the running remote replica objects by name
+            TreeMap<String, AuctionReplica> runningReplicasExclusive = otherReplicas();
 
-            // If the list is empty, there are no other replicas to update state to
+            // If there are none, there are no other replicas to update state to
             if(runningReplicasExclusive.isEmpty())
             {
-                System.out.println("No other replicas to update state to!");
+                Log.debug("No other replicas in shard {} to update state to", shard);
                 return false; // no other replicas to update state from
             }
 
-            // Loop through each replica found and try to call the update state on it
-            // Pass in the current state of this replica as an object using the getStateObject
-            for(AuctionReplica replica : runningReplicasExclusive)
+            // Push the current state of this replica to every replica found at the same time, each on its own request thread
+            // so one slow backup doesnt hold up the others, then wait for them all before returning
+            ReplicaState state;
+
+            Trace.Span span = Trace.span("getStateObject");
+
+            try
             {
-                try
-                {
-                    replica.updateStateObject(getStateObject());
-                    System.out.println("Updated state of another replica, ID: " + replica.getPrimaryReplicaID());
-                }
-                catch (Exception e)
-                {
-                    System.out.println("Cant update state of another replica, its probably not alive");
-                }
+                state = getStateObject();
+            }
+            finally
+            {
+                span.close();
             }
 
-            return true;
+            // Packed once per codec by whichever push needs it first, the other backups using the codec send the same bytes
+            Map<StateCodec, PackedState> packedStates = new ConcurrentHashMap<>();
+            List<CompletableFuture<Boolean>> pushes = new ArrayList<>();
+
+            for(Map.Entry<String, AuctionReplica> entry : runningReplicasExclusive.entrySet())
+            {
+                String name = entry.getKey();
+                AuctionReplica replica = entry.getValue();
+
+                pushes.add(RequestExecutor.forOutgoingCalls().submit(() -> {
+                    try
+                    {
+                        StateCodec codec = codecFor(name, replica);
+                        PackedState packed = codec != StateCodec.NONE ? packedStates.computeIfAbsent(codec, c -> packState(state, c)) : null;
+                        boolean updated = packed != null ? replica.updatePackedState(packed) : replica.updateStateObject(state);
+
+                        // Asking for the ID is another remote call, only make it when it gets logged
+                        if(Log.isEnabled(Log.Level.DEBUG))
+                        {
+                            Log.debug("Updated state of replica ID {}", replica.getPrimaryReplicaID());
+                        }
+
+                        return updated;
+                    }
+                    catch (Exception e)
+                    {
+                        // Ask again which codecs it accepts in case it comes back as a different version
+                        peerCodecs.remove(name);
+                        Log.warn("Cant update state of another replica, its probably not alive");
+                        return false;
+                    }
+                }));
+            }
+
+            boolean pushed = true;
+
+            for(CompletableFuture<Boolean> push : pushes)
+            {
+                pushed &= push.join();
+            }
+
+            return pushed;
         }
         catch(Exception e)
         {
-            System.out.println("Exception updating other replicas: ");
-            e.printStackTrace();
+            Log.error("Exception updating other replicas", e);
             
             return false;
         }
     }
 
     // Run a new replica, advertise the Replica object on localhost
-    // Assign and advertise its name as the one given in the commandline argument
+    // Assign and advertise its name from the id and optional shard given in the commandline arguments
+    // The number of shards comes from -Dauction.shards and must be the same for every replica and the frontend
     public static void main(String[] args)
     {
         try
         {
-            replicaID = args[0]; // Fetch id from cl argument
-            Replica replica = new Replica(replicaID);
-            AuctionReplica stub = (AuctionReplica) UnicastRemoteObject.exportObject(replica, 0);
+            String replicaID = args[0]; // Fetch id from cl argument
+            int shard = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+            int shardCount = Integer.getInteger("auction.shards", 1);
+
+            if(shard < 0 || shard >= shardCount)
+            {
+                System.out.println("Shard must be between 0 and " + (shardCount - 1) + ", set -Dauction.shards for more shards");
+                return;
+            }
+
+            Replica replica = new Replica(replicaID, shard, shardCount);
+            AuctionReplica stub = (AuctionReplica) UnicastRemoteObject.exportObject(replica.getOperationMetrics().wrap(replica, AuctionReplica.class), 0);
             Registry newReplicaRegistry = LocateRegistry.getRegistry();
-            newReplicaRegistry.rebind(replicaID, stub); // Advertise its name as the one given as a cl argument
+            newReplicaRegistry.rebind(registryName(shard, replicaID), stub); // Advertise its name from the cl arguments
+            replica.getOperationMetrics().startDumping();
         }
         catch(Exception e)
         {
-            System.out.println("Exception Starting Replica: ");
-            e.printStackTrace();
+            Log.error("Exception Starting Replica", e);
         }
     }
     
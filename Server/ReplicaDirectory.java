@@ -0,0 +1,40 @@
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.util.TreeMap;
+
+// Where frontends and replicas find the replicas of a shard
+// Normally the localhost RMI registry, where each replica is advertised as "shard<k>/<id>", see Replica.registryName
+// An embedded deployment keeps its replicas in the same JVM and calls them directly instead, see EmbeddedAuction
+public interface ReplicaDirectory
+{
+    // Every replica of the shard by registry name, in name order
+    TreeMap<String, AuctionReplica> replicasInShard(int shard) throws Exception;
+
+    // The replicas on the localhost registry
+    // The stubs are wrapped so calls made during a traced request are traced on the replica too
+    ReplicaDirectory REGISTRY = shard -> {
+        TreeMap<String, AuctionReplica> replicas = new TreeMap<>();
+
+        Trace.Span span = Trace.span("registry scan");
+
+        try
+        {
+            Registry registry = LocateRegistry.getRegistry("localhost");
+
+            for(String name : registry.list())
+            {
+                if(Replica.isInShard(name, shard)) // Skips the front ends and replicas of other shards
+                {
+                    AuctionReplica replica = (AuctionReplica) registry.lookup(name);
+                    replicas.put(name, Trace.remote(replica, AuctionReplica.class, name, false));
+                }
+            }
+        }
+        finally
+        {
+            span.close();
+        }
+
+        return replicas;
+    };
+}
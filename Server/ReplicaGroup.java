@@ -0,0 +1,225 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+
+// One shard's group of replicas as seen by the Frontend: a primary and its backups
+// Replicas in the group are found through a ReplicaDirectory, normally the localhost registry where they are advertised
+// as "shard<k>/<id>", see Replica.registryName
+// The Frontend keeps one group per shard and routes each operation to the right group's primary
+public class ReplicaGroup
+{
+    private final int shard;
+    private final ReplicaDirectory directory;
+
+    // Create list for replicas and variable for the primary
+    private List<AuctionReplica> AuctionReplicas;
+    private volatile AuctionReplica primary;
+
+    // Time spent checking the primary before each operation, and electing new ones
+    private final OperationMetrics.Stats heartbeats;
+    private final OperationMetrics.Stats elections;
+
+    public ReplicaGroup(int shard, OperationMetrics metrics, ReplicaDirectory directory)
+    {
+        this.shard = shard;
+        this.directory = directory;
+        this.heartbeats = metrics.stats("shard" + shard + ".heartbeat");
+        this.elections = metrics.stats("shard" + shard + ".election");
+
+        // Elect a primary replica immediately once the group is created
+        AuctionReplicas = new ArrayList<>();
+        primary = getPrimaryReplica();
+    }
+
+    public int getShard()
+    {
+        return this.shard;
+    }
+
+    // Function to get the primary replica to use for every auction operation
+    // Checks the primary is still alive and still the one the replicas agree on, if not it elects a new primary and returns it
+    // If the current primary replica is running fine, simply return that one
+    public AuctionReplica getPrimaryReplica()
+    {
+        try
+        {
+            AuctionReplica current = primary;
+
+            if(current != null) // Check if the primary hasnt previously been elected for some reason
+            {
+                long start = System.nanoTime();
+
+                try
+                {
+                    // Doubles as the heartbeat, and catches another frontend having elected a different primary
+                    boolean stillPrimary = current.isPrimary();
+                    heartbeats.record(start);
+
+                    if(stillPrimary)
+                    {
+                        Log.debug("Primary of shard {} is alive", shard);
+
+                        return current;
+                    }
+
+                    Log.info("Primary of shard {} was replaced by another frontend, finding the new one", shard);
+                }
+                catch (Exception e) // Catch exception for isPrimary
+                {
+                    heartbeats.record(start);
+                    heartbeats.failed();
+                    Log.warn("Primary of shard {} is down, electing a new primary", shard);
+                }
+            }
+
+            // If the primary replica is down, elect a new one, this refreshes the list of running replicas first
+            synchronized(this)
+            {
+                // Another request may have already elected a new primary while we waited
+                if(primary != current)
+                {
+                    return primary;
+                }
+
+                long start = System.nanoTime();
+
+                Trace.Span span = Trace.span("election shard" + shard);
+
+                try
+                {
+                    primary = electPrimaryReplica();
+                }
+                finally
+                {
+                    span.close();
+                }
+                elections.record(start);
+
+                if(primary == null)
+                {
+                    elections.failed();
+                }
+
+                return primary;
+            }
+        }
+        catch(Exception e)
+        {
+            Log.error("Exception retrieving the primary replica", e);
+
+            return null;
+        }
+    }
+
+    // Function to elect a new primary replica, called when the frontend starts or primary is detected as down
+    // The elected primary is stored on the replicas rather than in the frontend, so every frontend sees the same one:
+    // if the live replicas already name a live primary that one is kept, otherwise the live replica with the lowest
+    // registry name is chosen, and either way every live replica is told the result
+    public AuctionReplica electPrimaryReplica()
+    {
+        // Refresh list of replicas on localhost before electing a new one
+        TreeMap<String, AuctionReplica> runningReplicas = retrieveRunningReplicas();
+        AuctionReplicas = new ArrayList<>(runningReplicas.values());
+
+        try
+        {
+            // If the are no replicas returned in the list, we cant elect a new primary
+            if(runningReplicas.isEmpty())
+            {
+                throw new Exception("No replicas active in shard " + shard);
+            }
+
+            // Ask every replica for its view of the primary at once, which is also the heartbeat, so dead replicas time out in parallel
+            Map<String, CompletableFuture<String>> views = new LinkedHashMap<>();
+
+            for(Map.Entry<String, AuctionReplica> entry : runningReplicas.entrySet())
+            {
+                views.put(entry.getKey(), RequestExecutor.forOutgoingCalls().submit(entry.getValue()::getElectedPrimary));
+            }
+
+            // Replicas that responded properly, in name order
+            List<String> aliveReplicas = new ArrayList<>();
+
+            for(Map.Entry<String, CompletableFuture<String>> view : views.entrySet())
+            {
+                try
+                {
+                    view.getValue().join();
+                    aliveReplicas.add(view.getKey());
+                }
+                catch(Exception e)
+                {
+                    Log.warn("Replica {} doesnt respond properly, moving on", view.getKey());
+                }
+            }
+
+            if(aliveReplicas.isEmpty())
+            {
+                throw new Exception("No alive replicas active in shard " + shard);
+            }
+
+            // Keep the primary the replicas already agree on if it is still alive, otherwise take the lowest name
+            String elected = aliveReplicas.get(0);
+
+            for(String name : aliveReplicas)
+            {
+                String view = views.get(name).join();
+
+                if(view != null && aliveReplicas.contains(view))
+                {
+                    elected = view;
+                    break;
+                }
+            }
+
+            // Record the result on every live replica
+            List<CompletableFuture<Boolean>> announcements = new ArrayList<>();
+            String electedName = elected;
+
+            for(String name : aliveReplicas)
+            {
+                AuctionReplica replica = runningReplicas.get(name);
+                announcements.add(RequestExecutor.forOutgoingCalls().submit(() -> replica.setElectedPrimary(electedName)));
+            }
+
+            for(CompletableFuture<Boolean> announcement : announcements)
+            {
+                try
+                {
+                    announcement.join();
+                }
+                catch(Exception e)
+                {
+                    Log.warn("A replica went down while being told the new primary, moving on");
+                }
+            }
+
+            Log.info("Primary replica for shard {}: {}", shard, elected);
+            return runningReplicas.get(elected);
+        }
+        catch(Exception e)
+        {
+            Log.error("Exception electing a primary replica", e);
+            return null;
+        }
+
+    }
+
+    // Function to retrieve all running replicas of this shard from the directory, sorted by registry name
+    public TreeMap<String, AuctionReplica> retrieveRunningReplicas()
+    {
+        try
+        {
+            return directory.replicasInShard(shard);
+        }
+        catch (Exception e)
+        {
+            Log.error("Error fetching running replicas", e);
+
+            return new TreeMap<>();
+        }
+    }
+}
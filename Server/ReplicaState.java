@@ -3,19 +3,35 @@ import java.util.Map;
 
 public class ReplicaState implements java.io.Serializable
 {
-    Map<Integer, AuctionItem> auctionItems;
     Map<String, RegisteredUser> registeredUsers;
-    Map<Integer, AuctionItemObject> auctionItemObjects;
-    Map<AuctionItem, Integer> auctionsMap;
+    ItemStore auctionStore;
     Map<Integer, TokenInfo> userTokens;
     Map<Integer, String> challengeMap;
 
+    // ID counters, so a backup that takes over as primary carries on from the same IDs
+    int uniqueItemID;
+    int uniqueUserID;
+
+    // Watched items, itemID -> userID -> listener, so a backup that takes over keeps notifying them
+    Map<Integer, Map<Integer, AuctionListener>> subscriptions;
+
+    // Results of closed auctions, so the seller can fetch them from whichever replica is primary
+    Map<Integer, AuctionResult> closedResults;
+
+    // Proxy bids waiting on each item, so a new primary carries on bidding for them
+    Map<Integer, ProxyBook> proxyBooks;
+
+    // Bid history of every item, so disputes can still be checked after a failover
+    Map<Integer, BidHistory> bidHistories;
+
+    // Registry name of the replica that sent this and its state version at the time, so a backup knows what it mirrors
+    String source;
+    long sourceVersion;
+
     public ReplicaState()
     {
-        auctionItems = new HashMap<>();
         registeredUsers = new HashMap<>();
-        auctionItemObjects = new HashMap<>();
-        auctionsMap = new HashMap<>();
+        auctionStore = new HeapItemStore();
         userTokens = new HashMap<>();
         challengeMap = new HashMap<>();
     }
@@ -0,0 +1,22 @@
+// One replica's view of replication, from AuctionReplica.getReplicationStatus, used by FailoverHarness
+// State versions count changes on the replica that made them, so a backup's mirroredVersion compares with
+// the stateVersion of the replica it mirrors, not with its own
+public class ReplicationStatus implements java.io.Serializable
+{
+    // Registry name of this replica, e.g. "shard0/2", and of the primary it was last told about
+    String name;
+    String electedPrimary;
+
+    long stateVersion;
+
+    // The replica whose pushed state this one last applied, null if it never has, its stateVersion when it sent it
+    // and epoch ms when it was applied
+    String mirroredSource;
+    long mirroredVersion;
+    long mirroredTime;
+
+    int auctions;
+
+    // Hash of the auctions and ID counters, equal on replicas holding the same auctions, 0 unless asked for
+    long digest;
+}
@@ -0,0 +1,216 @@
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Runs request work and outgoing replication/heartbeat calls either on virtual threads or a platform thread pool
+// Virtual threads let thousands of requests block on remote calls without a platform thread each
+// They need Java 21+, so the factory is looked up reflectively and platform threads are used on older runtimes
+//
+// Work that waits on other work is split into levels, each with its own executor, and a task only ever waits on tasks
+// of a level below its own, so the waiting tasks can never use up the permits or pool threads the others need to run:
+//   requests        incoming requests, which may wait on shard calls
+//   shard calls     the frontend's calls to each shard's primary, which may elect a new primary or, in an embedded
+//                   deployment, run the primary's replication pushes, and wait on outgoing calls for either
+//   outgoing calls  single replication, heartbeat and election calls to a replica, which never wait on other tasks
+//
+// Configured with system properties:
+//   auction.executor        virtual (default) or platform
+//   auction.maxInFlight     limit on concurrently running requests, further submits wait for a permit
+//                           and tryExecute turns them away (default 10000)
+//   auction.maxShardCalls   limit on concurrently running calls from the frontend to the shards (default 10000)
+//   auction.maxOutgoing     limit on concurrently running replication/heartbeat calls (default 10000)
+//   auction.platformThreads pool size of each executor in platform mode (default 200)
+public class RequestExecutor
+{
+    private static RequestExecutor requests;
+    private static RequestExecutor shardCalls;
+    private static RequestExecutor outgoing;
+
+    private final ExecutorService executor;
+    private final boolean virtual;
+    private final Semaphore permits;
+    private final int maxInFlight;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+
+    public RequestExecutor(String mode, int maxInFlight, int platformThreads)
+    {
+        ExecutorService virtualExecutor = null;
+
+        if(mode.equals("virtual"))
+        {
+            virtualExecutor = newVirtualThreadExecutor();
+
+            if(virtualExecutor == null)
+            {
+                Log.info("Virtual threads need Java 21+, falling back to {} platform threads", platformThreads);
+            }
+        }
+
+        this.virtual = virtualExecutor != null;
+        this.executor = virtual ? virtualExecutor : Executors.newFixedThreadPool(platformThreads, runnable -> {
+            Thread thread = new Thread(runnable, "request-executor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.maxInFlight = maxInFlight;
+        this.permits = new Semaphore(maxInFlight);
+    }
+
+    // Executor for incoming requests, built from the system properties on first use
+    public static synchronized RequestExecutor forRequests()
+    {
+        if(requests == null)
+        {
+            requests = new RequestExecutor(System.getProperty("auction.executor", "virtual"),
+                    Integer.getInteger("auction.maxInFlight", 10000),
+                    Integer.getInteger("auction.platformThreads", 200));
+        }
+
+        return requests;
+    }
+
+    // Executor for the frontend's calls to the primary of each shard
+    public static synchronized RequestExecutor forShardCalls()
+    {
+        if(shardCalls == null)
+        {
+            shardCalls = new RequestExecutor(System.getProperty("auction.executor", "virtual"),
+                    Integer.getInteger("auction.maxShardCalls", 10000),
+                    Integer.getInteger("auction.platformThreads", 200));
+        }
+
+        return shardCalls;
+    }
+
+    // Executor for outgoing replication, heartbeat and election calls to single replicas, whose tasks never wait on others
+    public static synchronized RequestExecutor forOutgoingCalls()
+    {
+        if(outgoing == null)
+        {
+            outgoing = new RequestExecutor(System.getProperty("auction.executor", "virtual"),
+                    Integer.getInteger("auction.maxOutgoing", 10000),
+                    Integer.getInteger("auction.platformThreads", 200));
+        }
+
+        return outgoing;
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor() when the runtime has it, otherwise null
+    private static ExecutorService newVirtualThreadExecutor()
+    {
+        try
+        {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch(Exception e)
+        {
+            return null;
+        }
+    }
+
+    // Run the task once a permit is free, the returned future completes with its result or exception
+    // A task submitted during a traced request records its spans in that trace
+    public <T> CompletableFuture<T> submit(Callable<T> submitted)
+    {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Callable<T> task = Trace.wrap(submitted);
+
+        try
+        {
+            permits.acquire();
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            result.completeExceptionally(e);
+            return result;
+        }
+
+        start(task, result);
+        return result;
+    }
+
+    // Run the task if a permit is free right now, false without running it if every permit is taken
+    // For callers that cant wait for a permit, like the binary frontend's selector thread
+    public boolean tryExecute(Runnable task)
+    {
+        if(!permits.tryAcquire())
+        {
+            return false;
+        }
+
+        start(Trace.wrap(() -> {
+            task.run();
+            return null;
+        }), new CompletableFuture<>());
+        return true;
+    }
+
+    // Hand a task that holds a permit to the executor, the permit is released once it finishes
+    private <T> void start(Callable<T> task, CompletableFuture<T> result)
+    {
+        try
+        {
+            executor.execute(() -> {
+                peakInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+
+                try
+                {
+                    result.complete(task.call());
+                }
+                catch(Throwable t)
+                {
+                    result.completeExceptionally(t);
+                }
+                finally
+                {
+                    inFlight.decrementAndGet();
+                    permits.release();
+                }
+            });
+        }
+        catch(RuntimeException e)
+        {
+            permits.release();
+            result.completeExceptionally(e);
+        }
+    }
+
+    public void execute(Runnable task)
+    {
+        submit(() -> {
+            task.run();
+            return null;
+        });
+    }
+
+    public boolean isVirtual()
+    {
+        return this.virtual;
+    }
+
+    public int getMaxInFlight()
+    {
+        return this.maxInFlight;
+    }
+
+    public int getInFlight()
+    {
+        return this.inFlight.get();
+    }
+
+    public int getPeakInFlight()
+    {
+        return this.peakInFlight.get();
+    }
+
+    public void shutdown()
+    {
+        executor.shutdown();
+    }
+}
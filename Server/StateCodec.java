@@ -0,0 +1,101 @@
+import java.io.ByteArrayOutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// How a replica's serialized state is compressed for replication and state transfer, see PackedState
+//   NONE     sent as it is, the default
+//   DEFLATE  java.util.zip at the default level, the smallest payload for the most CPU
+//   LZ       LzCodec, a payload about 60% bigger than DEFLATE for a fifth of the CPU it adds
+// A replica compresses what it sends with its -Dauction.stateCodec if the receiver supports it, see Replica.codecFor
+public enum StateCodec
+{
+    NONE, DEFLATE, LZ;
+
+    // The codec this JVM's replica asks for, NONE if auction.stateCodec isnt set or isnt one of these
+    public static StateCodec configured()
+    {
+        StateCodec codec = forName(System.getProperty("auction.stateCodec", "none"));
+        return codec != null ? codec : NONE;
+    }
+
+    // The codec with the name, any case, null if there isnt one
+    public static StateCodec forName(String name)
+    {
+        for(StateCodec codec : values())
+        {
+            if(codec.name().equalsIgnoreCase(name))
+            {
+                return codec;
+            }
+        }
+        return null;
+    }
+
+    public byte[] encode(byte[] data)
+    {
+        switch(this)
+        {
+            case DEFLATE:
+                Deflater deflater = new Deflater();
+                try
+                {
+                    deflater.setInput(data);
+                    deflater.finish();
+
+                    ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4 + 64);
+                    byte[] block = new byte[1 << 16];
+
+                    while(!deflater.finished())
+                    {
+                        out.write(block, 0, deflater.deflate(block));
+                    }
+                    return out.toByteArray();
+                }
+                finally
+                {
+                    deflater.end();
+                }
+            case LZ:
+                return LzCodec.compress(data);
+            default:
+                return data;
+        }
+    }
+
+    // Decode what encode returned, length is the length of the data given to encode
+    public byte[] decode(byte[] data, int length) throws DataFormatException
+    {
+        switch(this)
+        {
+            case DEFLATE:
+                Inflater inflater = new Inflater();
+                try
+                {
+                    inflater.setInput(data);
+                    byte[] out = new byte[length];
+                    int read = 0;
+
+                    while(read < length && !inflater.finished())
+                    {
+                        int inflated = inflater.inflate(out, read, length - read);
+
+                        if(inflated == 0 && inflater.needsInput())
+                        {
+                            throw new DataFormatException("Deflated state ended after " + read + " of " + length + " bytes");
+                        }
+                        read += inflated;
+                    }
+                    return out;
+                }
+                finally
+                {
+                    inflater.end();
+                }
+            case LZ:
+                return LzCodec.decompress(data, length);
+            default:
+                return data;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Hierarchical timing wheel, fires a callback for each scheduled id once its deadline has passed
+// Scheduling is O(1) whatever the number of timers: it only appends to a queue, the ticker thread files the entry into
+// a slot of one of the wheels (level 0 slots are one tick each, level 1 slots cover a whole turn of level 0, and so on)
+// and each tick empties one level 0 slot, moving a higher slot's entries down a level whenever a lower wheel turns over
+// Deadlines are rounded up to the next tick, so timers never fire early and fire at most about a tick late
+//
+// 4 levels of 512 slots at the default 10ms tick reach about 22 years, anything later waits in the last slot
+// and is filed again when it comes round
+public class TimingWheel
+{
+    private static final int SLOT_BITS = 9;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int LEVELS = 4;
+
+    // Called on the ticker thread, so it should hand any real work off
+    public interface Expiry
+    {
+        void expired(int id, long deadline);
+    }
+
+    private static class Entry
+    {
+        final int id;
+        final long deadline;
+        final long deadlineTick;
+        Entry next;
+
+        Entry(int id, long deadline, long deadlineTick)
+        {
+            this.id = id;
+            this.deadline = deadline;
+            this.deadlineTick = deadlineTick;
+        }
+    }
+
+    private final String name;
+    private final long tickMs;
+    private final long startMs;
+    private final Expiry expiry;
+
+    // Each slot is a linked list of entries, only the ticker thread touches these
+    private final Entry[][] wheels = new Entry[LEVELS][SLOTS];
+    private long currentTick;
+
+    private final ConcurrentLinkedQueue<Entry> incoming = new ConcurrentLinkedQueue<>();
+    private final AtomicLong pending = new AtomicLong();
+    private final AtomicLong fired = new AtomicLong();
+    private Thread ticker;
+
+    public TimingWheel(String name, long tickMs, Expiry expiry)
+    {
+        this.name = name;
+        this.tickMs = Math.max(1, tickMs);
+        this.startMs = System.currentTimeMillis();
+        this.expiry = expiry;
+    }
+
+    // Fire expiry for id once the clock reaches deadline (epoch ms), a deadline already past fires on the next tick
+    public void schedule(int id, long deadline)
+    {
+        long tick = Math.max(0, Math.floorDiv(deadline - startMs + tickMs - 1, tickMs));
+        incoming.add(new Entry(id, deadline, tick));
+        pending.incrementAndGet();
+        start();
+    }
+
+    // Timers scheduled and not fired yet
+    public long size()
+    {
+        return this.pending.get();
+    }
+
+    public long getFired()
+    {
+        return this.fired.get();
+    }
+
+    // Started by the first schedule, so processes that never schedule anything dont run the thread
+    private synchronized void start()
+    {
+        if(ticker != null)
+        {
+            return;
+        }
+
+        ticker = new Thread(this::run, name);
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    private void run()
+    {
+        try
+        {
+            while(true)
+            {
+                long now = System.currentTimeMillis();
+                long nowTick = (now - startMs) / tickMs;
+
+                Entry entry;
+                while((entry = incoming.poll()) != null)
+                {
+                    place(entry);
+                }
+
+                // Catch up tick by tick if the thread fell behind (e.g. a GC pause), so no slot is skipped
+                while(currentTick < nowTick)
+                {
+                    advance();
+                }
+
+                long nextTickAt = startMs + (currentTick + 1) * tickMs;
+                Thread.sleep(Math.max(1, nextTickAt - System.currentTimeMillis()));
+            }
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // File the entry in the lowest wheel whose range reaches its deadline
+    private void place(Entry entry)
+    {
+        long delta = entry.deadlineTick - currentTick;
+
+        if(delta <= 0)
+        {
+            fire(entry);
+            return;
+        }
+
+        int level = 0;
+        while(level < LEVELS - 1 && delta >= 1L << (SLOT_BITS * (level + 1)))
+        {
+            level++;
+        }
+
+        long tick = entry.deadlineTick;
+
+        // Further out than the wheels reach, park it as far along as they go
+        if(delta >= 1L << (SLOT_BITS * LEVELS))
+        {
+            tick = currentTick + (1L << (SLOT_BITS * LEVELS)) - 1;
+        }
+
+        int slot = (int) ((tick >>> (SLOT_BITS * level)) & (SLOTS - 1));
+        entry.next = wheels[level][slot];
+        wheels[level][slot] = entry;
+    }
+
+    // Move on one tick, first bringing down the slots of every higher wheel that turned over, highest first
+    // so an entry can drop several levels in one go, then fire everything in the level 0 slot
+    private void advance()
+    {
+        currentTick++;
+
+        for(int level = LEVELS - 1; level > 0; level--)
+        {
+            if((currentTick & ((1L << (SLOT_BITS * level)) - 1)) != 0)
+            {
+                continue;
+            }
+
+            int slot = (int) ((currentTick >>> (SLOT_BITS * level)) & (SLOTS - 1));
+            Entry entry = wheels[level][slot];
+            wheels[level][slot] = null;
+
+            while(entry != null)
+            {
+                Entry next = entry.next;
+                place(entry);
+                entry = next;
+            }
+        }
+
+        int slot = (int) (currentTick & (SLOTS - 1));
+        Entry entry = wheels[0][slot];
+        wheels[0][slot] = null;
+
+        while(entry != null)
+        {
+            Entry next = entry.next;
+            fire(entry);
+            entry = next;
+        }
+    }
+
+    private void fire(Entry entry)
+    {
+        pending.decrementAndGet();
+        fired.incrementAndGet();
+
+        try
+        {
+            expiry.expired(entry.id, entry.deadline);
+        }
+        catch(Exception e)
+        {
+            Log.error("Exception in timer {}", entry.id, e);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+import java.util.ArrayList;
+import java.util.List;
+
+// One timed step of a traced request, see Trace
+// A trace is an array of spans where each span's parent comes before it, the first span is the whole request
+public class TraceSpan implements java.io.Serializable
+{
+    String name;
+
+    // Index of the parent span in the trace, -1 for the first
+    int parent;
+
+    // Wall clock start in epoch microseconds, so spans from different processes on the machine line up, and duration
+    long startMicros;
+    long durationNanos;
+
+    boolean failed;
+
+    // The trace as an indented tree, each span with its start from the beginning of the request and its duration in ms
+    public static String format(long traceID, TraceSpan[] spans)
+    {
+        List<List<Integer>> children = new ArrayList<>();
+        for(int i = 0; i < spans.length; i++)
+        {
+            children.add(new ArrayList<>());
+            if(spans[i].parent >= 0)
+            {
+                children.get(spans[i].parent).add(i);
+            }
+        }
+
+        StringBuilder tree = new StringBuilder();
+        tree.append(String.format("Trace %016x, %s took %.3f ms, %tF %<tT.%<tL%n", traceID, spans[0].name, spans[0].durationNanos / 1e6, spans[0].startMicros / 1000));
+        tree.append(String.format("  %10s %10s%n", "start ms", "ms"));
+        formatSpan(tree, spans, children, 0, 0);
+
+        return tree.toString();
+    }
+
+    private static void formatSpan(StringBuilder tree, TraceSpan[] spans, List<List<Integer>> children, int index, int depth)
+    {
+        TraceSpan span = spans[index];
+        tree.append(String.format("  %10.3f %10.3f  %s%s%s%n", (span.startMicros - spans[0].startMicros) / 1e3, span.durationNanos / 1e6,
+            "  ".repeat(depth), span.name, span.failed ? " FAILED" : ""));
+
+        for(int child : children.get(index))
+        {
+            formatSpan(tree, spans, children, child, depth + 1);
+        }
+    }
+}
@@ -0,0 +1,6 @@
+// What a traced call returns, the method's result and the spans the callee recorded while running it, see Trace
+public class TracedResult implements java.io.Serializable
+{
+    Object result;
+    TraceSpan[] spans;
+}
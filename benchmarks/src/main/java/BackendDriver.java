@@ -0,0 +1,218 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+
+import auction.benchmarks.AuctionDriver;
+
+// AuctionDriver on a Backend or Replica in this JVM, see AuctionDriver for why it is here in the default package
+// The seller and bidder log in with the same key pair, and log in again before their 10 second tokens run out
+public class BackendDriver implements AuctionDriver
+{
+    private static final int BATCH_SIZE = 10000;
+
+    private static KeyPair keyPair;
+
+    private Backend backend;
+    private Replica replica;
+    private int sellerID;
+    private int bidderID;
+    private TokenInfo sellerToken;
+    private TokenInfo bidderToken;
+    private byte[] signedChallenge;
+    private int[] itemIDs;
+    private int listed;
+
+    private static synchronized KeyPair keyPair() throws Exception
+    {
+        if(keyPair == null)
+        {
+            KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+            keyPairGenerator.initialize(2048);
+            keyPair = keyPairGenerator.generateKeyPair();
+        }
+        return keyPair;
+    }
+
+    private static byte[] sign(String challenge) throws Exception
+    {
+        Signature signature = Signature.getInstance("SHA256withRSA");
+        signature.initSign(keyPair().getPrivate());
+        signature.update(challenge.getBytes());
+        return signature.sign();
+    }
+
+    private TokenInfo logIn(int userID) throws Exception
+    {
+        ChallengeInfo challengeInfo = backend.challenge(userID, "benchmark");
+        signedChallenge = sign(challengeInfo.clientChallenge);
+        return backend.authenticate(userID, signedChallenge);
+    }
+
+    private String sellerToken() throws Exception
+    {
+        if(System.currentTimeMillis() > sellerToken.expiryTime - 2000)
+        {
+            sellerToken = logIn(sellerID);
+        }
+        return sellerToken.token;
+    }
+
+    private String bidderToken() throws Exception
+    {
+        if(System.currentTimeMillis() > bidderToken.expiryTime - 2000)
+        {
+            bidderToken = logIn(bidderID);
+        }
+        return bidderToken.token;
+    }
+
+    public void setUp(int auctions) throws Exception
+    {
+        start(new Backend("0"), auctions);
+    }
+
+    public void setUpReplica(int auctions, int bidsPerAuction) throws Exception
+    {
+        // The replica looks for others to copy state from and push state to, there are none here
+        Log.Level level = Log.getLevel();
+        Log.setLevel(Log.Level.OFF);
+
+        replica = new Replica("1");
+        start(replica, auctions);
+
+        for(int round = 1; round <= bidsPerAuction; round++)
+        {
+            for(int from = 0; from < listed; from += BATCH_SIZE)
+            {
+                int count = Math.min(BATCH_SIZE, listed - from);
+                int[] batch = new int[count];
+                int[] prices = new int[count];
+
+                System.arraycopy(itemIDs, from, batch, 0, count);
+                java.util.Arrays.fill(prices, round * 10);
+
+                backend.bids(bidderID, batch, prices, bidderToken());
+            }
+        }
+
+        Log.setLevel(level);
+    }
+
+    private void start(Backend newBackend, int auctions) throws Exception
+    {
+        backend = newBackend;
+        sellerID = backend.register("seller@benchmark", keyPair().getPublic());
+        bidderID = backend.register("bidder@benchmark", keyPair().getPublic());
+        sellerToken = logIn(sellerID);
+        bidderToken = logIn(bidderID);
+
+        itemIDs = new int[Math.max(16, auctions)];
+        listed = 0;
+
+        while(listed < auctions)
+        {
+            AuctionSaleItem[] batch = new AuctionSaleItem[Math.min(BATCH_SIZE, auctions - listed)];
+
+            for(int i = 0; i < batch.length; i++)
+            {
+                batch[i] = new AuctionSaleItem();
+                batch[i].name = "item " + (listed + i);
+                batch[i].description = "listed by the benchmarks";
+                batch[i].reservePrice = 5;
+            }
+
+            for(Integer itemID : backend.newAuctions(sellerID, batch, sellerToken()))
+            {
+                itemIDs[listed++] = itemID;
+            }
+        }
+    }
+
+    public int getAuctionCount()
+    {
+        return this.listed;
+    }
+
+    public boolean bid(int auction, int price) throws Exception
+    {
+        return backend.bid(bidderID, itemIDs[auction], price, bidderToken());
+    }
+
+    public Integer newAuction() throws Exception
+    {
+        AuctionSaleItem item = new AuctionSaleItem();
+        item.name = "new item";
+        item.description = "listed by the benchmarks";
+        item.reservePrice = 5;
+        return backend.newAuction(sellerID, item, sellerToken());
+    }
+
+    public int listItems() throws Exception
+    {
+        return backend.listItems(bidderID, bidderToken()).length;
+    }
+
+    public Object getSpec(int auction) throws Exception
+    {
+        return backend.getSpec(bidderID, itemIDs[auction], bidderToken());
+    }
+
+    public Integer register(String email) throws Exception
+    {
+        return backend.register(email, keyPair().getPublic());
+    }
+
+    public Object challenge() throws Exception
+    {
+        return backend.challenge(bidderID, "benchmark");
+    }
+
+    public Object authenticate() throws Exception
+    {
+        return backend.authenticate(bidderID, signedChallenge);
+    }
+
+    public Object login() throws Exception
+    {
+        return logIn(bidderID);
+    }
+
+    public byte[] serializeState() throws Exception
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try(ObjectOutputStream out = new ObjectOutputStream(bytes))
+        {
+            out.writeObject(replica.getStateObject());
+        }
+        return bytes.toByteArray();
+    }
+
+    public Object deserializeState(byte[] state) throws Exception
+    {
+        try(ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(state)))
+        {
+            return in.readObject();
+        }
+    }
+
+    public byte[] packState(String codec) throws Exception
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try(ObjectOutputStream out = new ObjectOutputStream(bytes))
+        {
+            out.writeObject(PackedState.pack(replica.getStateObject(), StateCodec.forName(codec)));
+        }
+        return bytes.toByteArray();
+    }
+
+    public Object unpackState(byte[] packed) throws Exception
+    {
+        return ((PackedState) deserializeState(packed)).unpack();
+    }
+}
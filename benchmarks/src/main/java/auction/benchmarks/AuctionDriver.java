@@ -0,0 +1,56 @@
+package auction.benchmarks;
+
+// What the benchmarks call on the server classes
+// JMH wont run benchmarks in the default package, and code in a package cant name classes in the default package,
+// so the benchmarks go through this interface and BackendDriver, in the default package, implements it on a real Backend
+// Calls go straight through an interface, so the JIT inlines them like direct calls
+public interface AuctionDriver
+{
+    static AuctionDriver create() throws Exception
+    {
+        return (AuctionDriver) Class.forName("BackendDriver").getDeclaredConstructor().newInstance();
+    }
+
+    // A new Backend in this JVM with a seller and a bidder logged in and that many open auctions listed by the seller
+    void setUp(int auctions) throws Exception;
+
+    // The same on a Replica, with bidsPerAuction bids on each auction so the state has bid histories too
+    void setUpReplica(int auctions, int bidsPerAuction) throws Exception;
+
+    int getAuctionCount();
+
+    // The bidder bids price on the auction-th listed auction, returns whether it became the highest
+    boolean bid(int auction, int price) throws Exception;
+
+    // The seller lists one more auction, returns its item ID
+    Integer newAuction() throws Exception;
+
+    // Number of auctions listItems returned
+    int listItems() throws Exception;
+
+    Object getSpec(int auction) throws Exception;
+
+    // Register a new user with the bidder's public key, returns the user ID
+    Integer register(String email) throws Exception;
+
+    // The server signing a challenge for the bidder, what every login starts with
+    Object challenge() throws Exception;
+
+    // The server checking the bidder's signed challenge and issuing a token, the challenge is signed once in setUp
+    Object authenticate() throws Exception;
+
+    // A login from start to finish: challenge, the client signing the server's challenge, and authenticate
+    Object login() throws Exception;
+
+    // Replica.getStateObject serialized as RMI would send it to a backup
+    byte[] serializeState() throws Exception;
+
+    // A backup reading a serialized state back, returns the state object
+    Object deserializeState(byte[] state) throws Exception;
+
+    // Replica.getStateObject packed with the named StateCodec, serialized as RMI would send the PackedState to a backup
+    byte[] packState(String codec) throws Exception;
+
+    // A backup reading a packed state back and unpacking it, returns the state object
+    Object unpackState(byte[] packed) throws Exception;
+}
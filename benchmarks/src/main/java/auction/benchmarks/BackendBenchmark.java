@@ -0,0 +1,76 @@
+package auction.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// The auction operations on a Backend in this JVM, with no RMI, at a few numbers of open auctions
+// bid alternates a low and a rising price so half the bids lead and half are turned down, like a busy auction
+// newAuction keeps listing, so the state grows through each run, run it with a fixed number of iterations to compare
+// listItems copies every open auction, so it is measured in microseconds and scales with auctions
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dauction.logLevel=OFF")
+public class BackendBenchmark
+{
+    @Param({"1000", "100000"})
+    public int auctions;
+
+    private AuctionDriver driver;
+    private int next;
+    private int price;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception
+    {
+        driver = AuctionDriver.create();
+        driver.setUp(auctions);
+        price = 1000;
+    }
+
+    private int nextAuction()
+    {
+        next = next + 1 == auctions ? 0 : next + 1;
+        return next;
+    }
+
+    @Benchmark
+    public boolean bid() throws Exception
+    {
+        int auction = nextAuction();
+        return driver.bid(auction, (price++ & 1) == 0 ? price : 1);
+    }
+
+    @Benchmark
+    public Integer newAuction() throws Exception
+    {
+        return driver.newAuction();
+    }
+
+    @Benchmark
+    public Object getSpec() throws Exception
+    {
+        return driver.getSpec(nextAuction());
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int listItems() throws Exception
+    {
+        return driver.listItems();
+    }
+}
@@ -0,0 +1,62 @@
+package auction.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Registering and logging in on a Backend in this JVM
+// challenge is the server's RSA signature, authenticate is its verification of the client's signature plus making a token,
+// and login is the whole exchange including the client's signature, which is most of the cost
+// register keeps adding users through each run, like newAuction in BackendBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dauction.logLevel=OFF")
+public class LoginBenchmark
+{
+    private AuctionDriver driver;
+    private int registered;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception
+    {
+        driver = AuctionDriver.create();
+        driver.setUp(0);
+    }
+
+    @Benchmark
+    public Integer register() throws Exception
+    {
+        return driver.register("user" + registered++ + "@benchmark");
+    }
+
+    @Benchmark
+    public Object challenge() throws Exception
+    {
+        return driver.challenge();
+    }
+
+    @Benchmark
+    public Object authenticate() throws Exception
+    {
+        return driver.authenticate();
+    }
+
+    @Benchmark
+    public Object login() throws Exception
+    {
+        return driver.login();
+    }
+}
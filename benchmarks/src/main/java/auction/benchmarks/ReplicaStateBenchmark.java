@@ -0,0 +1,58 @@
+package auction.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// The full state a primary pushes to its backups after every change, serialized the way RMI sends it
+// serialize is the primary's side, Replica.getStateObject included, deserialize is a backup reading it back
+// Each auction has bidsPerAuction bids so the bid histories are part of the state
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Dauction.logLevel=OFF", "-Xmx2g"})
+public class ReplicaStateBenchmark
+{
+    @Param({"1000", "10000", "100000"})
+    public int auctions;
+
+    @Param({"2"})
+    public int bidsPerAuction;
+
+    private AuctionDriver driver;
+    private byte[] serialized;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception
+    {
+        driver = AuctionDriver.create();
+        driver.setUpReplica(auctions, bidsPerAuction);
+        serialized = driver.serializeState();
+        System.out.println(String.format("%n%,d auctions serialize to %,d KB", auctions, serialized.length >> 10));
+    }
+
+    @Benchmark
+    public byte[] serialize() throws Exception
+    {
+        return driver.serializeState();
+    }
+
+    @Benchmark
+    public Object deserialize() throws Exception
+    {
+        return driver.deserializeState(serialized);
+    }
+}
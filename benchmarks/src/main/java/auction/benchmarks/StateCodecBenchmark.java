@@ -0,0 +1,58 @@
+package auction.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// The state a primary pushes to its backups after every write, packed with each StateCodec, see PackedState
+// pack is the primary's CPU per write, once however many backups share the codec, unpack is each backup's
+// The size printed in setUp is what goes over the network to each backup, none is the plain serialized state
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Dauction.logLevel=OFF", "-Xmx2g"})
+public class StateCodecBenchmark
+{
+    @Param({"1000", "10000", "100000"})
+    public int auctions;
+
+    @Param({"none", "deflate", "lz"})
+    public String codec;
+
+    private AuctionDriver driver;
+    private byte[] packed;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception
+    {
+        driver = AuctionDriver.create();
+        driver.setUpReplica(auctions, 2);
+        packed = driver.packState(codec);
+        System.out.println(String.format("%n%,d auctions pack to %,d KB with %s", auctions, packed.length >> 10, codec));
+    }
+
+    @Benchmark
+    public byte[] pack() throws Exception
+    {
+        return driver.packState(codec);
+    }
+
+    @Benchmark
+    public Object unpack() throws Exception
+    {
+        return driver.unpackState(packed);
+    }
+}
@@ -0,0 +1,126 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Measures auction end times at scale, all in this JVM with no RMI
+// First the cost of scheduling timers in the TimingWheel against a ScheduledThreadPoolExecutor, whose heap costs O(log n)
+// per timer, then a Backend listing that many auctions with end times spread over the given seconds,
+// waiting for the AuctionEndScheduler to close every one and printing how late the closes were
+// Usage: java -cp .:../Server AuctionEndBenchmark [auctions] [spreadSeconds]
+public class AuctionEndBenchmark
+{
+    private static final int BATCH_SIZE = 10000;
+
+    // Nanoseconds per schedule call for the given number of timers, spread over the next spreadMs
+    private static double scheduleWheel(int timers, long spreadMs)
+    {
+        AtomicLong fired = new AtomicLong();
+        TimingWheel wheel = new TimingWheel("benchmark-wheel", 10, (id, deadline) -> fired.incrementAndGet());
+        long base = System.currentTimeMillis() + 60000;
+
+        long start = System.nanoTime();
+        for(int i = 0; i < timers; i++)
+        {
+            wheel.schedule(i, base + (i * 7919L) % spreadMs);
+        }
+        return (double) (System.nanoTime() - start) / timers;
+    }
+
+    private static double scheduleExecutor(int timers, long spreadMs)
+    {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1);
+        Runnable task = () -> {};
+
+        long start = System.nanoTime();
+        for(int i = 0; i < timers; i++)
+        {
+            executor.schedule(task, 60000 + (i * 7919L) % spreadMs, TimeUnit.MILLISECONDS);
+        }
+        double nanos = (double) (System.nanoTime() - start) / timers;
+
+        executor.shutdownNow();
+        return nanos;
+    }
+
+    public static void main(String[] args)
+    {
+        int auctions = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int spreadSeconds = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+
+        PrintStream results = System.out;
+
+        try
+        {
+            results.println("Scheduling " + auctions + " timers:");
+
+            // Run each twice and report the second, so the JIT has warmed up
+            for(int round = 0; round < 2; round++)
+            {
+                double wheelNanos = scheduleWheel(auctions, spreadSeconds * 1000L);
+                double executorNanos = scheduleExecutor(auctions, spreadSeconds * 1000L);
+                System.gc();
+
+                if(round == 1)
+                {
+                    results.println(String.format("  timing wheel                 %.0f ns per timer", wheelNanos));
+                    results.println(String.format("  ScheduledThreadPoolExecutor  %.0f ns per timer", executorNanos));
+                }
+            }
+
+            KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+            keyPairGenerator.initialize(2048);
+            KeyPair keyPair = keyPairGenerator.generateKeyPair();
+
+            // The backend logs every auction it creates and closes, keep that out of the results
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+            Backend backend = new Backend("benchmark");
+            BenchmarkSession seller = new BenchmarkSession(backend, "seller@benchmark", keyPair);
+
+            // Leave a few seconds to list them all before the first one ends
+            long firstEnd = System.currentTimeMillis() + 5000;
+            long spreadMs = spreadSeconds * 1000L;
+
+            long listStart = System.nanoTime();
+            for(int listed = 0; listed < auctions; listed += BATCH_SIZE)
+            {
+                AuctionSaleItem[] batch = new AuctionSaleItem[Math.min(BATCH_SIZE, auctions - listed)];
+
+                for(int i = 0; i < batch.length; i++)
+                {
+                    batch[i] = new AuctionSaleItem();
+                    batch[i].name = "item " + (listed + i);
+                    batch[i].description = "listed by AuctionEndBenchmark";
+                    batch[i].endTime = firstEnd + (listed + i) * spreadMs / auctions;
+                }
+
+                backend.newAuctions(seller.userID, batch, seller.token());
+            }
+            results.println(String.format("Listed %d auctions in %.1fs, ending over %ds",
+                auctions, (System.nanoTime() - listStart) / 1e9, spreadSeconds));
+
+            // Wait for the last end time, then for the closes to drain
+            AuctionEndScheduler scheduler = backend.getEndScheduler();
+            long giveUp = firstEnd + spreadMs + 60000;
+
+            while(scheduler.getCloseLag().getCount() < auctions && System.currentTimeMillis() < giveUp)
+            {
+                Thread.sleep(500);
+            }
+
+            results.println(scheduler.getStats());
+            results.println("Auctions still open: " + backend.listItems(seller.userID, seller.token()).length);
+        }
+        catch(Exception e)
+        {
+            results.println("Exception running auction end benchmark:");
+            e.printStackTrace();
+        }
+
+        System.exit(0);
+    }
+}
@@ -0,0 +1,39 @@
+import java.security.KeyPair;
+import java.security.Signature;
+
+// A logged in benchmark user, shared by the tools that call a Frontend or a Backend directly
+// Logs in through the challenge and authenticate exchange, and again before the 10 second token expires
+public class BenchmarkSession
+{
+    public final Auction frontend;
+    public final KeyPair keyPair;
+    public final int userID;
+    private TokenInfo tokenInfo;
+
+    public BenchmarkSession(Auction frontend, String email, KeyPair keyPair) throws Exception
+    {
+        this.frontend = frontend;
+        this.keyPair = keyPair;
+        this.userID = frontend.register(email, keyPair.getPublic());
+        login();
+    }
+
+    public void login() throws Exception
+    {
+        ChallengeInfo challengeInfo = frontend.challenge(userID, "benchmark");
+        Signature signature = Signature.getInstance("SHA256withRSA");
+        signature.initSign(keyPair.getPrivate());
+        signature.update(challengeInfo.clientChallenge.getBytes());
+        tokenInfo = frontend.authenticate(userID, signature.sign());
+    }
+
+    // The current token, logging in again first if it is about to expire
+    public String token() throws Exception
+    {
+        if(System.currentTimeMillis() > tokenInfo.expiryTime - 2000)
+        {
+            login();
+        }
+        return tokenInfo.token;
+    }
+}
@@ -0,0 +1,117 @@
+import java.util.ArrayList;
+import java.util.List;
+
+// Measures the heap each recorded bid costs in BidHistory, against a plain list of bid objects
+// Appends the bids round robin over the items, as many bidders on many auctions would, then reads every history
+// back a page at a time to check it and time it
+// The object list is measured on at most 10 million bids, it would not fit in the heap at 100 million
+// Usage: java -Xmx3g -cp .:../Server BidHistoryFootprint [bids] [items]
+public class BidHistoryFootprint
+{
+    // What keeping the history as objects would look like
+    private static class Bid
+    {
+        final int userID;
+        final int price;
+        final long time;
+
+        Bid(int userID, int price, long time)
+        {
+            this.userID = userID;
+            this.price = price;
+            this.time = time;
+        }
+    }
+
+    private static long usedHeap()
+    {
+        Runtime runtime = Runtime.getRuntime();
+
+        for(int i = 0; i < 3; i++)
+        {
+            System.gc();
+        }
+
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    public static void main(String[] args)
+    {
+        long bids = args.length > 0 ? Long.parseLong(args[0]) : 100000000L;
+        int items = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+
+        long start = System.currentTimeMillis();
+        long before = usedHeap();
+
+        BidHistory[] histories = new BidHistory[items];
+        for(int i = 0; i < items; i++)
+        {
+            histories[i] = new BidHistory();
+        }
+
+        long appendStart = System.nanoTime();
+        for(long b = 0; b < bids; b++)
+        {
+            histories[(int) (b % items)].append((int) (b % 100000), (int) (b / items) + 1, start + b / 1000);
+        }
+        double appendNanos = (double) (System.nanoTime() - appendStart) / bids;
+
+        long historyBytes = usedHeap() - before;
+        System.out.println(String.format("BidHistory: %,d bids over %,d items, %.1f bytes per bid (%,d MB), %.0f ns per append",
+            bids, items, (double) historyBytes / bids, historyBytes >> 20, appendNanos));
+
+        // Read it all back through pages, checking the prices come back in order
+        long readStart = System.nanoTime();
+        long read = 0;
+        for(int i = 0; i < items; i++)
+        {
+            int cursor = 0;
+            int lastPrice = 0;
+
+            while(true)
+            {
+                BidHistoryPage page = histories[i].read(i, cursor, 500);
+
+                for(int p = 0; p < page.prices.length; p++)
+                {
+                    if(page.prices[p] != lastPrice + 1)
+                    {
+                        System.out.println("History of item " + i + " is out of order at bid " + (cursor + p));
+                        return;
+                    }
+                    lastPrice = page.prices[p];
+                }
+
+                read += page.prices.length;
+
+                if(page.prices.length == 0 || page.nextCursor >= page.totalBids)
+                {
+                    break;
+                }
+                cursor = page.nextCursor;
+            }
+        }
+        System.out.println(String.format("Read %,d bids back in pages of 500, %.0f ns per bid", read, (double) (System.nanoTime() - readStart) / read));
+
+        histories = null;
+
+        // The same bids as objects in lists, one list per item
+        long listBids = Math.min(bids, 10000000L);
+        before = usedHeap();
+
+        List<List<Bid>> lists = new ArrayList<>();
+        for(int i = 0; i < items; i++)
+        {
+            lists.add(new ArrayList<>());
+        }
+
+        for(long b = 0; b < listBids; b++)
+        {
+            lists.get((int) (b % items)).add(new Bid((int) (b % 100000), (int) (b / items) + 1, start + b / 1000));
+        }
+
+        long listBytes = usedHeap() - before;
+        System.out.println(String.format("List of bid objects: %,d bids, %.1f bytes per bid (%,d MB), %,d per item",
+            listBids, (double) listBytes / listBids, listBytes >> 20, lists.get(0).size()));
+    }
+}
@@ -0,0 +1,128 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Measures bids per second on a single hot item through the Frontend, with and without the per-item BidSequencer
+// Starts its own registry and one shard of replicas in this JVM like ShardBenchmark, then for each thread count
+// runs bidder threads placing rising bids on the same item, as in the last seconds of a popular auction
+// Needs the default registry port free, so stop any rmiregistry before running it
+// Usage: java -cp .:../Server BidStormBenchmark [replicas] [maxThreads] [seconds]
+public class BidStormBenchmark
+{
+    private static String run(Registry registry, boolean sequencer, int replicaCount, int threads, int seconds, KeyPair keyPair) throws Exception
+    {
+        System.setProperty("auction.bidSequencer", String.valueOf(sequencer));
+        List<Replica> replicas = new ArrayList<>();
+
+        for(int r = 1; r <= replicaCount; r++)
+        {
+            Replica replica = new Replica(String.valueOf(r));
+            registry.rebind(Replica.registryName(0, String.valueOf(r)), UnicastRemoteObject.exportObject(replica, 0));
+            replicas.add(replica);
+        }
+
+        Frontend frontend = new Frontend(1);
+        BenchmarkSession seller = new BenchmarkSession(frontend, "seller@benchmark", keyPair);
+        AuctionSaleItem saleItem = new AuctionSaleItem();
+        saleItem.name = "hot item";
+        saleItem.description = "listed by BidStormBenchmark";
+        int itemID = frontend.newAuction(seller.userID, saleItem, seller.token());
+
+        AtomicInteger nextPrice = new AtomicInteger();
+        AtomicLong bids = new AtomicLong();
+        AtomicLong accepted = new AtomicLong();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        Thread[] bidders = new Thread[threads];
+
+        for(int t = 0; t < threads; t++)
+        {
+            final int index = t;
+            bidders[t] = new Thread(() -> {
+                try
+                {
+                    BenchmarkSession session = new BenchmarkSession(frontend, "bidder" + index + "@benchmark", keyPair);
+
+                    while(System.nanoTime() < deadline)
+                    {
+                        if(frontend.bid(session.userID, itemID, nextPrice.incrementAndGet(), session.token()))
+                        {
+                            accepted.incrementAndGet();
+                        }
+                        bids.incrementAndGet();
+                    }
+                }
+                catch(Exception e)
+                {
+                    e.printStackTrace();
+                }
+            });
+            bidders[t].start();
+        }
+
+        for(Thread bidder : bidders)
+        {
+            bidder.join();
+        }
+
+        String sequencerStats = replicas.get(0).getBidSequencer().getStats();
+        long pushes = replicas.get(0).getStatePushes();
+
+        // Take this run's replicas down so the next run starts from an empty shard
+        for(String name : registry.list())
+        {
+            registry.unbind(name);
+        }
+        for(Replica replica : replicas)
+        {
+            UnicastRemoteObject.unexportObject(replica, true);
+        }
+
+        return String.format("sequencer: %-5s threads: %3d  bids/sec: %6.0f  accepted/sec: %5.0f  state pushes/sec: %5.0f  %s",
+            sequencer, threads, bids.get() / (double) seconds, accepted.get() / (double) seconds, pushes / (double) seconds, sequencer ? sequencerStats : "");
+    }
+
+    public static void main(String[] args)
+    {
+        int replicaCount = args.length > 0 ? Integer.parseInt(args[0]) : 2;
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        PrintStream results = System.out;
+
+        // Measure the bid path itself, not the frontend turning bidders away
+        System.setProperty("auction.admission", "false");
+
+        try
+        {
+            Registry registry = LocateRegistry.createRegistry(Registry.REGISTRY_PORT);
+            KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+            keyPairGenerator.initialize(2048);
+            KeyPair keyPair = keyPairGenerator.generateKeyPair();
+
+            // The replicas log every operation, keep that out of the results
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+            for(int threads = 4; threads <= maxThreads; threads *= 4)
+            {
+                results.println(run(registry, false, replicaCount, threads, seconds, keyPair));
+                results.println(run(registry, true, replicaCount, threads, seconds, keyPair));
+            }
+        }
+        catch(Exception e)
+        {
+            results.println("Exception running bid storm benchmark:");
+            e.printStackTrace();
+        }
+
+        System.exit(0);
+    }
+}
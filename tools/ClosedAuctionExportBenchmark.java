@@ -0,0 +1,155 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Measures the closed auction export, all in this JVM with no RMI
+// Lists and bids on that many auctions and lets them close by their end times, then times a full export while a bidder
+// keeps bidding on other open auctions, printing the bid latency with and without an export running
+// Then closes a few more and checks an incremental export appends only those
+// Usage: java -cp .:../Server ClosedAuctionExportBenchmark [auctions]
+public class ClosedAuctionExportBenchmark
+{
+    private static final int BATCH_SIZE = 10000;
+
+    // List count auctions ending endsInMs after each batch is listed, with one bid on each, returns their item IDs
+    private static Integer[] listAndBid(Backend backend, BenchmarkSession seller, BenchmarkSession bidder, int count, long endsInMs) throws Exception
+    {
+        Integer[] itemIDs = new Integer[count];
+
+        for(int listed = 0; listed < count; listed += BATCH_SIZE)
+        {
+            AuctionSaleItem[] batch = new AuctionSaleItem[Math.min(BATCH_SIZE, count - listed)];
+            int[] bidIDs = new int[batch.length];
+            int[] prices = new int[batch.length];
+
+            long endTime = System.currentTimeMillis() + endsInMs;
+
+            for(int i = 0; i < batch.length; i++)
+            {
+                batch[i] = new AuctionSaleItem();
+                batch[i].name = "item " + (listed + i);
+                batch[i].description = "listed by ClosedAuctionExportBenchmark";
+                batch[i].reservePrice = 10;
+                batch[i].endTime = endTime;
+            }
+
+            Integer[] created = backend.newAuctions(seller.userID, batch, seller.token());
+            for(int i = 0; i < created.length; i++)
+            {
+                itemIDs[listed + i] = created[i];
+                bidIDs[i] = created[i];
+                prices[i] = 10 + (listed + i) % 90;
+            }
+
+            backend.bids(bidder.userID, bidIDs, prices, bidder.token());
+        }
+
+        return itemIDs;
+    }
+
+    private static void waitForCloses(Backend backend, long count) throws InterruptedException
+    {
+        while(backend.getEndScheduler().getCloseLag().getCount() < count)
+        {
+            Thread.sleep(200);
+        }
+    }
+
+    public static void main(String[] args)
+    {
+        int auctions = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        PrintStream results = System.out;
+
+        try
+        {
+            KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+            keyPairGenerator.initialize(2048);
+            KeyPair keyPair = keyPairGenerator.generateKeyPair();
+
+            // The backend logs every auction it closes, keep that out of the results
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+            Backend backend = new Backend("benchmark");
+            BenchmarkSession seller = new BenchmarkSession(backend, "seller@benchmark", keyPair);
+            BenchmarkSession bidder = new BenchmarkSession(backend, "bidder@benchmark", keyPair);
+
+            listAndBid(backend, seller, bidder, auctions, 3000);
+            waitForCloses(backend, auctions);
+
+            // Auctions that stay open for the bidder, closed at the end for the incremental export
+            Integer[] open = listAndBid(backend, seller, bidder, 1000, 600000);
+            results.println(String.format("%,d auctions closed, %,d open", auctions, open.length));
+
+            // Wait out the export's settle time so every close is included
+            Thread.sleep(1500);
+
+            Path file = Files.createTempFile("closed-auctions", ".dat");
+            ClosedAuctionExporter exporter = backend.getExporter();
+
+            // Warm up, then bid with no export running, then during one
+            exporter.export(file, false);
+
+            AtomicBoolean exporting = new AtomicBoolean();
+            LatencyHistogram idle = new LatencyHistogram();
+            LatencyHistogram during = new LatencyHistogram();
+            AtomicBoolean running = new AtomicBoolean(true);
+
+            Thread bidding = new Thread(() -> {
+                try
+                {
+                    int price = 1000;
+                    String token = bidder.token();
+
+                    while(running.get())
+                    {
+                        long start = System.nanoTime();
+                        backend.bid(bidder.userID, open[price % open.length], price++, token);
+                        (exporting.get() ? during : idle).record((System.nanoTime() - start) / 1000);
+                    }
+                }
+                catch(Exception e)
+                {
+                    e.printStackTrace();
+                }
+            });
+            bidding.start();
+
+            Thread.sleep(2000);
+            exporting.set(true);
+            ClosedAuctionExporter.Result full = exporter.export(file, false);
+            exporting.set(false);
+            Thread.sleep(500);
+            running.set(false);
+            bidding.join();
+
+            results.println(full);
+            results.println(String.format("  %.0f closed auctions per second, file %,d MB", full.exported * 1000.0 / Math.max(1, full.millis), Files.size(file) >> 20));
+            results.println("  bid latency (us) with no export running: " + idle.summary());
+            results.println("  bid latency (us) during the export:      " + during.summary());
+
+            // Close the open ones by hand and append them
+            for(Integer itemID : open)
+            {
+                backend.closeAuction(seller.userID, itemID, seller.token());
+            }
+            Thread.sleep(1500);
+
+            ClosedAuctionExporter.Result incremental = exporter.export(file, true);
+            results.println(incremental);
+            results.println("  expected " + open.length + " appended, " + (auctions + open.length) + " in the file");
+
+            Files.delete(file);
+        }
+        catch(Exception e)
+        {
+            results.println("Exception running closed auction export benchmark:");
+            e.printStackTrace();
+        }
+
+        System.exit(0);
+    }
+}
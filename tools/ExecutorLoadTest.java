@@ -0,0 +1,93 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+// Load test for RequestExecutor comparing virtual thread and platform thread modes
+// Each simulated request follows the Frontend's blocking chain: an isAlive heartbeat, the operation on the primary,
+// then replication to every backup in parallel, with each remote call simulated by a sleep of the given latency
+// Reports how many requests were in flight at once, the throughput and how many platform threads it took
+// The virtual run is skipped on runtimes without virtual threads
+// Usage: java -cp .:../Server ExecutorLoadTest [requests] [latencyMs] [backups] [maxInFlight] [platformThreads]
+public class ExecutorLoadTest
+{
+    private static void remoteCall(int latencyMs) throws InterruptedException
+    {
+        Thread.sleep(latencyMs);
+    }
+
+    private static void run(String mode, int requests, int latencyMs, int backups, int maxInFlight, int platformThreads) throws Exception
+    {
+        RequestExecutor requestExecutor = new RequestExecutor(mode, maxInFlight, platformThreads);
+        RequestExecutor callExecutor = new RequestExecutor(mode, maxInFlight * backups, platformThreads);
+
+        // Before Java 21 the virtual mode falls back to platform threads, running it would only repeat the platform run
+        if(mode.equals("virtual") && !requestExecutor.isVirtual())
+        {
+            System.out.println("virtual  skipped, virtual threads need Java 21+ and this is Java " + Runtime.version().feature());
+            requestExecutor.shutdown();
+            callExecutor.shutdown();
+            return;
+        }
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+
+        List<CompletableFuture<Void>> results = new ArrayList<>(requests);
+        long start = System.nanoTime();
+
+        for(int i = 0; i < requests; i++)
+        {
+            results.add(requestExecutor.submit(() -> {
+                remoteCall(latencyMs); // isAlive
+                remoteCall(latencyMs); // operation on the primary
+
+                // updateReplicaStates, pushed to every backup at once
+                List<CompletableFuture<Void>> pushes = new ArrayList<>(backups);
+                for(int b = 0; b < backups; b++)
+                {
+                    pushes.add(callExecutor.submit(() -> {
+                        remoteCall(latencyMs);
+                        return null;
+                    }));
+                }
+                CompletableFuture.allOf(pushes.toArray(new CompletableFuture<?>[0])).join();
+
+                return null;
+            }));
+        }
+
+        CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).join();
+        long elapsedNanos = System.nanoTime() - start;
+
+        System.out.println(String.format("%-8s (%s) requests: %d  peak in flight: %d  throughput: %.0f req/s  elapsed: %d ms  peak JVM threads: %d",
+            mode, requestExecutor.isVirtual() ? "virtual threads" : "platform threads",
+            requests, requestExecutor.getPeakInFlight(),
+            requests / (elapsedNanos / 1e9), TimeUnit.NANOSECONDS.toMillis(elapsedNanos), threads.getPeakThreadCount()));
+
+        requestExecutor.shutdown();
+        callExecutor.shutdown();
+    }
+
+    public static void main(String[] args)
+    {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int latencyMs = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int backups = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+        int maxInFlight = args.length > 3 ? Integer.parseInt(args[3]) : 10000;
+        int platformThreads = args.length > 4 ? Integer.parseInt(args[4]) : 200;
+
+        try
+        {
+            run("platform", requests, latencyMs, backups, maxInFlight, platformThreads);
+            run("virtual", requests, latencyMs, backups, maxInFlight, platformThreads);
+        }
+        catch(Exception e)
+        {
+            System.out.println("Exception running executor load test:");
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,494 @@
+import java.io.File;
+import java.nio.file.Files;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Measures what clients see when the primary dies, and how far behind the backups are before and after
+// Starts a registry and a Frontend in this JVM and the replicas as child JVMs, so killing the primary is a real process death
+// Writers bid and list auctions through the frontend at a steady rate, retrying anything that fails like a client would,
+// while a monitor polls every replica's getReplicationStatus to follow the backups' lag and spot the new primary
+// After the primary is killed it reports:
+//   time from the kill until a new primary was elected, and how long the election itself took in ReplicaGroup
+//   writes that failed and were retried, retries that found the first attempt had been applied anyway, and the longest stall
+//   each backup's lag behind the primary in state changes and milliseconds, and when it was first updated by the new primary
+//   whether every live replica holds the same auctions at the end, and whether any acknowledged write was lost
+// The port of the registry, 1099, must be free
+// Usage: java -cp .:../Server FailoverHarness [replicas] [writesPerSecond] [secondsBeforeKill] [secondsAfterKill]
+public class FailoverHarness
+{
+    private static final int WRITERS = 4;
+    private static final int ITEMS_PER_WRITER = 20;
+    private static final int MONITOR_INTERVAL_MS = 10;
+    private static final int RETRY_DELAY_MS = 20;
+
+    private final Registry registry;
+    private final Map<String, Process> replicas = new LinkedHashMap<>();
+    private final File logDirectory;
+
+    // Client side results, latency in microseconds from the first attempt of a write to its success
+    private final LatencyHistogram latencyBefore = new LatencyHistogram();
+    private final LatencyHistogram latencyAfter = new LatencyHistogram();
+    private final LatencyHistogram stalls = new LatencyHistogram();
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong failedAttempts = new AtomicLong();
+    private final AtomicLong retriedWrites = new AtomicLong();
+    private final AtomicLong appliedBeforeRetry = new AtomicLong();
+    private final AtomicLong lastSuccess = new AtomicLong();
+    private final AtomicLong longestGap = new AtomicLong();
+
+    // Writes the frontend acknowledged, itemID -> highest acknowledged bid, checked against the new primary at the end
+    private final Map<Integer, Integer> acknowledgedBids = new ConcurrentHashMap<>();
+    private final Set<Integer> acknowledgedAuctions = ConcurrentHashMap.newKeySet();
+
+    // Set by the main thread, read by the writers and the monitor
+    private volatile boolean running = true;
+    private volatile long killNanos;
+    private volatile String killed;
+
+    // Filled in by the monitor
+    private volatile long electedNanos;
+    private volatile String newPrimary;
+    private final Map<String, LatencyHistogram> lagVersions = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram> lagMillis = new ConcurrentHashMap<>();
+    private final Map<String, Long> resyncedNanos = new ConcurrentHashMap<>();
+
+    private FailoverHarness(Registry registry, File logDirectory)
+    {
+        this.registry = registry;
+        this.logDirectory = logDirectory;
+    }
+
+    // Start a replica in its own JVM with the same classpath, logging to its own file, and wait until it is in the registry
+    private void startReplica(String id) throws Exception
+    {
+        String name = Replica.registryName(0, id);
+        String javaCommand = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+
+        ProcessBuilder builder = new ProcessBuilder(javaCommand, "-cp", System.getProperty("java.class.path"), "-Dauction.logLevel=WARN", "Replica", id);
+        builder.redirectErrorStream(true);
+        builder.redirectOutput(new File(logDirectory, "replica" + id + ".log"));
+        replicas.put(name, builder.start());
+
+        long deadline = System.currentTimeMillis() + 30000;
+        while(!Arrays.asList(registry.list()).contains(name))
+        {
+            if(System.currentTimeMillis() > deadline || !replicas.get(name).isAlive())
+            {
+                throw new IllegalStateException("Replica " + id + " didnt start, see " + logDirectory);
+            }
+            Thread.sleep(50);
+        }
+    }
+
+    private AuctionReplica lookup(String name)
+    {
+        try
+        {
+            return (AuctionReplica) registry.lookup(name);
+        }
+        catch(Exception e)
+        {
+            return null;
+        }
+    }
+
+    // Record that a write succeeded now, tracking the longest time clients went without one
+    private void succeeded(long firstAttempt)
+    {
+        long now = System.nanoTime();
+        long previous = lastSuccess.getAndSet(now);
+        longestGap.accumulateAndGet(now - previous, Math::max);
+
+        boolean afterKill = killNanos != 0 && firstAttempt >= killNanos - TimeUnit.MILLISECONDS.toNanos(100);
+        (afterKill ? latencyAfter : latencyBefore).record((now - firstAttempt) / 1000);
+    }
+
+    // One writer: bids rising prices on its own items, sometimes lists a new one, retrying whatever fails until it goes through
+    private void write(Auction frontend, BenchmarkSession session, int[] itemIDs, double writesPerSecond)
+    {
+        long interval = (long) (1e9 / writesPerSecond);
+        long next = System.nanoTime();
+        int price = 10;
+
+        while(running)
+        {
+            long wait = next - System.nanoTime();
+            if(wait > 0)
+            {
+                try
+                {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+                catch(InterruptedException e)
+                {
+                    return;
+                }
+            }
+            next += interval;
+
+            boolean listing = ThreadLocalRandom.current().nextInt(10) == 0;
+            int itemID = itemIDs[ThreadLocalRandom.current().nextInt(itemIDs.length)];
+            int bidPrice = ++price;
+            long firstAttempt = System.nanoTime();
+            int attempts = 0;
+
+            while(running)
+            {
+                attempts++;
+
+                try
+                {
+                    if(listing)
+                    {
+                        AuctionSaleItem item = new AuctionSaleItem();
+                        item.name = "failover item";
+                        item.description = "listed by FailoverHarness";
+                        Integer newItemID = frontend.newAuction(session.userID, item, session.token());
+
+                        if(newItemID != null)
+                        {
+                            acknowledgedAuctions.add(newItemID);
+                        }
+                    }
+                    else
+                    {
+                        boolean leading = frontend.bid(session.userID, itemID, bidPrice, session.token());
+
+                        if(leading)
+                        {
+                            acknowledgedBids.merge(itemID, bidPrice, Math::max);
+                        }
+                        else if(attempts > 1)
+                        {
+                            // Turned down at a price nobody else bids, so the attempt that failed had gone through
+                            appliedBeforeRetry.incrementAndGet();
+                        }
+                    }
+
+                    succeeded(firstAttempt);
+                    break;
+                }
+                catch(Exception e)
+                {
+                    failedAttempts.incrementAndGet();
+
+                    try
+                    {
+                        Thread.sleep(RETRY_DELAY_MS);
+                    }
+                    catch(InterruptedException interrupted)
+                    {
+                        return;
+                    }
+                }
+            }
+
+            writes.incrementAndGet();
+            if(attempts > 1)
+            {
+                retriedWrites.incrementAndGet();
+                stalls.record((System.nanoTime() - firstAttempt) / 1000);
+            }
+        }
+    }
+
+    // Poll every live replica, following the primary's state version so each backup's lag can be put in milliseconds too
+    private void monitor()
+    {
+        // (nanoTime, primary stateVersion) each time the primary's version was seen to move
+        List<long[]> primaryHistory = new ArrayList<>();
+        String primary = null;
+
+        while(running)
+        {
+            Map<String, ReplicationStatus> statuses = new LinkedHashMap<>();
+
+            for(String name : replicas.keySet())
+            {
+                if(name.equals(killed))
+                {
+                    continue;
+                }
+
+                try
+                {
+                    AuctionReplica replica = lookup(name);
+                    if(replica != null)
+                    {
+                        statuses.put(name, replica.getReplicationStatus(false));
+                    }
+                }
+                catch(Exception e)
+                {
+                    // Not up or going down, skip it this round
+                }
+            }
+
+            long now = System.nanoTime();
+            String elected = null;
+
+            for(ReplicationStatus status : statuses.values())
+            {
+                if(status.electedPrimary != null && statuses.containsKey(status.electedPrimary))
+                {
+                    elected = status.electedPrimary;
+                    break;
+                }
+            }
+
+            if(elected != null && !elected.equals(primary))
+            {
+                primary = elected;
+                primaryHistory.clear();
+
+                if(killed != null && electedNanos == 0)
+                {
+                    electedNanos = now;
+                    newPrimary = elected;
+                }
+            }
+
+            ReplicationStatus primaryStatus = primary != null ? statuses.get(primary) : null;
+
+            if(primaryStatus != null)
+            {
+                if(primaryHistory.isEmpty() || primaryHistory.get(primaryHistory.size() - 1)[1] != primaryStatus.stateVersion)
+                {
+                    primaryHistory.add(new long[] { now, primaryStatus.stateVersion });
+                }
+
+                for(ReplicationStatus backup : statuses.values())
+                {
+                    if(backup == primaryStatus || !primary.equals(backup.mirroredSource))
+                    {
+                        continue;
+                    }
+
+                    if(killed != null && electedNanos != 0)
+                    {
+                        resyncedNanos.putIfAbsent(backup.name, now);
+                    }
+
+                    // Behind by the changes the primary made since the state it last sent this backup,
+                    // for as long as the primary has had a version past that one
+                    long behind = Math.max(0, primaryStatus.stateVersion - backup.mirroredVersion);
+                    long behindSince = now;
+
+                    for(long[] sample : primaryHistory)
+                    {
+                        if(sample[1] > backup.mirroredVersion)
+                        {
+                            behindSince = sample[0];
+                            break;
+                        }
+                    }
+
+                    lagVersions.computeIfAbsent(backup.name, name -> new LatencyHistogram()).record(behind);
+                    lagMillis.computeIfAbsent(backup.name, name -> new LatencyHistogram()).record(behind == 0 ? 0 : (now - behindSince) / 1000000);
+                }
+
+                // Only the recent history is needed, backups are never far behind
+                if(primaryHistory.size() > 10000)
+                {
+                    primaryHistory.subList(0, 5000).clear();
+                }
+            }
+
+            try
+            {
+                Thread.sleep(MONITOR_INTERVAL_MS);
+            }
+            catch(InterruptedException e)
+            {
+                return;
+            }
+        }
+    }
+
+    // Check every acknowledged auction and bid is on the new primary, returns {auctions missing, bids lost}
+    private long[] checkAcknowledged(Auction frontend, BenchmarkSession session) throws Exception
+    {
+        int[] listed = acknowledgedAuctions.stream().mapToInt(Integer::intValue).toArray();
+        int[] bidOn = acknowledgedBids.keySet().stream().mapToInt(Integer::intValue).toArray();
+        long missing = 0;
+        long lost = 0;
+
+        for(AuctionItem item : frontend.getSpecs(session.userID, listed, session.token()))
+        {
+            missing += item == null ? 1 : 0;
+        }
+
+        AuctionItem[] items = frontend.getSpecs(session.userID, bidOn, session.token());
+        for(int i = 0; i < bidOn.length; i++)
+        {
+            lost += items[i] == null || items[i].highestBid < acknowledgedBids.get(bidOn[i]) ? 1 : 0;
+        }
+
+        return new long[] { missing, lost };
+    }
+
+    public static void main(String[] args)
+    {
+        int replicaCount = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        int writesPerSecond = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int secondsBeforeKill = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int secondsAfterKill = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+
+        // The frontend logs the failure and the election, everything else here is per request chatter
+        Log.setLevel(Log.Level.WARN);
+
+        FailoverHarness harness = null;
+
+        try
+        {
+            Registry registry;
+            try
+            {
+                registry = LocateRegistry.createRegistry(1099);
+            }
+            catch(Exception e)
+            {
+                System.out.println("Cant start a registry on port 1099, stop any rmiregistry and servers that are running first");
+                return;
+            }
+
+            File logDirectory = Files.createTempDirectory("failover").toFile();
+            harness = new FailoverHarness(registry, logDirectory);
+            FailoverHarness started = harness;
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> started.replicas.values().forEach(Process::destroyForcibly)));
+
+            System.out.println(String.format("Starting %d replicas, logs in %s", replicaCount, logDirectory));
+            for(int r = 1; r <= replicaCount; r++)
+            {
+                harness.startReplica(String.valueOf(r));
+            }
+
+            Frontend frontend = new Frontend(1);
+
+            KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+            keyPairGenerator.initialize(2048);
+            KeyPair keyPair = keyPairGenerator.generateKeyPair();
+
+            BenchmarkSession seller = new BenchmarkSession(frontend, "seller@failover", keyPair);
+            List<Thread> threads = new ArrayList<>();
+
+            for(int w = 0; w < WRITERS; w++)
+            {
+                BenchmarkSession session = new BenchmarkSession(frontend, "writer" + w + "@failover", keyPair);
+                AuctionSaleItem[] items = new AuctionSaleItem[ITEMS_PER_WRITER];
+
+                for(int i = 0; i < items.length; i++)
+                {
+                    items[i] = new AuctionSaleItem();
+                    items[i].name = "item " + w + "-" + i;
+                    items[i].description = "listed by FailoverHarness";
+                }
+
+                int[] itemIDs = Arrays.stream(frontend.newAuctions(seller.userID, items, seller.token())).mapToInt(Integer::intValue).toArray();
+                FailoverHarness writing = harness;
+                threads.add(new Thread(() -> writing.write(frontend, session, itemIDs, writesPerSecond / (double) WRITERS), "writer-" + w));
+            }
+
+            FailoverHarness monitoring = harness;
+            Thread monitor = new Thread(monitoring::monitor, "replication-monitor");
+
+            harness.lastSuccess.set(System.nanoTime());
+            monitor.start();
+            threads.forEach(Thread::start);
+            System.out.println(String.format("Writing %d/sec through the frontend for %ds", writesPerSecond, secondsBeforeKill));
+            Thread.sleep(TimeUnit.SECONDS.toMillis(secondsBeforeKill));
+
+            // Kill whichever replica the replicas agree is primary
+            String primaryName = harness.lookup(harness.replicas.keySet().iterator().next()).getElectedPrimary();
+            Process primary = harness.replicas.get(primaryName);
+            harness.killed = primaryName;
+            harness.killNanos = System.nanoTime();
+            primary.destroyForcibly();
+            long writesAtKill = harness.writes.get();
+            System.out.println(String.format("Killed the primary %s (pid %d), carrying on for %ds", primaryName, primary.pid(), secondsAfterKill));
+
+            Thread.sleep(TimeUnit.SECONDS.toMillis(secondsAfterKill));
+            harness.running = false;
+            for(Thread thread : threads)
+            {
+                thread.join();
+            }
+            monitor.join();
+
+            // Results
+            LatencyHistogram election = frontend.getOperationMetrics().stats("shard0.election").getLatency();
+            System.out.println();
+            System.out.println(harness.electedNanos == 0 ? "No new primary was elected"
+                : String.format("New primary %s elected %d ms after the kill, the last election took %d ms in ReplicaGroup",
+                    harness.newPrimary, (harness.electedNanos - harness.killNanos) / 1000000, election.getMax() / 1000));
+
+            System.out.println(String.format("Writes: %,d before the kill, %,d after, %,d failed attempts, %,d writes retried, %,d already applied when retried",
+                writesAtKill, harness.writes.get() - writesAtKill, harness.failedAttempts.get(), harness.retriedWrites.get(), harness.appliedBeforeRetry.get()));
+            System.out.println(String.format("  longest gap between successful writes %d ms", harness.longestGap.get() / 1000000));
+            System.out.println("  write latency (us) before the kill: " + harness.latencyBefore.summary());
+            System.out.println("  write latency (us) after the kill:  " + harness.latencyAfter.summary());
+            if(harness.stalls.getCount() > 0)
+            {
+                System.out.println("  retried writes, first attempt to success (us): " + harness.stalls.summary());
+            }
+
+            System.out.println(String.format("Backup lag, sampled every %d ms", MONITOR_INTERVAL_MS));
+            for(String name : harness.replicas.keySet())
+            {
+                LatencyHistogram versions = harness.lagVersions.get(name);
+                LatencyHistogram millis = harness.lagMillis.get(name);
+
+                if(versions == null)
+                {
+                    continue;
+                }
+
+                Long resynced = harness.resyncedNanos.get(name);
+                System.out.println(String.format("  %-9s changes behind p50 %d p99 %d max %d, ms behind p50 %d p99 %d max %d%s", name,
+                    versions.getPercentile(50), versions.getPercentile(99), versions.getMax(),
+                    millis.getPercentile(50), millis.getPercentile(99), millis.getMax(),
+                    resynced != null ? String.format(", first updated by the new primary %d ms after the kill", (resynced - harness.killNanos) / 1000000) : ""));
+            }
+
+            // Divergence once writes have stopped, and nothing acknowledged should be missing from the new primary
+            Thread.sleep(500);
+            ReplicationStatus primaryStatus = harness.newPrimary != null ? harness.lookup(harness.newPrimary).getReplicationStatus(true) : null;
+
+            System.out.println("State after the run");
+            for(String name : harness.replicas.keySet())
+            {
+                if(name.equals(primaryName) || primaryStatus == null)
+                {
+                    continue;
+                }
+
+                ReplicationStatus status = harness.lookup(name).getReplicationStatus(true);
+                System.out.println(String.format("  %-9s %,d auctions, %s", name, status.auctions,
+                    name.equals(primaryStatus.name) ? "primary" : status.digest == primaryStatus.digest ? "matches the primary" : "DIFFERS from the primary"));
+            }
+
+            long[] check = harness.checkAcknowledged(frontend, seller);
+            System.out.println(String.format("Acknowledged writes on the new primary: %,d auctions listed, %d missing; %,d items bid on, %d with a lower highest bid than acknowledged",
+                harness.acknowledgedAuctions.size(), check[0], harness.acknowledgedBids.size(), check[1]));
+        }
+        catch(Exception e)
+        {
+            System.out.println("Exception running failover harness:");
+            e.printStackTrace();
+        }
+
+        System.exit(0);
+    }
+}
@@ -0,0 +1,100 @@
+import java.io.PrintStream;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+
+// Measures the heap each listed auction costs a Backend, with its own name and description, and how long listing them takes
+// Lists the auctions in batches through newAuctions, as BulkImport would, then bids once on every other item so half of
+// them have a highest bidder and a bid history
+// Usage: java -Xmx3g -cp .:../Server ItemFootprint [items]
+public class ItemFootprint
+{
+    private static final int BATCH = 10000;
+
+    private static long usedHeap()
+    {
+        Runtime runtime = Runtime.getRuntime();
+
+        for(int i = 0; i < 3; i++)
+        {
+            System.gc();
+        }
+
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    public static void main(String[] args)
+    {
+        int items = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        PrintStream results = System.out;
+
+        try
+        {
+            // The backend logs every batch, keep that out of the results
+            Log.setLevel(Log.Level.OFF);
+
+            KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+            keyPairGenerator.initialize(2048);
+            KeyPair keyPair = keyPairGenerator.generateKeyPair();
+
+            Backend backend = new Backend("0");
+            BenchmarkSession seller = new BenchmarkSession(backend, "seller@footprint", keyPair);
+            BenchmarkSession bidder = new BenchmarkSession(backend, "bidder@footprint", keyPair);
+
+            long before = usedHeap();
+            long listStart = System.nanoTime();
+
+            for(int first = 0; first < items; first += BATCH)
+            {
+                AuctionSaleItem[] batch = new AuctionSaleItem[Math.min(BATCH, items - first)];
+
+                for(int i = 0; i < batch.length; i++)
+                {
+                    batch[i] = new AuctionSaleItem();
+                    batch[i].name = "Item " + (first + i);
+                    batch[i].description = "Listed by ItemFootprint, number " + (first + i);
+                    batch[i].reservePrice = 100;
+                }
+
+                backend.newAuctions(seller.userID, batch, seller.token());
+            }
+
+            double listNanos = (double) (System.nanoTime() - listStart) / items;
+            long listedBytes = usedHeap() - before;
+
+            // Item IDs start at 1
+            for(int first = 1; first <= items; first += BATCH * 2)
+            {
+                int count = Math.min(BATCH, (items - first) / 2 + 1);
+                int[] itemIDs = new int[count];
+                int[] prices = new int[count];
+
+                for(int i = 0; i < count; i++)
+                {
+                    itemIDs[i] = first + i * 2;
+                    prices[i] = 10;
+                }
+
+                backend.bids(bidder.userID, itemIDs, prices, bidder.token());
+            }
+
+            long biddenBytes = usedHeap() - before;
+
+            long readStart = System.nanoTime();
+            AuctionItem[] listed = backend.listItems(seller.userID, seller.token());
+            double readMillis = (System.nanoTime() - readStart) / 1e6;
+
+            results.println(String.format("%,d auctions listed, %.0f bytes each (%,d MB), %.1f us per auction to list",
+                items, (double) listedBytes / items, listedBytes >> 20, listNanos / 1000));
+            results.println(String.format("After a bid on every other auction, %.0f bytes each (%,d MB)",
+                (double) biddenBytes / items, biddenBytes >> 20));
+            results.println(String.format("listItems returned %,d auctions in %.0f ms", listed.length, readMillis));
+        }
+        catch(Exception e)
+        {
+            results.println("Exception measuring item footprint:");
+            e.printStackTrace();
+        }
+
+        System.exit(0);
+    }
+}
@@ -0,0 +1,225 @@
+import java.io.File;
+import java.io.PrintStream;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+// Compares the heap and off-heap item stores on a Backend holding millions of auctions
+// Runs each store in a child JVM of its own with the same JVM options, so one store's heap cant affect the other's pauses
+// The child lists the auctions through newAuctions, then bids on random ones at a steady rate from several threads while
+// a seller keeps listing more, and reports:
+//   the heap still used once the auctions are listed and the direct memory the store took
+//   bid latency in microseconds, and every GC pause over the bidding as counted by the collectors' notifications
+// Each bid adds to the item's bid history on the heap whichever store is used, the rate keeps that from swamping the rest
+// Usage: java -cp .:../Server ItemStoreGcBenchmark [items] [seconds] [bidsPerSecond] [JVM options for the children...]
+// e.g. java ItemStoreGcBenchmark 2000000 30 5000 -Xmx2g -XX:+UseG1GC
+public class ItemStoreGcBenchmark
+{
+    private static final int BATCH = 10000;
+    private static final int BIDDERS = 2;
+
+    // Auctions the seller lists every 100ms while the bidders run
+    private static final int CHURN_BATCH = 1000;
+
+    private static long usedHeap()
+    {
+        Runtime runtime = Runtime.getRuntime();
+
+        for(int i = 0; i < 3; i++)
+        {
+            System.gc();
+        }
+
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long directMemory()
+    {
+        for(BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class))
+        {
+            if(pool.getName().equals("direct"))
+            {
+                return pool.getMemoryUsed();
+            }
+        }
+
+        return 0;
+    }
+
+    private static void list(Backend backend, BenchmarkSession seller, int first, int items) throws Exception
+    {
+        for(int start = first; start < first + items; start += BATCH)
+        {
+            AuctionSaleItem[] batch = new AuctionSaleItem[Math.min(BATCH, first + items - start)];
+
+            for(int i = 0; i < batch.length; i++)
+            {
+                batch[i] = new AuctionSaleItem();
+                batch[i].name = "Item " + (start + i);
+                batch[i].description = "Listed by ItemStoreGcBenchmark, number " + (start + i);
+                batch[i].reservePrice = 100;
+            }
+
+            backend.newAuctions(seller.userID, batch, seller.token());
+        }
+    }
+
+    // The child, run with -Dauction.itemStore set by the parent
+    private static void run(int items, int seconds, int bidsPerSecond) throws Exception
+    {
+        PrintStream results = System.out;
+        Log.setLevel(Log.Level.OFF);
+
+        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+        keyPairGenerator.initialize(2048);
+        KeyPair keyPair = keyPairGenerator.generateKeyPair();
+
+        Backend backend = new Backend("0");
+        BenchmarkSession seller = new BenchmarkSession(backend, "seller@gc", keyPair);
+
+        long before = usedHeap();
+        long listStart = System.nanoTime();
+        list(backend, seller, 0, items);
+        long listMillis = (System.nanoTime() - listStart) / 1000000;
+        long heapBytes = usedHeap() - before;
+
+        // Every pause from here on, young and old, as the collectors report them
+        AtomicLong pauses = new AtomicLong();
+        AtomicLong pauseMillis = new AtomicLong();
+        AtomicLong maxPause = new AtomicLong();
+
+        for(GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans())
+        {
+            ((NotificationEmitter) collector).addNotificationListener((notification, handback) -> {
+                if(notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION))
+                {
+                    long duration = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData()).getGcInfo().getDuration();
+                    pauses.incrementAndGet();
+                    pauseMillis.addAndGet(duration);
+                    maxPause.accumulateAndGet(duration, Math::max);
+                }
+            }, null, null);
+        }
+
+        LatencyHistogram bidLatency = new LatencyHistogram();
+        AtomicInteger price = new AtomicInteger(100);
+        AtomicInteger listed = new AtomicInteger(items);
+        long end = System.currentTimeMillis() + seconds * 1000L;
+        long interval = 1000000000L * BIDDERS / bidsPerSecond;
+        List<Thread> threads = new ArrayList<>();
+
+        for(int t = 0; t < BIDDERS; t++)
+        {
+            BenchmarkSession bidder = new BenchmarkSession(backend, "bidder" + t + "@gc", keyPair);
+
+            threads.add(new Thread(() -> {
+                try
+                {
+                    long next = System.nanoTime();
+
+                    while(System.currentTimeMillis() < end)
+                    {
+                        // Bids fall behind rather than bunch up after a pause, the latency is what each one took
+                        next = Math.max(next + interval, System.nanoTime());
+                        LockSupport.parkNanos(next - System.nanoTime());
+
+                        // Item IDs start at 1, every bid beats the last so each one is accepted
+                        int itemID = 1 + ThreadLocalRandom.current().nextInt(listed.get());
+                        long start = System.nanoTime();
+                        backend.bid(bidder.userID, itemID, price.incrementAndGet(), bidder.token());
+                        bidLatency.record((System.nanoTime() - start) / 1000);
+                    }
+                }
+                catch(Exception e)
+                {
+                    results.println("Exception bidding:");
+                    e.printStackTrace();
+                }
+            }));
+        }
+
+        threads.add(new Thread(() -> {
+            try
+            {
+                while(System.currentTimeMillis() < end)
+                {
+                    list(backend, seller, listed.get(), CHURN_BATCH);
+                    listed.addAndGet(CHURN_BATCH);
+                    Thread.sleep(100);
+                }
+            }
+            catch(Exception e)
+            {
+                results.println("Exception listing:");
+                e.printStackTrace();
+            }
+        }));
+
+        threads.forEach(Thread::start);
+
+        for(Thread thread : threads)
+        {
+            thread.join();
+        }
+
+        results.println(String.format("%s store: %,d auctions listed in %,d ms, heap %,d MB, direct %,d MB",
+            System.getProperty("auction.itemStore", "heap"), items, listMillis, heapBytes >> 20, directMemory() >> 20));
+        results.println(String.format("  %,d bids in %ds (%,d/s), latency us %s",
+            bidLatency.getCount(), seconds, bidLatency.getCount() / seconds, bidLatency.summary()));
+        results.println(String.format("  %,d GC pauses, %,d ms in total, longest %,d ms, %,d auctions at the end",
+            pauses.get(), pauseMillis.get(), maxPause.get(), listed.get()));
+    }
+
+    public static void main(String[] args)
+    {
+        try
+        {
+            if(args.length > 0 && args[0].equals("run"))
+            {
+                run(Integer.parseInt(args[1]), Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+                System.exit(0);
+            }
+
+            int items = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+            int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+            int bidsPerSecond = args.length > 2 ? Integer.parseInt(args[2]) : 5000;
+            List<String> jvmOptions = args.length > 3 ? Arrays.asList(args).subList(3, args.length) : List.of("-Xmx2g");
+            String javaCommand = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+
+            System.out.println("Children run with " + String.join(" ", jvmOptions));
+
+            for(String store : new String[] { "heap", "offheap" })
+            {
+                List<String> command = new ArrayList<>();
+                command.add(javaCommand);
+                command.addAll(jvmOptions);
+                command.add("-Dauction.itemStore=" + store);
+                command.addAll(List.of("-cp", System.getProperty("java.class.path"), "ItemStoreGcBenchmark", "run", String.valueOf(items), String.valueOf(seconds), String.valueOf(bidsPerSecond)));
+
+                int exit = new ProcessBuilder(command).inheritIO().start().waitFor();
+
+                if(exit != 0)
+                {
+                    System.out.println(store + " run exited with " + exit);
+                }
+            }
+        }
+        catch(Exception e)
+        {
+            System.out.println("Exception running item store benchmark:");
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Measures bids per second on a Backend in this JVM with each kind of logging, every bid logs a line at DEBUG
+//   off         nothing logged
+//   info        the default level, bids log nothing but the level check
+//   debug async every bid's line goes through Log's ring to the writer thread
+//   debug sync  every bid's line is formatted and printed on the bidding thread, like the old System.out.println logging
+// Log output goes to a temporary file through a stream that flushes every line, as System.out does
+// Usage: java -cp .:../Server LoggingBenchmark [threads] [seconds]
+public class LoggingBenchmark
+{
+    private static final int ITEMS_PER_THREAD = 100;
+
+    private static double run(Backend backend, BenchmarkSession[] bidders, int[][] itemIDs, int seconds) throws Exception
+    {
+        AtomicLong bids = new AtomicLong();
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread[] threads = new Thread[bidders.length];
+
+        for(int t = 0; t < threads.length; t++)
+        {
+            BenchmarkSession bidder = bidders[t];
+            int[] items = itemIDs[t];
+
+            threads[t] = new Thread(() -> {
+                try
+                {
+                    int price = (int) (System.nanoTime() % 1000) + 1000000;
+                    long placed = 0;
+
+                    while(running.get())
+                    {
+                        backend.bid(bidder.userID, items[(int) (placed % items.length)], price++, bidder.token());
+                        placed++;
+                    }
+
+                    bids.addAndGet(placed);
+                }
+                catch(Exception e)
+                {
+                    e.printStackTrace();
+                }
+            });
+        }
+
+        long start = System.nanoTime();
+        for(Thread thread : threads)
+        {
+            thread.start();
+        }
+
+        Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+        running.set(false);
+
+        for(Thread thread : threads)
+        {
+            thread.join();
+        }
+
+        return bids.get() / ((System.nanoTime() - start) / 1e9);
+    }
+
+    public static void main(String[] args)
+    {
+        int threadCount = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        PrintStream results = System.out;
+
+        try
+        {
+            File logFile = File.createTempFile("logging-benchmark", ".log");
+            logFile.deleteOnExit();
+            System.setOut(new PrintStream(new BufferedOutputStream(new FileOutputStream(logFile), 8192), true));
+
+            KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+            keyPairGenerator.initialize(2048);
+            KeyPair keyPair = keyPairGenerator.generateKeyPair();
+
+            Backend backend = new Backend("0");
+            BenchmarkSession seller = new BenchmarkSession(backend, "seller@benchmark", keyPair);
+            BenchmarkSession[] bidders = new BenchmarkSession[threadCount];
+            int[][] itemIDs = new int[threadCount][ITEMS_PER_THREAD];
+
+            for(int t = 0; t < threadCount; t++)
+            {
+                bidders[t] = new BenchmarkSession(backend, "bidder" + t + "@benchmark", keyPair);
+
+                for(int i = 0; i < ITEMS_PER_THREAD; i++)
+                {
+                    AuctionSaleItem item = new AuctionSaleItem();
+                    item.name = "item " + t + "-" + i;
+                    item.description = "listed by LoggingBenchmark";
+                    itemIDs[t][i] = backend.newAuction(seller.userID, item, seller.token());
+                }
+            }
+
+            results.println("Bids per second with " + threadCount + " threads, " + seconds + "s each:");
+
+            Object[][] modes = {
+                { "off", Log.Level.OFF, true },
+                { "info", Log.Level.INFO, true },
+                { "debug async", Log.Level.DEBUG, true },
+                { "debug sync", Log.Level.DEBUG, false },
+            };
+
+            // Run each mode twice and report the second, so the JIT has warmed up
+            for(int round = 0; round < 2; round++)
+            {
+                for(Object[] mode : modes)
+                {
+                    Log.setAsync((Boolean) mode[2]);
+                    Log.setLevel((Log.Level) mode[1]);
+                    long droppedBefore = Log.getDropped();
+                    long logBytesBefore = logFile.length();
+
+                    double rate = run(backend, bidders, itemIDs, seconds);
+
+                    Log.flush();
+                    if(round == 1)
+                    {
+                        results.println(String.format("  %-12s %,10.0f bids/sec  %,8d KB logged  %,d dropped",
+                            mode[0], rate, (logFile.length() - logBytesBefore) >> 10, Log.getDropped() - droppedBefore));
+                    }
+                }
+            }
+        }
+        catch(Exception e)
+        {
+            results.println("Exception running logging benchmark:");
+            e.printStackTrace();
+        }
+
+        System.exit(0);
+    }
+}
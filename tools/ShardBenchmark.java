@@ -0,0 +1,130 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Measures write throughput through the Frontend as the number of shards grows, all on this machine
+// Starts its own registry plus shards x replicas Replica objects in this JVM, exported over RMI like separate processes,
+// then runs writer threads alternating newAuction and bid calls through a Frontend for each shard count
+// Needs the default registry port free, so stop any rmiregistry before running it
+// Usage: java -cp .:../Server ShardBenchmark [maxShards] [replicasPerShard] [threads] [seconds]
+public class ShardBenchmark
+{
+    private static double run(Registry registry, int shardCount, int replicasPerShard, int threads, int seconds, KeyPair keyPair) throws Exception
+    {
+        List<Replica> replicas = new ArrayList<>();
+
+        for(int shard = 0; shard < shardCount; shard++)
+        {
+            for(int r = 1; r <= replicasPerShard; r++)
+            {
+                Replica replica = new Replica(String.valueOf(r), shard, shardCount);
+                registry.rebind(Replica.registryName(shard, String.valueOf(r)), UnicastRemoteObject.exportObject(replica, 0));
+                replicas.add(replica);
+            }
+        }
+
+        Frontend frontend = new Frontend(shardCount);
+        AtomicLong writes = new AtomicLong();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        Thread[] writers = new Thread[threads];
+
+        for(int t = 0; t < threads; t++)
+        {
+            final int index = t;
+            writers[t] = new Thread(() -> {
+                try
+                {
+                    BenchmarkSession session = new BenchmarkSession(frontend, "writer" + index + "@benchmark", keyPair);
+                    AuctionSaleItem saleItem = new AuctionSaleItem();
+                    saleItem.name = "item";
+                    saleItem.description = "listed by ShardBenchmark";
+                    int itemID = -1;
+                    int price = 0;
+
+                    while(System.nanoTime() < deadline)
+                    {
+                        if(itemID < 0 || (price & 1) == 0)
+                        {
+                            itemID = frontend.newAuction(session.userID, saleItem, session.token());
+                        }
+                        else
+                        {
+                            frontend.bid(session.userID, itemID, price, session.token());
+                        }
+                        price++;
+                        writes.incrementAndGet();
+                    }
+                }
+                catch(Exception e)
+                {
+                    e.printStackTrace();
+                }
+            });
+            writers[t].start();
+        }
+
+        for(Thread writer : writers)
+        {
+            writer.join();
+        }
+
+        // Take this run's replicas down so the next run starts from empty shards
+        for(String name : registry.list())
+        {
+            registry.unbind(name);
+        }
+        for(Replica replica : replicas)
+        {
+            UnicastRemoteObject.unexportObject(replica, true);
+        }
+
+        return writes.get() / (double) seconds;
+    }
+
+    public static void main(String[] args)
+    {
+        int maxShards = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int replicasPerShard = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+
+        PrintStream results = System.out;
+
+        try
+        {
+            Registry registry = LocateRegistry.createRegistry(Registry.REGISTRY_PORT);
+            KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+            keyPairGenerator.initialize(2048);
+            KeyPair keyPair = keyPairGenerator.generateKeyPair();
+
+            // The replicas log every operation, keep that out of the results
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+            double baseline = 0;
+
+            for(int shardCount = 1; shardCount <= maxShards; shardCount *= 2)
+            {
+                double writesPerSecond = run(registry, shardCount, replicasPerShard, threads, seconds, keyPair);
+                baseline = shardCount == 1 ? writesPerSecond : baseline;
+
+                results.println(String.format("shards: %d  replicas/shard: %d  writes/sec: %.0f  speedup: %.2fx",
+                    shardCount, replicasPerShard, writesPerSecond, writesPerSecond / baseline));
+            }
+        }
+        catch(Exception e)
+        {
+            results.println("Exception running shard benchmark:");
+            e.printStackTrace();
+        }
+
+        System.exit(0);
+    }
+}